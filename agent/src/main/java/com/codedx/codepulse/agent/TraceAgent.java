@@ -83,6 +83,15 @@ public interface TraceAgent
 	 */
 	void prepare();
 
+	/**
+	 * Sets up buffering of trace data before HQ has been reached, for
+	 * asynchronous startup. Data is held (up to the pre-connect buffer size)
+	 * until <code>prepare</code> is called after connecting.
+	 *
+	 * @param provisionalConfig the configuration to use until HQ provides one
+	 */
+	void prepareProvisional(RuntimeAgentConfigurationV1 provisionalConfig);
+
 	/**
 	 * Starts tracing.
 	 */
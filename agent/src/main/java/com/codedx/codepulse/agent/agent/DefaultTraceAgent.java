@@ -28,16 +28,20 @@ import com.codedx.codepulse.agent.control.Controller;
 import com.codedx.codepulse.agent.control.HeartbeatInformer;
 import com.codedx.codepulse.agent.control.ModeChangeListener;
 import com.codedx.codepulse.agent.control.StateManager;
-import com.codedx.codepulse.agent.data.MessageDealerTraceDataCollector;
+import com.codedx.codepulse.agent.data.TraceDataCollectors;
 import com.codedx.codepulse.agent.errors.AgentErrorListener;
 import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.errors.MinlogListener;
+import com.codedx.codepulse.agent.init.MethodIdTableFile;
+import com.codedx.codepulse.agent.init.ProvisionalConfiguration;
 import com.codedx.codepulse.agent.message.BufferService;
+import com.codedx.codepulse.agent.message.BufferPoolTuner;
 import com.codedx.codepulse.agent.message.MessageDealer;
 import com.codedx.codepulse.agent.message.MessageSenderManager;
 import com.codedx.codepulse.agent.message.PooledBufferService;
 import com.codedx.codepulse.agent.protocol.ProtocolVersion;
-import com.codedx.codepulse.agent.protocol.ProtocolVersion4;
+import com.codedx.codepulse.agent.protocol.ProtocolVersion5;
+import com.codedx.codepulse.agent.trace.Trace;
 import com.codedx.codepulse.agent.trace.TraceDataCollector;
 import com.codedx.codepulse.agent.util.ShutdownHook;
 import com.codedx.codepulse.agent.util.SocketFactory;
@@ -59,20 +63,26 @@ import com.esotericsoftware.minlog.Log;
 public class DefaultTraceAgent implements TraceAgent
 {
 	private static long ConnectSleep = 1000;
+	private static int MinSharedMemoryRingSize = 1024 * 1024;
 
 	private SocketFactory socketFactory;
+	private boolean hqIsLocal = false;
 	private StaticAgentConfiguration staticConfig;
 	private RuntimeAgentConfigurationV1 config;
 
 	private final Semaphore startMutex = new Semaphore(0);
-	private final ProtocolVersion protocol = new ProtocolVersion4();
+	private final ProtocolVersion protocol = new ProtocolVersion5();
 	private MinlogListener logger = null;
 	private ClassIdentifier classIdentifier = new ClassIdentifier();
-	private MethodIdentifier methodIdentifier = new MethodIdentifier();
-	private TraceDataCollector dataCollector;
+	private MethodIdTable methodIdTable;
+	private MethodIdentifier methodIdentifier;
+	private TraceDataCollectors dataCollectors;
+	private boolean collectorsAreProvisional = false;
 	private StateManager stateManager;
 	private Controller controller;
 	private BufferPool bufferPool;
+	private int bufferMemoryBudget;
+	private BufferPoolTuner bufferTuner;
 	private BufferService bufferService;
 	private MessageDealer messageFactory;
 	private MessageSenderManager senderManager;
@@ -99,6 +109,10 @@ public class DefaultTraceAgent implements TraceAgent
 				ErrorHandler.addListener(logger);
 			}
 
+			// method IDs must be settled before any class is instrumented
+			methodIdTable = MethodIdTableFile.load(staticConfig);
+			methodIdentifier = new MethodIdentifier(classIdentifier, methodIdTable);
+
 			error = "Failed to initialize state manager";
 
 			stateManager = new StateManager();
@@ -110,7 +124,16 @@ public class DefaultTraceAgent implements TraceAgent
 				{
 					if (oldMode == AgentOperationMode.Initializing
 							&& newMode != AgentOperationMode.Shutdown)
+					{
+						// the collectors were built before HQ sent its
+						// configuration, which may call for different ones
+						if (collectorsAreProvisional)
+						{
+							collectorsAreProvisional = false;
+							Trace.setTraceDataCollector(dataCollectors.replace(config));
+						}
 						start();
+					}
 					else if (newMode == AgentOperationMode.Shutdown)
 						new Thread(new Runnable()
 						{
@@ -195,6 +218,7 @@ public class DefaultTraceAgent implements TraceAgent
 			}
 
 			SocketConnection controlConnection = new SocketConnection(controlSocket, true, true);
+			hqIsLocal = controlSocket.getInetAddress().isLoopbackAddress();
 
 			error = "Failed to get configuration from HQ";
 			config = protocol.getControlConnectionHandshake().performHandshake(controlConnection, staticConfig.getProjectId());
@@ -277,30 +301,93 @@ public class DefaultTraceAgent implements TraceAgent
 	@Override
 	public void prepare()
 	{
+		if (bufferPool == null)
+			initializeBuffers(config.getBufferMemoryBudget(), config.getQueueRetryCount());
+
 		initializeSender();
 	}
 
-	private void initializeSender()
+	@Override
+	public void prepareProvisional(RuntimeAgentConfigurationV1 provisionalConfig)
+	{
+		config = provisionalConfig;
+
+		// the pool doubles as the pre-connect buffer, so it needs to be big
+		// enough to hold what's traced while we wait on HQ
+		int memBudget = Math.max(provisionalConfig.getBufferMemoryBudget(),
+				staticConfig.getPreConnectBufferSize());
+		final PooledBufferService pooledService = initializeBuffers(memBudget,
+				provisionalConfig.getQueueRetryCount());
+		collectorsAreProvisional = true;
+
+		// nothing is sent until HQ is reached, so the application must not wait
+		// for buffers in the meantime; once tracing properly starts, the usual
+		// back-pressure applies again
+		pooledService.setDropWhenFull(true);
+		stateManager.addListener(new ModeChangeListener()
+		{
+			@Override
+			public void onModeChange(AgentOperationMode oldMode, AgentOperationMode newMode)
+			{
+				if (oldMode == AgentOperationMode.Initializing)
+				{
+					pooledService.setDropWhenFull(false);
+
+					long dropped = pooledService.getDroppedCount();
+					if (dropped > 0)
+						Log.warn("agent", String.format(
+								"%d trace events were dropped while waiting for HQ", dropped));
+				}
+			}
+		});
+	}
+
+	private PooledBufferService initializeBuffers(int memBudget, int queueRetryCount)
 	{
 		try
 		{
 			// figure out the buffer count and sizes for the BufferPool
-			int memBudget = config.getBufferMemoryBudget();
 			int bufferLength = decideBufferLength(memBudget);
 			int numBuffers = memBudget / bufferLength;
 
 			// set up the queue/message factory
 			bufferPool = new BufferPool(numBuffers, bufferLength);
-			bufferService = new PooledBufferService(bufferPool, config.getQueueRetryCount());
-			messageFactory = new MessageDealer(protocol.getMessageProtocol(), bufferService, classIdentifier, methodIdentifier);
-			dataCollector = new MessageDealerTraceDataCollector(messageFactory);
+			bufferMemoryBudget = memBudget;
+			PooledBufferService pooledService = new PooledBufferService(bufferPool, queueRetryCount);
+			bufferService = pooledService;
+			messageFactory = new MessageDealer(protocol.getMessageProtocol(), bufferService, classIdentifier, methodIdentifier,
+					protocol.getMessageProtocol().maxThreadId());
+			dataCollectors = new TraceDataCollectors(messageFactory, config);
+
+			// has to see the shutdown before the buffer service does
+			stateManager.addListener(dataCollectors.getModeChangeListener());
+			stateManager.addSamplingIntervalListener(dataCollectors.getSamplingIntervalListener());
 
+			stateManager.addListener(bufferService.getModeChangeListener());
+			return pooledService;
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error initializing trace agent buffers", e);
+
+			throw new RuntimeException(
+					"Agent Initialization Error: Failed to set up message buffering system");
+		}
+	}
+
+	private void initializeSender()
+	{
+		try
+		{
 			senderManager = new MessageSenderManager(socketFactory,
 					protocol.getDataConnectionHandshake(), bufferPool, config.getNumDataSenders(),
-					config.getRunId());
+					config.getMaxDataSenders(), config.getRunId());
+			if (config.isSharedMemoryTransport() && hqIsLocal)
+				senderManager.useSharedMemory(Math.max(bufferMemoryBudget, MinSharedMemoryRingSize));
 			senderManager.start();
 
-			stateManager.addListener(bufferService.getModeChangeListener());
+			bufferTuner = new BufferPoolTuner(bufferPool, bufferMemoryBudget);
+			bufferTuner.start();
 		}
 		catch (Exception e)
 		{
@@ -342,7 +429,7 @@ public class DefaultTraceAgent implements TraceAgent
 	@Override
 	public TraceDataCollector getDataCollector()
 	{
-		return dataCollector;
+		return dataCollectors.getCollector();
 	}
 
 	@Override
@@ -363,6 +450,15 @@ public class DefaultTraceAgent implements TraceAgent
 		return senderManager;
 	}
 
+	/**
+	 * @return The tuner that sizes the buffer pool, or <code>null</code> if
+	 *         sending hasn't started
+	 */
+	public BufferPoolTuner getBufferTuner()
+	{
+		return bufferTuner;
+	}
+
 	private void registerShutdownHook()
 	{
 		ShutdownHook hook = new ShutdownHook()
@@ -456,8 +552,12 @@ public class DefaultTraceAgent implements TraceAgent
 
 	public void closeConnections()
 	{
+		if (bufferTuner != null)
+			bufferTuner.shutdown();
 		senderManager.shutdown();
 		controller.shutdown();
+
+		MethodIdTableFile.save(staticConfig, methodIdTable);
 	}
 
 	private void waitForSenderManager() throws InterruptedException
@@ -485,6 +585,9 @@ public class DefaultTraceAgent implements TraceAgent
 		// wait for signal to start
 		startMutex.acquire();
 
+		// remember the final configuration for the next asynchronous startup
+		ProvisionalConfiguration.save(staticConfig, config);
+
 		// now that we're ready to start, register the shutdown hook
 		registerShutdownHook();
 	}
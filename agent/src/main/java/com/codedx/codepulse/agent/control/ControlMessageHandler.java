@@ -17,6 +17,8 @@
 
 package com.codedx.codepulse.agent.control;
 
+import java.util.List;
+
 /**
  * Takes action on incoming control messages.
  * @author RobertF
@@ -36,4 +38,26 @@ public interface ControlMessageHandler
 	void onUnsuspend();
 
 	void onError(String error);
+
+	/**
+	 * HQ has everything it needs from the given methods for now; their probes
+	 * can stop reporting until {@link #onRearmMethods()}.
+	 */
+	void onSuppressMethods(int[] methodIds);
+
+	void onRearmMethods();
+
+	void onSetSamplingInterval(int interval);
+
+	/**
+	 * HQ has replaced the exclusion and inclusion patterns; classes whose
+	 * decision changes should be retransformed.
+	 */
+	void onUpdateTraceFilters(List<String> exclusions, List<String> inclusions);
+
+	/**
+	 * HQ has named the classes that should get line-level probes; classes
+	 * that gain or lose them should be retransformed.
+	 */
+	void onSetLineLevelTargets(List<String> patterns);
 }
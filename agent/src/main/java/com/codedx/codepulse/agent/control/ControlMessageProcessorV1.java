@@ -29,9 +29,9 @@ import com.codedx.codepulse.agent.common.message.MessageConstantsV1;
  */
 public class ControlMessageProcessorV1 implements ControlMessageProcessor
 {
-	private final ConfigurationReader configReader;
-	private final ControlMessageHandler handler;
-	private final ConfigurationHandler configHandler;
+	protected final ConfigurationReader configReader;
+	protected final ControlMessageHandler handler;
+	protected final ConfigurationHandler configHandler;
 
 	public ControlMessageProcessorV1(ConfigurationReader configReader,
 			ControlMessageHandler handler, ConfigurationHandler configHandler)
@@ -73,7 +73,16 @@ public class ControlMessageProcessorV1 implements ControlMessageProcessor
 			handler.onError(stream.readUTF());
 			break;
 		default:
-			ErrorHandler.handleError("unrecognized control message in processIncomingMessage");
+			processOtherMessage(messageType, stream);
 		}
 	}
+
+	/**
+	 * Handles a message type that this protocol version doesn't know about.
+	 * Later versions override this to handle the messages they add.
+	 */
+	protected void processOtherMessage(byte messageType, DataInputStream stream) throws IOException
+	{
+		ErrorHandler.handleError("unrecognized control message in processIncomingMessage");
+	}
 }
@@ -0,0 +1,79 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.control;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV5;
+
+/**
+ * Processes incoming control messages (protocol version 5), adding the
+ * method suppression, sampling, trace filter and line-level target messages
+ * to those of version 1.
+ */
+public class ControlMessageProcessorV2 extends ControlMessageProcessorV1
+{
+	public ControlMessageProcessorV2(ConfigurationReader configReader,
+			ControlMessageHandler handler, ConfigurationHandler configHandler)
+	{
+		super(configReader, handler, configHandler);
+	}
+
+	@Override
+	protected void processOtherMessage(byte messageType, DataInputStream stream) throws IOException
+	{
+		switch (messageType)
+		{
+		case MessageConstantsV5.MsgSuppressMethods:
+			int count = stream.readInt();
+			int[] methodIds = new int[count];
+			for (int i = 0; i < count; i++)
+				methodIds[i] = stream.readInt();
+			handler.onSuppressMethods(methodIds);
+			break;
+		case MessageConstantsV5.MsgRearmMethods:
+			handler.onRearmMethods();
+			break;
+		case MessageConstantsV5.MsgSetSamplingInterval:
+			handler.onSetSamplingInterval(stream.readInt());
+			break;
+		case MessageConstantsV5.MsgUpdateTraceFilters:
+			List<String> exclusions = readPatterns(stream);
+			List<String> inclusions = readPatterns(stream);
+			handler.onUpdateTraceFilters(exclusions, inclusions);
+			break;
+		case MessageConstantsV5.MsgSetLineLevelTargets:
+			handler.onSetLineLevelTargets(readPatterns(stream));
+			break;
+		default:
+			super.processOtherMessage(messageType, stream);
+		}
+	}
+
+	private static List<String> readPatterns(DataInputStream stream) throws IOException
+	{
+		int count = stream.readInt();
+		List<String> patterns = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+			patterns.add(stream.readUTF());
+		return patterns;
+	}
+}
@@ -22,19 +22,32 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.protocol.ProtocolVersion;
+import com.codedx.codepulse.agent.trace.RequestSampler;
 import com.codedx.codepulse.agent.common.connect.SocketConnection;
 import com.codedx.codepulse.agent.common.message.AgentOperationMode;
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1;
+import com.codedx.codepulse.agent.common.message.MessageProtocol;
+import com.codedx.codepulse.agent.common.message.NotSupportedException;
 
 /**
  * Control Controller - responsible for managing control connection
  *
+ * Class transformation notifications are queued by the (class loading)
+ * threads that report them, and written in batches from the controller's own
+ * thread, so that loading a class never waits on the control socket.
+ *
  * @author RobertF
  */
 public class Controller extends Thread
 {
+	private static final int ClassEventFlushInterval = 250;
+	private static final int MaxClassEventBatch = 512;
+
 	private final SocketConnection controlConnection;
 	private final DataInputStream inStream;
 	private final DataOutputStream outStream;
@@ -44,6 +57,13 @@ public class Controller extends Thread
 	private Boolean isRunning = false;
 	private int heartbeatInterval;
 
+	private final ConcurrentLinkedQueue<ClassEvent> pendingClassEvents = new ConcurrentLinkedQueue<ClassEvent>();
+	private final byte[] batchKinds = new byte[MaxClassEventBatch];
+	private final String[] batchClassNames = new String[MaxClassEventBatch];
+
+	private long lastReportedRequestTotal = 0;
+	private boolean requestSamplingSupported = true;
+
 	/**
 	 * Initializes a new instance of the controller. Controller is a daemon
 	 * thread that may be started via <code>start()</code>.
@@ -75,6 +95,16 @@ public class Controller extends Thread
 
 	public void shutdown()
 	{
+		try
+		{
+			// get out whatever notifications are still waiting
+			flushClassEvents();
+		}
+		catch (IOException e)
+		{
+			// the connection is probably already gone
+		}
+
 		try
 		{
 			isRunning = false;
@@ -95,38 +125,61 @@ public class Controller extends Thread
 		}
 	}
 
-	public void sendClassTransformed(String className) throws IOException
+	/**
+	 * Queues a ClassTransformed notification; it will be sent with the next
+	 * batch.
+	 */
+	public void sendClassTransformed(String className)
 	{
-		synchronized (outStream)
-		{
-			protocol.getMessageProtocol().writeClassTransformed(outStream, className);
-			outStream.flush();
-		}
+		pendingClassEvents.add(new ClassEvent(MessageConstantsV1.MsgClassTransformed, className));
 	}
 
-	public void sendClassTransformFailed(String className) throws IOException
+	/**
+	 * Queues a ClassTransformFailed notification; it will be sent with the
+	 * next batch.
+	 */
+	public void sendClassTransformFailed(String className)
 	{
-		synchronized (outStream)
-		{
-			protocol.getMessageProtocol().writeClassTransformFailed(outStream, className);
-			outStream.flush();
-		}
+		pendingClassEvents.add(new ClassEvent(MessageConstantsV1.MsgClassTransformFailed, className));
 	}
 
-	public void sendClassIgnored(String className) throws IOException
+	/**
+	 * Queues a ClassIgnored notification; it will be sent with the next batch.
+	 */
+	public void sendClassIgnored(String className)
+	{
+		pendingClassEvents.add(new ClassEvent(MessageConstantsV1.MsgClassIgnored, className));
+	}
+
+	public void sendDataBreak(int sequence) throws IOException
 	{
 		synchronized (outStream)
 		{
-			protocol.getMessageProtocol().writeClassIgnored(outStream, className);
+			protocol.getMessageProtocol().writeDataBreak(outStream, sequence);
 			outStream.flush();
 		}
 	}
 
-	public void sendDataBreak(int sequence) throws IOException
+	/**
+	 * Reports progress retransforming already-loaded classes. Does nothing if
+	 * the protocol in use doesn't support it.
+	 */
+	public void sendRetransformProgress(int totalClasses, int retransformedClasses,
+			int failedClasses, int batches, long longestPauseMicros, long totalPauseMicros)
+			throws IOException
 	{
 		synchronized (outStream)
 		{
-			protocol.getMessageProtocol().writeDataBreak(outStream, sequence);
+			try
+			{
+				protocol.getMessageProtocol().writeRetransformProgress(outStream, totalClasses,
+						retransformedClasses, failedClasses, batches, longestPauseMicros,
+						totalPauseMicros);
+			}
+			catch (NotSupportedException e)
+			{
+				return;
+			}
 			outStream.flush();
 		}
 	}
@@ -153,6 +206,97 @@ public class Controller extends Thread
 		}
 	}
 
+	/**
+	 * Reports the request sampling counters along with the heartbeat, if
+	 * sampling is in use and new requests have come in since the last report.
+	 */
+	private void sendRequestSampling() throws IOException
+	{
+		if (!requestSamplingSupported || !RequestSampler.isEnabled())
+			return;
+
+		long total = RequestSampler.getTotalRequests();
+		if (total == lastReportedRequestTotal)
+			return;
+
+		synchronized (outStream)
+		{
+			try
+			{
+				protocol.getMessageProtocol().writeRequestSampling(outStream,
+						RequestSampler.getSampledRequests(), total);
+			}
+			catch (NotSupportedException e)
+			{
+				requestSamplingSupported = false;
+				return;
+			}
+			outStream.flush();
+		}
+		lastReportedRequestTotal = total;
+	}
+
+	/**
+	 * Writes out every queued class notification, in as few messages as the
+	 * protocol allows, followed by a single flush.
+	 */
+	private void flushClassEvents() throws IOException
+	{
+		ClassEvent event = pendingClassEvents.poll();
+		if (event == null)
+			return;
+
+		synchronized (outStream)
+		{
+			while (event != null)
+			{
+				int count = 0;
+				do
+				{
+					batchKinds[count] = event.kind;
+					batchClassNames[count++] = event.className;
+				}
+				while (count < MaxClassEventBatch && (event = pendingClassEvents.poll()) != null);
+
+				writeClassEventBatch(count);
+				Arrays.fill(batchClassNames, 0, count, null);
+
+				if (event != null)
+					event = pendingClassEvents.poll();
+			}
+
+			outStream.flush();
+		}
+	}
+
+	private void writeClassEventBatch(int count) throws IOException
+	{
+		MessageProtocol messageProtocol = protocol.getMessageProtocol();
+		try
+		{
+			messageProtocol.writeClassTransformBatch(outStream, batchKinds, batchClassNames, count);
+		}
+		catch (NotSupportedException e)
+		{
+			// older protocols only know about the individual messages
+			for (int i = 0; i < count; i++)
+			{
+				switch (batchKinds[i])
+				{
+				case MessageConstantsV1.MsgClassTransformed:
+					messageProtocol.writeClassTransformed(outStream, batchClassNames[i]);
+					break;
+				case MessageConstantsV1.MsgClassTransformFailed:
+					messageProtocol.writeClassTransformFailed(outStream, batchClassNames[i]);
+					break;
+				case MessageConstantsV1.MsgClassIgnored:
+					messageProtocol.writeClassIgnored(outStream, batchClassNames[i]);
+					break;
+				}
+			}
+		}
+	}
+
 	private void processIncomingMessage(int timeout) throws IOException, SocketException
 	{
 		if (timeout > 0) // sanity check, don't read with a timeout of 0
@@ -184,12 +328,17 @@ public class Controller extends Thread
 				if (System.currentTimeMillis() >= nextHeartbeat)
 				{
 					sendHeartbeat();
+					sendRequestSampling();
 
 					nextHeartbeat = System.currentTimeMillis() + heartbeatInterval;
 				}
 
-				// wait for a message until it's time for the next heartbeat
-				int timeout = (int) (nextHeartbeat - System.currentTimeMillis());
+				flushClassEvents();
+
+				// wait for a message until it's time for the next heartbeat (or
+				// the next batch of class notifications)
+				int timeout = (int) Math.min(nextHeartbeat - System.currentTimeMillis(),
+						ClassEventFlushInterval);
 				processIncomingMessage(timeout);
 			}
 		}
@@ -203,4 +352,16 @@ public class Controller extends Thread
 			isRunning = false;
 		}
 	}
+
+	private static class ClassEvent
+	{
+		final byte kind;
+		final String className;
+
+		ClassEvent(byte kind, String className)
+		{
+			this.kind = kind;
+			this.className = className;
+		}
+	}
 }
@@ -0,0 +1,29 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.control;
+
+import java.util.List;
+
+/**
+ * Notified when HQ names the classes that should get line-level probes, for
+ * an agent that starts out with method entry/exit probes only.
+ */
+public interface LineLevelListener
+{
+	public void onLineLevelTargetsChange(List<String> patterns);
+}
\ No newline at end of file
@@ -18,9 +18,12 @@
 package com.codedx.codepulse.agent.control;
 
 import java.util.LinkedList;
+import java.util.List;
 
 import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.common.message.AgentOperationMode;
+import com.codedx.codepulse.agent.trace.Trace;
+import com.esotericsoftware.minlog.Log;
 
 /**
  * Manages execution state and provides heartbeat information
@@ -31,6 +34,12 @@ public class StateManager
 	private static final LinkedList<ModeChangeListener> listeners = new LinkedList<ModeChangeListener>();
 	private final StateManagerControlMessageHandler messageHandler = new StateManagerControlMessageHandler();
 	private AgentOperationMode currentMode = AgentOperationMode.Initializing;
+	private final LinkedList<SamplingIntervalListener> samplingListeners = new LinkedList<SamplingIntervalListener>();
+	private final LinkedList<TraceFilterListener> traceFilterListeners = new LinkedList<TraceFilterListener>();
+	private final LinkedList<LineLevelListener> lineLevelListeners = new LinkedList<LineLevelListener>();
+	private List<String> lineLevelTargets = null;
+	private List<String> traceFilterExclusions = null;
+	private List<String> traceFilterInclusions = null;
 
 	public StateManager()
 	{
@@ -52,6 +61,42 @@ public class StateManager
 		}
 	}
 
+	public void addSamplingIntervalListener(SamplingIntervalListener listener)
+	{
+		synchronized (samplingListeners)
+		{
+			samplingListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Adds a listener for trace filter changes. If HQ has already changed the
+	 * filters, the listener is told about the latest ones right away.
+	 */
+	public void addTraceFilterListener(TraceFilterListener listener)
+	{
+		synchronized (traceFilterListeners)
+		{
+			traceFilterListeners.add(listener);
+			if (traceFilterExclusions != null)
+				listener.onTraceFiltersChange(traceFilterExclusions, traceFilterInclusions);
+		}
+	}
+
+	/**
+	 * Adds a listener for line-level target changes. If HQ has already named
+	 * the line-level targets, the listener is told about them right away.
+	 */
+	public void addLineLevelListener(LineLevelListener listener)
+	{
+		synchronized (lineLevelListeners)
+		{
+			lineLevelListeners.add(listener);
+			if (lineLevelTargets != null)
+				listener.onLineLevelTargetsChange(lineLevelTargets);
+		}
+	}
+
 	private void triggerModeChange(AgentOperationMode newMode)
 	{
 		if (currentMode != AgentOperationMode.Shutdown)
@@ -151,5 +196,58 @@ public class StateManager
 		{
 			ErrorHandler.handleError(String.format("received error from HQ: %s", error));
 		}
+
+		@Override
+		public void onSuppressMethods(int[] methodIds)
+		{
+			Trace.suppressMethods(methodIds);
+		}
+
+		@Override
+		public void onRearmMethods()
+		{
+			Trace.rearmMethods();
+		}
+
+		@Override
+		public void onSetSamplingInterval(int interval)
+		{
+			synchronized (samplingListeners)
+			{
+				if (samplingListeners.isEmpty())
+					Log.warn("agent", "ignoring sampling interval change, since sampling is not enabled");
+
+				for (SamplingIntervalListener listener : samplingListeners)
+					listener.onSamplingIntervalChange(interval);
+			}
+		}
+
+		@Override
+		public void onUpdateTraceFilters(List<String> exclusions, List<String> inclusions)
+		{
+			// like the line-level targets, kept for listeners that are added later
+			synchronized (traceFilterListeners)
+			{
+				traceFilterExclusions = exclusions;
+				traceFilterInclusions = inclusions;
+
+				for (TraceFilterListener listener : traceFilterListeners)
+					listener.onTraceFiltersChange(exclusions, inclusions);
+			}
+		}
+
+		@Override
+		public void onSetLineLevelTargets(List<String> patterns)
+		{
+			// the targets may arrive before the transformer is installed, so
+			// they are kept for listeners that are added later
+			synchronized (lineLevelListeners)
+			{
+				lineLevelTargets = patterns;
+
+				for (LineLevelListener listener : lineLevelListeners)
+					listener.onLineLevelTargetsChange(patterns);
+			}
+		}
 	}
 }
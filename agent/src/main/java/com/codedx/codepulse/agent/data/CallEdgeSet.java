@@ -0,0 +1,264 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent set of (caller, callee) method id pairs, using open
+ * addressing with linear probing over an AtomicLongArray. Adding an edge
+ * that is already present is a few array reads; adding a new one is a CAS.
+ *
+ * When the table gets half full it is replaced by one twice the size. The
+ * resizing thread claims every slot of the old table, so an edge added
+ * concurrently either makes it into the old table before its slot is claimed
+ * (and is copied) or is retried against the new table.
+ *
+ * Every edge also carries a "reported" flag, so that {@link #collectUnreported}
+ * can find the edges that haven't been sent yet without any other
+ * bookkeeping.
+ */
+public class CallEdgeSet
+{
+	private static final long Empty = 0L;
+	private static final long Moved = -1L;
+	private static final long Reported = Long.MIN_VALUE;
+
+	private volatile AtomicLongArray table;
+	private final AtomicInteger size = new AtomicInteger();
+
+	public CallEdgeSet()
+	{
+		this(4096);
+	}
+
+	/**
+	 * @param initialCapacity the initial number of slots; rounded up to a
+	 *            power of two
+	 */
+	public CallEdgeSet(int initialCapacity)
+	{
+		int n = 16;
+		while (n < initialCapacity)
+			n <<= 1;
+		table = new AtomicLongArray(n);
+	}
+
+	/**
+	 * Adds the edge from <code>callerId</code> to <code>calleeId</code>.
+	 * Method ids must not be negative.
+	 *
+	 * @return true if the edge wasn't already in the set
+	 */
+	public boolean add(int callerId, int calleeId)
+	{
+		long key = key(callerId, calleeId);
+
+		while (true)
+		{
+			AtomicLongArray t = table;
+			int result = insert(t, key);
+
+			if (result == 0)
+				return false;
+
+			if (result > 0)
+			{
+				if (size.incrementAndGet() > t.length() >> 1)
+					resize(t);
+				return true;
+			}
+
+			awaitReplacement(t);
+		}
+	}
+
+	/**
+	 * @return 1 if <code>key</code> was added, 0 if it was already present,
+	 *         or -1 if <code>t</code> is being replaced
+	 */
+	private static int insert(AtomicLongArray t, long key)
+	{
+		int mask = t.length() - 1;
+		int i = hash(key) & mask;
+
+		while (true)
+		{
+			long current = t.get(i);
+
+			if (current == Empty)
+			{
+				if (t.compareAndSet(i, Empty, key))
+					return 1;
+				continue;
+			}
+
+			if (current == Moved)
+				return -1;
+
+			if ((current & ~Reported) == key)
+				return 0;
+
+			i = (i + 1) & mask;
+		}
+	}
+
+	private synchronized void resize(AtomicLongArray old)
+	{
+		if (table != old)
+			return;
+
+		AtomicLongArray next = new AtomicLongArray(old.length() << 1);
+		for (int i = 0; i < old.length(); i++)
+		{
+			long current;
+			do
+				current = old.get(i);
+			while (!old.compareAndSet(i, current, Moved));
+
+			if (current != Empty)
+				copy(next, current);
+		}
+
+		table = next;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the resize that is replacing <code>old</code> has published
+	 * the new table.
+	 */
+	private synchronized void awaitReplacement(AtomicLongArray old)
+	{
+		boolean interrupted = false;
+		while (table == old)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				// this runs inside traced code, which doesn't expect to be interrupted here
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private static void copy(AtomicLongArray t, long entry)
+	{
+		int mask = t.length() - 1;
+		int i = hash(entry & ~Reported) & mask;
+		while (t.get(i) != Empty)
+			i = (i + 1) & mask;
+		t.set(i, entry);
+	}
+
+	public int size()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Copies up to <code>max</code> edges that haven't been marked as
+	 * reported into <code>callerIds</code> and <code>calleeIds</code>.
+	 *
+	 * @return the number of edges copied
+	 */
+	public int collectUnreported(int[] callerIds, int[] calleeIds, int max)
+	{
+		AtomicLongArray t = table;
+		int n = 0;
+		for (int i = 0; i < t.length() && n < max; i++)
+		{
+			long current = t.get(i);
+			if (current != Empty && current != Moved && (current & Reported) == 0)
+			{
+				callerIds[n] = callerOf(current);
+				calleeIds[n] = calleeOf(current);
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Marks the edge from <code>callerId</code> to <code>calleeId</code> as
+	 * reported.
+	 */
+	public void markReported(int callerId, int calleeId)
+	{
+		long key = key(callerId, calleeId);
+
+		while (true)
+		{
+			AtomicLongArray t = table;
+			int mask = t.length() - 1;
+			int i = hash(key) & mask;
+
+			while (true)
+			{
+				long current = t.get(i);
+				if (current == Empty)
+					return;
+
+				if (current == Moved)
+					break;
+
+				if ((current & ~Reported) == key)
+				{
+					if (current == key && !t.compareAndSet(i, key, key | Reported))
+						continue;
+					return;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			awaitReplacement(t);
+		}
+	}
+
+	// the caller is offset by one so that no edge's key is Empty
+	private static long key(int callerId, int calleeId)
+	{
+		return ((long) (callerId + 1) << 32) | (calleeId & 0xFFFFFFFFL);
+	}
+
+	private static int callerOf(long entry)
+	{
+		return (int) ((entry & ~Reported) >>> 32) - 1;
+	}
+
+	private static int calleeOf(long entry)
+	{
+		return (int) entry;
+	}
+
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
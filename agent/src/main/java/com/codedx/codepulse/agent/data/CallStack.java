@@ -0,0 +1,132 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+/**
+ * A thread's stack of the instrumented calls it's in, with a value for each
+ * one (the time it started, when profiling). The stack has a fixed size so
+ * that pushing and popping never allocate; calls nested deeper than
+ * {@link #MaxDepth} are counted but not stored.
+ *
+ * An exit that doesn't match the innermost entry (because some method's exit
+ * wasn't reported) is matched against the entries below it, and the
+ * unmatched ones are dropped.
+ *
+ * When exits by exception aren't reported at all, entries that never get an
+ * exit can pile up under a long-lived call (e.g. a request loop) until the
+ * stack is full. A stack created with <code>evictOldest</code> makes room by
+ * dropping its oldest half instead of leaving every later call unstored;
+ * the dropped calls' exits then simply don't match anything.
+ */
+public class CallStack
+{
+	public static final int MaxDepth = 256;
+	public static final int EvictCount = MaxDepth / 2;
+
+	private final boolean evictOldest;
+
+	private final int[] methodIds = new int[MaxDepth];
+	private final long[] startTimes = new long[MaxDepth];
+
+	/** may exceed MaxDepth; frames past it are not stored */
+	private int depth = 0;
+
+	public CallStack()
+	{
+		this(false);
+	}
+
+	public CallStack(boolean evictOldest)
+	{
+		this.evictOldest = evictOldest;
+	}
+
+	/**
+	 * @return false if the call is nested too deeply to be stored
+	 */
+	public boolean push(int methodId, long startTime)
+	{
+		if (evictOldest && depth == MaxDepth)
+		{
+			System.arraycopy(methodIds, EvictCount, methodIds, 0, MaxDepth - EvictCount);
+			System.arraycopy(startTimes, EvictCount, startTimes, 0, MaxDepth - EvictCount);
+			depth -= EvictCount;
+		}
+
+		boolean stored = depth < MaxDepth;
+		if (stored)
+		{
+			methodIds[depth] = methodId;
+			startTimes[depth] = startTime;
+		}
+		depth++;
+		return stored;
+	}
+
+	/**
+	 * @return true if the innermost call is nested too deeply to be stored
+	 */
+	public boolean isOverflowing()
+	{
+		return depth > MaxDepth;
+	}
+
+	/**
+	 * @return the method id of the innermost stored call, or -1 if the stack
+	 *         is empty or the innermost call is nested too deeply to be
+	 *         stored
+	 */
+	public int peek()
+	{
+		return depth > 0 && depth <= MaxDepth ? methodIds[depth - 1] : -1;
+	}
+
+	/**
+	 * Removes the innermost call to <code>methodId</code>, and any calls
+	 * nested in it, from the stack.
+	 *
+	 * @return the removed call's frame, for {@link #startTime(int)}, or -1 if
+	 *         it wasn't stored
+	 */
+	public int pop(int methodId)
+	{
+		if (depth > MaxDepth)
+		{
+			// an unstored frame is exiting
+			depth--;
+			return -1;
+		}
+
+		for (int i = depth - 1; i >= 0; i--)
+		{
+			if (methodIds[i] == methodId)
+			{
+				depth = i;
+				return i;
+			}
+		}
+
+		// no matching entry; leave the stack alone
+		return -1;
+	}
+
+	public long startTime(int frame)
+	{
+		return startTimes[frame];
+	}
+}
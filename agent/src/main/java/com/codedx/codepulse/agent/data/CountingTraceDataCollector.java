@@ -0,0 +1,130 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+import com.codedx.codepulse.agent.errors.ErrorHandler;
+import com.codedx.codepulse.agent.message.MessageDealer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
+
+/**
+ * A TraceDataCollector that counts method entries in {@link InvocationCounters}
+ * instead of sending an event for each one. A background thread periodically
+ * sends the counts that changed as method counts messages. Method exits are
+ * not reported; line level traces are sent as usual.
+ */
+public class CountingTraceDataCollector implements TraceDataCollector
+{
+
+	private final MessageDealer messageDealer;
+	private final InvocationCounters counters = new InvocationCounters();
+
+	private final Harvester harvester = new Harvester(new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			harvest();
+		}
+	}, "Code Pulse invocation counter");
+
+	public CountingTraceDataCollector(MessageDealer messageDealer)
+	{
+		this.messageDealer = messageDealer;
+	}
+
+	public InvocationCounters getCounters()
+	{
+		return counters;
+	}
+
+	@Override
+	public void methodEntry(int methodId)
+	{
+		counters.increment(methodId);
+	}
+
+	@Override
+	public void methodExit(int methodId, boolean exThrown)
+	{
+		// only entries are counted
+	}
+
+	@Override
+	public void recordLineLevelTrace(int methodId, int startLine, int endLine, java.util.BitSet lineMap)
+	{
+		try
+		{
+			messageDealer.recordLineLevelTrace(methodId, startLine, endLine, lineMap);
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error recording line level trace", e);
+		}
+	}
+
+	/**
+	 * Sends the counts that changed since the last report.
+	 */
+	public void sendCounts()
+	{
+		harvester.harvestNow();
+	}
+
+	private void harvest()
+	{
+		InvocationCounters.Harvest harvest = counters.harvest();
+		if (harvest.size == 0)
+			return;
+
+		try
+		{
+			int sent = messageDealer.sendMethodCounts(harvest.methodIds, harvest.deltas, harvest.size);
+			counters.commit(harvest, 0, sent);
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error sending method counts", e);
+		}
+	}
+
+	public void start()
+	{
+		harvester.start();
+	}
+
+	/**
+	 * Sends the counts that changed since the last report, and stops the
+	 * background thread.
+	 */
+	public void finish()
+	{
+		harvester.finish(true);
+	}
+
+	/**
+	 * Returns a listener that sends the outstanding counts when tracing
+	 * stops, and then stops the background thread. It needs to be registered
+	 * before the buffer service's listener, so that it runs while buffers can
+	 * still be obtained.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return harvester.getModeChangeListener();
+	}
+}
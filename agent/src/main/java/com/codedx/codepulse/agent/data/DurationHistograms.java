@@ -0,0 +1,244 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.codedx.codepulse.agent.common.message.DurationBuckets;
+
+/**
+ * Per-method duration histograms, using the buckets described by
+ * {@link DurationBuckets}.
+ *
+ * Like {@link InvocationCounters}, recording is striped by thread and each
+ * stripe keeps its histograms in padded chunks that never move once
+ * allocated. A chunk holds the histograms of {@link #ChunkSize} methods, so
+ * recording allocates only the first time a stripe sees a method from a new
+ * chunk. Bucket counts are ints that may wrap around; only the difference
+ * between two harvests is meaningful, and that is far below 2^31 for any
+ * reasonable harvest interval.
+ */
+public class DurationHistograms
+{
+	static final int ChunkShift = 6;
+	static final int ChunkSize = 1 << ChunkShift;
+	private static final int ChunkMask = ChunkSize - 1;
+
+	private static final int Buckets = DurationBuckets.Count;
+
+	/** 16 ints is one 64-byte cache line */
+	private static final int Padding = 16;
+
+	private static final int MaxStripes = 16;
+
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	// harvesting state, guarded by `this`
+	private int[] committed = new int[ChunkSize * Buckets];
+	private final Harvest harvest = new Harvest();
+
+	public DurationHistograms()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param concurrency roughly how many threads are expected to record at
+	 *            once; rounded up to a power of two
+	 */
+	public DurationHistograms(int concurrency)
+	{
+		int n = 1;
+		while (n < concurrency && n < MaxStripes)
+			n <<= 1;
+
+		stripes = new Stripe[n];
+		for (int i = 0; i < n; i++)
+			stripes[i] = new Stripe();
+		stripeMask = n - 1;
+	}
+
+	/**
+	 * Records one call to <code>methodId</code> that took
+	 * <code>micros</code> microseconds.
+	 */
+	public void record(int methodId, long micros)
+	{
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+		int chunkIndex = methodId >>> ChunkShift;
+
+		AtomicIntegerArray[] chunks = stripe.chunks;
+		AtomicIntegerArray chunk;
+		if (chunkIndex >= chunks.length || (chunk = chunks[chunkIndex]) == null)
+			chunk = stripe.allocate(chunkIndex);
+
+		chunk.getAndIncrement(Padding + (methodId & ChunkMask) * Buckets + DurationBuckets.bucketOf(micros));
+	}
+
+	/**
+	 * Collects the bucket counts that grew since they were last committed.
+	 * The returned object is reused by the next call.
+	 */
+	public synchronized Harvest harvest()
+	{
+		harvest.clear();
+
+		int numChunks = 0;
+		for (Stripe stripe : stripes)
+			numChunks = Math.max(numChunks, stripe.chunks.length);
+
+		if (committed.length < numChunks * ChunkSize * Buckets)
+			committed = Arrays.copyOf(committed, numChunks * ChunkSize * Buckets);
+
+		for (int c = 0; c < numChunks; c++)
+		{
+			boolean any = false;
+			for (Stripe stripe : stripes)
+			{
+				AtomicIntegerArray[] chunks = stripe.chunks;
+				if (c < chunks.length && chunks[c] != null)
+				{
+					any = true;
+					break;
+				}
+			}
+			if (!any)
+				continue;
+
+			for (int m = 0; m < ChunkSize; m++)
+			{
+				int methodId = (c << ChunkShift) + m;
+				int base = methodId * Buckets;
+				boolean started = false;
+
+				for (int b = 0; b < Buckets; b++)
+				{
+					int total = 0;
+					for (Stripe stripe : stripes)
+					{
+						AtomicIntegerArray[] chunks = stripe.chunks;
+						if (c < chunks.length && chunks[c] != null)
+							total += chunks[c].get(Padding + m * Buckets + b);
+					}
+
+					int delta = total - committed[base + b];
+					if (delta != 0)
+					{
+						if (!started)
+						{
+							harvest.startMethod(methodId);
+							started = true;
+						}
+						harvest.addBucket(b, delta);
+					}
+				}
+			}
+		}
+
+		harvest.finish();
+		return harvest;
+	}
+
+	/**
+	 * Marks methods <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) of <code>h</code> as reported.
+	 */
+	public synchronized void commit(Harvest h, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			int base = h.methodIds[i] * Buckets;
+			for (int e = h.offsets[i]; e < h.offsets[i + 1]; e++)
+				committed[base + h.buckets[e]] += h.counts[e];
+		}
+	}
+
+	/**
+	 * The result of {@link DurationHistograms#harvest()}: <code>size</code>
+	 * methods, where method <code>i</code> has the bucket/count pairs from
+	 * <code>offsets[i]</code> (inclusive) to <code>offsets[i + 1]</code>
+	 * (exclusive) of the parallel <code>buckets</code> and
+	 * <code>counts</code> arrays.
+	 */
+	public static class Harvest
+	{
+		public int[] methodIds = new int[64];
+		public int[] offsets = new int[65];
+		public byte[] buckets = new byte[256];
+		public int[] counts = new int[256];
+		public int size = 0;
+
+		private int entries = 0;
+
+		void clear()
+		{
+			size = 0;
+			entries = 0;
+		}
+
+		void startMethod(int methodId)
+		{
+			if (size + 1 >= offsets.length)
+			{
+				methodIds = Arrays.copyOf(methodIds, methodIds.length * 2);
+				offsets = Arrays.copyOf(offsets, methodIds.length + 1);
+			}
+			methodIds[size] = methodId;
+			offsets[size] = entries;
+			size++;
+		}
+
+		void addBucket(int bucket, int count)
+		{
+			if (entries == buckets.length)
+			{
+				buckets = Arrays.copyOf(buckets, entries * 2);
+				counts = Arrays.copyOf(counts, entries * 2);
+			}
+			buckets[entries] = (byte) bucket;
+			counts[entries] = count;
+			entries++;
+		}
+
+		void finish()
+		{
+			offsets[size] = entries;
+		}
+	}
+
+	private static class Stripe
+	{
+		volatile AtomicIntegerArray[] chunks = new AtomicIntegerArray[0];
+
+		synchronized AtomicIntegerArray allocate(int chunkIndex)
+		{
+			AtomicIntegerArray[] current = chunks;
+			if (chunkIndex < current.length && current[chunkIndex] != null)
+				return current[chunkIndex];
+
+			AtomicIntegerArray[] next = Arrays.copyOf(current,
+					Math.max(current.length, Integer.highestOneBit(chunkIndex + 1) << 1));
+			AtomicIntegerArray chunk = new AtomicIntegerArray(Padding + ChunkSize * Buckets + Padding);
+			next[chunkIndex] = chunk;
+			chunks = next;
+			return chunk;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+import com.codedx.codepulse.agent.errors.ErrorHandler;
+import com.codedx.codepulse.agent.message.MessageDealer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
+
+/**
+ * A TraceDataCollector that records which methods call which, before passing
+ * the entry or exit on to another collector. Each thread keeps a
+ * {@link CallStack} of the calls it's in, and every method entry adds an edge
+ * from the innermost open call to a {@link CallEdgeSet}. A background thread
+ * periodically sends the edges that haven't been seen before as call edges
+ * messages.
+ *
+ * Calls made from outside any traced method have no caller and are not
+ * recorded as edges.
+ *
+ * With <code>unpairedEntries</code>, entries may never see an exit (because
+ * exits by exception aren't instrumented), so edges are best-effort: a call
+ * made right after a traced method threw may be attributed to that method
+ * rather than its real caller.
+ */
+public class EdgeTraceDataCollector implements TraceDataCollector
+{
+	private static final int MaxEdgesPerHarvest = 4096;
+
+	private final TraceDataCollector delegate;
+	private final MessageDealer messageDealer;
+	private final boolean unpairedEntries;
+	private final CallEdgeSet edges = new CallEdgeSet();
+
+	private final int[] harvestCallers = new int[MaxEdgesPerHarvest];
+	private final int[] harvestCallees = new int[MaxEdgesPerHarvest];
+
+	private final ThreadLocal<CallStack> callStack = new ThreadLocal<CallStack>()
+	{
+		@Override
+		protected CallStack initialValue()
+		{
+			return new CallStack(unpairedEntries);
+		}
+	};
+
+	private final Harvester harvester = new Harvester(new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			harvest();
+		}
+	}, "Code Pulse call edge recorder");
+
+	public EdgeTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer)
+	{
+		this(delegate, messageDealer, false);
+	}
+
+	/**
+	 * @param unpairedEntries true if method entries may not be followed by an
+	 *            exit (i.e. exception exits aren't instrumented)
+	 */
+	public EdgeTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer, boolean unpairedEntries)
+	{
+		this.delegate = delegate;
+		this.messageDealer = messageDealer;
+		this.unpairedEntries = unpairedEntries;
+	}
+
+	public CallEdgeSet getEdges()
+	{
+		return edges;
+	}
+
+	@Override
+	public void methodEntry(int methodId)
+	{
+		CallStack stack = callStack.get();
+		int caller = stack.peek();
+		if (caller >= 0)
+			edges.add(caller, methodId);
+		stack.push(methodId, 0L);
+
+		delegate.methodEntry(methodId);
+	}
+
+	@Override
+	public void methodExit(int methodId, boolean exThrown)
+	{
+		callStack.get().pop(methodId);
+		delegate.methodExit(methodId, exThrown);
+	}
+
+	@Override
+	public void recordLineLevelTrace(int methodId, int startLine, int endLine, java.util.BitSet lineMap)
+	{
+		delegate.recordLineLevelTrace(methodId, startLine, endLine, lineMap);
+	}
+
+	/**
+	 * Sends the edges that haven't been reported yet.
+	 */
+	public void sendEdges()
+	{
+		harvester.harvestNow();
+	}
+
+	private void harvest()
+	{
+		try
+		{
+			while (true)
+			{
+				int count = edges.collectUnreported(harvestCallers, harvestCallees, MaxEdgesPerHarvest);
+				if (count == 0)
+					return;
+
+				int sent = messageDealer.sendCallEdges(harvestCallers, harvestCallees, count);
+				for (int i = 0; i < sent; i++)
+					edges.markReported(harvestCallers[i], harvestCallees[i]);
+
+				if (sent < count || count < MaxEdgesPerHarvest)
+					return;
+			}
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error sending call edges", e);
+		}
+	}
+
+	public void start()
+	{
+		harvester.start();
+	}
+
+	/**
+	 * Sends the edges that haven't been reported yet, and stops the
+	 * background thread.
+	 */
+	public void finish()
+	{
+		harvester.finish(true);
+	}
+
+	/**
+	 * Returns a listener that sends the outstanding edges when tracing
+	 * stops, and then stops the background thread. It needs to be registered
+	 * before the buffer service's listener, so that it runs while buffers can
+	 * still be obtained.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return harvester.getModeChangeListener();
+	}
+}
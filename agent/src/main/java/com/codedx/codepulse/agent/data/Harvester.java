@@ -0,0 +1,151 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import com.codedx.codepulse.agent.common.message.AgentOperationMode;
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+
+/**
+ * Runs a collector's harvest (sending what it has gathered since the last
+ * one) on a background thread every {@link #HarvestInterval} ms, and once
+ * more when tracing stops.
+ *
+ * The harvest task is never run by two threads at once, so it doesn't need
+ * to lock anything itself. Once {@link #finish()} returns, the background
+ * thread has exited and the harvest won't run again.
+ */
+public class Harvester
+{
+	public static final long HarvestInterval = 1000;
+
+	private final Runnable harvest;
+	private final String threadName;
+
+	private Thread thread;
+	private boolean isFinished = false;
+
+	/**
+	 * @param harvest sends what's been gathered since it last ran
+	 * @param threadName the name of the background thread
+	 */
+	public Harvester(Runnable harvest, String threadName)
+	{
+		this.harvest = harvest;
+		this.threadName = threadName;
+	}
+
+	/**
+	 * Starts the background thread, unless it has already been started or
+	 * the harvester has finished.
+	 */
+	public synchronized void start()
+	{
+		if (thread != null || isFinished)
+			return;
+
+		thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (true)
+					{
+						Thread.sleep(HarvestInterval);
+						if (!harvestNow())
+							return;
+					}
+				}
+				catch (InterruptedException e)
+				{
+					// finishing
+				}
+			}
+		}, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs the harvest on the calling thread, unless the harvester has
+	 * finished.
+	 *
+	 * @return false if the harvester has finished
+	 */
+	public synchronized boolean harvestNow()
+	{
+		if (isFinished)
+			return false;
+
+		harvest.run();
+		return true;
+	}
+
+	/**
+	 * Stops the background thread and waits for it to exit. Nothing is
+	 * harvested afterwards.
+	 *
+	 * @param harvestFirst whether to run one last harvest before stopping
+	 */
+	public void finish(boolean harvestFirst)
+	{
+		Thread t;
+		synchronized (this)
+		{
+			if (harvestFirst)
+				harvestNow();
+
+			isFinished = true;
+			t = thread;
+		}
+
+		if (t != null && t != Thread.currentThread())
+		{
+			t.interrupt();
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns a listener that runs a last harvest when tracing stops, and then
+	 * stops the background thread. It needs to be registered before the
+	 * buffer service's listener, so that it runs while buffers can still be
+	 * obtained.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return new ModeChangeListener()
+		{
+			@Override
+			public void onModeChange(AgentOperationMode oldMode, AgentOperationMode newMode)
+			{
+				// while paused, obtaining a buffer would block until unpaused
+				if (newMode == AgentOperationMode.Shutdown)
+					finish(oldMode == AgentOperationMode.Tracing);
+			}
+		};
+	}
+}
@@ -0,0 +1,214 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-method invocation counters, indexed by method id.
+ *
+ * Counting is striped by thread so that threads running the same hot method
+ * rarely write to the same counter. Each stripe keeps its counters in chunks
+ * of {@link #ChunkSize}; a chunk is allocated the first time its stripe sees
+ * a method in its range and never moves afterwards, so incrementing a counter
+ * is a couple of array reads and one atomic add. Chunks are padded at both
+ * ends so that counters in different stripes never share a cache line.
+ *
+ * Counts are read back with {@link #harvest()}, which returns how much each
+ * method's count grew since the last {@link #commit(Harvest, int, int)}.
+ * Harvested deltas that are never committed are reported again by the next
+ * harvest.
+ */
+public class InvocationCounters
+{
+	static final int ChunkShift = 10;
+	static final int ChunkSize = 1 << ChunkShift;
+	private static final int ChunkMask = ChunkSize - 1;
+
+	/** 8 longs is one 64-byte cache line */
+	private static final int Padding = 8;
+
+	private static final int MaxStripes = 64;
+
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	// harvesting state, guarded by `this`
+	private long[] committed = new long[ChunkSize];
+	private final Harvest harvest = new Harvest();
+
+	public InvocationCounters()
+	{
+		this(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * @param concurrency roughly how many threads are expected to count at
+	 *            once; rounded up to a power of two
+	 */
+	public InvocationCounters(int concurrency)
+	{
+		int n = 1;
+		while (n < concurrency && n < MaxStripes)
+			n <<= 1;
+
+		stripes = new Stripe[n];
+		for (int i = 0; i < n; i++)
+			stripes[i] = new Stripe();
+		stripeMask = n - 1;
+	}
+
+	/**
+	 * Counts one invocation of <code>methodId</code>.
+	 */
+	public void increment(int methodId)
+	{
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+		int chunkIndex = methodId >>> ChunkShift;
+
+		AtomicLongArray[] chunks = stripe.chunks;
+		AtomicLongArray chunk;
+		if (chunkIndex >= chunks.length || (chunk = chunks[chunkIndex]) == null)
+			chunk = stripe.allocate(chunkIndex);
+
+		chunk.getAndIncrement(Padding + (methodId & ChunkMask));
+	}
+
+	/**
+	 * Returns the current count for <code>methodId</code>, summed across
+	 * stripes.
+	 */
+	public long get(int methodId)
+	{
+		int chunkIndex = methodId >>> ChunkShift;
+		int slot = Padding + (methodId & ChunkMask);
+
+		long total = 0;
+		for (Stripe stripe : stripes)
+		{
+			AtomicLongArray[] chunks = stripe.chunks;
+			if (chunkIndex < chunks.length && chunks[chunkIndex] != null)
+				total += chunks[chunkIndex].get(slot);
+		}
+		return total;
+	}
+
+	/**
+	 * Collects the methods whose counts grew since they were last committed.
+	 * The returned object is reused by the next call.
+	 */
+	public synchronized Harvest harvest()
+	{
+		harvest.size = 0;
+
+		int numChunks = 0;
+		for (Stripe stripe : stripes)
+			numChunks = Math.max(numChunks, stripe.chunks.length);
+
+		if (committed.length < numChunks * ChunkSize)
+			committed = Arrays.copyOf(committed, numChunks * ChunkSize);
+
+		for (int c = 0; c < numChunks; c++)
+		{
+			boolean any = false;
+			for (Stripe stripe : stripes)
+			{
+				AtomicLongArray[] chunks = stripe.chunks;
+				if (c < chunks.length && chunks[c] != null)
+				{
+					any = true;
+					break;
+				}
+			}
+			if (!any)
+				continue;
+
+			int base = c << ChunkShift;
+			for (int i = 0; i < ChunkSize; i++)
+			{
+				long total = 0;
+				for (Stripe stripe : stripes)
+				{
+					AtomicLongArray[] chunks = stripe.chunks;
+					if (c < chunks.length && chunks[c] != null)
+						total += chunks[c].get(Padding + i);
+				}
+
+				long delta = total - committed[base + i];
+				if (delta != 0)
+					harvest.add(base + i, delta);
+			}
+		}
+
+		return harvest;
+	}
+
+	/**
+	 * Marks entries <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) of <code>h</code> as reported.
+	 */
+	public synchronized void commit(Harvest h, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+			committed[h.methodIds[i]] += h.deltas[i];
+	}
+
+	/**
+	 * The result of {@link InvocationCounters#harvest()}: the first
+	 * <code>size</code> entries of the parallel <code>methodIds</code> and
+	 * <code>deltas</code> arrays.
+	 */
+	public static class Harvest
+	{
+		public int[] methodIds = new int[256];
+		public long[] deltas = new long[256];
+		public int size = 0;
+
+		void add(int methodId, long delta)
+		{
+			if (size == methodIds.length)
+			{
+				methodIds = Arrays.copyOf(methodIds, size * 2);
+				deltas = Arrays.copyOf(deltas, size * 2);
+			}
+			methodIds[size] = methodId;
+			deltas[size] = delta;
+			size++;
+		}
+	}
+
+	private static class Stripe
+	{
+		volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+		synchronized AtomicLongArray allocate(int chunkIndex)
+		{
+			AtomicLongArray[] current = chunks;
+			if (chunkIndex < current.length && current[chunkIndex] != null)
+				return current[chunkIndex];
+
+			AtomicLongArray[] next = Arrays.copyOf(current,
+					Math.max(current.length, Integer.highestOneBit(chunkIndex + 1) << 1));
+			AtomicLongArray chunk = new AtomicLongArray(Padding + ChunkSize + Padding);
+			next[chunkIndex] = chunk;
+			chunks = next;
+			return chunk;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+import com.codedx.codepulse.agent.errors.ErrorHandler;
+import com.codedx.codepulse.agent.message.MessageDealer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
+
+/**
+ * A TraceDataCollector that times each method call and adds the duration to
+ * the method's histogram in {@link DurationHistograms}, before passing the
+ * entry or exit on to another collector. A background thread periodically
+ * sends the histogram buckets that changed as method durations messages.
+ *
+ * Each thread keeps a {@link CallStack} of the calls it's in; calls nested
+ * too deeply are not timed.
+ *
+ * With <code>unpairedEntries</code>, entries may never see an exit (because
+ * exits by exception aren't instrumented), so durations are best-effort: a
+ * call whose exit was lost is never timed, and a stale entry is dropped when
+ * a call below it exits.
+ */
+public class ProfilingTraceDataCollector implements TraceDataCollector
+{
+
+	private final TraceDataCollector delegate;
+	private final MessageDealer messageDealer;
+	private final boolean unpairedEntries;
+	private final DurationHistograms histograms = new DurationHistograms();
+
+	private final ThreadLocal<CallStack> callStack = new ThreadLocal<CallStack>()
+	{
+		@Override
+		protected CallStack initialValue()
+		{
+			return new CallStack(unpairedEntries);
+		}
+	};
+
+	private final Harvester harvester = new Harvester(new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			harvest();
+		}
+	}, "Code Pulse duration profiler");
+
+	public ProfilingTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer)
+	{
+		this(delegate, messageDealer, false);
+	}
+
+	/**
+	 * @param unpairedEntries true if method entries may not be followed by an
+	 *            exit (i.e. exception exits aren't instrumented)
+	 */
+	public ProfilingTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer, boolean unpairedEntries)
+	{
+		this.delegate = delegate;
+		this.messageDealer = messageDealer;
+		this.unpairedEntries = unpairedEntries;
+	}
+
+	public DurationHistograms getHistograms()
+	{
+		return histograms;
+	}
+
+	@Override
+	public void methodEntry(int methodId)
+	{
+		callStack.get().push(methodId, System.nanoTime());
+		delegate.methodEntry(methodId);
+	}
+
+	@Override
+	public void methodExit(int methodId, boolean exThrown)
+	{
+		long now = System.nanoTime();
+		CallStack stack = callStack.get();
+		int frame = stack.pop(methodId);
+		if (frame >= 0)
+			histograms.record(methodId, (now - stack.startTime(frame)) / 1000);
+
+		delegate.methodExit(methodId, exThrown);
+	}
+
+	@Override
+	public void recordLineLevelTrace(int methodId, int startLine, int endLine, java.util.BitSet lineMap)
+	{
+		delegate.recordLineLevelTrace(methodId, startLine, endLine, lineMap);
+	}
+
+	/**
+	 * Sends the histogram buckets that changed since the last report.
+	 */
+	public void sendDurations()
+	{
+		harvester.harvestNow();
+	}
+
+	private void harvest()
+	{
+		DurationHistograms.Harvest harvest = histograms.harvest();
+		if (harvest.size == 0)
+			return;
+
+		try
+		{
+			int sent = messageDealer.sendMethodDurations(harvest.methodIds, harvest.offsets,
+					harvest.buckets, harvest.counts, harvest.size);
+			histograms.commit(harvest, 0, sent);
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error sending method durations", e);
+		}
+	}
+
+	public void start()
+	{
+		harvester.start();
+	}
+
+	/**
+	 * Sends the histogram buckets that changed since the last report, and
+	 * stops the background thread.
+	 */
+	public void finish()
+	{
+		harvester.finish(true);
+	}
+
+	/**
+	 * Returns a listener that sends the outstanding histograms when tracing
+	 * stops, and then stops the background thread. It needs to be registered
+	 * before the buffer service's listener, so that it runs while buffers can
+	 * still be obtained.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return harvester.getModeChangeListener();
+	}
+}
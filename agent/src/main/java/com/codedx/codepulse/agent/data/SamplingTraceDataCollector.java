@@ -0,0 +1,204 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import com.codedx.codepulse.agent.common.message.AgentOperationMode;
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+import com.codedx.codepulse.agent.control.SamplingIntervalListener;
+import com.codedx.codepulse.agent.errors.ErrorHandler;
+import com.codedx.codepulse.agent.message.MessageDealer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
+
+/**
+ * A TraceDataCollector that only passes every Nth method call of each thread
+ * on to another collector, to cut the event volume of long runs where
+ * approximate hotness is enough. The decision is made when the call is
+ * entered, and its exit is passed on only if its entry was, so the events
+ * that do get through still pair up. The interval is reported in the data
+ * stream whenever it changes, so that HQ can scale what it sees back up.
+ * Line level traces are not sampled.
+ *
+ * Each thread keeps a {@link CallStack} of its open calls, holding the
+ * decision made for each one. Calls nested too deeply to be stored are always
+ * passed on. With <code>unpairedEntries</code>, a call whose entry was
+ * dropped from the stack to make room may lose its exit.
+ *
+ * Methods called less than N times on a thread may never be reported, so
+ * coverage is approximate as well.
+ */
+public class SamplingTraceDataCollector implements TraceDataCollector
+{
+	private final TraceDataCollector delegate;
+	private final MessageDealer messageDealer;
+	private final boolean unpairedEntries;
+	private volatile int interval;
+	private boolean intervalReported = false;
+
+	private final ThreadLocal<ThreadSampler> samplers = new ThreadLocal<ThreadSampler>()
+	{
+		@Override
+		protected ThreadSampler initialValue()
+		{
+			return new ThreadSampler(unpairedEntries);
+		}
+	};
+
+	/**
+	 * A thread's countdown to the next call to pass on, and the decisions
+	 * made for the calls it's in (1 if passed on, 0 if not). The countdown
+	 * starts at 1, so each thread's first call is reported.
+	 */
+	private static class ThreadSampler
+	{
+		int countdown = 1;
+		final CallStack calls;
+
+		ThreadSampler(boolean unpairedEntries)
+		{
+			calls = new CallStack(unpairedEntries);
+		}
+	}
+
+	public SamplingTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer,
+			int interval)
+	{
+		this(delegate, messageDealer, interval, false);
+	}
+
+	/**
+	 * @param unpairedEntries true if method entries may not be followed by an
+	 *            exit (i.e. exception exits aren't instrumented)
+	 */
+	public SamplingTraceDataCollector(TraceDataCollector delegate, MessageDealer messageDealer,
+			int interval, boolean unpairedEntries)
+	{
+		this.delegate = delegate;
+		this.messageDealer = messageDealer;
+		this.interval = Math.max(1, interval);
+		this.unpairedEntries = unpairedEntries;
+	}
+
+	public int getInterval()
+	{
+		return interval;
+	}
+
+	/**
+	 * Changes the sampling interval and reports it to HQ. Threads pick the
+	 * new interval up after their current countdown runs out.
+	 */
+	public synchronized void setInterval(int interval)
+	{
+		this.interval = Math.max(1, interval);
+		sendInterval();
+	}
+
+	@Override
+	public void methodEntry(int methodId)
+	{
+		ThreadSampler sampler = samplers.get();
+		boolean passed = --sampler.countdown <= 0;
+		if (passed)
+			sampler.countdown = interval;
+
+		if (!sampler.calls.push(methodId, passed ? 1L : 0L))
+			passed = true;
+
+		if (passed)
+			delegate.methodEntry(methodId);
+	}
+
+	@Override
+	public void methodExit(int methodId, boolean exThrown)
+	{
+		CallStack calls = samplers.get().calls;
+		boolean passed;
+		if (calls.isOverflowing())
+		{
+			// unstored calls are always passed on
+			calls.pop(methodId);
+			passed = true;
+		}
+		else
+		{
+			int frame = calls.pop(methodId);
+			passed = frame >= 0 && calls.startTime(frame) != 0L;
+		}
+
+		if (passed)
+			delegate.methodExit(methodId, exThrown);
+	}
+
+	@Override
+	public void recordLineLevelTrace(int methodId, int startLine, int endLine, java.util.BitSet lineMap)
+	{
+		delegate.recordLineLevelTrace(methodId, startLine, endLine, lineMap);
+	}
+
+	private synchronized void sendInterval()
+	{
+		intervalReported = true;
+		try
+		{
+			messageDealer.sendSamplingInterval(interval);
+		}
+		catch (Exception e)
+		{
+			ErrorHandler.handleError("error sending sampling interval", e);
+		}
+	}
+
+	/**
+	 * Returns a listener that reports the initial interval the first time
+	 * tracing starts. It needs to be registered before the buffer service's
+	 * listener.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return new ModeChangeListener()
+		{
+			@Override
+			public void onModeChange(AgentOperationMode oldMode, AgentOperationMode newMode)
+			{
+				if (newMode == AgentOperationMode.Tracing)
+				{
+					synchronized (SamplingTraceDataCollector.this)
+					{
+						if (!intervalReported)
+							sendInterval();
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a listener that applies interval changes requested by HQ.
+	 */
+	public SamplingIntervalListener getSamplingIntervalListener()
+	{
+		return new SamplingIntervalListener()
+		{
+			@Override
+			public void onSamplingIntervalChange(int interval)
+			{
+				setInterval(interval);
+			}
+		};
+	}
+}
@@ -0,0 +1,173 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1;
+import com.codedx.codepulse.agent.common.message.AgentOperationMode;
+import com.codedx.codepulse.agent.control.ModeChangeListener;
+import com.codedx.codepulse.agent.control.SamplingIntervalListener;
+import com.codedx.codepulse.agent.message.MessageDealer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
+
+/**
+ * The chain of TraceDataCollectors that a runtime configuration calls for,
+ * which can be replaced by the chain for another configuration. The agent
+ * starts out with one built from its provisional configuration during
+ * asynchronous startup, and replaces it once HQ's configuration is final.
+ *
+ * The listeners returned by {@link #getModeChangeListener()} and
+ * {@link #getSamplingIntervalListener()} always reach the current chain, so
+ * they only need to be registered once.
+ */
+public class TraceDataCollectors
+{
+	private final MessageDealer messageDealer;
+
+	private volatile Chain chain;
+
+	public TraceDataCollectors(MessageDealer messageDealer, RuntimeAgentConfigurationV1 config)
+	{
+		this.messageDealer = messageDealer;
+		this.chain = new Chain(config);
+	}
+
+	/**
+	 * @return The outermost collector of the current chain, the one that
+	 *         {@link com.codedx.codepulse.agent.trace.Trace} should call
+	 */
+	public TraceDataCollector getCollector()
+	{
+		return chain.collector;
+	}
+
+	/**
+	 * Replaces the current chain with one built for <code>config</code>.
+	 * Whatever the old chain has gathered but not yet sent is sent before
+	 * this returns. Events that reach the old chain after that, because a
+	 * caller hadn't switched to the new one yet, are lost.
+	 *
+	 * @return The outermost collector of the new chain
+	 */
+	public synchronized TraceDataCollector replace(RuntimeAgentConfigurationV1 config)
+	{
+		Chain old = chain;
+		chain = new Chain(config);
+		old.finish();
+		return chain.collector;
+	}
+
+	/**
+	 * Returns a listener that passes mode changes on to the current chain's
+	 * collectors. It needs to be registered before the buffer service's
+	 * listener, so that the final harvests run while buffers can still be
+	 * obtained.
+	 */
+	public ModeChangeListener getModeChangeListener()
+	{
+		return new ModeChangeListener()
+		{
+			@Override
+			public void onModeChange(AgentOperationMode oldMode, AgentOperationMode newMode)
+			{
+				for (ModeChangeListener listener : chain.listeners)
+					listener.onModeChange(oldMode, newMode);
+			}
+		};
+	}
+
+	/**
+	 * Returns a listener that applies interval changes requested by HQ to the
+	 * current chain.
+	 */
+	public SamplingIntervalListener getSamplingIntervalListener()
+	{
+		return new SamplingIntervalListener()
+		{
+			@Override
+			public void onSamplingIntervalChange(int interval)
+			{
+				chain.sampling.setInterval(interval);
+			}
+		};
+	}
+
+	private class Chain
+	{
+		final TraceDataCollector collector;
+		final SamplingTraceDataCollector sampling;
+		final List<ModeChangeListener> listeners = new ArrayList<ModeChangeListener>();
+
+		CountingTraceDataCollector counting;
+		ProfilingTraceDataCollector profiling;
+		EdgeTraceDataCollector edges;
+
+		Chain(RuntimeAgentConfigurationV1 config)
+		{
+			TraceDataCollector collector;
+			if (config.isCountInvocations())
+			{
+				counting = new CountingTraceDataCollector(messageDealer);
+				counting.start();
+				collector = counting;
+				listeners.add(counting.getModeChangeListener());
+			}
+			else
+				collector = new MessageDealerTraceDataCollector(messageDealer);
+
+			// installed even when every call is passed on, so that HQ can turn
+			// sampling on while tracing
+			sampling = new SamplingTraceDataCollector(collector, messageDealer,
+					config.getSamplingInterval(), config.isOmitExceptionExits());
+			collector = sampling;
+			listeners.add(sampling.getModeChangeListener());
+
+			if (config.isProfileDurations())
+			{
+				profiling = new ProfilingTraceDataCollector(collector, messageDealer,
+						config.isOmitExceptionExits());
+				profiling.start();
+				collector = profiling;
+				listeners.add(profiling.getModeChangeListener());
+			}
+
+			if (config.isRecordCallEdges())
+			{
+				edges = new EdgeTraceDataCollector(collector, messageDealer,
+						config.isOmitExceptionExits());
+				edges.start();
+				collector = edges;
+				listeners.add(edges.getModeChangeListener());
+			}
+
+			this.collector = collector;
+		}
+
+		void finish()
+		{
+			if (edges != null)
+				edges.finish();
+			if (profiling != null)
+				profiling.finish();
+			if (counting != null)
+				counting.finish();
+		}
+	}
+}
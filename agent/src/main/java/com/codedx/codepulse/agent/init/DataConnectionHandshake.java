@@ -24,4 +24,20 @@ import com.codedx.codepulse.agent.common.connect.Connection;
 public interface DataConnectionHandshake
 {
 	public boolean performHandshake(byte runId, Connection connection) throws IOException;
+
+	/**
+	 * Performs the handshake for a data connection that is being added to a
+	 * trace that is already underway (e.g. when the agent decides it needs
+	 * more send bandwidth).
+	 */
+	public boolean performAdditionalHandshake(byte runId, Connection connection) throws IOException;
+
+	/**
+	 * Performs the handshake for a data connection whose data will be written
+	 * to the shared memory ring at <code>ringPath</code>. HQ may refuse (e.g.
+	 * if it can't open the ring), in which case the caller should fall back to
+	 * an ordinary data connection.
+	 */
+	public boolean performSharedMemoryHandshake(byte runId, boolean additional, String ringPath,
+			Connection connection) throws IOException;
 }
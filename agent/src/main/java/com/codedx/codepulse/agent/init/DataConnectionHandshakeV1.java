@@ -25,6 +25,8 @@ import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.common.connect.Connection;
 import com.codedx.codepulse.agent.common.message.MessageConstantsV1;
 import com.codedx.codepulse.agent.common.message.MessageProtocol;
+import com.codedx.codepulse.agent.common.message.NotSupportedException;
+import com.esotericsoftware.minlog.Log;
 
 public class DataConnectionHandshakeV1 implements DataConnectionHandshake
 {
@@ -38,13 +40,58 @@ public class DataConnectionHandshakeV1 implements DataConnectionHandshake
 	@Override
 	public boolean performHandshake(byte runId, Connection connection) throws IOException
 	{
-		boolean success = false;
 		DataOutputStream out = connection.output();
-		DataInputStream in = connection.input();
 
 		protocol.writeDataHello(out, runId);
 		out.flush();
 
+		return readReply(connection.input(), true);
+	}
+
+	@Override
+	public boolean performAdditionalHandshake(byte runId, Connection connection) throws IOException
+	{
+		DataOutputStream out = connection.output();
+
+		try
+		{
+			protocol.writeDataHelloAdditional(out, runId);
+		}
+		catch (NotSupportedException e)
+		{
+			// older protocols attach any data connection to a running trace
+			protocol.writeDataHello(out, runId);
+		}
+		out.flush();
+
+		// the trace can carry on without an additional connection, so a
+		// refusal is not treated as an error
+		return readReply(connection.input(), false);
+	}
+
+	@Override
+	public boolean performSharedMemoryHandshake(byte runId, boolean additional, String ringPath,
+			Connection connection) throws IOException
+	{
+		DataOutputStream out = connection.output();
+
+		try
+		{
+			protocol.writeDataHelloSharedMemory(out, runId, additional, ringPath);
+		}
+		catch (NotSupportedException e)
+		{
+			return false;
+		}
+		out.flush();
+
+		// a refusal just means falling back to a socket
+		return readReply(connection.input(), false);
+	}
+
+	private boolean readReply(DataInputStream in, boolean errorsAreFatal) throws IOException
+	{
+		boolean success = false;
 		byte reply = in.readByte();
 
 		switch (reply)
@@ -56,7 +103,10 @@ public class DataConnectionHandshakeV1 implements DataConnectionHandshake
 		// report any "error" response
 		case MessageConstantsV1.MsgError:
 			String err = in.readUTF();
-			ErrorHandler.handleError("received error during data handshake: " + err);
+			if (errorsAreFatal)
+				ErrorHandler.handleError("received error during data handshake: " + err);
+			else
+				Log.warn("data handshake", "data connection refused: " + err);
 			break;
 		// anything else is a protocol error
 		default:
@@ -0,0 +1,100 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.init;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.codedx.bytefrog.instrumentation.id.MethodIdTable;
+import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration;
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Reads and writes the method ID table file named by the static
+ * configuration, which lets a restarted agent give methods the same IDs it
+ * gave them last time.
+ */
+public class MethodIdTableFile
+{
+	private static final String Encoding = "UTF-8";
+
+	private MethodIdTableFile()
+	{
+	}
+
+	/**
+	 * @return The table from the file, an empty table if the file doesn't
+	 *         exist yet, or <code>null</code> if no file is configured.
+	 */
+	public static MethodIdTable load(StaticAgentConfiguration staticConfig)
+	{
+		String filename = staticConfig.getMethodIdTableFilename();
+		if (filename == null)
+			return null;
+
+		if (!new File(filename).isFile())
+			return new MethodIdTable();
+
+		try (Reader in = new InputStreamReader(new FileInputStream(filename), Encoding))
+		{
+			MethodIdTable table = MethodIdTable.read(in);
+			Log.debug("method id table", String.format("read %d method ids from %s", table.size(), filename));
+			return table;
+		}
+		catch (Exception e)
+		{
+			Log.warn("method id table", "failed to read method id table " + filename, e);
+			return new MethodIdTable();
+		}
+	}
+
+	/**
+	 * Writes <code>table</code> to the file, if there is one. The table is
+	 * written to a temporary file first, so a crash part way through leaves
+	 * the previous table in place.
+	 */
+	public static synchronized void save(StaticAgentConfiguration staticConfig, MethodIdTable table)
+	{
+		String filename = staticConfig.getMethodIdTableFilename();
+		if (filename == null || table == null)
+			return;
+
+		File target = new File(filename);
+		File temp = new File(filename + ".tmp");
+		try
+		{
+			try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), Encoding))
+			{
+				table.write(out);
+			}
+
+			if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target)))
+				throw new IOException("could not replace " + filename);
+		}
+		catch (Exception e)
+		{
+			Log.warn("method id table", "failed to write method id table " + filename, e);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.init;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.spi.JsonbProvider;
+
+import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1;
+import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration;
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Provides the runtime configuration the agent uses before it has heard from
+ * HQ (i.e. during asynchronous startup). The configuration comes from the
+ * cache file named by the static configuration, which holds the last
+ * configuration received from HQ, with any inclusion/exclusion patterns given
+ * on the command line taking the place of the cached ones.
+ */
+public class ProvisionalConfiguration
+{
+	private static final String Encoding = "UTF-8";
+
+	private ProvisionalConfiguration()
+	{
+	}
+
+	/**
+	 * @return The provisional configuration, or <code>null</code> if there is
+	 *         neither a cached configuration nor command-line patterns to go
+	 *         on.
+	 */
+	public static RuntimeAgentConfigurationV1 load(StaticAgentConfiguration staticConfig)
+	{
+		RuntimeAgentConfigurationV1 cached = readCache(staticConfig.getConfigCacheFilename());
+
+		List<String> inclusions = staticConfig.getInclusions();
+		List<String> exclusions = staticConfig.getExclusions();
+		boolean hasPatterns = !inclusions.isEmpty() || !exclusions.isEmpty();
+
+		if (cached == null && !hasPatterns)
+			return null;
+
+		if (cached == null)
+			return new RuntimeAgentConfigurationV1((byte) 0, 1000, exclusions, inclusions,
+					staticConfig.getPreConnectBufferSize(), 5, 1);
+
+		if (!hasPatterns)
+			return cached;
+
+		return cached.withFilters(exclusions, inclusions);
+	}
+
+	/**
+	 * Writes <code>config</code> to the cache file, if there is one, so that a
+	 * later asynchronous startup can use it.
+	 */
+	public static void save(StaticAgentConfiguration staticConfig, RuntimeAgentConfigurationV1 config)
+	{
+		String filename = staticConfig.getConfigCacheFilename();
+		if (filename == null || config == null)
+			return;
+
+		Jsonb jsonb = JsonbProvider.provider().create().build();
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(filename), Encoding))
+		{
+			out.write(jsonb.toJson(config));
+		}
+		catch (Exception e)
+		{
+			Log.warn("provisional configuration", "failed to write configuration cache " + filename, e);
+		}
+	}
+
+	private static RuntimeAgentConfigurationV1 readCache(String filename)
+	{
+		if (filename == null || !new File(filename).isFile())
+			return null;
+
+		Jsonb jsonb = JsonbProvider.provider().create().build();
+		try (Reader in = new InputStreamReader(new FileInputStream(filename), Encoding))
+		{
+			return jsonb.fromJson(in, RuntimeAgentConfigurationV1.class);
+		}
+		catch (Exception e)
+		{
+			Log.warn("provisional configuration", "failed to read configuration cache " + filename, e);
+			return null;
+		}
+	}
+}
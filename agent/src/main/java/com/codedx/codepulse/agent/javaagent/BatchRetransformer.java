@@ -0,0 +1,294 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.javaagent;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codedx.codepulse.agent.control.Controller;
+import com.codedx.codepulse.agent.trace.TraceClassFileTransformer;
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Retransforms classes that were loaded before the transformer was installed
+ * (after a dynamic attach, or when the inclusions/exclusions change).
+ *
+ * Classes are retransformed in batches of at most {@link #BatchSize}, since
+ * each <code>retransformClasses</code> call redefines its classes at a
+ * safepoint and a single call for everything would stall the application for
+ * as long as that takes. Batches are handed out to a few worker threads: the
+ * transformer runs on the thread that called <code>retransformClasses</code>,
+ * so the instrumentation of one batch is worked out while another is being
+ * redefined, and the redefinitions themselves stay short.
+ *
+ * Progress is logged and reported to HQ after each batch. The pause it
+ * reports for a batch is the part of its <code>retransformClasses</code>
+ * call that wasn't spent in the transformer, which is roughly the time the
+ * JVM spent redefining the classes.
+ */
+public class BatchRetransformer
+{
+	public static final int BatchSize = 64;
+	private static final int MaxWorkers = 4;
+
+	private final Instrumentation instrumentation;
+	private final TraceClassFileTransformer transformer;
+	private final Controller controller;
+
+	// held while sending a report, so that reports go out in order without
+	// the workers waiting on the connection
+	private final Object reportLock = new Object();
+
+	private int totalClasses;
+	private int retransformedClasses;
+	private int failedClasses;
+	private int batches;
+	private long longestPauseNanos;
+	private long totalPauseNanos;
+
+	/**
+	 * @param controller the controller to report progress to, or
+	 *            <code>null</code> to only log it
+	 */
+	public BatchRetransformer(Instrumentation instrumentation,
+			TraceClassFileTransformer transformer, Controller controller)
+	{
+		this.instrumentation = instrumentation;
+		this.transformer = transformer;
+		this.controller = controller;
+	}
+
+	/**
+	 * Retransforms those of the loaded <code>classes</code> that the
+	 * transformer would instrument, returning once all batches are done.
+	 */
+	public void retransformLoaded(Class<?>[] classes)
+	{
+		List<Class<?>> candidates = new ArrayList<Class<?>>();
+		for (Class<?> c : classes)
+		{
+			if (transformer.isRetransformCandidate(c))
+				candidates.add(c);
+		}
+
+		retransform(candidates);
+	}
+
+	/**
+	 * Retransforms those of <code>changed</code> that can be modified; they
+	 * have already been checked as worth retransforming (e.g. by
+	 * {@link TraceClassFileTransformer#reconfigure}).
+	 */
+	public void retransform(List<Class<?>> changed)
+	{
+		List<Class<?>> classes = new ArrayList<Class<?>>(changed.size());
+		for (Class<?> c : changed)
+		{
+			if (instrumentation.isModifiableClass(c))
+				classes.add(c);
+		}
+
+		if (classes.isEmpty())
+			return;
+
+		final List<Class<?>[]> batchList = new ArrayList<Class<?>[]>();
+		for (int i = 0; i < classes.size(); i += BatchSize)
+		{
+			List<Class<?>> batch = classes.subList(i, Math.min(i + BatchSize, classes.size()));
+			batchList.add(batch.toArray(new Class<?>[batch.size()]));
+		}
+
+		synchronized (this)
+		{
+			totalClasses = classes.size();
+		}
+
+		Log.info("java agent", String.format("retransforming %d loaded classes in %d batches",
+				classes.size(), batchList.size()));
+
+		final AtomicInteger nextBatch = new AtomicInteger();
+		Runnable worker = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				int b;
+				while ((b = nextBatch.getAndIncrement()) < batchList.size())
+					retransformBatch(batchList.get(b));
+			}
+		};
+
+		int workerCount = Math.max(1, Math.min(Math.min(MaxWorkers, batchList.size()),
+				Runtime.getRuntime().availableProcessors() - 1));
+
+		// the calling thread is one of the workers
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 1; i < workerCount; i++)
+		{
+			Thread thread = new Thread(worker, "Code Pulse retransform worker " + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+
+		worker.run();
+
+		for (Thread thread : threads)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		synchronized (this)
+		{
+			Log.info("java agent", String.format(
+					"retransformed %d classes (%d failed) in %d batches; longest pause %d ms, total %d ms",
+					retransformedClasses, failedClasses, batches, longestPauseNanos / 1000000,
+					totalPauseNanos / 1000000));
+		}
+	}
+
+	/**
+	 * @return The number of classes retransformed so far
+	 */
+	public synchronized int getRetransformedClasses()
+	{
+		return retransformedClasses;
+	}
+
+	/**
+	 * @return The number of classes that failed to be retransformed so far
+	 */
+	public synchronized int getFailedClasses()
+	{
+		return failedClasses;
+	}
+
+	/**
+	 * @return The number of batches done so far
+	 */
+	public synchronized int getBatches()
+	{
+		return batches;
+	}
+
+	/**
+	 * @return The longest pause of a single batch so far, in nanoseconds
+	 */
+	public synchronized long getLongestPauseNanos()
+	{
+		return longestPauseNanos;
+	}
+
+	/**
+	 * @return The total pause of all batches so far, in nanoseconds
+	 */
+	public synchronized long getTotalPauseNanos()
+	{
+		return totalPauseNanos;
+	}
+
+	private void retransformBatch(Class<?>[] batch)
+	{
+		int retransformed = 0;
+		int failed = 0;
+
+		long transformStart = transformer.getRetransformNanos();
+		long start = System.nanoTime();
+		try
+		{
+			instrumentation.retransformClasses(batch);
+			retransformed = batch.length;
+		}
+		catch (Throwable t)
+		{
+			// one bad class fails the whole call; go through them one by one
+			// to find out which
+			for (Class<?> c : batch)
+			{
+				try
+				{
+					instrumentation.retransformClasses(c);
+					retransformed++;
+				}
+				catch (Throwable t2)
+				{
+					failed++;
+					Log.warn("java agent", "failed to retransform " + c.getName(), t2);
+				}
+			}
+		}
+		long pause = System.nanoTime() - start
+				- (transformer.getRetransformNanos() - transformStart);
+
+		synchronized (this)
+		{
+			retransformedClasses += retransformed;
+			failedClasses += failed;
+			longestPauseNanos = Math.max(longestPauseNanos, pause);
+			totalPauseNanos += pause;
+			batches++;
+		}
+
+		reportProgress();
+	}
+
+	private void reportProgress()
+	{
+		synchronized (reportLock)
+		{
+			int total, retransformed, failed, batchCount;
+			long longest, totalPause;
+			synchronized (this)
+			{
+				total = totalClasses;
+				retransformed = retransformedClasses;
+				failed = failedClasses;
+				batchCount = batches;
+				longest = longestPauseNanos;
+				totalPause = totalPauseNanos;
+			}
+
+			Log.debug("java agent", String.format("retransformed %d of %d classes (%d failed)",
+					retransformed, total, failed));
+
+			if (controller == null)
+				return;
+
+			try
+			{
+				controller.sendRetransformProgress(total, retransformed, failed, batchCount,
+						longest / 1000, totalPause / 1000);
+			}
+			catch (IOException e)
+			{
+				Log.debug("java agent", "failed to report retransformation progress", e);
+			}
+		}
+	}
+}
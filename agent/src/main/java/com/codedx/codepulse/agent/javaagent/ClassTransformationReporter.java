@@ -17,69 +17,135 @@
 
 package com.codedx.codepulse.agent.javaagent;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.codedx.codepulse.agent.control.Controller;
-import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.trace.ClassTransformationListener;
+import com.esotericsoftware.minlog.Log;
 
 /**
  * A ClassTransformationListener implementation that will handle classes being
  * transformed and ignored by sending ClassTransformed and ClassIgnored messages
- * through a control connection, respectively.
+ * through a control connection, respectively. The controller queues the
+ * messages and sends them in batches, so reporting never blocks.
+ *
+ * A reporter may be created before there is a controller (during asynchronous
+ * startup); reports are then held, up to a limit, until one is attached.
  * @author DylanH
  */
 public class ClassTransformationReporter extends ClassTransformationListener
 {
+	private static final int MaxPendingReports = 16384;
+
+	private static final int Transformed = 0;
+	private static final int TransformFailed = 1;
+	private static final int Ignored = 2;
+
+	private volatile Controller controller;
+
+	// guarded by `this`, only used until a controller is attached
+	private final List<PendingReport> pending = new ArrayList<PendingReport>();
+	private int droppedReports = 0;
 
-	private final Controller controller;
+	/**
+	 * Creates a reporter that holds on to its reports until
+	 * {@link #attach(Controller)} is called.
+	 */
+	public ClassTransformationReporter()
+	{
+		this(null);
+	}
 
 	public ClassTransformationReporter(Controller controller)
 	{
 		this.controller = controller;
 	}
 
+	/**
+	 * Sends all held reports through <code>controller</code>, which is used
+	 * for all later reports.
+	 */
+	public synchronized void attach(Controller controller)
+	{
+		for (PendingReport report : pending)
+			send(controller, report.kind, report.className);
+		pending.clear();
+
+		if (droppedReports > 0)
+			Log.warn("class transformation reporter", String.format(
+					"%d class transformation reports were dropped while waiting for HQ", droppedReports));
+
+		this.controller = controller;
+	}
+
 	@Override
 	public void classTransformed(String className, ClassLoader loader)
 	{
-		try
-		{
-			if (controller.isRunning())
-				controller.sendClassTransformed(className);
-		}
-		catch (IOException e)
-		{
-			ErrorHandler.handleError("Failed to send ClassTransformed message", e);
-		}
+		report(Transformed, className);
 	}
 
 	@Override
 	public void classTransformFailed(String className, ClassLoader loader, Throwable cause,
 			String message)
 	{
-		try
-		{
-			if (controller.isRunning())
-				controller.sendClassTransformFailed(className);
-		}
-		catch (IOException e)
-		{
-			ErrorHandler.handleError("Failed to send ClassTransformed message", e);
-		}
+		report(TransformFailed, className);
 	}
 
 	@Override
 	public void classIgnored(String className, ClassLoader loader)
 	{
-		try
+		report(Ignored, className);
+	}
+
+	private void report(int kind, String className)
+	{
+		Controller c = controller;
+		if (c == null)
 		{
-			if (controller.isRunning())
-				controller.sendClassIgnored(className);
+			synchronized (this)
+			{
+				c = controller;
+				if (c == null)
+				{
+					if (pending.size() < MaxPendingReports)
+						pending.add(new PendingReport(kind, className));
+					else
+						droppedReports++;
+					return;
+				}
+			}
 		}
-		catch (IOException e)
+
+		if (c.isRunning())
+			send(c, kind, className);
+	}
+
+	private static void send(Controller controller, int kind, String className)
+	{
+		switch (kind)
 		{
-			ErrorHandler.handleError("Failed to send ClassIgnored message", e);
+		case Transformed:
+			controller.sendClassTransformed(className);
+			break;
+		case TransformFailed:
+			controller.sendClassTransformFailed(className);
+			break;
+		case Ignored:
+			controller.sendClassIgnored(className);
+			break;
 		}
 	}
 
+	private static class PendingReport
+	{
+		final int kind;
+		final String className;
+
+		PendingReport(int kind, String className)
+		{
+			this.kind = kind;
+			this.className = className;
+		}
+	}
 }
@@ -18,21 +18,42 @@
 package com.codedx.codepulse.agent.javaagent;
 
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.codedx.codepulse.agent.TraceAgent;
 import com.codedx.codepulse.agent.agent.DefaultTraceAgent;
+import com.codedx.codepulse.agent.control.LineLevelListener;
+import com.codedx.codepulse.agent.control.TraceFilterListener;
 import com.codedx.codepulse.agent.errors.ErrorHandler;
+import com.codedx.codepulse.agent.init.ProvisionalConfiguration;
 import com.codedx.codepulse.agent.trace.ClassTransformationListener;
 import com.codedx.codepulse.agent.trace.Instrumentor;
+import com.codedx.codepulse.agent.trace.RequestSampler;
 import com.codedx.codepulse.agent.trace.Trace;
 import com.codedx.codepulse.agent.trace.TraceClassFileTransformer;
+import com.codedx.codepulse.agent.trace.TraceDataCollector;
 import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1;
 import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration;
+import com.esotericsoftware.minlog.Log;
 
 /**
  * Pre-main agent to hook up bytefrog and get the tracer agent going. Used with:
  * -javaagent:bytefrog-tracer.jar=host:port;logfile
  *
+ * With the <code>async=true</code> option, the application is not held up
+ * while the agent connects to HQ; see {@link StaticAgentConfiguration}.
+ *
+ * The agent can also be attached to a running JVM (with the same options
+ * string), through {@link #agentmain}.
+ *
  * @author RobertF
  */
 public class JavaAgent
@@ -45,6 +66,26 @@ public class JavaAgent
 	/** The instrumentor in use for this run. */
 	private static Instrumentor instrumentor;
 
+	/**
+	 * Applies trace filter and line-level updates from HQ one at a time, in the
+	 * order they arrived, off the control thread (retransforming can take a
+	 * while).
+	 */
+	private static final ExecutorService updateExecutor = Executors
+			.newSingleThreadExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Code Pulse trace filter update");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/** Line-level targets for an agent that starts out with method probes only. */
+	private static final List<String> NoLineLevelTargets = Collections.emptyList();
+
 	/**
 	 * Return the trace agent in use for this run.
 	 *
@@ -69,9 +110,24 @@ public class JavaAgent
 			throw new RuntimeException("Bad agent configuration, tracing cannot run.");
 		}
 
+		RequestSampler.configure(staticConfig.getRequestSampling());
+
 		// setup agent
 		agent = new DefaultTraceAgent(staticConfig);
 
+		if (staticConfig.isAsyncStartup())
+		{
+			RuntimeAgentConfigurationV1 provisionalConfig = ProvisionalConfiguration.load(staticConfig);
+			if (provisionalConfig != null)
+			{
+				startAsync(staticConfig, provisionalConfig, instrumentation);
+				return;
+			}
+
+			Log.warn("java agent",
+					"asynchronous startup needs a cached or command-line configuration; waiting for HQ instead");
+		}
+
 		try
 		{
 			// attempt to connect
@@ -105,8 +161,267 @@ public class JavaAgent
 		ClassTransformationListener ctListener = new ClassTransformationReporter(
 				agent.getControlController());
 
-		instrumentor = new Instrumentor(agent.getClassIdentifier(), agent.getMethodIdentifier(), null);
+		instrumentor = new Instrumentor(agent.getClassIdentifier(), agent.getMethodIdentifier(), null,
+				!config.isOmitExceptionExits());
 		TraceClassFileTransformer transformer = new TraceClassFileTransformer(config.getExclusions(), config.getInclusions(), instrumentor, ctListener);
+		if (config.isTieredLineLevel())
+			transformer.setLineLevelTargets(NoLineLevelTargets, new Class<?>[0]);
+		instrumentation.addTransformer(transformer, true);
+		listenForTraceFilters(agent, instrumentation, transformer);
+	}
+
+	/**
+	 * JSR-163 agentmain entry method, used when the agent is attached to a
+	 * running JVM. Connecting to HQ and waiting for it to start tracing happen
+	 * on a background thread so the attach returns right away; once tracing
+	 * starts, the transformer is installed and the classes that were already
+	 * loaded are retransformed in batches (see {@link BatchRetransformer}).
+	 *
+	 * @param options
+	 * @param instrumentation
+	 */
+	public static void agentmain(String options, final Instrumentation instrumentation)
+	{
+		if (agent != null)
+		{
+			Log.warn("java agent", "agent is already running; ignoring attach");
+			return;
+		}
+
+		final StaticAgentConfiguration staticConfig = StaticAgentConfiguration.parseOptionString(options);
+		if (staticConfig == null)
+		{
+			throw new RuntimeException("Bad agent configuration, tracing cannot run.");
+		}
+
+		if (!instrumentation.isRetransformClassesSupported())
+			Log.warn("java agent",
+					"this JVM can't retransform classes; only classes loaded from now on will be traced");
+
+		RequestSampler.configure(staticConfig.getRequestSampling());
+
+		agent = new DefaultTraceAgent(staticConfig);
+
+		Thread attach = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (!agent.connect(staticConfig.getConnectTimeout()))
+					{
+						ErrorHandler
+								.handleError("failed to connect to HQ; continuing execution without tracing");
+						return;
+					}
+
+					agent.waitForStart();
+				}
+				catch (InterruptedException e)
+				{
+					ErrorHandler.handleError("interrupted waiting for startup", e);
+					return;
+				}
+
+				agent.prepare();
+				Trace.setTraceDataCollector(agent.getDataCollector());
+
+				installAttached(agent, instrumentation);
+			}
+		}, "Code Pulse agent attach");
+		attach.setDaemon(true);
+		attach.start();
+	}
+
+	/**
+	 * The part of {@link #agentmain} that runs once HQ has started tracing:
+	 * installs a transformer for <code>traceAgent</code>'s configuration,
+	 * applies later filter changes from HQ, and retransforms the classes that
+	 * were already loaded.
+	 *
+	 * @return The installed transformer
+	 */
+	public static TraceClassFileTransformer installAttached(TraceAgent traceAgent,
+			Instrumentation instrumentation)
+	{
+		RuntimeAgentConfigurationV1 config = traceAgent.getConfig();
+		ClassTransformationListener ctListener = new ClassTransformationReporter(
+				traceAgent.getControlController());
+
+		instrumentor = new Instrumentor(traceAgent.getClassIdentifier(),
+				traceAgent.getMethodIdentifier(), null, !config.isOmitExceptionExits());
+		TraceClassFileTransformer transformer = new TraceClassFileTransformer(
+				config.getExclusions(), config.getInclusions(), instrumentor, ctListener);
+		if (config.isTieredLineLevel())
+			transformer.setLineLevelTargets(NoLineLevelTargets, new Class<?>[0]);
 		instrumentation.addTransformer(transformer, true);
+		listenForTraceFilters(traceAgent, instrumentation, transformer);
+
+		if (instrumentation.isRetransformClassesSupported())
+			new BatchRetransformer(instrumentation, transformer, traceAgent.getControlController())
+					.retransformLoaded(instrumentation.getAllLoadedClasses());
+
+		return transformer;
+	}
+
+	/**
+	 * Installs the transformer right away using <code>provisionalConfig</code>
+	 * and lets the application continue, while connecting to HQ on a
+	 * background thread. Trace data and class transformation reports are held
+	 * until the connection is made, and then sent along.
+	 */
+	private static void startAsync(final StaticAgentConfiguration staticConfig,
+			RuntimeAgentConfigurationV1 provisionalConfig, final Instrumentation instrumentation)
+	{
+		agent.prepareProvisional(provisionalConfig);
+		Trace.setTraceDataCollector(agent.getDataCollector());
+
+		final ClassTransformationReporter reporter = new ClassTransformationReporter();
+
+		// unlike the filters, whether exception exits are instrumented can't change once classes
+		// have been transformed, so the provisional configuration decides it
+		instrumentor = new Instrumentor(agent.getClassIdentifier(), agent.getMethodIdentifier(), null,
+				!provisionalConfig.isOmitExceptionExits());
+		final TraceClassFileTransformer transformer = new TraceClassFileTransformer(
+				provisionalConfig.getExclusions(), provisionalConfig.getInclusions(), instrumentor,
+				reporter);
+		if (provisionalConfig.isTieredLineLevel())
+			transformer.setLineLevelTargets(NoLineLevelTargets, new Class<?>[0]);
+		instrumentation.addTransformer(transformer, true);
+
+		Thread startup = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (!agent.connect(staticConfig.getConnectTimeout()))
+					{
+						ErrorHandler
+								.handleError("failed to connect to HQ; continuing execution without tracing");
+						abandonTracing(instrumentation, transformer);
+						return;
+					}
+
+					// start sending what has been buffered so far
+					agent.prepare();
+					reporter.attach(agent.getControlController());
+
+					agent.waitForStart();
+				}
+				catch (InterruptedException e)
+				{
+					ErrorHandler.handleError("interrupted waiting for startup", e);
+					abandonTracing(instrumentation, transformer);
+					return;
+				}
+
+				// HQ's configuration may not match the one we started out with
+				RuntimeAgentConfigurationV1 config = agent.getConfig();
+				Class<?>[] loaded = instrumentation.getAllLoadedClasses();
+				Set<Class<?>> changed = new LinkedHashSet<Class<?>>(transformer.reconfigure(
+						config.getExclusions(), config.getInclusions(), loaded));
+				changed.addAll(transformer.setLineLevelTargets(
+						config.isTieredLineLevel() ? NoLineLevelTargets : null, loaded));
+				new BatchRetransformer(instrumentation, transformer, agent.getControlController())
+						.retransform(new ArrayList<Class<?>>(changed));
+				listenForTraceFilters(agent, instrumentation, transformer);
+			}
+		}, "Code Pulse agent startup");
+		startup.setDaemon(true);
+		startup.start();
+	}
+
+	/**
+	 * Applies the exclusions and inclusions that HQ sends while tracing is
+	 * running. Only the loaded classes whose include/exclude decision changes
+	 * are retransformed: newly included ones get instrumented, and newly
+	 * excluded ones are left alone by the transformer, so the JVM puts their
+	 * original bytes back. Line-level targets are applied the same way, to
+	 * the classes that gain or lose line-level probes.
+	 *
+	 * Updates that HQ sent before this is called are applied right away, so
+	 * nothing sent while the transformer was being installed is lost.
+	 */
+	private static void listenForTraceFilters(final TraceAgent traceAgent,
+			final Instrumentation instrumentation, final TraceClassFileTransformer transformer)
+	{
+		traceAgent.getStateManager().addTraceFilterListener(new TraceFilterListener()
+		{
+			@Override
+			public void onTraceFiltersChange(final List<String> exclusions, final List<String> inclusions)
+			{
+				updateExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						List<Class<?>> changed = transformer.reconfigure(exclusions, inclusions,
+								instrumentation.getAllLoadedClasses());
+						Log.info("java agent", "trace filters changed for " + changed.size()
+								+ " loaded classes");
+
+						retransformChanged(traceAgent, instrumentation, transformer, changed);
+					}
+				});
+			}
+		});
+
+		traceAgent.getStateManager().addLineLevelListener(new LineLevelListener()
+		{
+			@Override
+			public void onLineLevelTargetsChange(final List<String> patterns)
+			{
+				updateExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						List<Class<?>> changed = transformer.setLineLevelTargets(patterns,
+								instrumentation.getAllLoadedClasses());
+						Log.info("java agent", "line-level probes changed for " + changed.size()
+								+ " loaded classes");
+
+						retransformChanged(traceAgent, instrumentation, transformer, changed);
+					}
+				});
+			}
+		});
+	}
+
+	private static void retransformChanged(TraceAgent traceAgent, Instrumentation instrumentation,
+			TraceClassFileTransformer transformer, List<Class<?>> changed)
+	{
+		if (!changed.isEmpty() && instrumentation.isRetransformClassesSupported())
+			new BatchRetransformer(instrumentation, transformer, traceAgent.getControlController())
+					.retransform(changed);
+	}
+
+	private static void abandonTracing(Instrumentation instrumentation,
+			TraceClassFileTransformer transformer)
+	{
+		instrumentation.removeTransformer(transformer);
+
+		// classes that were already instrumented keep calling into Trace
+		Trace.setTraceDataCollector(new TraceDataCollector()
+		{
+			@Override
+			public void methodEntry(int methodId)
+			{
+			}
+
+			@Override
+			public void methodExit(int methodId, boolean exThrown)
+			{
+			}
+
+			@Override
+			public void recordLineLevelTrace(int methodId, int startLine, int endLine,
+					BitSet lineMap)
+			{
+			}
+		});
 	}
 }
@@ -0,0 +1,225 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.message;
+
+import com.codedx.codepulse.agent.common.queue.BufferPool;
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Periodically looks at how buffers move through a {@link BufferPool} and
+ * changes the pool's buffer length (and, with it, the number of buffers that
+ * fit in the memory budget) to suit the traffic.
+ *
+ * When nearly every buffer is sent full, writers have had to wait for buffers
+ * and the senders drain each buffer quickly, the per-buffer cost dominates,
+ * so the buffers are made larger. When nearly every buffer is sent partially
+ * filled because less than half a buffer's worth of data arrives in the time
+ * readers hold out for a full one, the buffers are made smaller, so that they
+ * fill (and get sent) sooner. A decision has to hold for several checks in a
+ * row before the pool is resized.
+ *
+ * The tuner's decisions are logged, and the latest one is available from
+ * {@link #getLastDecision()}.
+ */
+public class BufferPoolTuner
+{
+	private static final long CheckInterval = 1000;
+	private static final int DecideAfterChecks = 3;
+
+	private static final int MinBuffers = 10;
+	private static final int MinBufferLength = 512;
+	private static final int MaxBufferLength = 64 * 1024;
+
+	private static final double MostlyFull = 0.2;
+	private static final double MostlyPartial = 0.8;
+
+	/** roughly how long readers hold out for a full buffer; see BufferPool */
+	private static final double LingerSeconds = 0.1;
+
+	/** drains faster than this are cheap enough that bigger buffers help */
+	private static final long FastDrainNanos = 5000000L;
+
+	private final BufferPool pool;
+	private final int memoryBudget;
+
+	private Thread thread;
+	private volatile boolean isShutdown = false;
+
+	// sampling state, only touched by whichever thread calls check()
+	private long lastCheckNanos;
+	private long lastBytesRead, lastFullReads, lastPartialReads, lastDrainNanos, lastWriterWaits;
+	private int growChecks = 0;
+	private int shrinkChecks = 0;
+
+	private volatile int resizeCount = 0;
+	private volatile String lastDecision = "none";
+
+	/**
+	 * @param pool The pool to tune
+	 * @param memoryBudget The number of bytes the pool's buffers may take up
+	 */
+	public BufferPoolTuner(BufferPool pool, int memoryBudget)
+	{
+		this.pool = pool;
+		this.memoryBudget = memoryBudget;
+
+		lastCheckNanos = System.nanoTime();
+		lastBytesRead = pool.getBytesRead();
+		lastFullReads = pool.getFullReads();
+		lastPartialReads = pool.getPartialReads();
+		lastDrainNanos = pool.getDrainNanos();
+		lastWriterWaits = pool.getWriterWaits();
+	}
+
+	public synchronized void start()
+	{
+		if (thread != null)
+			return;
+
+		thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!isShutdown)
+					{
+						Thread.sleep(CheckInterval);
+						check();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					// shutting down
+				}
+			}
+		}, "Code Pulse buffer tuner");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void shutdown()
+	{
+		isShutdown = true;
+		if (thread != null)
+			thread.interrupt();
+	}
+
+	/**
+	 * @return The number of times the tuner has resized the pool
+	 */
+	public int getResizeCount()
+	{
+		return resizeCount;
+	}
+
+	/**
+	 * @return A description of the tuner's latest resize, or "none"
+	 */
+	public String getLastDecision()
+	{
+		return lastDecision;
+	}
+
+	/**
+	 * Looks at the traffic since the last check, and resizes the pool if the
+	 * same decision has now been reached several checks in a row. The tuner's
+	 * thread calls this every second; nothing else may call it while that
+	 * thread is running.
+	 */
+	public void check()
+	{
+		long now = System.nanoTime();
+		long elapsed = Math.max(1, now - lastCheckNanos);
+		lastCheckNanos = now;
+
+		long bytesRead = pool.getBytesRead();
+		long fullReads = pool.getFullReads();
+		long partialReads = pool.getPartialReads();
+		long drainNanos = pool.getDrainNanos();
+		long writerWaits = pool.getWriterWaits();
+
+		long bytes = bytesRead - lastBytesRead;
+		long full = fullReads - lastFullReads;
+		long partial = partialReads - lastPartialReads;
+		long drain = drainNanos - lastDrainNanos;
+		long waits = writerWaits - lastWriterWaits;
+
+		lastBytesRead = bytesRead;
+		lastFullReads = fullReads;
+		lastPartialReads = partialReads;
+		lastDrainNanos = drainNanos;
+		lastWriterWaits = writerWaits;
+
+		long reads = full + partial;
+		if (reads == 0)
+		{
+			// nothing to go on
+			growChecks = shrinkChecks = 0;
+			return;
+		}
+
+		int length = pool.getBufferLength();
+		double partialFraction = (double) partial / reads;
+		double bytesPerSecond = bytes * 1e9 / elapsed;
+		long drainPerBuffer = drain / reads;
+
+		boolean canGrow = length * 2 <= MaxBufferLength && memoryBudget / (length * 2) >= MinBuffers;
+		boolean canShrink = length / 2 >= MinBufferLength;
+
+		if (canGrow && partialFraction < MostlyFull && waits > 0 && drainPerBuffer < FastDrainNanos)
+		{
+			shrinkChecks = 0;
+			if (++growChecks >= DecideAfterChecks)
+			{
+				growChecks = 0;
+				resize(length * 2, String.format(
+						"%.0f bytes/s, %.0f%% partial, %d writer waits, %d us per drain",
+						bytesPerSecond, partialFraction * 100, waits, drainPerBuffer / 1000));
+			}
+		}
+		else if (canShrink && partialFraction > MostlyPartial
+				&& bytesPerSecond * LingerSeconds < length / 2)
+		{
+			growChecks = 0;
+			if (++shrinkChecks >= DecideAfterChecks)
+			{
+				shrinkChecks = 0;
+				resize(length / 2, String.format("%.0f bytes/s, %.0f%% partial", bytesPerSecond,
+						partialFraction * 100));
+			}
+		}
+		else
+		{
+			growChecks = shrinkChecks = 0;
+		}
+	}
+
+	private void resize(int length, String reason)
+	{
+		int numBuffers = memoryBudget / length;
+		int oldLength = pool.getBufferLength();
+		pool.resize(numBuffers, length);
+
+		resizeCount++;
+		lastDecision = String.format("%d x %d bytes (was %d bytes): %s", numBuffers, length,
+				oldLength, reason);
+		Log.info("buffer tuner", "resized buffer pool to " + lastDecision);
+	}
+}
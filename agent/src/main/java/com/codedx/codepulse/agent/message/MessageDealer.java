@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.util.BitSet;
 import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.codedx.bytefrog.instrumentation.LineLevelMapper;
@@ -48,22 +47,44 @@ public class MessageDealer
 	private final BufferService bufferService;
 
 	private final long startTime = System.currentTimeMillis();
-	private final ThreadId threadIdMapper = new ThreadId();
+	private final ThreadRegistry threadRegistry;
 	private final Sequencer sequencer = new Sequencer();
 
 	private final MethodIdAdapter methodIdAdapter;
 
 	private static final int unavailableSourceLocationId = -1;
 
+	// keeps a method counts message around 1.5 KB
+	private static final int maxMethodCountsPerMessage = 128;
+
+	// a full histogram is about 300 bytes, but most methods fill only a few buckets
+	private static final int maxMethodDurationsPerMessage = 32;
+
+	// keeps a call edges message around 2 KB
+	private static final int maxCallEdgesPerMessage = 256;
+
 	/**
 	 *
 	 * @param messageProtocol
 	 * @param bufferService
 	 */
 	public MessageDealer(MessageProtocol messageProtocol, BufferService bufferService, ClassIdentifier classIdentifier, MethodIdentifier methodIdentifier)
+	{
+		this(messageProtocol, bufferService, classIdentifier, methodIdentifier, 0xFFFF);
+	}
+
+	/**
+	 *
+	 * @param messageProtocol
+	 * @param bufferService
+	 * @param maxThreadId the largest thread id the protocol can carry (see
+	 *            {@link MessageProtocol#maxThreadId()})
+	 */
+	public MessageDealer(MessageProtocol messageProtocol, BufferService bufferService, ClassIdentifier classIdentifier, MethodIdentifier methodIdentifier, int maxThreadId)
 	{
 		this.messageProtocol = messageProtocol;
 		this.bufferService = bufferService;
+		this.threadRegistry = new ThreadRegistry(maxThreadId);
 
 		methodIdAdapter = new MethodIdAdapter(classIdentifier, methodIdentifier);
 	}
@@ -84,6 +105,32 @@ public class MessageDealer
 		return sequencer.observeSequence();
 	}
 
+	/**
+	 * Returns the id of the currently-running thread, first writing a
+	 * MapThreadName message to <code>buffer</code> if the thread is new or
+	 * has been renamed.
+	 */
+	protected int currentThreadId(DataBufferOutputStream buffer, int timestamp) throws IOException
+	{
+		ThreadRegistry.Identity identity = threadRegistry.current();
+		String name = identity.takeNameChange();
+		if (name != null)
+		{
+			boolean wrote = false;
+			try
+			{
+				messageProtocol.writeMapThreadName(buffer, identity.getId(), timestamp, name);
+				wrote = true;
+			}
+			finally
+			{
+				if (!wrote)
+					identity.resetNameReport();
+			}
+		}
+		return identity.getId();
+	}
+
 	// ===============================
 	// API METHODS:
 	// ===============================
@@ -106,7 +153,7 @@ public class MessageDealer
 			try
 			{
 				int timestamp = getTimeOffset();
-				int threadId = threadIdMapper.getCurrent();
+				int threadId = currentThreadId(buffer, timestamp);
 				methodIdAdapter.mark(methodId, buffer);
 				messageProtocol.writeMethodEntry(buffer, timestamp, sequencer.getSequence(),
 						methodId, threadId);
@@ -140,7 +187,7 @@ public class MessageDealer
 			try
 			{
 				int timestamp = getTimeOffset();
-				int threadId = threadIdMapper.getCurrent();
+				int threadId = currentThreadId(buffer, timestamp);
 				methodIdAdapter.mark(methodId, buffer);
 				messageProtocol.writeMethodExit(buffer, timestamp, sequencer.getSequence(),
 						methodId, exThrown, threadId);
@@ -166,7 +213,7 @@ public class MessageDealer
 			{
 				int timestamp = getTimeOffset();
 
-				int threadId = threadIdMapper.getCurrent();
+				int threadId = currentThreadId(buffer, timestamp);
 				for (int i = lineMap.nextSetBit(0); i >= 0; i = lineMap.nextSetBit(i+1)) {
 					int sourceLocationId = methodIdAdapter.markSourceLocation(methodId, startLine+i, startLine+i, buffer);
 					if (sourceLocationId != unavailableSourceLocationId) {
@@ -184,18 +231,199 @@ public class MessageDealer
 		}
 	}
 
+	/**
+	 * METHOD COUNTS MESSAGE
+	 *
+	 * Sends the invocation count deltas in <code>deltas</code> for the methods
+	 * in <code>methodIds</code>, split over as many messages as needed.
+	 *
+	 * @return the number of entries that were sent; fewer than
+	 *         <code>count</code> when the buffer service stops handing out
+	 *         buffers part way through
+	 * @throws IOException
+	 * @throws FailedToObtainBufferException
+	 * @throws FailedToSendBufferException
+	 * @throws NotSupportedException
+	 */
+	public int sendMethodCounts(int[] methodIds, long[] deltas, int count) throws IOException,
+			FailedToObtainBufferException, FailedToSendBufferException, NotSupportedException
+	{
+		int sent = 0;
+		while (sent < count)
+		{
+			DataBufferOutputStream buffer = bufferService.obtainBuffer();
+			if (buffer == null)
+				break;
+
+			int chunk = Math.min(count - sent, maxMethodCountsPerMessage);
+			boolean wrote = false;
+			try
+			{
+				for (int i = sent; i < sent + chunk; i++)
+					methodIdAdapter.mark(methodIds[i], buffer);
+				messageProtocol.writeMethodCounts(buffer, getTimeOffset(), methodIds, deltas, sent, chunk);
+				wrote = true;
+			}
+			finally
+			{
+				if (!wrote)
+					buffer.reset();
+				bufferService.sendBuffer(buffer);
+			}
+			sent += chunk;
+		}
+		return sent;
+	}
+
+	/**
+	 * METHOD DURATIONS MESSAGE
+	 *
+	 * Sends the growth of the duration histograms of the methods in
+	 * <code>methodIds</code>, split over as many messages as needed. See
+	 * {@link MessageProtocol#writeMethodDurations} for the layout of the
+	 * arrays.
+	 *
+	 * @return the number of methods whose histograms were sent; fewer than
+	 *         <code>count</code> when the buffer service stops handing out
+	 *         buffers part way through
+	 * @throws IOException
+	 * @throws FailedToObtainBufferException
+	 * @throws FailedToSendBufferException
+	 * @throws NotSupportedException
+	 */
+	public int sendMethodDurations(int[] methodIds, int[] entryOffsets, byte[] buckets, int[] bucketCounts, int count)
+			throws IOException, FailedToObtainBufferException, FailedToSendBufferException, NotSupportedException
+	{
+		int sent = 0;
+		while (sent < count)
+		{
+			DataBufferOutputStream buffer = bufferService.obtainBuffer();
+			if (buffer == null)
+				break;
+
+			int chunk = Math.min(count - sent, maxMethodDurationsPerMessage);
+			boolean wrote = false;
+			try
+			{
+				for (int i = sent; i < sent + chunk; i++)
+					methodIdAdapter.mark(methodIds[i], buffer);
+				messageProtocol.writeMethodDurations(buffer, getTimeOffset(), methodIds, entryOffsets, buckets,
+						bucketCounts, sent, chunk);
+				wrote = true;
+			}
+			finally
+			{
+				if (!wrote)
+					buffer.reset();
+				bufferService.sendBuffer(buffer);
+			}
+			sent += chunk;
+		}
+		return sent;
+	}
+
+	/**
+	 * CALL EDGES MESSAGE
+	 *
+	 * Sends the caller/callee pairs in <code>callerIds</code> and
+	 * <code>calleeIds</code>, split over as many messages as needed.
+	 *
+	 * @return the number of edges sent; fewer than <code>count</code> when the
+	 *         buffer service stops handing out buffers part way through
+	 * @throws IOException
+	 * @throws FailedToObtainBufferException
+	 * @throws FailedToSendBufferException
+	 * @throws NotSupportedException
+	 */
+	public int sendCallEdges(int[] callerIds, int[] calleeIds, int count) throws IOException,
+			FailedToObtainBufferException, FailedToSendBufferException, NotSupportedException
+	{
+		int sent = 0;
+		while (sent < count)
+		{
+			DataBufferOutputStream buffer = bufferService.obtainBuffer();
+			if (buffer == null)
+				break;
+
+			int chunk = Math.min(count - sent, maxCallEdgesPerMessage);
+			boolean wrote = false;
+			try
+			{
+				for (int i = sent; i < sent + chunk; i++)
+				{
+					methodIdAdapter.mark(callerIds[i], buffer);
+					methodIdAdapter.mark(calleeIds[i], buffer);
+				}
+				messageProtocol.writeCallEdges(buffer, callerIds, calleeIds, sent, chunk);
+				wrote = true;
+			}
+			finally
+			{
+				if (!wrote)
+					buffer.reset();
+				bufferService.sendBuffer(buffer);
+			}
+			sent += chunk;
+		}
+		return sent;
+	}
+
+	/**
+	 * SAMPLING INTERVAL MESSAGE
+	 *
+	 * Tells HQ that method entries and exits sent from now on each stand for
+	 * <code>interval</code> events.
+	 *
+	 * @param interval
+	 * @throws IOException
+	 * @throws FailedToObtainBufferException
+	 * @throws FailedToSendBufferException
+	 * @throws NotSupportedException
+	 */
+	public void sendSamplingInterval(int interval) throws IOException,
+			FailedToObtainBufferException, FailedToSendBufferException, NotSupportedException
+	{
+		DataBufferOutputStream buffer = bufferService.obtainBuffer();
+		if (buffer != null)
+		{
+			boolean wrote = false;
+			try
+			{
+				messageProtocol.writeSamplingInterval(buffer, getTimeOffset(), interval);
+				wrote = true;
+			}
+			finally
+			{
+				if (!wrote)
+					buffer.reset();
+				bufferService.sendBuffer(buffer);
+			}
+		}
+	}
+
 	private class MethodIdAdapter
 	{
 		private final ClassIdentifier classIdentifier;
 		private final MethodIdentifier methodIdentifier;
 
-		private final ConcurrentMap<Integer, Boolean> observedIds = new ConcurrentHashMap<Integer, Boolean>();
+		private final IdFlags observedIds = new IdFlags();
 
-		private final ConcurrentMap<Integer, Integer> sourceLocationCounts = new ConcurrentHashMap<>();
+		// classes whose source location count has been sent
+		private final IdFlags sourceLocationCountsSent = new IdFlags();
 
 		private final AtomicInteger nextSourceLocationId = new AtomicInteger();
 		protected final ConcurrentHashMap<String, Integer> sourceLocationMap = new ConcurrentHashMap<>();
 
+		// scratch space for line level mapping, reused across calls on each thread
+		private final ThreadLocal<LineLevelMapper.MappedLines> mappedLines = new ThreadLocal<LineLevelMapper.MappedLines>()
+		{
+			@Override
+			protected LineLevelMapper.MappedLines initialValue()
+			{
+				return new LineLevelMapper.MappedLines();
+			}
+		};
+
 		public MethodIdAdapter(ClassIdentifier classIdentifier, MethodIdentifier methodIdentifier)
 		{
 			this.classIdentifier = classIdentifier;
@@ -219,21 +447,19 @@ public class MessageDealer
 			ClassIdentifier.ClassInformation classInformation = classIdentifier.get(classId);
 			LineLevelMapper llm = classInformation.getLineLevelMapper();
 			if (llm != null) {
+				LineLevelMapper.MappedLines mapped = mappedLines.get();
 
-				Boolean sourceLocationCountsMessageSent = sourceLocationCounts.containsKey(classId);
-				if (!sourceLocationCountsMessageSent) {
+				if (!sourceLocationCountsSent.isSet(classId)) {
 					HashSet<String> mappedLocations = new HashSet<>();
 
 					BitSet lineNumbers = classInformation.getLineNumbers();
 					for (int l = lineNumbers.nextSetBit(0); l >= 0; l = lineNumbers.nextSetBit(l + 1)) {
-						BitSet b = new BitSet();
-						b.set(0);
-						LineLevelMapper.MappedCoverage mappedCoverage[] = llm.map(l, b);
-						if (mappedCoverage != null) {
+						if (llm.mapRangeInto(l, l, mapped)) {
 							StringBuilder s = new StringBuilder();
-							for (LineLevelMapper.MappedCoverage mappedCoverageItem : mappedCoverage) {
-								for (int q = mappedCoverageItem.lines.nextSetBit(0); q >= 0; q = mappedCoverageItem.lines.nextSetBit(q + 1)) {
-									s.append(mappedCoverageItem.startLine + q);
+							for (int f = 0; f < mapped.getFileCount(); ++f) {
+								BitSet lines = mapped.getLines(f);
+								for (int q = lines.nextSetBit(0); q >= 0; q = lines.nextSetBit(q + 1)) {
+									s.append(q + 1);
 									s.append("; ");
 								}
 							}
@@ -243,29 +469,15 @@ public class MessageDealer
 
 					int mappingsCount = mappedLocations.size();
 					messageProtocol.writeSourceLocationCount(buffer, methodId, mappingsCount);
-					sourceLocationCounts.put(classId, mappingsCount);
+					sourceLocationCountsSent.set(classId);
 				}
 
-				BitSet bitSet = new BitSet();
-				bitSet.set(0, endLine - startLine + 1);
-
-				LineLevelMapper.MappedCoverage mappedCoverage[] = llm.map(startLine, bitSet);
-				if (mappedCoverage == null) {
+				if (!llm.mapRangeInto(startLine, endLine, mapped)) {
 					return unavailableSourceLocationId;
 				}
 
-				int newStartLine = Integer.MAX_VALUE;
-				int newEndLine = Integer.MIN_VALUE;
-				for (LineLevelMapper.MappedCoverage mappedCoverageItem: mappedCoverage){
-					for (int l = mappedCoverageItem.lines.nextSetBit(0); l >= 0; l = mappedCoverageItem.lines.nextSetBit(l + 1)) {
-						newStartLine = l < newStartLine ? l : newStartLine;
-						newEndLine = l > newEndLine ? l : newEndLine;
-					}
-				}
-
-				// adjust for zero-based line offset
-				startLine = newStartLine + 1;
-				endLine = newEndLine + 1;
+				startLine = mapped.getMinLine();
+				endLine = mapped.getMaxLine();
 			}
 
 			Integer newId = nextSourceLocationId.getAndIncrement();
@@ -282,105 +494,17 @@ public class MessageDealer
 
 		public void mark(int methodId, DataBufferOutputStream buffer) throws IOException, FailedToObtainBufferException, FailedToSendBufferException
 		{
-			Boolean seen = observedIds.putIfAbsent(methodId, true);
-
-			if (seen == null || !seen)
+			if (observedIds.set(methodId))
 			{
 				MethodIdentifier.MethodInformation m = methodIdentifier.get(methodId);
 				ClassIdentifier.ClassInformation c = classIdentifier.get(m.getClassId());
 
-				String signature = c.getName() + "." + m.getName() + ";" + m.getAccess() + ";" + m.getDescriptor();
+				String signature = MethodIdentifier.signature(c.getName(), m.getAccess(), m.getName(), m.getDescriptor());
 				messageProtocol.writeMapMethodSignature(buffer, methodId, signature);
 			}
 		}
 	}
 
-	/**
-	 * Creates a monotonically-incrementing unique id for each thread. The id
-	 * for the currently-running thread is available via {@link #getCurrent()}
-	 *
-	 * @author dylanh
-	 *
-	 */
-	private class ThreadId
-	{
-		/**
-		 * Creates a new, unique id for each thread, on demand.
-		 */
-		private final ThreadLocal<Integer> threadId = new ThreadLocal<Integer>()
-		{
-			private final AtomicInteger uniqueId = new AtomicInteger(0);
-
-			@Override
-			protected Integer initialValue()
-			{
-				return uniqueId.getAndIncrement();
-			};
-		};
-
-		/**
-		 * Per-thread storage of whether or not a thread has a `threadId`
-		 * association. The `getCurrent` method will perform a check and update
-		 * using this.
-		 */
-		private final ThreadLocal<Boolean> threadHasId = new ThreadLocal<Boolean>()
-		{
-			@Override
-			protected Boolean initialValue()
-			{
-				return false;
-			};
-		};
-
-		/**
-		 * Stores the latest known name of a thread. Updated by `getCurrent`.
-		 */
-		private final ThreadLocal<String> threadName = new ThreadLocal<String>()
-		{
-			@Override
-			protected String initialValue()
-			{
-				return Thread.currentThread().getName();
-			};
-		};
-
-		/**
-		 * Get the unique id of the currently-running thread.
-		 *
-		 * @return The unique id for the currently-running thread.
-		 * @throws InterruptedException
-		 * @throws IOException
-		 * @throws FailedToSendBufferException
-		 * @throws FailedToObtainBufferException
-		 */
-		public int getCurrent() throws IOException, FailedToObtainBufferException,
-				FailedToSendBufferException
-		{
-			int id = threadId.get();
-
-			// check if the id is "new"
-			if (!threadHasId.get())
-			{
-				threadHasId.set(true);
-			}
-
-			// check if the name has changed
-			String oldName = threadName.get();
-			if (oldName == null)
-				oldName = "";
-			String nowName = Thread.currentThread().getName();
-			if (nowName == null)
-				nowName = "";
-
-			if (!nowName.equals(oldName))
-			{
-				threadName.set(nowName);
-			}
-
-			return id;
-		}
-	}
-
 	/**
 	 * Provides an incrementing sequence counter for events.
 	 *
@@ -17,15 +17,22 @@
 
 package com.codedx.codepulse.agent.message;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.codedx.codepulse.agent.errors.ErrorHandler;
 import com.codedx.codepulse.agent.init.DataConnectionHandshake;
 import com.codedx.codepulse.agent.util.SocketFactory;
 import com.codedx.codepulse.agent.common.connect.Connection;
+import com.codedx.codepulse.agent.common.connect.SharedMemoryConnection;
+import com.codedx.codepulse.agent.common.connect.SharedMemoryRing;
 import com.codedx.codepulse.agent.common.connect.SocketConnection;
 import com.codedx.codepulse.agent.common.queue.BufferPool;
+import com.esotericsoftware.minlog.Log;
 
 /**
  * An object that manages multiple {@link PooledMessageSender} threads. Each
@@ -33,49 +40,118 @@ import com.codedx.codepulse.agent.common.queue.BufferPool;
  * thread. No connections or threads will be allocated (or started) until
  * <code>start</code> is called. Calling <code>shutdown</code> will end the
  * senders and close connections.
+ *
+ * When given a maximum number of senders that is larger than the minimum, the
+ * manager periodically looks at the backlog of readable buffers in the pool and
+ * at how busy the senders are. A sustained backlog while every sender is busy
+ * writing causes an additional data connection to be opened (up to the
+ * maximum); a sustained lull causes one to be retired (down to the minimum). If
+ * an added connection does not improve the measured write throughput, it is
+ * retired again and the sender count is capped until the next lull.
+ *
+ * When HQ is on the same machine, {@link #useSharedMemory(int)} makes each
+ * sender write to a {@link SharedMemoryRing} that HQ maps, instead of to its
+ * socket. If HQ refuses a ring, the manager goes back to sending over sockets.
  * @author DylanH
  *
  */
 public class MessageSenderManager
 {
+	private static final long ScaleCheckInterval = 500;
+	private static final int GrowAfterChecks = 3;
+	private static final int ShrinkAfterChecks = 20;
+	private static final double BusyUtilization = 0.8;
+	private static final double IdleUtilization = 0.2;
+	private static final double MinGrowthGain = 1.1;
+
 	private final SocketFactory connector;
 	private final DataConnectionHandshake handshaker;
 	private final BufferPool pool;
 	private final byte runId;
 
-	private final int numSenders;
-	private final Connection[] connections;
-	private final PooledMessageSender[] senders;
-	private final Thread[] senderThreads;
+	private final int minSenders;
+	private final int maxSenders;
+	private final List<SenderSlot> slots = new CopyOnWriteArrayList<SenderSlot>();
+	private final List<Thread> senderThreads = new CopyOnWriteArrayList<Thread>();
+	private Thread scalerThread;
 
 	private boolean started = false;
+	private volatile boolean isShutdown = false;
+
+	// the size of each sender's shared memory ring, or 0 to use sockets
+	private volatile int ringSize = 0;
+
+	// scaling state, only touched by the scaler thread
+	private int busyChecks = 0;
+	private int idleChecks = 0;
+	private int senderCeiling;
+	private double throughputBeforeGrowth = -1;
+	private long lastCheckNanos;
 
 	/**
-	 * Creates a new MessageSenderManager
+	 * Creates a new MessageSenderManager with a fixed number of senders.
 	 * @param connector A SocketFactory that will be used to initiate new socket
 	 *            connections
 	 * @param handshaker An object that performs a "data connection handshake"
 	 *            on new socket connections
-	 * @param q A MessageQueue from which each managed sender will take messages
+	 * @param pool A BufferPool from which each managed sender will take buffers
 	 * @param numSenders The number of senders to create. Each sender will get a
 	 *            dedicated Socket and Thread to run with.
 	 * @param runId The trace run id that will be used in the
 	 *            "data connection handshake"
-	 * @param maxDrained The maximum number of messages that any one sender will
-	 *            take from the MessageQueue at once.
 	 */
 	public MessageSenderManager(SocketFactory connector, DataConnectionHandshake handshaker,
 			BufferPool pool, int numSenders, byte runId)
+	{
+		this(connector, handshaker, pool, numSenders, numSenders, runId);
+	}
+
+	/**
+	 * Creates a new MessageSenderManager whose number of senders adapts to the
+	 * send backlog.
+	 * @param minSenders The number of senders created by <code>start</code>,
+	 *            and the fewest that will be kept running.
+	 * @param maxSenders The most senders that will ever be running at once.
+	 */
+	public MessageSenderManager(SocketFactory connector, DataConnectionHandshake handshaker,
+			BufferPool pool, int minSenders, int maxSenders, byte runId)
 	{
 		this.connector = connector;
 		this.handshaker = handshaker;
-		this.numSenders = numSenders;
+		this.minSenders = minSenders;
+		this.maxSenders = Math.max(minSenders, maxSenders);
+		this.senderCeiling = this.maxSenders;
 		this.pool = pool;
 		this.runId = runId;
+	}
+
+	/**
+	 * Makes the senders write their data to shared memory rings instead of
+	 * their sockets. Must be called before <code>start</code>, and only when
+	 * HQ is known to be on the same machine.
+	 * @param ringSize The number of bytes each sender's ring holds
+	 */
+	public synchronized void useSharedMemory(int ringSize)
+	{
+		if (!started)
+			this.ringSize = ringSize;
+	}
+
+	/**
+	 * @return <code>true</code> if new data connections will use shared
+	 *         memory rings
+	 */
+	public boolean isUsingSharedMemory()
+	{
+		return ringSize > 0;
+	}
 
-		connections = new Connection[numSenders];
-		senders = new PooledMessageSender[numSenders];
-		senderThreads = new Thread[numSenders];
+	/**
+	 * @return The number of senders (and data connections) currently running.
+	 */
+	public int getNumSenders()
+	{
+		return slots.size();
 	}
 
 	/**
@@ -86,8 +162,8 @@ public class MessageSenderManager
 	public boolean isIdle()
 	{
 		if (started)
-			for (PooledMessageSender sender : senders)
-				if (sender != null && !sender.isShutdown() && !sender.isIdle())
+			for (SenderSlot slot : slots)
+				if (!slot.sender.isShutdown() && !slot.sender.isIdle())
 					return false;
 
 		return true;
@@ -101,37 +177,60 @@ public class MessageSenderManager
 	 *         and its actions were successful. Returns <code>false</code> if
 	 *         anything went wrong.
 	 */
-	public boolean start()
+	public synchronized boolean start()
 	{
 		if (started)
 			return false;
 
 		started = true;
 
+		List<SenderSlot> initial = new ArrayList<SenderSlot>();
 		try
 		{
-			for (int i = 0; i < numSenders; i++)
+			for (int i = 0; i < minSenders; i++)
 			{
-				Connection c = openAndHandshake();
+				Connection c = openAndHandshake(false);
 				if (c == null)
 					throw new Exception("Failed to open HQ Data connection");
 
-				connections[i] = c;
-				senders[i] = new PooledMessageSender(pool, c.output());
-				senderThreads[i] = new Thread(senders[i]);
-				senderThreads[i].setDaemon(true);
+				initial.add(new SenderSlot(c));
 			}
 		}
 		catch (Exception e)
 		{
+			for (SenderSlot slot : initial)
+			{
+				try
+				{
+					slot.connection.close();
+				}
+				catch (IOException ex)
+				{
+				}
+			}
+
 			ErrorHandler.handleError("Failed to start the MessageSenderManager", e);
 			return false;
 		}
 
-		for (Thread t : senderThreads)
+		for (SenderSlot slot : initial)
+			startSlot(slot);
+
+		if (maxSenders > minSenders)
 		{
-			t.start();
+			lastCheckNanos = System.nanoTime();
+			scalerThread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					runScaler();
+				}
+			}, "Code Pulse data sender scaler");
+			scalerThread.setDaemon(true);
+			scalerThread.start();
 		}
+
 		return true;
 	}
 
@@ -140,52 +239,216 @@ public class MessageSenderManager
 	 */
 	public void shutdown()
 	{
-		for (PooledMessageSender sender : senders)
+		synchronized (this)
+		{
+			isShutdown = true;
+		}
+
+		if (scalerThread != null)
 		{
-			if (sender != null)
-				sender.shutdown();
+			scalerThread.interrupt();
+			joinQuietly(scalerThread);
 		}
 
-		// interrupt and wait for threads to stop
+		for (SenderSlot slot : slots)
+			slot.sender.shutdown();
+
+		// interrupt and wait for threads to stop (including any senders that
+		// were retired but are still finishing their last buffer)
 		for (Thread t : senderThreads)
-			if (t != null)
-				t.interrupt();
+			t.interrupt();
 
 		for (Thread t : senderThreads)
+			joinQuietly(t);
+	}
+
+	private void startSlot(SenderSlot slot)
+	{
+		slots.add(slot);
+		senderThreads.add(slot.thread);
+		slot.thread.start();
+	}
+
+	private static void joinQuietly(Thread t)
+	{
+		try
 		{
-			try
+			t.join();
+		}
+		catch (InterruptedException ex)
+		{
+		}
+	}
+
+	private void runScaler()
+	{
+		try
+		{
+			while (!isShutdown)
 			{
-				if (t != null)
-				{
-					t.join();
-				}
+				Thread.sleep(ScaleCheckInterval);
+				checkScaling();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// shutting down
+		}
+	}
+
+	/**
+	 * Samples the pool backlog and the senders' write statistics since the
+	 * last check, and decides whether a sender should be added or retired.
+	 */
+	private void checkScaling()
+	{
+		long now = System.nanoTime();
+		long elapsed = Math.max(1, now - lastCheckNanos);
+		lastCheckNanos = now;
+
+		long bytes = 0, busy = 0;
+		int active = 0;
+		for (SenderSlot slot : slots)
+		{
+			bytes += slot.sampleBytes();
+			busy += slot.sampleBusyNanos();
+			active++;
+		}
+
+		if (active == 0)
+			return;
+
+		double utilization = (double) busy / ((double) elapsed * active);
+		double throughput = bytes * 1e9 / elapsed;
+		int backlog = pool.numReadableBuffers();
+		boolean backlogged = backlog >= Math.max(2, pool.numBuffers() / 4);
+
+		if (throughputBeforeGrowth >= 0)
+		{
+			// the previous check added a sender; keep it only if it helped
+			double baseline = throughputBeforeGrowth;
+			throughputBeforeGrowth = -1;
+			if (backlogged && throughput < baseline * MinGrowthGain && active > minSenders)
+			{
+				Log.debug("sender manager", "additional data connection did not improve throughput; retiring it");
+				retireSender();
+				senderCeiling = active - 1;
+				busyChecks = idleChecks = 0;
+				return;
+			}
+		}
+
+		if (backlogged && utilization >= BusyUtilization)
+		{
+			idleChecks = 0;
+			if (++busyChecks >= GrowAfterChecks && active < Math.min(maxSenders, senderCeiling))
+			{
+				busyChecks = 0;
+				if (addSender())
+					throughputBeforeGrowth = throughput;
+				else
+					senderCeiling = active;
 			}
-			catch (InterruptedException ex)
+		}
+		else if (!backlogged && utilization < IdleUtilization)
+		{
+			busyChecks = 0;
+			if (++idleChecks >= ShrinkAfterChecks)
 			{
+				idleChecks = 0;
+				// the load has dropped off, so forget what we learned about the
+				// connection ceiling
+				senderCeiling = maxSenders;
+				if (active > minSenders)
+					retireSender();
 			}
 		}
+		else
+		{
+			busyChecks = idleChecks = 0;
+		}
+	}
+
+	/**
+	 * Opens one more data connection, attached to the running trace, and
+	 * starts a sender on it.
+	 * @return <code>true</code> if the sender was added
+	 */
+	private synchronized boolean addSender()
+	{
+		if (isShutdown)
+			return false;
+
+		try
+		{
+			Connection c = openAndHandshake(true);
+			if (c == null)
+				return false;
+
+			startSlot(new SenderSlot(c));
+			Log.debug("sender manager", "added data connection, now " + slots.size());
+			return true;
+		}
+		catch (Exception e)
+		{
+			Log.warn("sender manager", "failed to open an additional data connection", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the most recently added sender. The sender finishes writing its
+	 * current buffer before closing its connection.
+	 */
+	private synchronized void retireSender()
+	{
+		if (isShutdown || slots.size() <= minSenders)
+			return;
+
+		SenderSlot slot = slots.remove(slots.size() - 1);
+		slot.sender.shutdown();
+		slot.thread.interrupt();
+		Log.debug("sender manager", "retired data connection, now " + slots.size());
 	}
 
 	/**
 	 * Opens a new HQ Socket connection and attempts to perform the "Data"
 	 * handshake.
 	 *
+	 * @param additional Whether the connection is being added to a trace
+	 *            that is already underway
 	 * @return The opened socket on success. <code>null</code> on failure.
 	 * @throws SecurityException
 	 * @throws IOException
 	 */
-	private Connection openAndHandshake() throws SecurityException, IOException
+	private Connection openAndHandshake(boolean additional) throws SecurityException, IOException
 	{
+		if (ringSize > 0)
+		{
+			try
+			{
+				Connection c = openSharedMemoryAndHandshake(additional);
+				if (c != null)
+					return c;
+			}
+			catch (IOException e)
+			{
+				Log.warn("sender manager", "failed to set up a shared memory data connection", e);
+			}
+
+			Log.info("sender manager", "falling back to socket data connections");
+			ringSize = 0;
+		}
+
 		Socket s = connector.connect();
 		Connection c = new SocketConnection(s, false, true);
 		boolean success = false;
 		try
 		{
-			// DataOutputStream sOut = new
-			// DataOutputStream(s.getOutputStream());
-			// DataInputStream sIn = new DataInputStream(s.getInputStream());
-
-			success = handshaker.performHandshake(runId, c);
+			if (additional)
+				success = handshaker.performAdditionalHandshake(runId, c);
+			else
+				success = handshaker.performHandshake(runId, c);
 		}
 		finally
 		{
@@ -199,4 +462,89 @@ public class MessageSenderManager
 		else
 			return null;
 	}
+
+	/**
+	 * Creates a shared memory ring, then opens a new HQ Socket connection and
+	 * asks HQ to read the connection's data from the ring.
+	 *
+	 * @return The opened connection on success. <code>null</code> if HQ
+	 *         refused.
+	 * @throws SecurityException
+	 * @throws IOException
+	 */
+	private Connection openSharedMemoryAndHandshake(boolean additional) throws SecurityException, IOException
+	{
+		File file = File.createTempFile("codepulse-", ".ring");
+		SharedMemoryRing ring;
+		try
+		{
+			ring = SharedMemoryRing.create(file, ringSize);
+		}
+		catch (IOException e)
+		{
+			file.delete();
+			throw e;
+		}
+
+		SocketConnection c = null;
+		boolean success = false;
+		try
+		{
+			c = new SocketConnection(connector.connect(), false, true);
+			success = handshaker.performSharedMemoryHandshake(runId, additional, file.getAbsolutePath(), c);
+		}
+		finally
+		{
+			if (!success && c != null)
+				c.close();
+
+			// HQ has mapped the ring by the time it replies, so the file can go
+			// (on platforms that allow deleting a mapped file)
+			if (!file.delete())
+				file.deleteOnExit();
+		}
+
+		if (success)
+			return new SharedMemoryConnection(c, ring, true);
+		else
+			return null;
+	}
+
+	/**
+	 * A running sender along with its connection, thread, and the statistics
+	 * seen at the last scaling check.
+	 */
+	private class SenderSlot
+	{
+		final Connection connection;
+		final PooledMessageSender sender;
+		final Thread thread;
+
+		private long lastBytes = 0;
+		private long lastBusyNanos = 0;
+
+		SenderSlot(Connection connection)
+		{
+			this.connection = connection;
+			this.sender = new PooledMessageSender(pool, connection.output());
+			this.thread = new Thread(sender);
+			this.thread.setDaemon(true);
+		}
+
+		long sampleBytes()
+		{
+			long total = sender.getBytesSent();
+			long delta = total - lastBytes;
+			lastBytes = total;
+			return delta;
+		}
+
+		long sampleBusyNanos()
+		{
+			long total = sender.getBusyNanos();
+			long delta = total - lastBusyNanos;
+			lastBusyNanos = total;
+			return delta;
+		}
+	}
 }
@@ -17,6 +17,8 @@
 
 package com.codedx.codepulse.agent.message;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.codedx.codepulse.agent.common.queue.BufferPool;
 import com.codedx.codepulse.agent.common.queue.DataBufferOutputStream;
 
@@ -28,12 +30,19 @@ import com.codedx.codepulse.agent.common.queue.DataBufferOutputStream;
  * available buffer. Sending a buffer is equivalent to releasing it back to the
  * BufferPool.
  *
+ * While "drop when full" is enabled, obtaining a buffer never waits: if the
+ * pool has no buffer available, no buffer is returned and the event is
+ * dropped. This is used while the agent is still waiting on HQ, so that the
+ * traced application is never held up.
+ *
  * @author DylanH
  */
 public class PooledBufferService extends BufferService
 {
 	private final BufferPool pool;
 	private final int maxObtainRetries;
+	private volatile boolean dropWhenFull = false;
+	private final AtomicLong droppedCount = new AtomicLong();
 
 	public PooledBufferService(BufferPool pool, int maxObtainRetries)
 	{
@@ -51,6 +60,20 @@ public class PooledBufferService extends BufferService
 		super.setSuspended(suspended);
 	}
 
+	public void setDropWhenFull(boolean dropWhenFull)
+	{
+		this.dropWhenFull = dropWhenFull;
+	}
+
+	/**
+	 * @return The number of times a buffer could not be obtained while "drop
+	 *         when full" was enabled
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
 	/**
 	 * Obtains a data buffer from the backing MessageQueue's
 	 * <code>freeBuffers</code>. If the <code>take</code> operation is
@@ -61,6 +84,14 @@ public class PooledBufferService extends BufferService
 	@Override
 	protected DataBufferOutputStream innerObtain() throws FailedToObtainBufferException
 	{
+		if (dropWhenFull)
+		{
+			DataBufferOutputStream buffer = pool.tryAcquireForWriting();
+			if (buffer == null)
+				droppedCount.incrementAndGet();
+			return buffer;
+		}
+
 		boolean interrupted = false;
 		for (int i = 0; i < maxObtainRetries; i++)
 		{
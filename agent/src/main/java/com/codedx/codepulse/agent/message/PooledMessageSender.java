@@ -39,6 +39,10 @@ public class PooledMessageSender implements Runnable
 	private volatile boolean isShutdown = false;
 	private volatile boolean idle = false;
 
+	// only ever written by the sending thread; read by whoever monitors it
+	private volatile long bytesSent = 0;
+	private volatile long busyNanos = 0;
+
 	public PooledMessageSender(BufferPool pool, OutputStream out)
 	{
 		this.pool = pool;
@@ -50,6 +54,23 @@ public class PooledMessageSender implements Runnable
 		return idle;
 	}
 
+	/**
+	 * @return The total number of bytes this sender has written so far
+	 */
+	public long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	/**
+	 * @return The total time (in nanoseconds) this sender has spent writing
+	 *         buffers, as opposed to waiting for them
+	 */
+	public long getBusyNanos()
+	{
+		return busyNanos;
+	}
+
 	public void shutdown()
 	{
 		isShutdown = true;
@@ -107,6 +128,7 @@ public class PooledMessageSender implements Runnable
 		}
 		idle = false;
 
+		long writeStart = System.nanoTime();
 		try
 		{
 			// attempt to write each buffer to the output stream
@@ -115,6 +137,8 @@ public class PooledMessageSender implements Runnable
 			// make sure to flush after writing the buffer to the output stream,
 			// otherwise data might sit around here forever
 			out.flush();
+
+			bytesSent += buffer.size();
 		}
 		catch (IOException e)
 		{
@@ -123,6 +147,7 @@ public class PooledMessageSender implements Runnable
 		}
 		finally
 		{
+			busyNanos += System.nanoTime() - writeStart;
 			buffer.reset();
 			pool.release(buffer);
 		}
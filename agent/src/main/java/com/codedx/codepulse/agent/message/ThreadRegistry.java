@@ -0,0 +1,227 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.message;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.esotericsoftware.minlog.Log;
+
+/**
+ * Assigns a small integer id to each thread that reports trace events. Ids of
+ * threads that have died (and been collected) are handed out again, so
+ * applications that churn through pool threads keep a compact id space.
+ *
+ * Looking up the current thread's {@link Identity} costs a single
+ * <code>ThreadLocal</code> read. The thread's name is only re-read every
+ * {@link #NameCheckInterval} lookups; {@link Identity#takeNameChange()}
+ * reports the name when the thread is first seen and whenever it changes, so
+ * callers only send thread names when there is something new to say.
+ */
+public class ThreadRegistry
+{
+	/**
+	 * Number of lookups between checks of a thread's name.
+	 */
+	public static final int NameCheckInterval = 256;
+
+	private final int maxId;
+
+	private final ReferenceQueue<Thread> collectedThreads = new ReferenceQueue<Thread>();
+
+	/**
+	 * Keeps each thread's reference reachable until it has been enqueued.
+	 */
+	private final Set<ThreadReference> liveReferences = Collections
+			.newSetFromMap(new ConcurrentHashMap<ThreadReference, Boolean>());
+
+	private final Object idLock = new Object();
+	private int[] freeIds = new int[16];
+	private int freeIdCount = 0;
+	private int nextId = 0;
+	private boolean warnedAboutAliasing = false;
+
+	private final ThreadLocal<Identity> identity = new ThreadLocal<Identity>()
+	{
+		@Override
+		protected Identity initialValue()
+		{
+			return register(Thread.currentThread());
+		}
+	};
+
+	/**
+	 * @param maxId the largest id that may be assigned; if more threads than
+	 *            this are alive at once, ids start to alias
+	 */
+	public ThreadRegistry(int maxId)
+	{
+		this.maxId = maxId;
+	}
+
+	/**
+	 * Returns the identity of the currently-running thread, registering it if
+	 * necessary.
+	 */
+	public Identity current()
+	{
+		return identity.get();
+	}
+
+	/**
+	 * Returns the number of threads that currently hold an id.
+	 */
+	public int getLiveCount()
+	{
+		reclaimIds();
+		return liveReferences.size();
+	}
+
+	private Identity register(Thread thread)
+	{
+		reclaimIds();
+
+		int id;
+		synchronized (idLock)
+		{
+			if (freeIdCount > 0)
+				id = freeIds[--freeIdCount];
+			else if (nextId <= maxId)
+				id = nextId++;
+			else
+			{
+				if (!warnedAboutAliasing)
+				{
+					warnedAboutAliasing = true;
+					Log.warn("thread registry", "more than " + (maxId + 1L)
+							+ " threads are alive at once; thread ids will be reused");
+				}
+				id = (int) (liveReferences.size() % (maxId + 1L));
+			}
+		}
+
+		ThreadReference ref = new ThreadReference(thread, id, collectedThreads);
+		liveReferences.add(ref);
+
+		return new Identity(id, thread.getName());
+	}
+
+	/**
+	 * Moves the ids of collected threads back to the free list.
+	 */
+	private void reclaimIds()
+	{
+		ThreadReference ref;
+		while ((ref = (ThreadReference) collectedThreads.poll()) != null)
+		{
+			if (!liveReferences.remove(ref))
+				continue;
+
+			synchronized (idLock)
+			{
+				if (freeIdCount == freeIds.length)
+				{
+					int[] grown = new int[freeIds.length * 2];
+					System.arraycopy(freeIds, 0, grown, 0, freeIdCount);
+					freeIds = grown;
+				}
+				freeIds[freeIdCount++] = ref.id;
+			}
+		}
+	}
+
+	private static class ThreadReference extends WeakReference<Thread>
+	{
+		final int id;
+
+		ThreadReference(Thread thread, int id, ReferenceQueue<Thread> queue)
+		{
+			super(thread, queue);
+			this.id = id;
+		}
+	}
+
+	/**
+	 * The id and last reported name of a single thread. An identity is only
+	 * ever used by the thread it belongs to.
+	 */
+	public static class Identity
+	{
+		private final int id;
+		private String name;
+		private boolean nameReported = false;
+		private int lookupsUntilNameCheck = NameCheckInterval;
+
+		Identity(int id, String name)
+		{
+			this.id = id;
+			this.name = name;
+		}
+
+		public int getId()
+		{
+			return id;
+		}
+
+		/**
+		 * Returns the thread's name if it has not been reported yet or has
+		 * changed since it was last reported, otherwise <code>null</code>.
+		 * Must be called from the thread this identity belongs to.
+		 */
+		public String takeNameChange()
+		{
+			if (!nameReported)
+			{
+				nameReported = true;
+				return name;
+			}
+
+			if (--lookupsUntilNameCheck > 0)
+				return null;
+			lookupsUntilNameCheck = NameCheckInterval;
+
+			String nowName = Thread.currentThread().getName();
+			if (nowName == name)
+				return null;
+
+			if (nowName.equals(name))
+			{
+				// some JREs build a new String on each call; keep the latest
+				// so the identity check above succeeds next time if it can
+				name = nowName;
+				return null;
+			}
+
+			name = nowName;
+			return nowName;
+		}
+
+		/**
+		 * Forgets that the name was reported, so the next call to
+		 * {@link #takeNameChange()} returns it again. Used when a message
+		 * carrying the name could not be written.
+		 */
+		public void resetNameReport()
+		{
+			nameReported = false;
+		}
+	}
+}
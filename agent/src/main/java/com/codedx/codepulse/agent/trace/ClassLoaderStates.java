@@ -0,0 +1,185 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.trace;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Per-classloader instrumentation state, as a set of flags per loader.
+ * Loaders are held weakly and compared by identity, so an undeployed webapp's
+ * classloader (and everything it loaded) can still be collected; entries for
+ * collected loaders are purged the next time a flag is set.
+ *
+ * Lookups are a single <code>ConcurrentHashMap</code> read, and flags are
+ * updated with a compare-and-set, so classes can be transformed in parallel
+ * without any locking here. The bootstrap loader (<code>null</code>) is never
+ * tracked.
+ */
+public class ClassLoaderStates
+{
+	/**
+	 * The Trace class is reachable from the loader, so its classes can be
+	 * instrumented for tracing.
+	 */
+	public static final int TracingAvailable = 1;
+
+	/**
+	 * The Trace class is not reachable from the loader; its classes can't be
+	 * instrumented for tracing.
+	 */
+	public static final int TracingUnavailable = 2;
+
+	/**
+	 * A servlet container class the filter injector knows how to adapt was
+	 * loaded by the loader.
+	 */
+	public static final int ContainerAdapterFound = 4;
+
+	private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<ClassLoader>();
+	private final ConcurrentHashMap<Object, LoaderReference> states = new ConcurrentHashMap<Object, LoaderReference>();
+
+	/**
+	 * Returns the flags set for <code>loader</code>, or 0 if it hasn't been
+	 * seen.
+	 */
+	public int get(ClassLoader loader)
+	{
+		if (loader == null)
+			return 0;
+
+		LoaderReference ref = states.get(new Lookup(loader));
+		return ref == null ? 0 : ref.flags;
+	}
+
+	/**
+	 * Sets <code>flags</code> for <code>loader</code>.
+	 * @return true if any of <code>flags</code> was not already set
+	 */
+	public boolean set(ClassLoader loader, int flags)
+	{
+		if (loader == null)
+			return false;
+
+		LoaderReference ref = states.get(new Lookup(loader));
+		if (ref == null)
+		{
+			purgeCollected();
+
+			LoaderReference created = new LoaderReference(loader, collectedLoaders);
+			ref = states.putIfAbsent(created, created);
+			if (ref == null)
+				ref = created;
+		}
+
+		for (;;)
+		{
+			int current = ref.flags;
+			if ((current & flags) == flags)
+				return false;
+			if (LoaderReference.flagsUpdater.compareAndSet(ref, current, current | flags))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns the number of loaders that have state, after dropping any that
+	 * have been collected.
+	 */
+	public int size()
+	{
+		purgeCollected();
+		return states.size();
+	}
+
+	private void purgeCollected()
+	{
+		Object ref;
+		while ((ref = collectedLoaders.poll()) != null)
+			states.remove(ref);
+	}
+
+	/**
+	 * Key equality shared by the stored references and throwaway lookups:
+	 * identity of the referenced loader.
+	 */
+	private static boolean sameLoader(Object key, ClassLoader loader)
+	{
+		if (key instanceof LoaderReference)
+			return ((LoaderReference) key).get() == loader;
+		if (key instanceof Lookup)
+			return ((Lookup) key).loader == loader;
+		return false;
+	}
+
+	private static class LoaderReference extends WeakReference<ClassLoader>
+	{
+		static final AtomicIntegerFieldUpdater<LoaderReference> flagsUpdater = AtomicIntegerFieldUpdater
+				.newUpdater(LoaderReference.class, "flags");
+
+		private final int hash;
+		volatile int flags;
+
+		LoaderReference(ClassLoader loader, ReferenceQueue<ClassLoader> queue)
+		{
+			super(loader, queue);
+			this.hash = System.identityHashCode(loader);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj == this)
+				return true;
+
+			// a collected reference is only equal to itself, so it can still be removed
+			ClassLoader loader = get();
+			return loader != null && sameLoader(obj, loader);
+		}
+	}
+
+	private static class Lookup
+	{
+		final ClassLoader loader;
+
+		Lookup(ClassLoader loader)
+		{
+			this.loader = loader;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(loader);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return sameLoader(obj, loader);
+		}
+	}
+}
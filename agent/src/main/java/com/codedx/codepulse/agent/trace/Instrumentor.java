@@ -49,6 +49,7 @@ public class Instrumentor {
 	private final ClassIdentifier classIdentifier;
 	private final MethodIdentifier methodIdentifier;
 	private final File instrumentedDumpTarget;
+	private final boolean exceptionExits;
 
 	private final FilterInjector filterInjector = new FilterInjector(
 		new ParameterlessFilter(
@@ -62,22 +63,47 @@ public class Instrumentor {
 		TRACE_CLASS
 	);
 
+	private final ClassLoaderStates loaderStates = new ClassLoaderStates();
+
 	/** Creates a new instance of the instrumentor.
 	  * @param classIdentifier a `ClassIdentifier` instance for assigning class IDs
 	  * @param methodIdentifier a `MethodIdentifier` instance for assigning method IDs
 	  * @param instrumentedDumpTarget a `java.io.File` of a folder to dump instrumented class files in, or null to disable dumping
 	  */
 	public Instrumentor(ClassIdentifier classIdentifier, MethodIdentifier methodIdentifier, File instrumentedDumpTarget) {
+		this(classIdentifier, methodIdentifier, instrumentedDumpTarget, true);
+	}
+
+	/** Creates a new instance of the instrumentor.
+	  * @param classIdentifier a `ClassIdentifier` instance for assigning class IDs
+	  * @param methodIdentifier a `MethodIdentifier` instance for assigning method IDs
+	  * @param instrumentedDumpTarget a `java.io.File` of a folder to dump instrumented class files in, or null to disable dumping
+	  * @param exceptionExits if false, traced methods are not wrapped in a try/catch to report exits
+	  * 	by exception; methods that throw will leave an entry with no matching exit
+	  */
+	public Instrumentor(ClassIdentifier classIdentifier, MethodIdentifier methodIdentifier, File instrumentedDumpTarget, boolean exceptionExits) {
 		this.classIdentifier = classIdentifier;
 		this.methodIdentifier = methodIdentifier;
 		this.instrumentedDumpTarget = instrumentedDumpTarget;
+		this.exceptionExits = exceptionExits;
 	}
 
 	/** Checks whether or not trace data can be collected within a given classloader (i.e., if the
-	  * trace collector class exists in the class loader).
+	  * trace collector class exists in the class loader). The answer is remembered per loader.
 	  */
 	public boolean isTracingAvailable(ClassLoader loader) {
-		return ClassLoaderUtil.isAvailable(loader, TRACE_CLASS.getClassName());
+		int state = loaderStates.get(loader);
+		if ((state & ClassLoaderStates.TracingAvailable) != 0) return true;
+		if ((state & ClassLoaderStates.TracingUnavailable) != 0) return false;
+
+		boolean available = ClassLoaderUtil.isAvailable(loader, TRACE_CLASS.getClassName());
+		loaderStates.set(loader, available ? ClassLoaderStates.TracingAvailable : ClassLoaderStates.TracingUnavailable);
+		return available;
+	}
+
+	/** Returns the state remembered for class loaders seen by this instrumentor. */
+	public ClassLoaderStates getClassLoaderStates() {
+		return loaderStates;
 	}
 
 	/** Instrument a class.
@@ -89,7 +115,37 @@ public class Instrumentor {
 	  * @returns a byte array containing the instrumented version of the class
 	  */
 	public byte[] instrument(final ClassLoader classLoader, final String className, final ClassReader cr, boolean enableTracing) {
+		return instrument(classLoader, className, cr, enableTracing, true);
+	}
+
+	/** Instrument a class.
+	  * @param loader the ClassLoader being used to load the class
+	  * @param className the name of the class being instrumented
+	  * @param cr the ClassReader to read the class to be instrumented
+	  * @param enableTracing if true, the class will be instrumented for tracing, otherwise, only
+	  * 	filter injection will be applied
+	  * @param lineLevel if false, traced methods only get entry/exit probes, without line-level tracing
+	  * @returns a byte array containing the instrumented version of the class
+	  */
+	public byte[] instrument(final ClassLoader classLoader, final String className, final ClassReader cr, boolean enableTracing, boolean lineLevel) {
+		return instrument(classLoader, className, cr, enableTracing, lineLevel, false);
+	}
+
+	/** Instrument a class.
+	  * @param loader the ClassLoader being used to load the class
+	  * @param className the name of the class being instrumented
+	  * @param cr the ClassReader to read the class to be instrumented
+	  * @param enableTracing if true, the class will be instrumented for tracing, otherwise, only
+	  * 	filter injection will be applied
+	  * @param lineLevel if false, traced methods only get entry/exit probes, without line-level tracing
+	  * @param retransforming if true, the class was already loaded (and possibly instrumented), so
+	  * 	the class and method IDs it was given then are reused
+	  * @returns a byte array containing the instrumented version of the class
+	  */
+	public byte[] instrument(final ClassLoader classLoader, final String className, final ClassReader cr, boolean enableTracing, boolean lineLevel, boolean retransforming) {
 		final Adapter filterInjectorAdapter = filterInjector.getAdapter(classLoader, cr);
+		if (filterInjectorAdapter != null && loaderStates.set(classLoader, ClassLoaderStates.ContainerAdapterFound))
+			Log.debug("instrumentor", String.format("found a servlet container in class loader %s", classLoader));
 
 		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
 		final ClassVisitor filterInjectorVisitor = filterInjectorAdapter != null ? filterInjectorAdapter.getClassVisitor(classLoader, cw) : null;
@@ -103,15 +159,19 @@ public class Instrumentor {
 
 			BitSet lineNumbers = null;
 			LineLevelMapper lineLevelMapper = inspection.getLineLevelMapper();
-			if (lineLevelMapper != null) {
+			if (lineLevelMapper != null && lineLevel) {
 				InstrumentationClassVisitor visitor = new InstrumentationClassVisitor();
 				cr.accept(visitor, 0);
 				lineNumbers = visitor.getLineNumbers();
 			}
 
-			final int classId = classIdentifier.record(className, inspection.getFileName(), lineLevelMapper, lineNumbers);
+			int classId = retransforming ? classIdentifier.lookup(classLoader, className) : -1;
+			if (classId >= 0)
+				classIdentifier.update(classId, className, inspection.getFileName(), lineLevelMapper, lineNumbers);
+			else
+				classId = classIdentifier.record(classLoader, className, inspection.getFileName(), lineLevelMapper, lineNumbers);
 
-			final ClassInstrumentor ci = new ClassInstrumentor(filterInjectorVisitor != null ? filterInjectorVisitor : cw, methodIdentifier, classId, inspection, handler);
+			final ClassInstrumentor ci = new ClassInstrumentor(filterInjectorVisitor != null ? filterInjectorVisitor : cw, methodIdentifier, classId, inspection, handler, lineLevel, exceptionExits);
 			cr.accept(ci, ClassReader.EXPAND_FRAMES);
 		}
 		else
@@ -146,6 +206,32 @@ public class Instrumentor {
 	  * @returns a byte array containing the instrumented version of the class
 	  */
 	public byte[] instrument(final ClassLoader classLoader, final String className, final byte[] buffer, boolean enableTracing) {
-		return instrument(classLoader, className, new ClassReader(buffer), enableTracing);
+		return instrument(classLoader, className, new ClassReader(buffer), enableTracing, true);
+	}
+
+	/** Instrument a class.
+	  * @param className the name of the class being instrumented
+	  * @param buffer the byte array containing the class to be instrumented
+	  * @param enableTracing if true, the class will be instrumented for tracing, otherwise, only
+	  * 	filter injection will be applied
+	  * @param lineLevel if false, traced methods only get entry/exit probes, without line-level tracing
+	  * @returns a byte array containing the instrumented version of the class
+	  */
+	public byte[] instrument(final ClassLoader classLoader, final String className, final byte[] buffer, boolean enableTracing, boolean lineLevel) {
+		return instrument(classLoader, className, new ClassReader(buffer), enableTracing, lineLevel, false);
+	}
+
+	/** Instrument a class.
+	  * @param className the name of the class being instrumented
+	  * @param buffer the byte array containing the class to be instrumented
+	  * @param enableTracing if true, the class will be instrumented for tracing, otherwise, only
+	  * 	filter injection will be applied
+	  * @param lineLevel if false, traced methods only get entry/exit probes, without line-level tracing
+	  * @param retransforming if true, the class was already loaded (and possibly instrumented), so
+	  * 	the class and method IDs it was given then are reused
+	  * @returns a byte array containing the instrumented version of the class
+	  */
+	public byte[] instrument(final ClassLoader classLoader, final String className, final byte[] buffer, boolean enableTracing, boolean lineLevel, boolean retransforming) {
+		return instrument(classLoader, className, new ClassReader(buffer), enableTracing, lineLevel, retransforming);
 	}
 }
\ No newline at end of file
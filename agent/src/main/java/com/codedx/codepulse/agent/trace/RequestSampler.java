@@ -0,0 +1,119 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.codedx.codepulse.agent.common.config.RequestSamplingConfiguration;
+
+/**
+ * Decides which HTTP requests are traced, on behalf of the injected
+ * {@link TraceFilter}, and counts how many were.
+ *
+ * Like {@link Trace}, this is reached from classes loaded by application
+ * class loaders, so its state is static and its API only uses JRE types.
+ */
+public class RequestSampler
+{
+	private static volatile double rate = 1.0;
+	private static volatile String optInHeader = null;
+	private static volatile Pattern urlPattern = null;
+	private static volatile boolean enabled = false;
+
+	private static final AtomicLong totalRequests = new AtomicLong();
+	private static final AtomicLong sampledRequests = new AtomicLong();
+
+	private RequestSampler()
+	{
+	}
+
+	public static void configure(RequestSamplingConfiguration config)
+	{
+		rate = config.getRate();
+		optInHeader = config.getOptInHeader();
+		urlPattern = config.getUrlPattern() != null ? Pattern.compile(config.getUrlPattern()) : null;
+		enabled = config.isEnabled();
+	}
+
+	/**
+	 * @return <code>true</code> if some requests may go untraced
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @return the name of the header that opts a request in to tracing, or
+	 *         <code>null</code>
+	 */
+	public static String getOptInHeader()
+	{
+		return optInHeader;
+	}
+
+	/**
+	 * Decides whether a request should be traced, and counts it.
+	 *
+	 * @param uri the request URI
+	 * @param optInHeaderValue the value of the opt-in header on the request,
+	 *            or <code>null</code> if it is absent
+	 * @return <code>true</code> if the request should be traced
+	 */
+	public static boolean shouldTrace(String uri, String optInHeaderValue)
+	{
+		totalRequests.incrementAndGet();
+
+		boolean traced;
+		if (optInHeaderValue != null && !optInHeaderValue.equalsIgnoreCase("false"))
+			traced = true;
+		else
+		{
+			Pattern pattern = urlPattern;
+			if (pattern != null && (uri == null || !pattern.matcher(uri).matches()))
+				traced = false;
+			else
+			{
+				double r = rate;
+				traced = r >= 1.0 || ThreadLocalRandom.current().nextDouble() < r;
+			}
+		}
+
+		if (traced)
+			sampledRequests.incrementAndGet();
+		return traced;
+	}
+
+	/**
+	 * @return the number of requests seen by the filter
+	 */
+	public static long getTotalRequests()
+	{
+		return totalRequests.get();
+	}
+
+	/**
+	 * @return the number of requests that were traced
+	 */
+	public static long getSampledRequests()
+	{
+		return sampledRequests.get();
+	}
+}
@@ -18,6 +18,9 @@
 
 package com.codedx.codepulse.agent.trace;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.codedx.codepulse.agent.trace.TraceDataCollector;
 
 /**
@@ -33,6 +36,26 @@ public class Trace
 {
 	private volatile static TraceDataCollector traceDataCollector;
 
+	/**
+	 * Whether the request being handled by the current thread is traced, or
+	 * null outside of a request. Set by {@link TraceFilter}.
+	 */
+	private static final ThreadLocal<Boolean> requestTraced = new ThreadLocal<Boolean>();
+
+	/**
+	 * Number of untraced requests in progress. While this is zero, the probes
+	 * don't need to look at <code>requestTraced</code> at all.
+	 */
+	private static final AtomicInteger untracedRequests = new AtomicInteger();
+
+	/**
+	 * Methods whose probes are disarmed because HQ has already seen them
+	 * covered in the active recording, indexed by method id. Replaced
+	 * wholesale on every change so the probes only pay for one volatile read
+	 * and an array lookup.
+	 */
+	private static volatile boolean[] suppressedMethods = new boolean[0];
+
 	private Trace()
 	{
 	}
@@ -46,13 +69,87 @@ public class Trace
 		Trace.traceDataCollector = traceDataCollector;
 	}
 
+	/**
+	 * Marks the start of a request on the current thread.
+	 * @param traced whether events from this request should be recorded
+	 */
+	public static void beginRequest(boolean traced)
+	{
+		requestTraced.set(Boolean.valueOf(traced));
+		if (!traced)
+			untracedRequests.incrementAndGet();
+	}
+
+	/**
+	 * Marks the end of the request started by {@link #beginRequest(boolean)}.
+	 */
+	public static void endRequest()
+	{
+		Boolean traced = requestTraced.get();
+		requestTraced.remove();
+		if (traced != null && !traced)
+			untracedRequests.decrementAndGet();
+	}
+
+	/**
+	 * @return <code>true</code> if the current thread is inside a request
+	 */
+	public static boolean isInRequest()
+	{
+		return requestTraced.get() != null;
+	}
+
+	/**
+	 * Disarms the probes for the given methods until {@link #rearmMethods()}.
+	 */
+	public static synchronized void suppressMethods(int[] methodIds)
+	{
+		boolean[] current = suppressedMethods;
+		int length = current.length;
+		for (int methodId : methodIds)
+			if (methodId >= length)
+				length = methodId + 1;
+
+		boolean[] updated = Arrays.copyOf(current, length);
+		for (int methodId : methodIds)
+			if (methodId >= 0)
+				updated[methodId] = true;
+
+		suppressedMethods = updated;
+	}
+
+	/**
+	 * Re-arms every probe disarmed by {@link #suppressMethods(int[])}.
+	 */
+	public static synchronized void rearmMethods()
+	{
+		suppressedMethods = new boolean[0];
+	}
+
+	private static boolean isSuppressed(int methodId)
+	{
+		boolean[] suppressed = suppressedMethods;
+		return methodId < suppressed.length && suppressed[methodId];
+	}
+
+	private static boolean isUntraced()
+	{
+		return untracedRequests.get() != 0 && requestTraced.get() == Boolean.FALSE;
+	}
+
 	public static void methodEnter(int methodId)
 	{
+		if (isSuppressed(methodId) || isUntraced())
+			return;
+
 		traceDataCollector.methodEntry(methodId);
 	}
 
 	public static void methodExit(int methodId, boolean exceptionThrown)
 	{
+		if (isSuppressed(methodId) || isUntraced())
+			return;
+
 		if (exceptionThrown)
 			traceDataCollector.methodExit(methodId, true);
 		else
@@ -61,6 +158,9 @@ public class Trace
 
 	public static void recordLineLevelTrace(int methodId, int startLine, int endLine, java.util.BitSet lineMap)
 	{
+		if (isSuppressed(methodId) || isUntraced())
+			return;
+
 		traceDataCollector.recordLineLevelTrace(methodId, startLine, endLine, lineMap);
 	}
 }
\ No newline at end of file
@@ -20,10 +20,8 @@ package com.codedx.codepulse.agent.trace;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.esotericsoftware.minlog.Log;
@@ -35,15 +33,24 @@ import com.esotericsoftware.minlog.Log;
 public class TraceClassFileTransformer implements ClassFileTransformer
 {
 	private final Pattern selfExclusion;
-	private final List<Pattern> exclusions;
-	private final List<Pattern> inclusions;
+	private volatile PatternSet patterns;
 
-	private final Set<ClassLoader> knownClassLoaders = new HashSet<ClassLoader>();
-	private final Set<ClassLoader> failedClassLoaders = new HashSet<ClassLoader>();
+	// classes that get line-level probes; null means every traced class does
+	private volatile List<Pattern> lineLevelTargets;
 
 	private final Instrumentor instrumentor;
 	private final ClassTransformationListener classTransformationListener;
 
+	// time each thread has spent retransforming classes, see getRetransformNanos
+	private final ThreadLocal<long[]> retransformNanos = new ThreadLocal<long[]>()
+	{
+		@Override
+		protected long[] initialValue()
+		{
+			return new long[1];
+		}
+	};
+
 	/**
 	 * Constructor
 	 * @param exclusions type exclusion regexes
@@ -52,9 +59,6 @@ public class TraceClassFileTransformer implements ClassFileTransformer
 			Instrumentor instrumentor,
 			ClassTransformationListener transListener)
 	{
-		this.exclusions = new LinkedList<Pattern>();
-		this.inclusions = new LinkedList<Pattern>();
-
 		this.instrumentor = instrumentor;
 
 		if (transListener == null)
@@ -69,30 +73,118 @@ public class TraceClassFileTransformer implements ClassFileTransformer
 		}
 
 		this.selfExclusion = Pattern.compile("^(?:com/codedx/codepulse/agent|com/codedx/bytefrog)");
+		this.patterns = new PatternSet(exclusions, inclusions);
+	}
+
+	/**
+	 * Replaces the inclusion and exclusion patterns used for classes
+	 * transformed from now on.
+	 * @param candidates Classes that have already been loaded
+	 * @return The classes among <code>candidates</code> whose include/exclude
+	 *         decision is changed by the new patterns. These need to be
+	 *         retransformed for the new patterns to apply to them.
+	 */
+	public synchronized List<Class<?>> reconfigure(Iterable<String> exclusions,
+			Iterable<String> inclusions, Class<?>[] candidates)
+	{
+		PatternSet oldPatterns = patterns;
+		PatternSet newPatterns = new PatternSet(exclusions, inclusions);
+		patterns = newPatterns;
+
+		List<Class<?>> changed = new LinkedList<Class<?>>();
+		if (oldPatterns.equals(newPatterns))
+			return changed;
+
+		for (Class<?> c : candidates)
+		{
+			if (c.isArray() || c.isPrimitive() || c.getClassLoader() == null)
+				continue;
+
+			String className = c.getName().replace('.', '/');
+			if (shouldExclude(className, oldPatterns) != shouldExclude(className, newPatterns))
+				changed.add(c);
+		}
+		return changed;
+	}
+
+	/**
+	 * Limits line-level probes to the traced classes matching one of
+	 * <code>patterns</code>; the others only get method entry/exit probes.
+	 * Passing <code>null</code> gives every traced class line-level probes.
+	 * @param candidates Classes that have already been loaded
+	 * @return The traced classes among <code>candidates</code> that gain or
+	 *         lose line-level probes. These need to be retransformed for the
+	 *         change to apply to them.
+	 */
+	public synchronized List<Class<?>> setLineLevelTargets(Iterable<String> patterns,
+			Class<?>[] candidates)
+	{
+		List<Pattern> oldTargets = lineLevelTargets;
+		List<Pattern> newTargets = null;
+		if (patterns != null)
+		{
+			newTargets = new LinkedList<Pattern>();
+			for (String pattern : patterns)
+				newTargets.add(Pattern.compile(pattern));
+		}
+		lineLevelTargets = newTargets;
 
-		for (String exclusion : exclusions)
+		List<Class<?>> changed = new LinkedList<Class<?>>();
+		for (Class<?> c : candidates)
 		{
-			this.exclusions.add(Pattern.compile(exclusion));
+			if (!isRetransformCandidate(c))
+				continue;
+
+			String className = c.getName().replace('.', '/');
+			if (isLineLevel(className, oldTargets) != isLineLevel(className, newTargets))
+				changed.add(c);
 		}
+		return changed;
+	}
 
-		for (String inclusion : inclusions)
+	/**
+	 * Checks whether an already-loaded class would be instrumented by this
+	 * transformer, and so is worth retransforming.
+	 */
+	public boolean isRetransformCandidate(Class<?> c)
+	{
+		if (c.isArray() || c.isPrimitive() || c.getClassLoader() == null)
+			return false;
+
+		return !shouldExclude(c.getName().replace('.', '/'));
+	}
+
+	private static boolean isLineLevel(String className, List<Pattern> targets)
+	{
+		if (targets == null)
+			return true;
+
+		for (Pattern target : targets)
 		{
-			this.inclusions.add(Pattern.compile(inclusion));
+			if (target.matcher(className).lookingAt())
+				return true;
 		}
+
+		return false;
 	}
 
 	private boolean shouldExclude(String className)
+	{
+		return shouldExclude(className, patterns);
+	}
+
+	private boolean shouldExclude(String className, PatternSet patterns)
 	{
 		if (selfExclusion.matcher(className).lookingAt())
 			return true;
 
-		for (Pattern inclusion : inclusions)
+		for (Pattern inclusion : patterns.inclusions)
 		{
 			if (inclusion.matcher(className).lookingAt())
 				return false;
 		}
 
-		for (Pattern exclusion : exclusions)
+		for (Pattern exclusion : patterns.exclusions)
 		{
 			if (exclusion.matcher(className).lookingAt())
 				return true;
@@ -101,10 +193,77 @@ public class TraceClassFileTransformer implements ClassFileTransformer
 		return false;
 	}
 
+	/**
+	 * An immutable pair of compiled exclusion and inclusion pattern lists, so
+	 * that both can be swapped out at once.
+	 */
+	private static class PatternSet
+	{
+		final List<Pattern> exclusions = new LinkedList<Pattern>();
+		final List<Pattern> inclusions = new LinkedList<Pattern>();
+		private final List<String> sources = new LinkedList<String>();
+
+		PatternSet(Iterable<String> exclusions, Iterable<String> inclusions)
+		{
+			for (String exclusion : exclusions)
+			{
+				this.exclusions.add(Pattern.compile(exclusion));
+				sources.add("-" + exclusion);
+			}
+
+			for (String inclusion : inclusions)
+			{
+				this.inclusions.add(Pattern.compile(inclusion));
+				sources.add("+" + inclusion);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof PatternSet && sources.equals(((PatternSet) obj).sources);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return sources.hashCode();
+		}
+	}
+
+	/**
+	 * @return The total time the calling thread has spent in
+	 *         {@link #transform} for classes being retransformed. Since the
+	 *         transformer runs on the thread that called
+	 *         <code>retransformClasses</code>, the difference across such a
+	 *         call is the part of it that went to working out the new bytes.
+	 */
+	public long getRetransformNanos()
+	{
+		return retransformNanos.get()[0];
+	}
+
 	@Override
 	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
 			ProtectionDomain protectionDomain, byte[] classfileBuffer)
 			throws IllegalClassFormatException
+	{
+		if (classBeingRedefined == null)
+			return transformClass(loader, className, false, classfileBuffer);
+
+		long start = System.nanoTime();
+		try
+		{
+			return transformClass(loader, className, true, classfileBuffer);
+		}
+		finally
+		{
+			retransformNanos.get()[0] += System.nanoTime() - start;
+		}
+	}
+
+	private byte[] transformClass(ClassLoader loader, String className, boolean isRetransform,
+			byte[] classfileBuffer)
 	{
 		boolean enableTracing = true;
 
@@ -124,23 +283,11 @@ public class TraceClassFileTransformer implements ClassFileTransformer
 			enableTracing = false;
 		}
 
-		// Keep track of all known ClassLoaders.
 		// Since we are adding calls to Trace's methods, we need to ensure
 		// that each ClassLoader knows how to access Trace. If a Class's loader
-		// cannot find Trace, then that Class can't be instrumented.
-
-		// If this is the first time we've seen this loader, do checks...
-		if (enableTracing && !knownClassLoaders.contains(loader))
-		{
-			knownClassLoaders.add(loader);
-
-			if (!instrumentor.isTracingAvailable(loader))
-				failedClassLoaders.add(loader);
-		}
-
-		// If the current class belongs to a "failed" loader, we can't
-		// instrument it.
-		if (enableTracing && failedClassLoaders.contains(loader))
+		// cannot find Trace, then that Class can't be instrumented. The
+		// instrumentor remembers the answer for each loader.
+		if (enableTracing && !instrumentor.isTracingAvailable(loader))
 		{
 			classTransformationListener.classTransformFailed(className, loader, null,
 					"Cannot instrument class. Cannot access Trace class.");
@@ -149,7 +296,8 @@ public class TraceClassFileTransformer implements ClassFileTransformer
 
 		try
 		{
-			byte[] bytes = instrumentor.instrument(loader, className, classfileBuffer, enableTracing);
+			byte[] bytes = instrumentor.instrument(loader, className, classfileBuffer, enableTracing,
+					isLineLevel(className, lineLevelTargets), isRetransform);
 
 			if (enableTracing) classTransformationListener.classTransformed(className, loader);
 
@@ -42,6 +42,21 @@ public class TraceFilter implements Filter {
 	}
 
 	public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
-		chain.doFilter(req, resp);
+		// forwards and includes belong to the request that has already been decided
+		if (!RequestSampler.isEnabled() || Trace.isInRequest() || !(req instanceof HttpServletRequest)) {
+			chain.doFilter(req, resp);
+			return;
+		}
+
+		HttpServletRequest httpReq = (HttpServletRequest) req;
+		String header = RequestSampler.getOptInHeader();
+		String headerValue = header != null ? httpReq.getHeader(header) : null;
+
+		Trace.beginRequest(RequestSampler.shouldTrace(httpReq.getRequestURI(), headerValue));
+		try {
+			chain.doFilter(req, resp);
+		} finally {
+			Trace.endRequest();
+		}
 	}
 }
\ No newline at end of file
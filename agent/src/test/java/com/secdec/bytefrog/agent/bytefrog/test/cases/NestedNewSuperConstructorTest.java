@@ -0,0 +1,53 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test.cases;
+
+/**
+ * A constructor that branches while an object it created is still
+ * uninitialized, before its own super constructor call. The stack map frames
+ * at those branches refer to the location of the 'new' instruction.
+ */
+public class NestedNewSuperConstructorTest
+{
+	public static void main(String[] arguments)
+	{
+		new ChildClass(true);
+	}
+
+	static class Holder
+	{
+		public Holder(int value)
+		{
+		}
+	}
+
+	static class SuperClass
+	{
+		public SuperClass(Holder holder)
+		{
+		}
+	}
+
+	static class ChildClass extends SuperClass
+	{
+		public ChildClass(boolean flag)
+		{
+			super(flag ? new Holder(flag ? 1 : 2) : null);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.id.IdFlags
+import com.codedx.bytefrog.instrumentation.id.IdRegistry
+
+class IdRegistrySpec extends FunSpec with Matchers {
+
+	describe("IdRegistry") {
+		it("should hand out dense ids and find their values across chunks") {
+			val registry = new IdRegistry[String]
+			val ids = for (i <- 0 until 5000) yield registry.add(s"value $i")
+
+			ids shouldBe (0 until 5000)
+			registry.size shouldBe 5000
+			for (i <- 0 until 5000) registry.get(i) shouldBe s"value $i"
+		}
+
+		it("should return null for ids it hasn't handed out") {
+			val registry = new IdRegistry[String]
+			registry.add("only")
+
+			registry.get(-1) shouldBe null
+			registry.get(1) shouldBe null
+			registry.get(100000) shouldBe null
+		}
+	}
+
+	describe("IdFlags") {
+		it("should report only the first set of each flag") {
+			val flags = new IdFlags
+
+			flags.isSet(70000) shouldBe false
+			flags.set(70000) shouldBe true
+			flags.set(70000) shouldBe false
+			flags.isSet(70000) shouldBe true
+			flags.isSet(70001) shouldBe false
+		}
+	}
+}
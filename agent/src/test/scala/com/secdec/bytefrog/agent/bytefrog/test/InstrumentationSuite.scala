@@ -17,6 +17,9 @@
 
 package com.secdec.bytefrog.agent.bytefrog.test
 
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Label
+import org.objectweb.asm.Opcodes._
 import org.scalamock.scalatest.MockFactory
 import org.scalatest.FunSuite
 
@@ -198,4 +201,169 @@ class InstrumentationSuite extends FunSuite with MockFactory with MockHelpers {
 		 */
 			.run()
 	}
-}
\ No newline at end of file
+
+	test("Constructor branching before super constructor call") {
+		TestScript[TernarySuperConstructorTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$SuperClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$SuperClass.<init>", false),
+		MethodVisit(34, 35),
+		MethodVisit(34, 36),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$ChildClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$ChildClass.<init>", false),
+		MethodVisit(33, 43),
+		MethodVisit(33, 44),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$SuperClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$SuperClass.<init>", false),
+		MethodVisit(34, 35),
+		MethodVisit(34, 36),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$ChildClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest$ChildClass.<init>", false),
+		MethodVisit(33, 43),
+		MethodVisit(33, 44),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.TernarySuperConstructorTest.main", false),
+		MethodVisit(32, 28),
+		MethodVisit(32, 29),
+		MethodVisit(32, 30))
+		/*
+		 * ID 31 assigned to <init> ()V 24:24 (compiler-provided, default ctor)
+		 */
+			.run()
+	}
+
+	test("Constructor branching before this constructor call") {
+		TestScript[BranchingThisConstructorTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.<init>", false),
+		MethodVisit(37, 39),
+		MethodVisit(37, 40),
+		MethodVisit(37, 41),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.<init>", false),
+		MethodVisit(36, 35),
+		MethodVisit(36, 36),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingThisConstructorTest.main", false),
+		MethodVisit(35, 30),
+		MethodVisit(35, 31))
+			.run()
+	}
+
+	test("Constructor branching with an uninitialized object before super constructor call") {
+		TestScript[NestedNewSuperConstructorTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$Holder.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$Holder.<init>", false),
+		MethodVisit(42, 35),
+		MethodVisit(42, 36),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$SuperClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$SuperClass.<init>", false),
+		MethodVisit(41, 42),
+		MethodVisit(41, 43),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$ChildClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest$ChildClass.<init>", false),
+		MethodVisit(40, 50),
+		MethodVisit(40, 51),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.NestedNewSuperConstructorTest.main", false),
+		MethodVisit(39, 29),
+		MethodVisit(39, 30))
+		/*
+		 * ID 38 assigned to <init> ()V 25:25 (compiler-provided, default ctor)
+		 */
+			.run()
+	}
+
+	test("Exception throw/bubble by branching constructor with catch") {
+		TestScript[BranchingConstructorThrowTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest$SuperClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest$SuperClass.<init>", false),
+		MethodVisit(46, 42),
+		MethodVisit(46, 43),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest$ChildClass.<init>"),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest$ChildClass.<init>", true),
+		MethodVisit(45, 50),
+		MethodVisit(45, 51),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.BranchingConstructorThrowTest.main", false),
+		MethodVisit(44, 32),
+		MethodVisit(44, 34),
+		MethodVisit(44, 37))
+		/*
+		 * ID 43 assigned to <init> ()V 26:26 (compiler-provided, default ctor)
+		 */
+			.run()
+	}
+
+	/** Generates a class whose `<init>(Z)V` calls `super()` on one branch and `this(0)` on the other,
+	  * the shape Scala and Kotlin emit for constructors with default or computed arguments, and whose
+	  * `main` runs it down both branches. Classes before version 51 get no stack map frames.
+	  */
+	private def multiPathConstructorClass(simpleName: String, version: Int) = {
+		val name = s"com.secdec.bytefrog.agent.bytefrog.test.cases.$simpleName"
+		val internalName = name.replace('.', '/')
+		val cw = new ClassWriter(if (version >= V1_7) ClassWriter.COMPUTE_FRAMES else ClassWriter.COMPUTE_MAXS)
+		cw.visit(version, ACC_PUBLIC | ACC_SUPER, internalName, null, "java/lang/Object", null)
+
+		val branching = cw.visitMethod(ACC_PUBLIC, "<init>", "(Z)V", null, null)
+		val callThis = new Label
+		val done = new Label
+		branching.visitCode()
+		branching.visitVarInsn(ILOAD, 1)
+		branching.visitJumpInsn(IFEQ, callThis)
+		branching.visitVarInsn(ALOAD, 0)
+		branching.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false)
+		branching.visitJumpInsn(GOTO, done)
+		branching.visitLabel(callThis)
+		branching.visitVarInsn(ALOAD, 0)
+		branching.visitInsn(ICONST_0)
+		branching.visitMethodInsn(INVOKESPECIAL, internalName, "<init>", "(I)V", false)
+		branching.visitLabel(done)
+		branching.visitInsn(RETURN)
+		branching.visitMaxs(0, 0)
+		branching.visitEnd()
+
+		val delegate = cw.visitMethod(ACC_PUBLIC, "<init>", "(I)V", null, null)
+		delegate.visitCode()
+		delegate.visitVarInsn(ALOAD, 0)
+		delegate.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false)
+		delegate.visitInsn(RETURN)
+		delegate.visitMaxs(0, 0)
+		delegate.visitEnd()
+
+		val main = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null)
+		main.visitCode()
+		for (branch <- Seq(ICONST_1, ICONST_0)) {
+			main.visitTypeInsn(NEW, internalName)
+			main.visitInsn(DUP)
+			main.visitInsn(branch)
+			main.visitMethodInsn(INVOKESPECIAL, internalName, "<init>", "(Z)V", false)
+			main.visitInsn(POP)
+		}
+		main.visitInsn(RETURN)
+		main.visitMaxs(0, 0)
+		main.visitEnd()
+
+		cw.visitEnd()
+		name -> cw.toByteArray
+	}
+
+	private def multiPathConstructorScript(name: String) = TestScript[AnyRef](classIdentifier, methodIdentifier,
+		MethodEntry(s"$name.main"),
+		MethodEntry(s"$name.<init>"),
+		MethodExit(s"$name.<init>", false),
+		MethodEntry(s"$name.<init>"),
+		MethodEntry(s"$name.<init>"),
+		MethodExit(s"$name.<init>", false),
+		MethodExit(s"$name.<init>", false),
+		MethodExit(s"$name.main", false))
+
+	test("Constructor calling super or this on different branches, with stack map frames") {
+		val (name, bytes) = multiPathConstructorClass("MultiPathConstructorFramesTest", V1_7)
+		multiPathConstructorScript(name).runGenerated(name, bytes)
+	}
+
+	test("Constructor calling super or this on different branches, without stack map frames") {
+		val (name, bytes) = multiPathConstructorClass("MultiPathConstructorNoFramesTest", V1_6)
+		multiPathConstructorScript(name).runGenerated(name, bytes)
+	}
+}
@@ -0,0 +1,68 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test
+
+import java.util.BitSet
+
+import com.codedx.bytefrog.instrumentation.LineLevelMapper
+
+/** Microbenchmark comparing the allocating `map` with the compiled `mapInto` over a large
+  * generated JSP (32 fragments, ~300k output lines). Not run as part of the test suite; run with
+  * `sbt "Agent/test:runMain com.secdec.bytefrog.agent.bytefrog.test.LineLevelMapperBenchmark"`.
+  */
+object LineLevelMapperBenchmark {
+	val Iterations = 1000000
+	val Rounds = 5
+
+	def main(args: Array[String]): Unit = {
+		val (smap, lastLine) = GeneratedJsp.smap(32, 50000)
+
+		val parseStart = System.nanoTime
+		val mapper = LineLevelMapper.parse("index_jsp.java", smap)
+		println(f"parse: ${(System.nanoTime - parseStart) / 1e6}%.1f ms")
+
+		val lines = new BitSet
+		lines.set(0, 40)
+		val mapped = new LineLevelMapper.MappedLines
+		var sink = 0L
+
+		for (round <- 1 to Rounds) {
+			val t0 = System.nanoTime
+			for (i <- 0 until Iterations) {
+				val coverage = mapper.map(100 + (i * 37) % lastLine, lines)
+				if (coverage != null) sink += coverage.length
+			}
+
+			val t1 = System.nanoTime
+			for (i <- 0 until Iterations) {
+				if (mapper.mapInto(100 + (i * 37) % lastLine, lines, mapped)) sink += mapped.getFileCount
+			}
+
+			val t2 = System.nanoTime
+			for (i <- 0 until Iterations) {
+				val start = 100 + (i * 37) % lastLine
+				if (mapper.mapRangeInto(start, start, mapped)) sink += mapped.getMinLine
+			}
+
+			val t3 = System.nanoTime
+			println(s"round $round: map ${(t1 - t0) / Iterations} ns/op, mapInto ${(t2 - t1) / Iterations} ns/op, mapRangeInto (1 line) ${(t3 - t2) / Iterations} ns/op")
+		}
+
+		println(s"($sink)")
+	}
+}
@@ -0,0 +1,178 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test
+
+import java.util.BitSet
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.LineLevelMapper
+import com.codedx.bytefrog.instrumentation.LineLevelMapperCache
+
+object GeneratedJsp {
+	/** Builds an SMAP for a generated servlet `index_jsp.java` with `fragments` included JSP
+	  * files, where each of `sections` line sections maps 2 JSP lines onto 3 output lines each.
+	  * @returns the SMAP and the last output line it maps
+	  */
+	def smap(fragments: Int, sections: Int): (String, Int) = {
+		val s = new StringBuilder("SMAP\nindex_jsp.java\nJSP\n*S JSP\n*F\n")
+		for (f <- 0 until fragments) s ++= s"+ $f fragment$f.jsp\n/WEB-INF/fragment$f.jsp\n"
+		s ++= "*L\n"
+		var out = 100
+		for (i <- 0 until sections) {
+			s ++= s"${i / fragments + 1}#${i % fragments},2:$out,3\n"
+			out += 6
+		}
+		s ++= "*E\n"
+		(s.toString, out - 1)
+	}
+}
+
+class LineLevelMapperSpec extends FunSpec with Matchers {
+
+	val (smap, lastLine) = GeneratedJsp.smap(8, 2000)
+	val mapper = LineLevelMapper.parse("index_jsp.java", smap)
+
+	describe("LineLevelMapper.mapInto") {
+		/** The JSP file and line that `GeneratedJsp.smap(8, _)` maps output line `line` to */
+		def generatedSource(line: Int): Option[(String, Int)] =
+			if (line < 100 || line > lastLine) None
+			else {
+				val section = (line - 100) / 6
+				Some(s"/WEB-INF/fragment${section % 8}.jsp" -> (section / 8 + 1 + (line - 100) % 6 / 3))
+			}
+
+		def lineNumbers(lines: BitSet, firstLine: Int) =
+			Iterator.iterate(lines.nextSetBit(0))(l => lines.nextSetBit(l + 1)).takeWhile(_ >= 0).map(_ + firstLine).toSet
+
+		it("should map arbitrary line bitmaps onto the JSP lines they came from") {
+			val random = new scala.util.Random(40)
+			val mapped = new LineLevelMapper.MappedLines
+
+			for (_ <- 0 until 500) {
+				val start = random.nextInt(lastLine)
+				val lines = new BitSet
+				for (l <- 0 until 64 if random.nextBoolean) lines.set(l)
+
+				val expected = lineNumbers(lines, start).toSeq.flatMap(generatedSource)
+					.groupBy(_._1).map { case (path, hits) => path -> hits.map(_._2).toSet }
+
+				val any = mapper.mapInto(start, lines, mapped)
+				any shouldBe expected.nonEmpty
+				(0 until mapped.getFileCount).map(i => mapped.getPath(i) -> lineNumbers(mapped.getLines(i), 1)).toMap shouldBe expected
+
+				val coverage = Option(mapper.map(start, lines)).map(_.toSeq).getOrElse(Nil)
+				coverage.map(c => c.path -> lineNumbers(c.lines, c.startLine)).toMap shouldBe expected
+			}
+		}
+
+		it("should map the first and last generated lines") {
+			val lines = new BitSet
+			lines.set(0)
+			val mapped = new LineLevelMapper.MappedLines
+
+			mapper.mapInto(100, lines, mapped) shouldBe true
+			mapped.getPath(0) shouldBe "/WEB-INF/fragment0.jsp"
+			lineNumbers(mapped.getLines(0), 1) shouldBe Set(1)
+
+			// section 1999 is the 250th section of fragment 7: JSP lines 250-251
+			mapper.mapInto(lastLine, lines, mapped) shouldBe true
+			mapped.getPath(0) shouldBe "/WEB-INF/fragment7.jsp"
+			lineNumbers(mapped.getLines(0), 1) shouldBe Set(251)
+		}
+
+		it("should report the mapped line range for an output line range") {
+			val mapped = new LineLevelMapper.MappedLines
+
+			// output lines 100-111 are the first two sections: fragment0.jsp 1-2 and fragment1.jsp 1-2
+			mapper.mapRangeInto(100, 111, mapped) shouldBe true
+			mapped.getFileCount shouldBe 2
+			mapped.getMinLine shouldBe 1
+			mapped.getMaxLine shouldBe 2
+
+			mapper.mapRangeInto(1, 99, mapped) shouldBe false
+			mapper.mapRangeInto(lastLine + 1, lastLine + 10, mapped) shouldBe false
+			mapped.isEmpty shouldBe true
+		}
+
+		it("should map nothing for an empty mapper") {
+			val lines = new BitSet
+			lines.set(0, 10)
+
+			LineLevelMapper.empty("Foo.java").mapInto(1, lines, new LineLevelMapper.MappedLines) shouldBe false
+			LineLevelMapper.empty("Foo.java").map(1, lines) shouldBe null
+		}
+	}
+
+	describe("LineLevelMapper.parse") {
+		def mappedLines(mapper: LineLevelMapper, line: Int) = {
+			val mapped = new LineLevelMapper.MappedLines
+			if (mapper.mapRangeInto(line, line, mapped))
+				(0 until mapped.getFileCount).map { i =>
+					val lines = mapped.getLines(i)
+					mapped.getPath(i) -> Iterator.iterate(lines.nextSetBit(0))(l => lines.nextSetBit(l + 1)).takeWhile(_ >= 0).map(_ + 1).toList
+				}.toMap
+			else
+				Map.empty[String, List[Int]]
+		}
+
+		it("should read file ids, repeat counts and increments across strata") {
+			val smap = Seq(
+				"SMAP", "index_jsp.java", "JSP",
+				"*S JSP", "*F", "0 index.jsp", "+ 1 tag.tag", "/WEB-INF/tags/tag.tag",
+				"*L", "1,2:62", "3#1:70,2", "8:80",
+				"*V", "vendor info: 1:2",
+				"*S Other", "*F", "0 other.x", "*L", "10:100",
+				"*E").mkString("\r\n")
+			val mapper = LineLevelMapper.parse("index_jsp.java", smap)
+
+			mappedLines(mapper, 62) shouldBe Map("index.jsp" -> List(1))
+			mappedLines(mapper, 63) shouldBe Map("index.jsp" -> List(2))
+			mappedLines(mapper, 71) shouldBe Map("/WEB-INF/tags/tag.tag" -> List(3))
+			mappedLines(mapper, 80) shouldBe Map("/WEB-INF/tags/tag.tag" -> List(8))
+			mappedLines(mapper, 100) shouldBe Map("other.x" -> List(10))
+		}
+
+		it("should ignore source maps for other output files and embedded strata") {
+			val smap = Seq(
+				"SMAP", "index_jsp.java", "JSP",
+				"*O Inner", "SMAP", "index_jsp.java", "JSP", "*S JSP", "*F", "0 inner.jsp", "*L", "1:1", "*E", "*C Inner",
+				"*S JSP", "*F", "0 index.jsp", "*L", "4:10",
+				"*E").mkString("\n")
+
+			mappedLines(LineLevelMapper.parse("index_jsp.java", smap), 1) shouldBe Map.empty
+			mappedLines(LineLevelMapper.parse("index_jsp.java", smap), 10) shouldBe Map("index.jsp" -> List(4))
+			LineLevelMapper.parse("other_jsp.java", smap).hasMappings shouldBe false
+		}
+
+		it("should produce an empty mapper for a malformed source map") {
+			val smap = "SMAP\nindex_jsp.java\nJSP\n*S JSP\n*F\n0 index.jsp\n*L\n1#3:1\n*E\n"
+			LineLevelMapper.parse("index_jsp.java", smap).hasMappings shouldBe false
+			LineLevelMapper.parse("index_jsp.java", smap.replace("1#3:1", "1:x")).hasMappings shouldBe false
+		}
+
+		it("should share mappers for identical source maps") {
+			val cache = new LineLevelMapperCache(16)
+			val first = cache.get("index_jsp.java", new String(smap))
+			cache.get("index_jsp.java", new String(smap)) should be theSameInstanceAs first
+			cache.get("other_jsp.java", smap) should not be theSameInstanceAs (first)
+			cache.size shouldBe 2
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test
+
+import java.io.StringReader
+import java.io.StringWriter
+import java.util.BitSet
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.LineLevelMapper
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdTable
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+
+class MethodIdTableSpec extends FunSpec with Matchers {
+
+	def roundTrip(table: MethodIdTable) = {
+		val out = new StringWriter
+		table.write(out)
+		MethodIdTable.read(new StringReader(out.toString))
+	}
+
+	describe("MethodIdTable") {
+		it("should read back what it wrote") {
+			val table = new MethodIdTable
+			table.assigned("a.A.run;1;()V", 0)
+			table.assigned("a.A.<init>;1;()V", 7)
+
+			val read = roundTrip(table)
+			read.size shouldBe 2
+			read.lookup("a.A.run;1;()V") shouldBe 0
+			read.lookup("a.A.<init>;1;()V") shouldBe 7
+			read.getIdCount shouldBe 8
+		}
+
+		it("should skip lines it can't parse") {
+			val table = MethodIdTable.read(new StringReader("3\ta.A.run;1;()V\nnot a line\n\tno.id;1;()V\nx\ta.A.bad;1;()V\n"))
+
+			table.size shouldBe 1
+			table.lookup("a.A.run;1;()V") shouldBe 3
+			table.lookup("a.A.bad;1;()V") shouldBe -1
+		}
+
+		it("should keep the first id assigned to a signature") {
+			val table = new MethodIdTable
+			table.assigned("a.A.run;1;()V", 2)
+			table.assigned("a.A.run;1;()V", 5)
+			table.assigned("a.A.other;1;()V", -1)
+
+			table.lookup("a.A.run;1;()V") shouldBe 2
+			table.lookup("a.A.other;1;()V") shouldBe -1
+			table.getIdCount shouldBe 3
+		}
+	}
+
+	describe("MethodIdentifier with a MethodIdTable") {
+		def recordClass(classIdentifier: ClassIdentifier, methods: MethodIdentifier, name: String) = {
+			val classId = classIdentifier.record(name, s"$name.java", LineLevelMapper.empty(s"$name.java"), new BitSet)
+			Seq("a", "b", "c").map(m => methods.record(classId, 1, m, "()V", 1, 2))
+		}
+
+		it("should give a restarted agent's methods the ids they had before") {
+			val table = new MethodIdTable
+			val before = {
+				val classes = new ClassIdentifier
+				val methods = new MethodIdentifier(classes, table)
+				recordClass(classes, methods, "app/First") ++ recordClass(classes, methods, "app/Second")
+			}
+
+			// classes load in a different order after the restart
+			val restarted = roundTrip(table)
+			val classes = new ClassIdentifier
+			val methods = new MethodIdentifier(classes, restarted)
+			val second = recordClass(classes, methods, "app/Second")
+			val first = recordClass(classes, methods, "app/First")
+
+			first ++ second shouldBe before
+		}
+
+		it("should give new methods ids past the ones it remembers, and remember them") {
+			val table = new MethodIdTable
+			table.assigned(MethodIdentifier.signature("app/Old", 1, "a", "()V"), 10)
+
+			val classes = new ClassIdentifier
+			val methods = new MethodIdentifier(classes, table)
+			val ids = recordClass(classes, methods, "app/New")
+
+			all(ids) should be > 10
+			ids.distinct.size shouldBe 3
+			table.lookup(MethodIdentifier.signature("app/New", 1, "b", "()V")) shouldBe ids(1)
+		}
+
+		it("should give the same class from a second class loader its own ids") {
+			val table = new MethodIdTable
+			val classes = new ClassIdentifier
+			val methods = new MethodIdentifier(classes, table)
+
+			val first = recordClass(classes, methods, "app/Shared")
+			val second = recordClass(classes, methods, "app/Shared")
+
+			first.toSet intersect second.toSet shouldBe empty
+			table.lookup(MethodIdentifier.signature("app/Shared", 1, "a", "()V")) shouldBe first(0)
+		}
+	}
+}
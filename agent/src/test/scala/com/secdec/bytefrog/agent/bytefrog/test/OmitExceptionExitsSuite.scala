@@ -0,0 +1,63 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.bytefrog.test
+
+import org.scalatest.FunSuite
+
+import com.secdec.bytefrog.agent.bytefrog.test.cases._
+import com.secdec.bytefrog.agent.bytefrog.test.util._
+import com.secdec.bytefrog.agent.bytefrog.test.util.TestScriptEntry._
+
+import com.codedx.bytefrog.instrumentation.id._
+
+/** Instrumentation without the top-level try/catch wrapper: methods that throw get an entry but
+  * no exit. The lines they covered are still sent when they throw.
+  */
+class OmitExceptionExitsSuite extends FunSuite {
+	val classIdentifier = new ClassIdentifier
+	val methodIdentifier = new MethodIdentifier
+	implicit val runner = new TestRunner(classIdentifier, methodIdentifier, exceptionExits = false)
+
+	test("Exception throw/bubble with catch, without exception exits") {
+		TestScript[ExceptionBubbleTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.ExceptionBubbleTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.ExceptionBubbleTest.thrower"),
+		MethodVisit(2, 42),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.ExceptionBubbleTest.main", false),
+		MethodVisit(1, 33),
+		MethodVisit(1, 35),
+		MethodVisit(1, 38))
+		/*
+		 * ID 0 assigned to <init> ()V 27:27 (compiler-provided, default ctor)
+		 */
+			.run()
+	}
+
+	test("Exception throw/bubble by constructor with catch, without exception exits") {
+		TestScript[ConstructorThrowTest](classIdentifier, methodIdentifier,
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.ConstructorThrowTest.main"),
+		MethodEntry("com.secdec.bytefrog.agent.bytefrog.test.cases.ConstructorThrowTest.<init>"),
+		MethodVisit(4, 41),
+		MethodVisit(4, 42),
+		MethodExit("com.secdec.bytefrog.agent.bytefrog.test.cases.ConstructorThrowTest.main", false),
+		MethodVisit(3, 33),
+		MethodVisit(3, 35),
+		MethodVisit(3, 38))
+			.run()
+	}
+}
\ No newline at end of file
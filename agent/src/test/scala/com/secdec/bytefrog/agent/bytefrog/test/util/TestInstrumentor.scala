@@ -22,6 +22,7 @@ import java.io.FileInputStream
 import java.io.IOException
 import java.net.URI
 import java.net.URLClassLoader
+import scala.collection.mutable
 import org.objectweb.asm.ClassReader
 
 import com.codedx.codepulse.agent.trace.Instrumentor
@@ -31,7 +32,12 @@ import com.codedx.bytefrog.instrumentation.id._
   *
   * @author robertf
   */
-class TestInstrumentor(classIdentifier: ClassIdentifier, methodIdentifier: MethodIdentifier) {
+class TestInstrumentor(classIdentifier: ClassIdentifier, methodIdentifier: MethodIdentifier, exceptionExits: Boolean = true) {
+
+	/** Classes generated by the tests themselves, which are instrumented from these bytes rather than
+	  * from a class file
+	  */
+	private val generatedClasses = mutable.Map[String, Array[Byte]]()
 
 	/** An internal class loader that will prefer to load its own instrumented versions */
 	private object instrumentingLoader extends ClassLoader(getClass.getClassLoader) {
@@ -77,11 +83,16 @@ class TestInstrumentor(classIdentifier: ClassIdentifier, methodIdentifier: Metho
 
 		override def findClass(name: String): Class[_ <: Any] = {
 			val className = name
-			val classFile = findClassFile(className)
-			val classLoader = new URLClassLoader(Array(classFile.toURL))
-			val classReader = new ClassReader(new FileInputStream(classFile))
+			val (classLoader, classReader) = generatedClasses.synchronized { generatedClasses get name } match {
+				case Some(generated) =>
+					(getClass.getClassLoader, new ClassReader(generated))
+
+				case None =>
+					val classFile = findClassFile(className)
+					(new URLClassLoader(Array(classFile.toURL)), new ClassReader(new FileInputStream(classFile)))
+			}
 			val enableTrace = true
-			val bytes = new Instrumentor(classIdentifier, methodIdentifier, null).instrument(classLoader, className, classReader, enableTrace)
+			val bytes = new Instrumentor(classIdentifier, methodIdentifier, null, exceptionExits).instrument(classLoader, className, classReader, enableTrace)
 			if (bytes != null)
 				defineClass(name, bytes, 0, bytes.length)
 			else
@@ -89,8 +100,12 @@ class TestInstrumentor(classIdentifier: ClassIdentifier, methodIdentifier: Metho
 		}
 	}
 
-	def getInstrumentedClass[T](implicit m: Manifest[T]): Class[_ <: Any] = {
-		val name = m.runtimeClass.getName
-		instrumentingLoader loadClass name
+	def getInstrumentedClass[T](implicit m: Manifest[T]): Class[_ <: Any] = getInstrumentedClass(m.runtimeClass.getName)
+
+	def getInstrumentedClass(name: String): Class[_ <: Any] = instrumentingLoader loadClass name
+
+	/** Makes a generated class available for instrumentation. Its name must be in the test cases package. */
+	def addGeneratedClass(name: String, bytes: Array[Byte]) = generatedClasses.synchronized {
+		generatedClasses(name) = bytes
 	}
 }
\ No newline at end of file
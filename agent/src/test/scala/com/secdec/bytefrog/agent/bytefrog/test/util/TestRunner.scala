@@ -29,15 +29,23 @@ import com.codedx.bytefrog.instrumentation.id._
   *
   * @author robertf
   */
-class TestRunner(classIdentifier: ClassIdentifier, methodIdentifier: MethodIdentifier) {
-	private val instrumentor = new TestInstrumentor(classIdentifier, methodIdentifier)
+class TestRunner(classIdentifier: ClassIdentifier, methodIdentifier: MethodIdentifier, exceptionExits: Boolean = true) {
+	private val instrumentor = new TestInstrumentor(classIdentifier, methodIdentifier, exceptionExits)
 
 	def runTest[T](arguments: java.lang.String*)(implicit dataCollector: TraceDataCollector, m: Manifest[T]) {
+		runMain(instrumentor.getInstrumentedClass[T], arguments)
+	}
+
+	/** Instruments and runs a class generated by the test, rather than one compiled from the test cases */
+	def runGeneratedTest(name: String, bytes: Array[Byte], arguments: java.lang.String*)(implicit dataCollector: TraceDataCollector) {
+		instrumentor.addGeneratedClass(name, bytes)
+		runMain(instrumentor.getInstrumentedClass(name), arguments)
+	}
+
+	private def runMain(c: => Class[_ <: Any], arguments: Seq[java.lang.String])(implicit dataCollector: TraceDataCollector) {
 		try {
 			Trace setTraceDataCollector dataCollector
 
-			val c = instrumentor.getInstrumentedClass[T]
-
 			val main = c.getMethod("main", classOf[Array[java.lang.String]])
 
 			main.invoke(null, arguments.toArray)
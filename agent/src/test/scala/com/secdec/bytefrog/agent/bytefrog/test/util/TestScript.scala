@@ -80,8 +80,17 @@ class TestScript[T](classIdentifier: ClassIdentifier, methodIdentifier: MethodId
 	private implicit val dataCollector = new TraceDataCollectorImpl(data, classIdentifier, methodIdentifier)
 
 	def run(arguments: java.lang.String*) {
+		follow { runner.runTest[T](arguments: _*) }
+	}
+
+	/** Runs a class generated by the test (see `TestRunner.runGeneratedTest`) in place of `T` */
+	def runGenerated(name: String, bytes: Array[Byte], arguments: java.lang.String*) {
+		follow { runner.runGeneratedTest(name, bytes, arguments: _*) }
+	}
+
+	private def follow(test: => Unit) {
 		try {
-			runner.runTest[T](arguments: _*)
+			test
 		} catch {
 			case e: Throwable => e.printStackTrace() // ignore
 		} finally {
@@ -0,0 +1,129 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.control.test
+
+import java.util.Arrays
+
+import org.scalamock.scalatest.MockFactory
+import org.scalatest.FunSpec
+
+import com.codedx.codepulse.agent.control.ControlMessageProcessorV2
+import com.codedx.codepulse.agent.control.ControlMessageHandler
+import com.codedx.codepulse.agent.control.ConfigurationReader
+import com.codedx.codepulse.agent.control.ConfigurationHandler
+import com.secdec.bytefrog.agent.util.ErrorEnforcement
+import com.secdec.bytefrog.agent.util.ControlSimulation
+import com.codedx.codepulse.agent.common.message.MessageProtocol
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+
+class ControlMessageProcessorV2Suite extends FunSpec with ControlSimulation with ErrorEnforcement {
+	val protocol: MessageProtocol = new MessageProtocolV5
+
+	describe("control message processor v2") {
+		it("should call onSuppressMethods with the batch of method ids") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onSuppressMethods _).expects(where { (ids: Array[Int]) => ids.toSeq == Seq(5, 8) }).once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				// only the middle two ids are part of the batch
+				protocol.writeSuppressMethods(stream, Array(3, 5, 8, 13), 1, 2)
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+
+		it("should call onRearmMethods for rearm messages") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onRearmMethods _).expects.once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				protocol.writeRearmMethods(stream)
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+
+		it("should call onSetSamplingInterval with the new interval") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onSetSamplingInterval _).expects(100).once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				protocol.writeSetSamplingInterval(stream, 100)
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+
+		it("should call onUpdateTraceFilters with the new patterns, in order") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onUpdateTraceFilters _).expects(Arrays.asList("^com/a/", "^com/b/"), Arrays.asList("^com/c/")).once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				protocol.writeUpdateTraceFilters(stream, Arrays.asList("^com/a/", "^com/b/"), Arrays.asList("^com/c/"))
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+
+		it("should call onSetLineLevelTargets with the new patterns") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onSetLineLevelTargets _).expects(Arrays.asList("^com/a/[^/]+$", "^com/b/C")).once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				protocol.writeSetLineLevelTargets(stream, Arrays.asList("^com/a/[^/]+$", "^com/b/C"))
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+
+		it("should still handle version 1 messages") {
+			enforceNoErrors
+
+			val messageHandler = mock[ControlMessageHandler]
+			(messageHandler.onPause _).expects.once
+
+			val processor = new ControlMessageProcessorV2(mock[ConfigurationReader], messageHandler, mock[ConfigurationHandler])
+
+			simulateHqWriteToAgent { stream =>
+				protocol.writePause(stream)
+			} { stream =>
+				processor.processIncomingMessage(stream)
+			}
+		}
+	}
+}
@@ -17,13 +17,17 @@
 
 package com.secdec.bytefrog.agent.control.test
 
+import java.util.Arrays
+
 import org.scalatest.FunSpec
 import org.scalatest._
 import org.scalatest.Matchers._
 import org.scalamock.scalatest.MockFactory
 
+import com.codedx.codepulse.agent.control.LineLevelListener
 import com.codedx.codepulse.agent.control.ModeChangeListener
 import com.codedx.codepulse.agent.control.StateManager
+import com.codedx.codepulse.agent.control.TraceFilterListener
 import com.secdec.bytefrog.agent.util.ErrorEnforcement
 import com.secdec.bytefrog.agent.util.MockHelpers
 import com.secdec.bytefrog.agent.util.StateManagerHelpers
@@ -227,6 +231,42 @@ class StateManagerSuite extends FunSpec with MockFactory with Matchers with Erro
 				enforceError(expectedError)
 				cmh.onError(errorMessage)
 			}
+
+			it("should pass line-level targets to listeners added after they arrive") {
+				enforceNoErrors
+
+				val sm = new StateManager
+				val cmh = sm.getControlMessageHandler
+
+				val early = mock[LineLevelListener]
+				val late = mock[LineLevelListener]
+				(early.onLineLevelTargetsChange _).expects(Arrays.asList("^a/")).once
+				(early.onLineLevelTargetsChange _).expects(Arrays.asList("^b/")).once
+				(late.onLineLevelTargetsChange _).expects(Arrays.asList("^a/")).once
+				(late.onLineLevelTargetsChange _).expects(Arrays.asList("^b/")).once
+
+				sm.addLineLevelListener(early)
+				cmh.onSetLineLevelTargets(Arrays.asList("^a/"))
+				sm.addLineLevelListener(late)
+				cmh.onSetLineLevelTargets(Arrays.asList("^b/"))
+			}
+
+			it("should pass the latest trace filters to listeners added after they arrive") {
+				enforceNoErrors
+
+				val sm = new StateManager
+				val cmh = sm.getControlMessageHandler
+
+				val beforeAnyUpdate = mock[TraceFilterListener]
+				val late = mock[TraceFilterListener]
+				(beforeAnyUpdate.onTraceFiltersChange _).expects(*, *).never
+				(late.onTraceFiltersChange _).expects(Arrays.asList("^b/"), Arrays.asList("^b/c/")).once
+
+				new StateManager().addTraceFilterListener(beforeAnyUpdate)
+				cmh.onUpdateTraceFilters(Arrays.asList("^a/"), Arrays.asList("^a/c/"))
+				cmh.onUpdateTraceFilters(Arrays.asList("^b/"), Arrays.asList("^b/c/"))
+				sm.addTraceFilterListener(late)
+			}
 		}
 	}
 }
\ No newline at end of file
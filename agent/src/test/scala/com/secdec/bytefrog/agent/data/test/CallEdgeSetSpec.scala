@@ -0,0 +1,91 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.data.CallEdgeSet
+
+class CallEdgeSetSpec extends FunSpec with Matchers {
+
+	def unreported(edges: CallEdgeSet, max: Int = 100000): Set[(Int, Int)] = {
+		val callers = new Array[Int](max)
+		val callees = new Array[Int](max)
+		val n = edges.collectUnreported(callers, callees, max)
+		(0 until n).map(i => callers(i) -> callees(i)).toSet
+	}
+
+	describe("CallEdgeSet") {
+
+		it("should add each edge once") {
+			val edges = new CallEdgeSet
+			edges.add(1, 2) shouldBe true
+			edges.add(1, 2) shouldBe false
+			edges.add(2, 1) shouldBe true
+			edges.add(0, 0) shouldBe true
+			edges.size shouldBe 3
+
+			unreported(edges) shouldBe Set(1 -> 2, 2 -> 1, 0 -> 0)
+		}
+
+		it("should only collect the edges not yet marked as reported") {
+			val edges = new CallEdgeSet
+			edges.add(1, 2)
+			edges.add(1, 3)
+			edges.markReported(1, 2)
+
+			unreported(edges) shouldBe Set(1 -> 3)
+
+			// still in the set
+			edges.add(1, 2) shouldBe false
+			unreported(edges) shouldBe Set(1 -> 3)
+		}
+
+		it("should collect no more than asked for") {
+			val edges = new CallEdgeSet
+			for (i <- 0 until 10) edges.add(i, i + 1)
+
+			unreported(edges, 4).size shouldBe 4
+		}
+
+		it("should keep every edge, and its reported flag, when it grows") {
+			val edges = new CallEdgeSet(16)
+			edges.add(7, 7)
+			edges.markReported(7, 7)
+			for (i <- 0 until 1000) edges.add(i, i * 31)
+
+			edges.size shouldBe 1001
+			for (i <- 0 until 1000) edges.add(i, i * 31) shouldBe false
+			unreported(edges) shouldBe (0 until 1000).map(i => i -> i * 31).toSet
+		}
+
+		it("should not lose edges added from several threads while it grows") {
+			val edges = new CallEdgeSet(16)
+			val threads = for (t <- 0 until 4) yield new Thread(new Runnable {
+				def run = for (i <- 0 until 5000) edges.add(i % 2000, i)
+			})
+			threads.foreach(_.start())
+			threads.foreach(_.join())
+
+			edges.size shouldBe 5000
+			unreported(edges) shouldBe (0 until 5000).map(i => (i % 2000) -> i).toSet
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.data.CallStack
+
+class CallStackSpec extends FunSpec with Matchers {
+
+	describe("CallStack") {
+
+		it("should pop the innermost call to the exiting method, with its start time") {
+			val stack = new CallStack
+			stack.push(1, 100L)
+			stack.push(2, 200L)
+			stack.peek shouldBe 2
+
+			val frame = stack.pop(2)
+			frame shouldBe 1
+			stack.startTime(frame) shouldBe 200L
+			stack.peek shouldBe 1
+
+			stack.startTime(stack.pop(1)) shouldBe 100L
+			stack.peek shouldBe -1
+		}
+
+		it("should match a recursive exit to the innermost entry") {
+			val stack = new CallStack
+			stack.push(1, 100L)
+			stack.push(1, 200L)
+
+			stack.startTime(stack.pop(1)) shouldBe 200L
+			stack.startTime(stack.pop(1)) shouldBe 100L
+		}
+
+		it("should drop the calls nested in an exiting call whose exits were lost") {
+			val stack = new CallStack
+			stack.push(1, 100L)
+			stack.push(2, 200L)
+			stack.push(3, 300L)
+
+			stack.startTime(stack.pop(1)) shouldBe 100L
+			stack.peek shouldBe -1
+			stack.pop(3) shouldBe -1
+		}
+
+		it("should leave the stack alone for an exit with no matching entry") {
+			val stack = new CallStack
+			stack.push(1, 100L)
+
+			stack.pop(2) shouldBe -1
+			stack.peek shouldBe 1
+		}
+
+		it("should count calls nested too deeply, without storing them") {
+			val stack = new CallStack
+			for (i <- 0 until CallStack.MaxDepth) stack.push(i, i)
+			stack.push(-5, 0L)
+			stack.push(-6, 0L)
+
+			stack.peek shouldBe -1
+			stack.pop(-6) shouldBe -1
+			stack.pop(-5) shouldBe -1
+
+			val last = CallStack.MaxDepth - 1
+			stack.peek shouldBe last
+			stack.startTime(stack.pop(last)) shouldBe last.toLong
+		}
+
+		it("should make room by dropping the oldest calls, if created to evict") {
+			val stack = new CallStack(true)
+			for (i <- 0 until CallStack.MaxDepth) stack.push(i, i)
+			stack.push(CallStack.MaxDepth, CallStack.MaxDepth)
+
+			stack.peek shouldBe CallStack.MaxDepth
+			stack.startTime(stack.pop(CallStack.MaxDepth)) shouldBe CallStack.MaxDepth.toLong
+
+			// the oldest half is gone
+			stack.pop(CallStack.EvictCount - 1) shouldBe -1
+			stack.startTime(stack.pop(CallStack.EvictCount)) shouldBe CallStack.EvictCount.toLong
+			stack.peek shouldBe -1
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.DurationBuckets
+import com.codedx.codepulse.agent.data.DurationHistograms
+
+class DurationHistogramsSpec extends FunSpec with Matchers {
+
+	/** method id -> (bucket -> count) */
+	def histograms(harvest: DurationHistograms.Harvest): Map[Int, Map[Int, Int]] =
+		(0 until harvest.size).map { i =>
+			val buckets = for (e <- harvest.offsets(i) until harvest.offsets(i + 1))
+				yield harvest.buckets(e).toInt -> harvest.counts(e)
+			harvest.methodIds(i) -> buckets.toMap
+		}.toMap
+
+	describe("DurationHistograms") {
+
+		it("should count durations per method and bucket, including far apart method ids") {
+			val histograms = new DurationHistograms
+			histograms.record(5, 0)
+			histograms.record(5, 1)
+			histograms.record(5, 1)
+			histograms.record(5, 100)
+			histograms.record(70, 5)
+			histograms.record(100000, 1000000)
+
+			this.histograms(histograms.harvest()) shouldBe Map(
+				5 -> Map(0 -> 1, 1 -> 2, DurationBuckets.bucketOf(100) -> 1),
+				70 -> Map(DurationBuckets.bucketOf(5) -> 1),
+				100000 -> Map(DurationBuckets.bucketOf(1000000) -> 1))
+		}
+
+		it("should harvest the growth since the last commit") {
+			val histograms = new DurationHistograms
+			histograms.record(1, 10)
+			histograms.record(2, 10)
+
+			val first = histograms.harvest()
+			this.histograms(first) shouldBe Map(1 -> Map(6 -> 1), 2 -> Map(6 -> 1))
+			histograms.commit(first, 0, first.size)
+
+			histograms.record(1, 10)
+			histograms.record(1, 20)
+			this.histograms(histograms.harvest()) shouldBe Map(1 -> Map(6 -> 1, 8 -> 1))
+		}
+
+		it("should harvest nothing when nothing was recorded since the last commit") {
+			val histograms = new DurationHistograms
+			histograms.record(3, 42)
+			val harvest = histograms.harvest()
+			histograms.commit(harvest, 0, harvest.size)
+
+			histograms.harvest().size shouldBe 0
+		}
+
+		it("should report uncommitted buckets again") {
+			val histograms = new DurationHistograms
+			histograms.record(1, 3)
+			histograms.record(2, 3)
+
+			val first = histograms.harvest()
+			first.methodIds(0) shouldBe 1
+			histograms.commit(first, 0, 1)
+
+			histograms.record(2, 4)
+			this.histograms(histograms.harvest()) shouldBe Map(2 -> Map(3 -> 1, 4 -> 1))
+		}
+
+		it("should harvest more methods and buckets than its arrays start out with") {
+			val histograms = new DurationHistograms
+			for (m <- 0 until 200; micros <- Seq(1L, 10L, 1000L))
+				histograms.record(m, micros)
+
+			val harvested = this.histograms(histograms.harvest())
+			harvested.size shouldBe 200
+			for (m <- 0 until 200) harvested(m) shouldBe Map(1 -> 1, 6 -> 1, 19 -> 1)
+		}
+
+		it("should not lose durations from threads recording the same methods at once") {
+			val histograms = new DurationHistograms(4)
+			val threads = for (t <- 0 until 8) yield new Thread(new Runnable {
+				def run = for (i <- 0 until 10000) histograms.record(i % 300, i % 7)
+			})
+			threads.foreach(_.start())
+			threads.foreach(_.join())
+
+			val harvested = this.histograms(histograms.harvest())
+			harvested.size shouldBe 300
+			harvested.values.map(_.values.sum).sum shouldBe 80000
+		}
+	}
+}
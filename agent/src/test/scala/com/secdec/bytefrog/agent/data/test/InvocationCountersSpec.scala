@@ -0,0 +1,94 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.data.InvocationCounters
+
+class InvocationCountersSpec extends FunSpec with Matchers {
+
+	def deltas(harvest: InvocationCounters.Harvest): Map[Int, Long] =
+		(0 until harvest.size).map(i => harvest.methodIds(i) -> harvest.deltas(i)).toMap
+
+	describe("InvocationCounters") {
+
+		it("should count invocations per method, including far apart method ids") {
+			val counters = new InvocationCounters
+			for (i <- 1 to 3) counters.increment(7)
+			counters.increment(100000)
+
+			counters.get(7) shouldBe 3L
+			counters.get(100000) shouldBe 1L
+			counters.get(8) shouldBe 0L
+			counters.get(5000000) shouldBe 0L
+		}
+
+		it("should harvest the growth since the last commit") {
+			val counters = new InvocationCounters
+			counters.increment(1)
+			counters.increment(1)
+			counters.increment(2000)
+
+			val first = counters.harvest()
+			deltas(first) shouldBe Map(1 -> 2L, 2000 -> 1L)
+			counters.commit(first, 0, first.size)
+
+			counters.increment(1)
+			deltas(counters.harvest()) shouldBe Map(1 -> 1L)
+		}
+
+		it("should harvest nothing when nothing was counted since the last commit") {
+			val counters = new InvocationCounters
+			counters.increment(3)
+			val harvest = counters.harvest()
+			counters.commit(harvest, 0, harvest.size)
+
+			counters.harvest().size shouldBe 0
+		}
+
+		it("should report uncommitted deltas again") {
+			val counters = new InvocationCounters
+			counters.increment(1)
+			counters.increment(2)
+
+			val first = counters.harvest()
+			first.methodIds(0) shouldBe 1
+			counters.commit(first, 0, 1)
+
+			counters.increment(2)
+			deltas(counters.harvest()) shouldBe Map(2 -> 2L)
+		}
+
+		it("should not lose counts from threads counting the same methods at once") {
+			val counters = new InvocationCounters(4)
+			val threads = for (t <- 0 until 8) yield new Thread(new Runnable {
+				def run = for (i <- 0 until 10000) counters.increment(i % 3000)
+			})
+			threads.foreach(_.start())
+			threads.foreach(_.join())
+
+			val harvested = deltas(counters.harvest())
+			harvested.size shouldBe 3000
+			harvested.values.sum shouldBe 80000L
+			for (m <- 0 until 3000) counters.get(m) shouldBe harvested(m)
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import java.util.BitSet
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.common.message.AgentOperationMode
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.agent.data.CallStack
+import com.codedx.codepulse.agent.data.SamplingTraceDataCollector
+import com.codedx.codepulse.agent.message.MessageDealer
+import com.codedx.codepulse.agent.trace.TraceDataCollector
+
+class SamplingTraceDataCollectorSpec extends FunSpec with Matchers {
+
+	class RecordingCollector extends TraceDataCollector {
+		var events = List.empty[String]
+		def methodEntry(methodId: Int): Unit = events :+= s"enter $methodId"
+		def methodExit(methodId: Int, exThrown: Boolean): Unit = events :+= s"exit $methodId"
+		def recordLineLevelTrace(methodId: Int, startLine: Int, endLine: Int, lineMap: BitSet): Unit = events :+= s"lines $methodId"
+	}
+
+	class RecordingDealer extends MessageDealer(new MessageProtocolV5, null, new ClassIdentifier, new MethodIdentifier) {
+		var intervals = List.empty[Int]
+		override def sendSamplingInterval(interval: Int): Unit = intervals :+= interval
+	}
+
+	def call(collector: TraceDataCollector, methodId: Int)(body: => Unit): Unit = {
+		collector.methodEntry(methodId)
+		body
+		collector.methodExit(methodId, false)
+	}
+
+	describe("SamplingTraceDataCollector") {
+
+		it("should pass on every Nth call, starting with the first") {
+			val delegate = new RecordingCollector
+			val sampler = new SamplingTraceDataCollector(delegate, new RecordingDealer, 3)
+
+			for (i <- 1 to 9) call(sampler, i) {}
+
+			delegate.events shouldBe List("enter 1", "exit 1", "enter 4", "exit 4", "enter 7", "exit 7")
+		}
+
+		it("should pass on the exits of exactly the calls whose entries it passed on") {
+			val delegate = new RecordingCollector
+			val sampler = new SamplingTraceDataCollector(delegate, new RecordingDealer, 2)
+
+			call(sampler, 1) {
+				call(sampler, 2) {}
+				call(sampler, 3) {}
+			}
+
+			delegate.events shouldBe List("enter 1", "enter 3", "exit 3", "exit 1")
+		}
+
+		it("should keep calls paired when exits by exception aren't reported") {
+			val delegate = new RecordingCollector
+			val sampler = new SamplingTraceDataCollector(delegate, new RecordingDealer, 2, true)
+
+			call(sampler, 1) {
+				// 2 throws, and its exit is never seen
+				sampler.methodEntry(2)
+				call(sampler, 3) {}
+			}
+
+			delegate.events shouldBe List("enter 1", "enter 3", "exit 3", "exit 1")
+		}
+
+		it("should pass on calls nested too deeply to remember, along with their exits") {
+			val delegate = new RecordingCollector
+			val sampler = new SamplingTraceDataCollector(delegate, new RecordingDealer, 1000)
+
+			val depth = CallStack.MaxDepth + 2
+			for (i <- 0 until depth) sampler.methodEntry(i)
+			for (i <- (0 until depth).reverse) sampler.methodExit(i, false)
+
+			val deep = Seq(CallStack.MaxDepth, CallStack.MaxDepth + 1)
+			delegate.events shouldBe
+				(Seq(0) ++ deep).map("enter " + _) ++ (deep.reverse :+ 0).map("exit " + _)
+		}
+
+		it("should not sample line level traces") {
+			val delegate = new RecordingCollector
+			val sampler = new SamplingTraceDataCollector(delegate, new RecordingDealer, 1000)
+
+			for (i <- 1 to 3) sampler.recordLineLevelTrace(i, 1, 2, new BitSet)
+
+			delegate.events shouldBe List("lines 1", "lines 2", "lines 3")
+		}
+
+		it("should apply and report an interval change, even from an interval of 1") {
+			val delegate = new RecordingCollector
+			val dealer = new RecordingDealer
+			val sampler = new SamplingTraceDataCollector(delegate, dealer, 1)
+
+			call(sampler, 1) {}
+			sampler.getSamplingIntervalListener.onSamplingIntervalChange(2)
+			for (i <- 2 to 5) call(sampler, i) {}
+
+			dealer.intervals shouldBe List(2)
+			sampler.getInterval shouldBe 2
+			delegate.events shouldBe List("enter 1", "exit 1", "enter 2", "exit 2", "enter 4", "exit 4")
+		}
+
+		it("should report the initial interval once, when tracing first starts") {
+			val dealer = new RecordingDealer
+			val sampler = new SamplingTraceDataCollector(new RecordingCollector, dealer, 5)
+			val listener = sampler.getModeChangeListener
+
+			listener.onModeChange(AgentOperationMode.Initializing, AgentOperationMode.Tracing)
+			listener.onModeChange(AgentOperationMode.Tracing, AgentOperationMode.Paused)
+			listener.onModeChange(AgentOperationMode.Paused, AgentOperationMode.Tracing)
+
+			dealer.intervals shouldBe List(5)
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.data.test
+
+import java.util.Collections
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1
+import com.codedx.codepulse.agent.common.message.AgentOperationMode
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.agent.data.TraceDataCollectors
+import com.codedx.codepulse.agent.message.MessageDealer
+
+class TraceDataCollectorsSpec extends FunSpec with Matchers {
+
+	class RecordingDealer extends MessageDealer(new MessageProtocolV5, null, new ClassIdentifier, new MethodIdentifier) {
+		var events = List.empty[String]
+		override def sendMethodEntry(methodId: Int): Unit = synchronized { events :+= s"enter $methodId" }
+		override def sendMethodExit(methodId: Int, exThrown: Boolean): Unit = synchronized { events :+= s"exit $methodId" }
+		override def sendSamplingInterval(interval: Int): Unit = synchronized { events :+= s"interval $interval" }
+		override def sendMethodCounts(methodIds: Array[Int], deltas: Array[Long], count: Int): Int = synchronized {
+			for (i <- 0 until count) events :+= s"count ${methodIds(i)} ${deltas(i)}"
+			count
+		}
+	}
+
+	def config(countInvocations: Boolean, samplingInterval: Int) = new RuntimeAgentConfigurationV1(0.toByte, 1000,
+		Collections.emptyList[String], Collections.emptyList[String], 1024 * 1024, 5, 1, null,
+		countInvocations, false, false, false, samplingInterval, false, false)
+
+	describe("TraceDataCollectors") {
+
+		it("should send what the old chain gathered when it is replaced") {
+			val dealer = new RecordingDealer
+			val collectors = new TraceDataCollectors(dealer, config(true, 1))
+
+			val provisional = collectors.getCollector
+			provisional.methodEntry(3)
+			provisional.methodExit(3, false)
+
+			val replacement = collectors.replace(config(false, 1))
+			dealer.events shouldBe List("count 3 1")
+
+			replacement should not be theSameInstanceAs(provisional)
+			collectors.getCollector should be theSameInstanceAs (replacement)
+
+			replacement.methodEntry(4)
+			replacement.methodExit(4, false)
+			dealer.events shouldBe List("count 3 1", "enter 4", "exit 4")
+		}
+
+		it("should pass mode and interval changes on to the chain that replaced the first one") {
+			val dealer = new RecordingDealer
+			val collectors = new TraceDataCollectors(dealer, config(false, 1))
+			val modeListener = collectors.getModeChangeListener
+			val intervalListener = collectors.getSamplingIntervalListener
+
+			collectors.replace(config(false, 4))
+			modeListener.onModeChange(AgentOperationMode.Initializing, AgentOperationMode.Tracing)
+			dealer.events shouldBe List("interval 4")
+
+			intervalListener.onSamplingIntervalChange(2)
+			dealer.events shouldBe List("interval 4", "interval 2")
+
+			val collector = collectors.getCollector
+			for (id <- 1 to 4) {
+				collector.methodEntry(id)
+				collector.methodExit(id, false)
+			}
+			dealer.events.drop(2) shouldBe List("enter 1", "exit 1", "enter 3", "exit 3")
+		}
+	}
+}
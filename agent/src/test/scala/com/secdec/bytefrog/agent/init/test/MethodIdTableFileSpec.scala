@@ -0,0 +1,91 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.init.test
+
+import java.io.File
+import java.io.FileWriter
+import java.util.Collections
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.bytefrog.instrumentation.id.MethodIdTable
+import com.codedx.codepulse.agent.common.config.RequestSamplingConfiguration
+import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration
+import com.codedx.codepulse.agent.init.MethodIdTableFile
+
+class MethodIdTableFileSpec extends FunSpec with Matchers {
+
+	def staticConfig(tableFile: File) = new StaticAgentConfiguration("localhost", 8765, null, 0, 1, false, null,
+		Collections.emptyList[String], Collections.emptyList[String], 0, RequestSamplingConfiguration.Disabled,
+		if (tableFile == null) null else tableFile.getPath)
+
+	def withTableFile(test: File => Unit) = {
+		val file = File.createTempFile("codepulse-methods", ".tsv")
+		file.delete()
+		try test(file)
+		finally {
+			file.delete()
+			new File(file.getPath + ".tmp").delete()
+		}
+	}
+
+	describe("MethodIdTableFile") {
+
+		it("should have no table when no file is configured") {
+			MethodIdTableFile.load(staticConfig(null)) shouldBe null
+		}
+
+		it("should start an empty table when the file doesn't exist yet") {
+			withTableFile { file =>
+				MethodIdTableFile.load(staticConfig(file)).size shouldBe 0
+			}
+		}
+
+		it("should load the table that was saved, replacing the previous one") {
+			withTableFile { file =>
+				val first = new MethodIdTable
+				first.assigned("app/A.a;1;()V", 0)
+				MethodIdTableFile.save(staticConfig(file), first)
+
+				val second = new MethodIdTable
+				second.assigned("app/A.a;1;()V", 0)
+				second.assigned("app/B.b;1;()V", 1)
+				MethodIdTableFile.save(staticConfig(file), second)
+
+				val loaded = MethodIdTableFile.load(staticConfig(file))
+				loaded.size shouldBe 2
+				loaded.lookup("app/B.b;1;()V") shouldBe 1
+				new File(file.getPath + ".tmp").exists shouldBe false
+			}
+		}
+
+		it("should skip the broken lines of a damaged file") {
+			withTableFile { file =>
+				val out = new FileWriter(file)
+				try out.write("0\tapp/A.a;1;()V\n1")
+				finally out.close()
+
+				val loaded = MethodIdTableFile.load(staticConfig(file))
+				loaded.lookup("app/A.a;1;()V") shouldBe 0
+				loaded.size shouldBe 1
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.init.test
+
+import java.io.File
+import java.util.Arrays
+import java.util.Collections
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1
+import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration
+import com.codedx.codepulse.agent.init.ProvisionalConfiguration
+
+class ProvisionalConfigurationSpec extends FunSpec with Matchers {
+
+	val PreConnectBufferSize = 2 * 1024 * 1024
+
+	def staticConfig(cacheFile: File, inclusions: java.util.List[String], exclusions: java.util.List[String]) =
+		new StaticAgentConfiguration("localhost", 8765, null, 0, 1, true,
+			if (cacheFile == null) null else cacheFile.getPath, inclusions, exclusions, PreConnectBufferSize)
+
+	def withCacheFile(test: File => Unit) = {
+		val file = File.createTempFile("codepulse-config", ".json")
+		file.delete()
+		try test(file)
+		finally file.delete()
+	}
+
+	val none = Collections.emptyList[String]
+
+	val hqConfig = new RuntimeAgentConfigurationV1(3.toByte, 500, Arrays.asList("^org/"), Arrays.asList("^org/app/"),
+		4 * 1024 * 1024, 7, 2, 4, true, false, true, false, 16, true, false)
+
+	describe("ProvisionalConfiguration.load") {
+
+		it("should have nothing to go on without a cached configuration or patterns") {
+			ProvisionalConfiguration.load(staticConfig(null, none, none)) shouldBe null
+
+			withCacheFile { file =>
+				ProvisionalConfiguration.load(staticConfig(file, none, none)) shouldBe null
+			}
+		}
+
+		it("should use the defaults with the command-line patterns when nothing is cached") {
+			val config = ProvisionalConfiguration.load(staticConfig(null, Arrays.asList("^com/app/"), Arrays.asList("^com/")))
+
+			config.getInclusions shouldBe Arrays.asList("^com/app/")
+			config.getExclusions shouldBe Arrays.asList("^com/")
+			config.getBufferMemoryBudget shouldBe PreConnectBufferSize
+			config.getSamplingInterval shouldBe 1
+			config.isCountInvocations shouldBe false
+		}
+
+		it("should load the configuration that was saved") {
+			withCacheFile { file =>
+				ProvisionalConfiguration.save(staticConfig(file, none, none), hqConfig)
+				val config = ProvisionalConfiguration.load(staticConfig(file, none, none))
+
+				config.getRunId shouldBe 3.toByte
+				config.getHeartbeatInterval shouldBe 500
+				config.getExclusions shouldBe Arrays.asList("^org/")
+				config.getInclusions shouldBe Arrays.asList("^org/app/")
+				config.getBufferMemoryBudget shouldBe 4 * 1024 * 1024
+				config.getQueueRetryCount shouldBe 7
+				config.getNumDataSenders shouldBe 2
+				config.getMaxDataSenders shouldBe 4
+				config.isCountInvocations shouldBe true
+				config.isProfileDurations shouldBe false
+				config.isRecordCallEdges shouldBe true
+				config.getSamplingInterval shouldBe 16
+				config.isTieredLineLevel shouldBe true
+			}
+		}
+
+		it("should let command-line patterns take the place of the cached ones") {
+			withCacheFile { file =>
+				ProvisionalConfiguration.save(staticConfig(file, none, none), hqConfig)
+				val config = ProvisionalConfiguration.load(staticConfig(file, Arrays.asList("^com/app/"), none))
+
+				config.getInclusions shouldBe Arrays.asList("^com/app/")
+				config.getExclusions shouldBe none
+				config.getHeartbeatInterval shouldBe 500
+				config.getSamplingInterval shouldBe 16
+			}
+		}
+
+		it("should have nothing to go on when the cache can't be read") {
+			withCacheFile { file =>
+				val out = new java.io.FileWriter(file)
+				try out.write("not json")
+				finally out.close()
+
+				ProvisionalConfiguration.load(staticConfig(file, none, none)) shouldBe null
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.javaagent.test
+
+import java.io.ByteArrayOutputStream
+import java.util.Arrays
+import java.util.Collections
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.javaagent.BatchRetransformer
+import com.codedx.codepulse.agent.trace.ClassTransformationListener
+import com.codedx.codepulse.agent.trace.Instrumentor
+import com.codedx.codepulse.agent.trace.TraceClassFileTransformer
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleConstructorTest
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleTest
+
+class BatchRetransformerSpec extends FunSpec with Matchers {
+
+	val none = Collections.emptyList[String]
+	val Cases = "^com/secdec/bytefrog/agent/bytefrog/test/cases/"
+
+	def classes(cs: Class[_]*) = cs.asJava
+
+	def classBytes(c: Class[_]) = {
+		val in = c.getClassLoader.getResourceAsStream(c.getName.replace('.', '/') + ".class")
+		try {
+			val out = new ByteArrayOutputStream
+			val buffer = new Array[Byte](4096)
+			var n = in.read(buffer)
+			while (n >= 0) {
+				out.write(buffer, 0, n)
+				n = in.read(buffer)
+			}
+			out.toByteArray
+		} finally in.close
+	}
+
+	describe("BatchRetransformer.retransform") {
+
+		it("should retransform in batches of at most BatchSize classes") {
+			val fake = new FakeInstrumentation
+			val retransformer = new BatchRetransformer(fake.instrumentation, new TraceClassFileTransformer(none, none, null, null), null)
+
+			retransformer.retransform(classes(Seq.fill(150)(classOf[SimpleTest]): _*))
+
+			fake.retransformCalls.map(_.size).sorted shouldBe List(22, 64, 64)
+			retransformer.getRetransformedClasses shouldBe 150
+			retransformer.getFailedClasses shouldBe 0
+			retransformer.getBatches shouldBe 3
+		}
+
+		it("should skip classes that can't be modified") {
+			val fake = new FakeInstrumentation(unmodifiable = Set(classOf[String]))
+			val retransformer = new BatchRetransformer(fake.instrumentation, new TraceClassFileTransformer(none, none, null, null), null)
+
+			retransformer.retransform(classes(classOf[SimpleTest], classOf[String], classOf[SimpleConstructorTest]))
+
+			fake.retransformCalls shouldBe List(List(classOf[SimpleTest], classOf[SimpleConstructorTest]))
+			retransformer.getRetransformedClasses shouldBe 2
+		}
+
+		it("should do nothing when no class can be modified") {
+			val fake = new FakeInstrumentation(unmodifiable = Set(classOf[String]))
+			val retransformer = new BatchRetransformer(fake.instrumentation, new TraceClassFileTransformer(none, none, null, null), null)
+
+			retransformer.retransform(classes(classOf[String]))
+
+			fake.retransformCalls shouldBe empty
+			retransformer.getBatches shouldBe 0
+		}
+
+		it("should retry a failed batch one class at a time") {
+			val fake = new FakeInstrumentation(failing = Set(classOf[SimpleConstructorTest]))
+			val retransformer = new BatchRetransformer(fake.instrumentation, new TraceClassFileTransformer(none, none, null, null), null)
+
+			retransformer.retransform(classes(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[SimpleTest]))
+
+			fake.retransformCalls shouldBe List(
+				List(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[SimpleTest]),
+				List(classOf[SimpleTest]),
+				List(classOf[SimpleConstructorTest]),
+				List(classOf[SimpleTest]))
+			retransformer.getRetransformedClasses shouldBe 2
+			retransformer.getFailedClasses shouldBe 1
+			retransformer.getBatches shouldBe 1
+		}
+
+		it("should leave the time spent in the transformer out of the pause") {
+			val slowListener = new ClassTransformationListener {
+				override def classIgnored(className: String, loader: ClassLoader) = Thread.sleep(200)
+			}
+			val instrumentor = new Instrumentor(new ClassIdentifier, new MethodIdentifier, null)
+			val transformer = new TraceClassFileTransformer(Arrays.asList(Cases), none, instrumentor, slowListener)
+
+			val fake = new FakeInstrumentation
+			fake.onRetransform = { c =>
+				// as the JVM would: the transformer runs on the calling thread, and then the class is redefined
+				transformer.transform(c.getClassLoader, c.getName.replace('.', '/'), c, null, classBytes(c))
+				Thread.sleep(30)
+			}
+			val retransformer = new BatchRetransformer(fake.instrumentation, transformer, null)
+
+			retransformer.retransform(classes(classOf[SimpleTest]))
+
+			retransformer.getLongestPauseNanos should be >= 30000000L
+			retransformer.getLongestPauseNanos should be < 200000000L
+			retransformer.getTotalPauseNanos shouldBe retransformer.getLongestPauseNanos
+		}
+	}
+
+	describe("BatchRetransformer.retransformLoaded") {
+
+		it("should only retransform the classes the transformer would instrument") {
+			val fake = new FakeInstrumentation
+			val transformer = new TraceClassFileTransformer(Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$"), null, null)
+			val retransformer = new BatchRetransformer(fake.instrumentation, transformer, null)
+
+			retransformer.retransformLoaded(Array(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[String],
+				classOf[Array[SimpleTest]], classOf[BatchRetransformerSpec]))
+
+			// the spec itself is neither excluded nor loaded by the bootstrap loader
+			fake.retransformCalls shouldBe List(List(classOf[SimpleTest], classOf[BatchRetransformerSpec]))
+		}
+	}
+}
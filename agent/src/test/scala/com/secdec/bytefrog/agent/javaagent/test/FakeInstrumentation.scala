@@ -0,0 +1,75 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.javaagent.test
+
+import java.lang.instrument.ClassFileTransformer
+import java.lang.instrument.Instrumentation
+import java.lang.instrument.UnmodifiableClassException
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.util.concurrent.ConcurrentLinkedQueue
+
+import scala.collection.JavaConverters._
+
+/** An Instrumentation that records the transformers added to it and the retransformClasses
+  * calls made on it. The interface gains methods with newer JVMs, so this is a proxy.
+  *
+  * @param loaded what getAllLoadedClasses returns
+  * @param unmodifiable classes that isModifiableClass says no to
+  * @param failing classes that make any retransformClasses call including them throw
+  */
+class FakeInstrumentation(loaded: Array[Class[_]] = Array(), unmodifiable: Set[Class[_]] = Set(),
+	failing: Set[Class[_]] = Set()) {
+
+	private val calls = new ConcurrentLinkedQueue[List[Class[_]]]
+	private val added = new ConcurrentLinkedQueue[(ClassFileTransformer, Boolean)]
+
+	/** Called for each class of a retransformClasses call that doesn't fail */
+	@volatile var onRetransform: Class[_] => Unit = _ => ()
+
+	val instrumentation = Proxy.newProxyInstance(getClass.getClassLoader, Array[Class[_]](classOf[Instrumentation]),
+		new InvocationHandler {
+			def invoke(proxy: AnyRef, method: Method, args: Array[AnyRef]): AnyRef = method.getName match {
+				case "retransformClasses" =>
+					val classes = args(0).asInstanceOf[Array[Class[_]]].toList
+					calls add classes
+					if (classes exists failing) throw new UnmodifiableClassException
+					classes foreach onRetransform
+					null
+
+				case "isModifiableClass" => Boolean.box(!unmodifiable(args(0).asInstanceOf[Class[_]]))
+				case "isRetransformClassesSupported" => Boolean.box(true)
+				case "getAllLoadedClasses" => loaded
+
+				case "addTransformer" =>
+					val canRetransform = args.length > 1 && args(1) == java.lang.Boolean.TRUE
+					added add (args(0).asInstanceOf[ClassFileTransformer] -> canRetransform)
+					null
+
+				case "toString" => "FakeInstrumentation"
+				case name => throw new UnsupportedOperationException(name)
+			}
+		}).asInstanceOf[Instrumentation]
+
+	/** The classes of each retransformClasses call, in the order the calls were made */
+	def retransformCalls = calls.asScala.toList
+
+	/** Each transformer added, with whether it was added as able to retransform */
+	def transformers = added.asScala.toList
+}
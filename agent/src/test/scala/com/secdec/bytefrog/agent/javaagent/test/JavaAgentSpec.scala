@@ -0,0 +1,165 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.javaagent.test
+
+import java.util.Arrays
+import java.util.Collections
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.concurrent.Eventually
+import org.scalatest.time.Millis
+import org.scalatest.time.Seconds
+import org.scalatest.time.Span
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.TraceAgent
+import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1
+import com.codedx.codepulse.agent.common.config.StaticAgentConfiguration
+import com.codedx.codepulse.agent.control.Controller
+import com.codedx.codepulse.agent.control.StateManager
+import com.codedx.codepulse.agent.javaagent.JavaAgent
+import com.codedx.codepulse.agent.message.MessageSenderManager
+import com.codedx.codepulse.agent.trace.TraceDataCollector
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleConstructorTest
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleTest
+
+/** A TraceAgent that is already started with `config`, without a connection to HQ. */
+class StartedTraceAgent(config: RuntimeAgentConfigurationV1) extends TraceAgent {
+	val classIdentifier = new ClassIdentifier
+	val methodIdentifier = new MethodIdentifier
+	val stateManager = new StateManager
+
+	def connect(timeout: Int): Boolean = true
+	def getStaticConfig: StaticAgentConfiguration = null
+	def getConfig: RuntimeAgentConfigurationV1 = config
+	def getClassIdentifier: ClassIdentifier = classIdentifier
+	def getMethodIdentifier: MethodIdentifier = methodIdentifier
+	def getDataCollector: TraceDataCollector = null
+	def getStateManager: StateManager = stateManager
+	def getControlController: Controller = null
+	def getSenderManager: MessageSenderManager = null
+	def prepare() {}
+	def prepareProvisional(provisionalConfig: RuntimeAgentConfigurationV1) {}
+	def start() {}
+	def killTrace(errorMessage: String) {}
+	def shutdown() {}
+	def shutdownAndWait() {}
+	def waitForStart() {}
+}
+
+class JavaAgentSpec extends FunSpec with Matchers with Eventually {
+
+	// updates from HQ are applied on a background thread
+	implicit override val patienceConfig = PatienceConfig(timeout = scaled(Span(5, Seconds)), interval = scaled(Span(20, Millis)))
+
+	val Cases = "^com/secdec/bytefrog/agent/bytefrog/test/cases/"
+
+	val loaded: Array[Class[_]] = Array(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[String])
+
+	def startedAgent = new StartedTraceAgent(new RuntimeAgentConfigurationV1(1.toByte, 1000,
+		Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$"), 1, 1, 1))
+
+	describe("JavaAgent.agentmain") {
+
+		// a successful attach starts a real agent, which can't be undone within the test JVM
+		it("should refuse a bad option string") {
+			val fake = new FakeInstrumentation(loaded)
+
+			a[RuntimeException] should be thrownBy JavaAgent.agentmain("nohost", fake.instrumentation)
+			fake.transformers shouldBe empty
+			JavaAgent.getTraceAgent shouldBe null
+		}
+	}
+
+	describe("JavaAgent.installAttached") {
+
+		it("should install a retransforming transformer and retransform the loaded classes it includes") {
+			val fake = new FakeInstrumentation(loaded)
+
+			val transformer = JavaAgent.installAttached(startedAgent, fake.instrumentation)
+
+			fake.transformers shouldBe List(transformer -> true)
+			fake.retransformCalls shouldBe List(List(classOf[SimpleTest]))
+		}
+
+		it("should leave the loaded classes alone when nothing is included") {
+			val fake = new FakeInstrumentation(loaded)
+			val agent = new StartedTraceAgent(new RuntimeAgentConfigurationV1(1.toByte, 1000,
+				Arrays.asList(Cases), Collections.emptyList[String], 1, 1, 1))
+
+			JavaAgent.installAttached(agent, fake.instrumentation)
+
+			fake.retransformCalls shouldBe empty
+		}
+	}
+
+	describe("JavaAgent trace filter updates") {
+
+		it("should retransform the loaded classes whose inclusion changes, in the order the updates arrive") {
+			val fake = new FakeInstrumentation(loaded)
+			val agent = startedAgent
+			val transformer = JavaAgent.installAttached(agent, fake.instrumentation)
+			val handler = agent.stateManager.getControlMessageHandler
+
+			handler.onUpdateTraceFilters(Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$", Cases + "SimpleConstructorTest$"))
+			handler.onUpdateTraceFilters(Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$"))
+
+			eventually { fake.retransformCalls.size shouldBe 3 }
+			fake.retransformCalls shouldBe List(
+				List(classOf[SimpleTest]),
+				List(classOf[SimpleConstructorTest]),
+				List(classOf[SimpleConstructorTest]))
+			transformer.isRetransformCandidate(classOf[SimpleConstructorTest]) shouldBe false
+		}
+
+		it("should apply an update that arrived before the transformer was installed") {
+			val fake = new FakeInstrumentation(loaded)
+			val agent = startedAgent
+
+			agent.stateManager.getControlMessageHandler.onUpdateTraceFilters(Arrays.asList(Cases),
+				Arrays.asList(Cases + "SimpleConstructorTest$"))
+			val transformer = JavaAgent.installAttached(agent, fake.instrumentation)
+
+			eventually {
+				transformer.isRetransformCandidate(classOf[SimpleConstructorTest]) shouldBe true
+				fake.retransformCalls.flatten should contain (classOf[SimpleConstructorTest])
+			}
+			transformer.isRetransformCandidate(classOf[SimpleTest]) shouldBe false
+		}
+
+		it("should retransform the loaded classes that gain or lose line-level probes") {
+			val fake = new FakeInstrumentation(loaded)
+			val agent = new StartedTraceAgent(new RuntimeAgentConfigurationV1(1.toByte, 1000,
+				Arrays.asList(Cases), Arrays.asList(Cases + "Simple(Constructor)?Test$"), 1, 1, 1,
+				null, null, null, null, null, null, true, null))
+			JavaAgent.installAttached(agent, fake.instrumentation)
+			val handler = agent.stateManager.getControlMessageHandler
+
+			handler.onSetLineLevelTargets(Arrays.asList(Cases + "SimpleTest$"))
+			handler.onSetLineLevelTargets(Arrays.asList(Cases + "SimpleTest$", Cases + "SimpleConstructorTest$"))
+
+			eventually { fake.retransformCalls.size shouldBe 3 }
+			fake.retransformCalls shouldBe List(
+				List(classOf[SimpleTest], classOf[SimpleConstructorTest]),
+				List(classOf[SimpleTest]),
+				List(classOf[SimpleConstructorTest]))
+		}
+	}
+}
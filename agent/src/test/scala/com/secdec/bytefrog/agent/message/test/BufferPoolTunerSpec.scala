@@ -0,0 +1,119 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.message.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.queue.BufferPool
+import com.codedx.codepulse.agent.message.BufferPoolTuner
+
+class BufferPoolTunerSpec extends FunSpec with Matchers {
+
+	val MemoryBudget = 1024 * 1024
+
+	/** A pool whose traffic statistics are set by the test, and which only records resizes. */
+	class StubPool(var length: Int) extends BufferPool(10, length) {
+		var bytes, full, partial, drain, waits = 0L
+		var resizes = List.empty[(Int, Int)]
+
+		def traffic(bytes: Long, full: Long, partial: Long, drainPerBuffer: Long, waits: Long): Unit = {
+			this.bytes += bytes
+			this.full += full
+			this.partial += partial
+			this.drain += drainPerBuffer * (full + partial)
+			this.waits += waits
+		}
+
+		override def getBufferLength = length
+		override def getBytesRead = bytes
+		override def getFullReads = full
+		override def getPartialReads = partial
+		override def getDrainNanos = drain
+		override def getWriterWaits = waits
+		override def resize(numBuffers: Int, bufferLengthHint: Int): Unit = {
+			resizes :+= (numBuffers -> bufferLengthHint)
+			length = bufferLengthHint
+		}
+	}
+
+	def busy(pool: StubPool) = pool.traffic(100 * 1024, 100, 0, 1000, 5)
+	def quiet(pool: StubPool) = pool.traffic(0, 0, 100, 1000, 0)
+
+	describe("BufferPoolTuner") {
+
+		it("should grow the buffers when they're sent full and writers wait for them") {
+			val pool = new StubPool(1024)
+			val tuner = new BufferPoolTuner(pool, MemoryBudget)
+
+			for (i <- 1 to 2) { busy(pool); tuner.check() }
+			pool.resizes shouldBe empty
+
+			busy(pool); tuner.check()
+			pool.resizes shouldBe List(512 -> 2048)
+			tuner.getResizeCount shouldBe 1
+			tuner.getLastDecision should startWith("512 x 2048 bytes (was 1024 bytes)")
+		}
+
+		it("should shrink the buffers when they're sent partially filled and data trickles in") {
+			val pool = new StubPool(1024)
+			val tuner = new BufferPoolTuner(pool, MemoryBudget)
+
+			for (i <- 1 to 3) { quiet(pool); tuner.check() }
+			pool.resizes shouldBe List(2048 -> 512)
+
+			// 512 bytes is as small as buffers get
+			for (i <- 1 to 3) { quiet(pool); tuner.check() }
+			pool.resizes shouldBe List(2048 -> 512)
+		}
+
+		it("should only resize once the same decision holds for several checks in a row") {
+			val pool = new StubPool(1024)
+			val tuner = new BufferPoolTuner(pool, MemoryBudget)
+
+			busy(pool); tuner.check()
+			busy(pool); tuner.check()
+			quiet(pool); tuner.check()
+			busy(pool); tuner.check()
+			tuner.check() // no reads to go on
+			busy(pool); tuner.check()
+
+			pool.resizes shouldBe empty
+			tuner.getResizeCount shouldBe 0
+			tuner.getLastDecision shouldBe "none"
+		}
+
+		it("should not grow the buffers past what the memory budget allows") {
+			val pool = new StubPool(64 * 1024)
+			val tuner = new BufferPoolTuner(pool, 10 * 64 * 1024)
+
+			for (i <- 1 to 6) { busy(pool); tuner.check() }
+			pool.resizes shouldBe empty
+		}
+
+		it("should only count traffic from after it was created") {
+			val pool = new StubPool(1024)
+			busy(pool); busy(pool); busy(pool)
+			val tuner = new BufferPoolTuner(pool, MemoryBudget)
+
+			tuner.check()
+			pool.resizes shouldBe empty
+		}
+	}
+}
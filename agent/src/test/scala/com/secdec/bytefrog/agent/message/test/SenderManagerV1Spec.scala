@@ -116,5 +116,22 @@ class SenderManagerV1Spec extends FunSpec with Matchers with MockFactory with As
 				m.shutdown
 			}
 		}
+
+		it("should only open the minimum number of connections when scaling is allowed") {
+			val sf = mock[MockableSocketFactory]
+			(sf.connect _).expects().anyNumberOfTimes.returning { new UselessSocket }
+
+			val handshaker = mock[DataConnectionHandshake]
+			(handshaker.performHandshake _).expects(*, *).twice.returning(true)
+
+			val m = new MessageSenderManager(sf, handshaker, mock[BufferPoolMockable], 2, 4, 1)
+
+			try {
+				m.start should equal(true)
+				m.getNumSenders should equal(2)
+			} finally {
+				m.shutdown
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.message.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.message.ThreadRegistry
+
+class ThreadRegistrySpec extends FunSpec with Matchers {
+
+	def onNewThread[T](name: String)(body: => T): T = {
+		var result: Option[T] = None
+		val t = new Thread(new Runnable { def run = result = Some(body) }, name)
+		t.start()
+		t.join()
+		result.get
+	}
+
+	describe("ThreadRegistry") {
+
+		it("should give the same id to repeated lookups from one thread") {
+			val registry = new ThreadRegistry(0xFFFF)
+			onNewThread("a") {
+				(registry.current.getId, registry.current.getId)
+			} match {
+				case (first, second) => first shouldBe second
+			}
+		}
+
+		it("should give different ids to threads that are alive at the same time") {
+			val registry = new ThreadRegistry(0xFFFF)
+			val mainId = registry.current.getId
+			val otherId = onNewThread("b") { registry.current.getId }
+			mainId should not equal otherId
+		}
+
+		it("should report a thread's name only when it is first seen") {
+			val registry = new ThreadRegistry(0xFFFF)
+			val names = onNewThread("worker") {
+				val identity = registry.current
+				for (i <- 1 to ThreadRegistry.NameCheckInterval * 2) yield identity.takeNameChange
+			}
+			names.head shouldBe "worker"
+			names.tail.forall(_ == null) shouldBe true
+		}
+
+		it("should report a new name after the thread is renamed") {
+			val registry = new ThreadRegistry(0xFFFF)
+			val names = onNewThread("before") {
+				val identity = registry.current
+				identity.takeNameChange
+				Thread.currentThread.setName("after")
+				(1 to ThreadRegistry.NameCheckInterval).map(_ => identity.takeNameChange).filter(_ != null)
+			}
+			names shouldBe Seq("after")
+		}
+
+		it("should report the name again if the report was reset") {
+			val registry = new ThreadRegistry(0xFFFF)
+			val name = onNewThread("retry") {
+				val identity = registry.current
+				identity.takeNameChange
+				identity.resetNameReport()
+				identity.takeNameChange
+			}
+			name shouldBe "retry"
+		}
+	}
+}
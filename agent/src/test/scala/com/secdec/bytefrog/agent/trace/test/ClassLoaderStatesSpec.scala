@@ -0,0 +1,111 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.trace.test
+
+import java.util.concurrent.CountDownLatch
+
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.trace.ClassLoaderStates
+import com.codedx.codepulse.agent.trace.Instrumentor
+
+class ClassLoaderStatesSpec extends FunSpec with Matchers {
+
+	/** Stands in for a webapp's class loader; defines a single generated class. */
+	class WebappLoader(parent: ClassLoader) extends ClassLoader(parent) {
+		val servlet: Class[_] = {
+			val cw = new ClassWriter(0)
+			cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "webapp/Servlet", null, "java/lang/Object", null)
+			cw.visitEnd()
+			val bytes = cw.toByteArray
+			defineClass("webapp.Servlet", bytes, 0, bytes.length)
+		}
+	}
+
+	def collectUntil(condition: => Boolean) = {
+		var attempts = 0
+		while (!condition && attempts < 50) {
+			System.gc()
+			Thread.sleep(20)
+			attempts += 1
+		}
+	}
+
+	describe("ClassLoaderStates") {
+		it("should remember flags per loader and report only newly set flags") {
+			val states = new ClassLoaderStates
+			val loader = new WebappLoader(getClass.getClassLoader)
+
+			states.get(loader) shouldBe 0
+			states.set(loader, ClassLoaderStates.TracingAvailable) shouldBe true
+			states.set(loader, ClassLoaderStates.TracingAvailable) shouldBe false
+			states.set(loader, ClassLoaderStates.ContainerAdapterFound) shouldBe true
+			states.get(loader) shouldBe (ClassLoaderStates.TracingAvailable | ClassLoaderStates.ContainerAdapterFound)
+			states.get(new WebappLoader(getClass.getClassLoader)) shouldBe 0
+
+			states.set(null, ClassLoaderStates.TracingAvailable) shouldBe false
+			states.get(null) shouldBe 0
+		}
+
+		it("should let each flag be won by exactly one thread") {
+			val states = new ClassLoaderStates
+			val loaders = Array.fill(20)(new WebappLoader(getClass.getClassLoader))
+			val start = new CountDownLatch(1)
+			val wins = new java.util.concurrent.atomic.AtomicInteger
+
+			val threads = for (t <- 0 until 8) yield new Thread(new Runnable {
+				def run = {
+					start.await()
+					for (round <- 0 until 300; loader <- loaders)
+						if (states.set(loader, 1 << (round % 3))) wins.incrementAndGet
+				}
+			})
+			threads.foreach(_.start)
+			start.countDown()
+			threads.foreach(_.join)
+
+			wins.get shouldBe loaders.length * 3
+			states.size shouldBe loaders.length
+		}
+
+		it("should not keep undeployed webapp loaders alive across redeploys") {
+			val instrumentor = new Instrumentor(new ClassIdentifier, new MethodIdentifier, null)
+			val states = instrumentor.getClassLoaderStates
+			val redeploys = 500
+
+			// the current webapp survives; every previous deployment is dropped
+			var current: WebappLoader = null
+			for (i <- 0 until redeploys) {
+				current = new WebappLoader(getClass.getClassLoader)
+				instrumentor.isTracingAvailable(current) shouldBe true
+				states.set(current, ClassLoaderStates.ContainerAdapterFound)
+			}
+
+			collectUntil { states.size <= 1 }
+
+			states.size shouldBe 1
+			states.get(current) shouldBe (ClassLoaderStates.TracingAvailable | ClassLoaderStates.ContainerAdapterFound)
+		}
+	}
+}
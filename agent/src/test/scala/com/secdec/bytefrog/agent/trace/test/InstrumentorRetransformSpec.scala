@@ -0,0 +1,144 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.trace.test
+
+import java.io.ByteArrayOutputStream
+
+import scala.collection.mutable.ListBuffer
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.bytefrog.instrumentation.id.ClassIdentifier
+import com.codedx.bytefrog.instrumentation.id.MethodIdTable
+import com.codedx.bytefrog.instrumentation.id.MethodIdentifier
+import com.codedx.codepulse.agent.trace.Instrumentor
+
+class InstrumentorRetransformSpec extends FunSpec with Matchers {
+
+	val className = "com/secdec/bytefrog/agent/bytefrog/test/cases/SimpleTest"
+	val loader = getClass.getClassLoader
+
+	lazy val classBytes = {
+		val in = loader.getResourceAsStream(className + ".class")
+		try {
+			val out = new ByteArrayOutputStream
+			val buffer = new Array[Byte](4096)
+			var n = in.read(buffer)
+			while (n >= 0) {
+				out.write(buffer, 0, n)
+				n = in.read(buffer)
+			}
+			out.toByteArray
+		} finally in.close
+	}
+
+	/** Every method recorded so far, as (id, name + descriptor) */
+	def recordedMethods(methodIdentifier: MethodIdentifier) =
+		Iterator.from(0).map(id => id -> methodIdentifier.get(id)).takeWhile(_._2 != null)
+			.map { case (id, info) => id -> (info.getName + info.getDescriptor) }.toList
+
+	/** The name of every method called from `bytes`, as owner.name */
+	def calledMethods(bytes: Array[Byte]) = {
+		val calls = ListBuffer.empty[String]
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM7) {
+			override def visitMethod(access: Int, name: String, desc: String, signature: String, exceptions: Array[String]) =
+				new MethodVisitor(Opcodes.ASM7) {
+					override def visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, isInterface: Boolean): Unit =
+						calls += owner + "." + name
+				}
+		}, 0)
+		calls.toList
+	}
+
+	def retransformTwice(classIdentifier: ClassIdentifier, methodIdentifier: MethodIdentifier) = {
+		val instrumentor = new Instrumentor(classIdentifier, methodIdentifier, null)
+
+		instrumentor.instrument(loader, className, classBytes, true, false) should not be null
+		val classId = classIdentifier.lookup(loader, className)
+		val methods = recordedMethods(methodIdentifier)
+
+		classId should be >= 0
+		methods should not be empty
+
+		// turning line-level tracing on and back off, as a tier toggle would
+		for (lineLevel <- Seq(true, false)) {
+			instrumentor.instrument(loader, className, classBytes, true, lineLevel, true) should not be null
+
+			classIdentifier.lookup(loader, className) shouldBe classId
+			classIdentifier.get(classId + 1) shouldBe null
+			recordedMethods(methodIdentifier) shouldBe methods
+		}
+
+		classIdentifier.get(classId).getLineNumbers shouldBe null
+		methods
+	}
+
+	describe("Instrumentor") {
+
+		it("should keep a class's ids when it is retransformed") {
+			retransformTwice(new ClassIdentifier, new MethodIdentifier)
+		}
+
+		it("should keep a class's stable method ids when it is retransformed") {
+			val classIdentifier = new ClassIdentifier
+			val table = new MethodIdTable
+			val methods = retransformTwice(classIdentifier, new MethodIdentifier(classIdentifier, table))
+
+			// no method was given a second id
+			table.size shouldBe methods.size
+			table.getIdCount shouldBe methods.size
+		}
+
+		it("should leave out the line-level probes when lineLevel is false") {
+			val instrumentor = new Instrumentor(new ClassIdentifier, new MethodIdentifier, null)
+
+			val withLines = calledMethods(instrumentor.instrument(loader, className, classBytes, true, true))
+			val withoutLines = calledMethods(instrumentor.instrument(loader, className, classBytes, true, false))
+
+			withLines.filter(_ endsWith ".recordLineLevelTrace") should not be empty
+			withoutLines.filter(_ endsWith ".recordLineLevelTrace") shouldBe empty
+			withoutLines.filter(_ startsWith "java/util/BitSet.") shouldBe empty
+
+			// the entry and exit probes are still there
+			withoutLines.filter(_ endsWith ".methodEnter") should not be empty
+			withoutLines.filter(_ endsWith ".methodExit") should not be empty
+		}
+	}
+
+	describe("MethodIdentifier.record") {
+
+		it("should give a method recorded again for the same class the same id") {
+			val methodIdentifier = new MethodIdentifier
+
+			val run = methodIdentifier.record(0, Opcodes.ACC_PUBLIC, "run", "()V", 1, 2)
+			val runWithArg = methodIdentifier.record(0, Opcodes.ACC_PUBLIC, "run", "(I)V", 3, 4)
+			val otherClass = methodIdentifier.record(1, Opcodes.ACC_PUBLIC, "run", "()V", 1, 2)
+
+			Set(run, runWithArg, otherClass).size shouldBe 3
+			methodIdentifier.record(0, Opcodes.ACC_PUBLIC, "run", "()V", 1, 2) shouldBe run
+			methodIdentifier.record(0, Opcodes.ACC_PUBLIC, "run", "(I)V", 3, 4) shouldBe runWithArg
+			methodIdentifier.lookup(0, Opcodes.ACC_PUBLIC, "run", "()V") shouldBe run
+			methodIdentifier.lookup(0, Opcodes.ACC_PUBLIC, "stop", "()V") shouldBe -1
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.trace.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.config.RequestSamplingConfiguration
+import com.codedx.codepulse.agent.trace.RequestSampler
+
+class RequestSamplerSpec extends FunSpec with Matchers with BeforeAndAfter {
+
+	after {
+		RequestSampler.configure(RequestSamplingConfiguration.Disabled)
+	}
+
+	describe("RequestSampler") {
+
+		it("should trace every request when sampling is disabled") {
+			RequestSampler.configure(RequestSamplingConfiguration.Disabled)
+
+			RequestSampler.isEnabled shouldBe false
+			for (i <- 1 to 20) RequestSampler.shouldTrace(s"/page/$i", null) shouldBe true
+		}
+
+		it("should trace none of the requests at a rate of 0") {
+			RequestSampler.configure(new RequestSamplingConfiguration(0.0, null, null))
+
+			RequestSampler.isEnabled shouldBe true
+			for (i <- 1 to 20) RequestSampler.shouldTrace(s"/page/$i", null) shouldBe false
+		}
+
+		it("should only trace requests whose URI matches the pattern") {
+			RequestSampler.configure(new RequestSamplingConfiguration(1.0, null, "/api/.*"))
+
+			RequestSampler.isEnabled shouldBe true
+			RequestSampler.shouldTrace("/api/users", null) shouldBe true
+			RequestSampler.shouldTrace("/static/app.js", null) shouldBe false
+			RequestSampler.shouldTrace("/v2/api/users", null) shouldBe false
+			RequestSampler.shouldTrace(null, null) shouldBe false
+		}
+
+		it("should trace requests that opt in, unless the header says false") {
+			RequestSampler.configure(new RequestSamplingConfiguration(0.0, "X-Trace", "/api/.*"))
+
+			RequestSampler.getOptInHeader shouldBe "X-Trace"
+			RequestSampler.shouldTrace("/static/app.js", "1") shouldBe true
+			RequestSampler.shouldTrace("/static/app.js", "") shouldBe true
+			RequestSampler.shouldTrace("/api/users", "FALSE") shouldBe false
+			RequestSampler.shouldTrace("/api/users", null) shouldBe false
+		}
+
+		it("should count the requests it sees and the ones it traces") {
+			RequestSampler.configure(new RequestSamplingConfiguration(1.0, null, "/api/.*"))
+			val total = RequestSampler.getTotalRequests
+			val sampled = RequestSampler.getSampledRequests
+
+			RequestSampler.shouldTrace("/api/users", null)
+			RequestSampler.shouldTrace("/api/orders", null)
+			RequestSampler.shouldTrace("/index.html", null)
+
+			RequestSampler.getTotalRequests - total shouldBe 3L
+			RequestSampler.getSampledRequests - sampled shouldBe 2L
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.trace.test
+
+import java.util.Arrays
+import java.util.Collections
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+
+import com.codedx.codepulse.agent.trace.TraceClassFileTransformer
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleConstructorTest
+import com.secdec.bytefrog.agent.bytefrog.test.cases.SimpleTest
+
+class TraceClassFileTransformerSpec extends FunSpec with Matchers {
+
+	val none = Collections.emptyList[String]
+	val Cases = "^com/secdec/bytefrog/agent/bytefrog/test/cases/"
+
+	val loaded: Array[Class[_]] = Array(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[String],
+		classOf[Array[SimpleTest]], classOf[TraceClassFileTransformerSpec])
+
+	describe("TraceClassFileTransformer.reconfigure") {
+
+		it("should return the loaded classes whose inclusion changes") {
+			val transformer = new TraceClassFileTransformer(none, none, null, null)
+
+			val changed = transformer.reconfigure(Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$"), loaded)
+
+			changed.asScala shouldBe Seq(classOf[SimpleConstructorTest])
+			transformer.isRetransformCandidate(classOf[SimpleTest]) shouldBe true
+			transformer.isRetransformCandidate(classOf[SimpleConstructorTest]) shouldBe false
+		}
+
+		it("should skip classes from the bootstrap class loader, and arrays") {
+			val transformer = new TraceClassFileTransformer(none, none, null, null)
+
+			val changed = transformer.reconfigure(Arrays.asList("^java/", "^com/"), none, loaded)
+
+			changed.asScala.toSet shouldBe Set(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[TraceClassFileTransformerSpec])
+		}
+
+		it("should return nothing when the patterns don't change") {
+			val transformer = new TraceClassFileTransformer(Arrays.asList(Cases), none, null, null)
+
+			transformer.reconfigure(Arrays.asList(Cases), none, loaded).asScala shouldBe empty
+		}
+	}
+
+	describe("TraceClassFileTransformer.setLineLevelTargets") {
+
+		val cases: Array[Class[_]] = Array(classOf[SimpleTest], classOf[SimpleConstructorTest], classOf[String],
+			classOf[Array[SimpleTest]])
+
+		it("should return the traced classes that gain or lose line-level probes") {
+			val transformer = new TraceClassFileTransformer(Arrays.asList(Cases), Arrays.asList(Cases + "Simple(Constructor)?Test$"), null, null)
+
+			// every traced class starts out with line-level probes
+			transformer.setLineLevelTargets(Arrays.asList(Cases + "SimpleTest$"), cases).asScala shouldBe Seq(classOf[SimpleConstructorTest])
+			transformer.setLineLevelTargets(Arrays.asList(Cases + "SimpleConstructorTest$"), cases).asScala shouldBe
+				Seq(classOf[SimpleTest], classOf[SimpleConstructorTest])
+			transformer.setLineLevelTargets(Arrays.asList(Cases + "SimpleConstructorTest$"), cases).asScala shouldBe empty
+			transformer.setLineLevelTargets(null, cases).asScala shouldBe Seq(classOf[SimpleTest])
+		}
+
+		it("should leave out classes that aren't traced") {
+			val transformer = new TraceClassFileTransformer(Arrays.asList(Cases), Arrays.asList(Cases + "SimpleTest$"), null, null)
+
+			transformer.setLineLevelTargets(Arrays.asList(Cases + "SimpleTest$"), cases).asScala shouldBe empty
+			transformer.setLineLevelTargets(none, cases).asScala shouldBe Seq(classOf[SimpleTest])
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.agent.trace.test
+
+import java.util.BitSet
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.trace.Trace
+import com.codedx.codepulse.agent.trace.TraceDataCollector
+
+class TraceRequestSpec extends FunSpec with Matchers with BeforeAndAfter {
+
+	class RecordingCollector extends TraceDataCollector {
+		var events = List.empty[String]
+		def methodEntry(methodId: Int): Unit = synchronized { events :+= s"enter $methodId" }
+		def methodExit(methodId: Int, exThrown: Boolean): Unit = synchronized { events :+= s"exit $methodId" }
+		def recordLineLevelTrace(methodId: Int, startLine: Int, endLine: Int, lineMap: BitSet): Unit = synchronized { events :+= s"lines $methodId" }
+	}
+
+	var collector: RecordingCollector = _
+
+	before {
+		collector = new RecordingCollector
+		Trace.setTraceDataCollector(collector)
+	}
+
+	after {
+		if (Trace.isInRequest) Trace.endRequest()
+		Trace.setTraceDataCollector(new RecordingCollector)
+	}
+
+	def call(methodId: Int) = {
+		Trace.methodEnter(methodId)
+		Trace.recordLineLevelTrace(methodId, 1, 2, new BitSet)
+		Trace.methodExit(methodId, false)
+	}
+
+	describe("Trace") {
+
+		it("should record events outside of requests and in traced requests") {
+			Trace.isInRequest shouldBe false
+			call(1)
+
+			Trace.beginRequest(true)
+			Trace.isInRequest shouldBe true
+			call(2)
+			Trace.endRequest()
+			Trace.isInRequest shouldBe false
+
+			collector.events shouldBe List("enter 1", "lines 1", "exit 1", "enter 2", "lines 2", "exit 2")
+		}
+
+		it("should drop the events of an untraced request until it ends") {
+			Trace.beginRequest(false)
+			Trace.isInRequest shouldBe true
+			call(1)
+			Trace.endRequest()
+			call(2)
+
+			collector.events shouldBe List("enter 2", "lines 2", "exit 2")
+		}
+
+		it("should only drop events on the thread handling the untraced request") {
+			Trace.beginRequest(false)
+
+			val other = new Thread(new Runnable {
+				def run(): Unit = {
+					call(2)
+					Trace.beginRequest(true)
+					call(3)
+					Trace.endRequest()
+				}
+			})
+			other.start()
+			other.join()
+			call(1)
+
+			Trace.endRequest()
+
+			collector.events shouldBe List("enter 2", "lines 2", "exit 2", "enter 3", "lines 3", "exit 3")
+		}
+
+		it("should not be thrown off by a request that ends without having begun") {
+			Trace.endRequest()
+			Trace.beginRequest(false)
+			Trace.endRequest()
+			call(1)
+
+			collector.events shouldBe List("enter 1", "lines 1", "exit 1")
+		}
+	}
+}
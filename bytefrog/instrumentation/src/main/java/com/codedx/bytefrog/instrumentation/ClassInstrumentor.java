@@ -24,6 +24,7 @@ import com.codedx.bytefrog.instrumentation.handler.TraceHandler;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
 
 /** Adapter for instrumenting classes (delegates to MethodInstrumentor).
   *
@@ -33,18 +34,39 @@ public class ClassInstrumentor extends ClassVisitor {
 	private final int classId;
 	private final MethodIdentifier methodIdentifier;
 	private final ClassInspector.Result inspection;
+	private final boolean lineLevel;
+	private final boolean exceptionExits;
 
 	private final TraceHandler handler;
 
 	private String name;
+	private int version;
 
 	public String getName() { return name; }
 
+	/** @returns true if the class's methods are required to carry stack map frames (Java 7+) */
+	public boolean hasStackMapFrames() { return (version & 0xFFFF) >= Opcodes.V1_7; }
+
 	public ClassInstrumentor(final ClassVisitor cv, final MethodIdentifier methodIdentifier, final int classId, final ClassInspector.Result inspection, final TraceHandler handler) {
+		this(cv, methodIdentifier, classId, inspection, handler, true);
+	}
+
+	/** @param lineLevel if false, methods only get entry/exit hooks, without line-level tracing */
+	public ClassInstrumentor(final ClassVisitor cv, final MethodIdentifier methodIdentifier, final int classId, final ClassInspector.Result inspection, final TraceHandler handler, final boolean lineLevel) {
+		this(cv, methodIdentifier, classId, inspection, handler, lineLevel, true);
+	}
+
+	/** @param lineLevel if false, methods only get entry/exit hooks, without line-level tracing
+	  * @param exceptionExits if false, methods are not wrapped in the top-level try/catch that reports
+	  *        exits by exception; a method that throws will then have an entry with no matching exit
+	  */
+	public ClassInstrumentor(final ClassVisitor cv, final MethodIdentifier methodIdentifier, final int classId, final ClassInspector.Result inspection, final TraceHandler handler, final boolean lineLevel, final boolean exceptionExits) {
 		super(Opcodes.ASM7, cv);
 		this.classId = classId;
 		this.methodIdentifier = methodIdentifier;
 		this.inspection = inspection;
+		this.lineLevel = lineLevel;
+		this.exceptionExits = exceptionExits;
 
 		this.handler = handler;
 	}
@@ -52,11 +74,27 @@ public class ClassInstrumentor extends ClassVisitor {
 	@Override public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		super.visit(version, access, name, signature, superName, interfaces);
 		this.name = name;
+		this.version = version;
 	}
 
 	@Override public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
 		final MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
+		if (mv == null) return null;
+
 		final MethodInspector.Result methodInspection = inspection.lookupMethod(name, desc);
-		return mv == null ? null : new MethodInstrumentor(this, mv, access, name, desc, methodIdentifier.record(classId, access, name, desc, methodInspection != null ? methodInspection.getStartLine() : -1, methodInspection != null ? methodInspection.getEndLine() : -1), methodInspection, handler);
+		final MethodInstrumentor mi = new MethodInstrumentor(this, mv, access, name, desc, methodIdentifier.record(classId, access, name, desc, methodInspection != null ? methodInspection.getStartLine() : -1, methodInspection != null ? methodInspection.getEndLine() : -1), methodInspection, handler, lineLevel, exceptionExits);
+
+		// without stack map frames, a constructor is buffered and analyzed first, to find out where
+		// its code runs before a super/this constructor call (the frames would tell us otherwise)
+		if (name.equals("<init>") && !hasStackMapFrames()) {
+			return new MethodNode(Opcodes.ASM7, access, name, desc, signature, exceptions) {
+				@Override public void visitEnd() {
+					mi.setUninitializedThisLabels(UninitializedThisAnalyzer.findLabels(getName(), this));
+					accept(mi);
+				}
+			};
+		}
+
+		return mi;
 	}
 }
\ No newline at end of file
@@ -18,16 +18,14 @@
 
 package com.codedx.bytefrog.instrumentation;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.io.IOException;
 
 import com.esotericsoftware.minlog.Log;
 
-import fm.ua.ikysil.smap.*;
+import fm.ua.ikysil.smap.SourceMapException;
 
 /** Handles mapping line level details for a Java class. If a SourceDebugExtension containing a
   * JSR-045 SMAP is present in the class file, that can be used to provide additional line level
@@ -36,6 +34,11 @@ import fm.ua.ikysil.smap.*;
   * Given a `BitSet` containing line hits and a starting line number, the mapper will return all
   * applicable source files and their covered lines.
   *
+  * The SMAP line sections are flattened when the mapper is built (at class inspection time) into
+  * a handful of primitive arrays indexed by output line, so `mapInto` and `mapRangeInto` are just
+  * array walks that write into a caller-supplied `MappedLines`, and don't allocate once that
+  * structure has grown to fit.
+  *
   * @author robertf
   */
 public class LineLevelMapper {
@@ -59,109 +62,235 @@ public class LineLevelMapper {
 		}
 	}
 
-	private static class MappedLocation {
-		public final String path;
-		public final int line;
+	/** Reusable result of `mapInto`/`mapRangeInto`. Holds one `BitSet` per mapped file (bit
+	  * `line - 1` is set for each covered input line) along with the overall min/max input line.
+	  * Instances are not thread safe; keep one per thread and hand it back to the mapper for each
+	  * call.
+	  */
+	public static final class MappedLines {
+		private String[] files = new String[0];
+		private BitSet[] lines = new BitSet[0];
+		private int[] touched = new int[0];
+		private int touchedCount;
+		private int minLine, maxLine;
 
-		public MappedLocation(String path, int line) {
-			this.path = path;
-			this.line = line;
+		/** Resets this structure for a mapping against `files` */
+		void reset(String[] files) {
+			for (int i = 0; i < touchedCount; ++i)
+				lines[touched[i]].clear();
+			touchedCount = 0;
+			minLine = Integer.MAX_VALUE;
+			maxLine = Integer.MIN_VALUE;
+
+			this.files = files;
+			if (lines.length < files.length) {
+				int oldLength = lines.length;
+				lines = Arrays.copyOf(lines, files.length);
+				for (int i = oldLength; i < lines.length; ++i)
+					lines[i] = new BitSet();
+				touched = new int[files.length];
+			}
+		}
+
+		void add(int file, int line) {
+			BitSet ls = lines[file];
+			if (ls.isEmpty()) touched[touchedCount++] = file;
+			ls.set(line - 1);
+			if (line < minLine) minLine = line;
+			if (line > maxLine) maxLine = line;
+		}
+
+		/** @returns true if nothing was mapped */
+		public boolean isEmpty() {
+			return touchedCount == 0;
+		}
+
+		/** @returns the number of files with mapped lines */
+		public int getFileCount() {
+			return touchedCount;
+		}
+
+		/** @returns the path of the `i`th mapped file */
+		public String getPath(int i) {
+			return files[touched[i]];
+		}
+
+		/** @returns the mapped lines of the `i`th mapped file, one bit per line starting at line 1 */
+		public BitSet getLines(int i) {
+			return lines[touched[i]];
+		}
+
+		/** @returns the lowest mapped input line (1-based), across all files */
+		public int getMinLine() {
+			return minLine;
+		}
+
+		/** @returns the highest mapped input line (1-based), across all files */
+		public int getMaxLine() {
+			return maxLine;
 		}
 	}
 
 	/** Returns an empty mapper with no source mappings */
 	public static LineLevelMapper empty(String sourceFile) {
-		return new LineLevelMapper(sourceFile, null);
+		return new LineLevelMapper(sourceFile, new String[0], 0, new int[1], new int[0], new int[0]);
 	}
 
 	/** Returns a mapper for `smap` if it can successfully be parsed, otherwise returns an empty
-	  * mapper with no source mappings
+	  * mapper with no source mappings. Mappers are shared through `LineLevelMapperCache`, so
+	  * classes with identical source maps only pay for parsing once.
 	  */
 	public static LineLevelMapper parse(String sourceFile, String smap) {
-		SourceMap[] maps;
+		return LineLevelMapperCache.shared.get(sourceFile, smap);
+	}
 
+	/** Parses `smap` without consulting the cache. */
+	static LineLevelMapper parseUncached(String sourceFile, String smap) {
 		try {
-			Parser parser = new Parser();
-			maps = parser.parse(smap);
-		} catch (SourceMapException | IOException e) {
+			return SmapParser.parse(sourceFile, smap);
+		} catch (SourceMapException e) {
 			Log.debug("line level mapper", String.format("cannot parse source map for %s; skipping", sourceFile), e);
 			return empty(sourceFile);
 		}
+	}
+
+	/** Collects raw (output line, file, input line) mappings and flattens them, ordered by output
+	  * line, into the arrays used by `LineLevelMapper`.
+	  */
+	static class Compiler {
+		private final Map<String, Integer> fileIndexes = new HashMap<>();
+		private String[] files = new String[4];
 
-		Map<Integer, List<MappedLocation>> mappings = new HashMap<>();
+		private int[] outputLines = new int[64];
+		private int[] locationFiles = new int[64];
+		private int[] locationLines = new int[64];
+		private int count;
 
-		for (SourceMap map : maps) {
-			if (!map.getOutputFileName().equals(sourceFile)) {
-				Log.debug("line level mapper", String.format("skipping source map; output specified as '%s' (looking for '%s')", map.getOutputFileName(), sourceFile));
-				continue;
+		private int minOutputLine = Integer.MAX_VALUE;
+		private int maxOutputLine = Integer.MIN_VALUE;
+
+		public int fileIndex(String path) {
+			Integer index = fileIndexes.get(path);
+			if (index == null) {
+				index = fileIndexes.size();
+				fileIndexes.put(path, index);
+				if (index == files.length) files = Arrays.copyOf(files, index * 2);
+				files[index] = path;
 			}
+			return index;
+		}
 
-			for (Stratum stratum : map.getStratumList().items()) {
-				for (LineInfo lineInfo : stratum.getLineInfoList().items()) {
-					FileInfo file = lineInfo.getFileInfo();
-					int inputLine = lineInfo.getInputStartLine();
-					int outputLine = lineInfo.getOutputStartLine();
-					for (int ili = 0; ili < lineInfo.getRepeatCount(); ili++, inputLine++) {
-						for (int oli = 0; oli < lineInfo.getOutputLineIncrement(); oli++, outputLine++) {
-							List<MappedLocation> locations = mappings.get(outputLine);
-							if (locations == null) mappings.put(outputLine, (locations = new LinkedList<>()));
-							locations.add(new MappedLocation(file.getInputFilePath(), inputLine));
-						}
-					}
-				}
+		public void add(int outputLine, int file, int inputLine) {
+			if (count == outputLines.length) {
+				outputLines = Arrays.copyOf(outputLines, count * 2);
+				locationFiles = Arrays.copyOf(locationFiles, count * 2);
+				locationLines = Arrays.copyOf(locationLines, count * 2);
 			}
+
+			outputLines[count] = outputLine;
+			locationFiles[count] = file;
+			locationLines[count] = inputLine;
+			++count;
+
+			if (outputLine < minOutputLine) minOutputLine = outputLine;
+			if (outputLine > maxOutputLine) maxOutputLine = outputLine;
 		}
 
-		return new LineLevelMapper(sourceFile, mappings);
+		public LineLevelMapper compile(String sourceFile) {
+			if (count == 0) return empty(sourceFile);
+
+			// counting sort by output line; stable, so locations for a line keep their SMAP order
+			int lineCount = maxOutputLine - minOutputLine + 1;
+			int[] offsets = new int[lineCount + 1];
+			for (int i = 0; i < count; ++i)
+				++offsets[outputLines[i] - minOutputLine + 1];
+			for (int i = 0; i < lineCount; ++i)
+				offsets[i + 1] += offsets[i];
+
+			int[] next = Arrays.copyOf(offsets, lineCount);
+			int[] sortedFiles = new int[count];
+			int[] sortedLines = new int[count];
+			for (int i = 0; i < count; ++i) {
+				int slot = next[outputLines[i] - minOutputLine]++;
+				sortedFiles[slot] = locationFiles[i];
+				sortedLines[slot] = locationLines[i];
+			}
+
+			return new LineLevelMapper(sourceFile, Arrays.copyOf(files, fileIndexes.size()), minOutputLine, offsets, sortedFiles, sortedLines);
+		}
 	}
 
 	private final String filename;
-	private final Map<Integer, MappedLocation[]> mappings;
 
-	private LineLevelMapper(String filename, Map<Integer, List<MappedLocation>> rawMappings) {
+	/** Distinct input file paths; indexed by `locationFiles` */
+	private final String[] files;
+
+	/** The output line corresponding with index 0 of `offsets` */
+	private final int firstOutputLine;
+
+	/** Locations for output line `firstOutputLine + i` live in `[offsets[i], offsets[i + 1])` */
+	private final int[] offsets;
+
+	private final int[] locationFiles;
+	private final int[] locationLines;
+
+	private LineLevelMapper(String filename, String[] files, int firstOutputLine, int[] offsets, int[] locationFiles, int[] locationLines) {
 		this.filename = filename;
+		this.files = files;
+		this.firstOutputLine = firstOutputLine;
+		this.offsets = offsets;
+		this.locationFiles = locationFiles;
+		this.locationLines = locationLines;
+	}
 
-		if(rawMappings != null)
-		{
-			mappings = new HashMap<>(rawMappings.size());
-			for (Map.Entry<Integer, List<MappedLocation>> mapping : rawMappings.entrySet()) {
-				mappings.put(
-					mapping.getKey(),
-					mapping.getValue().toArray(new MappedLocation[0])
-				);
-			}
-		}
-		else
-		{
-			mappings = new HashMap<>(64);
-		}
+	/** @returns true if this mapper has any source mappings at all */
+	public boolean hasMappings() {
+		return locationFiles.length > 0;
 	}
 
-	public MappedCoverage[] map(int startLine, BitSet lines) {
-		if (mappings == null || mappings.isEmpty()) {
-			return null;
-		} else {
-			// just going to use a start line of 1 for mapped files (assuming they won't be very large)
-			Map<String, BitSet> resultMap = new HashMap<>();
-
-			for (int l = lines.nextSetBit(0); l >= 0; l = lines.nextSetBit(l + 1)) {
-				MappedLocation[] mappingsForLine = mappings.get(startLine + l);
-				if (mappingsForLine != null) for (MappedLocation loc : mappingsForLine) {
-					BitSet ls = resultMap.get(loc.path);
-					if (ls == null) resultMap.put(loc.path, ls = new BitSet());
-					ls.set(loc.line - 1);
-				}
-			}
+	/** Maps the output lines `startLine + i` for each bit `i` set in `lines` into `out`, which is
+	  * cleared first.
+	  * @returns true if any lines were mapped
+	  */
+	public boolean mapInto(int startLine, BitSet lines, MappedLines out) {
+		out.reset(files);
+		for (int l = lines.nextSetBit(0); l >= 0; l = lines.nextSetBit(l + 1))
+			mapLine(startLine + l, out);
+		return !out.isEmpty();
+	}
 
-			if (resultMap.isEmpty()) return null;
+	/** Maps the output lines `firstLine` through `lastLine` (inclusive) into `out`, which is
+	  * cleared first.
+	  * @returns true if any lines were mapped
+	  */
+	public boolean mapRangeInto(int firstLine, int lastLine, MappedLines out) {
+		out.reset(files);
+		int from = Math.max(firstLine, firstOutputLine);
+		int to = Math.min(lastLine, firstOutputLine + offsets.length - 2);
+		for (int l = from; l <= to; ++l)
+			mapLine(l, out);
+		return !out.isEmpty();
+	}
 
-			MappedCoverage[] result = new MappedCoverage[resultMap.size()/* + 1*/];
-			int ri = 0;
+	private void mapLine(int outputLine, MappedLines out) {
+		int i = outputLine - firstOutputLine;
+		if (i < 0 || i >= offsets.length - 1) return;
 
-			for (Map.Entry<String, BitSet> mapped : resultMap.entrySet())
-				result[ri++] = new MappedCoverage(mapped.getKey(), 1, mapped.getValue());
+		for (int loc = offsets[i], end = offsets[i + 1]; loc < end; ++loc)
+			out.add(locationFiles[loc], locationLines[loc]);
+	}
 
-			return result;
-		}
+	public MappedCoverage[] map(int startLine, BitSet lines) {
+		if (!hasMappings()) return null;
+
+		MappedLines mapped = new MappedLines();
+		if (!mapInto(startLine, lines, mapped)) return null;
+
+		// just going to use a start line of 1 for mapped files (assuming they won't be very large)
+		MappedCoverage[] result = new MappedCoverage[mapped.getFileCount()];
+		for (int i = 0; i < result.length; ++i)
+			result[i] = new MappedCoverage(mapped.getPath(i), 1, (BitSet)mapped.getLines(i).clone());
+
+		return result;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Shares compiled `LineLevelMapper`s between classes whose SourceDebugExtension is identical,
+  * keyed by the SMAP content (its hash, confirmed by an equality check) and the class's source
+  * file name. JSP-heavy applications tend to load many classes with the same SMAP (the same page
+  * or tag file compiled in several class loaders, redeployed webapps), and each of those is parsed
+  * once.
+  *
+  * Lookups are lock free; two threads missing on the same SMAP at once may both parse it, and the
+  * first one in wins. When the cache reaches `maxEntries` it is simply cleared, since the SMAPs it
+  * holds on to are only needed while classes are being loaded.
+  */
+public class LineLevelMapperCache {
+	/** The cache used by `LineLevelMapper.parse` */
+	public static final LineLevelMapperCache shared = new LineLevelMapperCache(4096);
+
+	private static final class Key {
+		private final String sourceFile;
+		private final String smap;
+		private final int hash;
+
+		public Key(String sourceFile, String smap) {
+			this.sourceFile = sourceFile;
+			this.smap = smap;
+			this.hash = smap.hashCode() * 31 + (sourceFile == null ? 0 : sourceFile.hashCode());
+		}
+
+		@Override public int hashCode() {
+			return hash;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			return hash == other.hash &&
+				(sourceFile == null ? other.sourceFile == null : sourceFile.equals(other.sourceFile)) &&
+				smap.equals(other.smap);
+		}
+	}
+
+	private final int maxEntries;
+	private final ConcurrentHashMap<Key, LineLevelMapper> mappers = new ConcurrentHashMap<>();
+
+	public LineLevelMapperCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/** @returns the (possibly shared) mapper for `smap`, parsing it if it hasn't been seen yet */
+	public LineLevelMapper get(String sourceFile, String smap) {
+		Key key = new Key(sourceFile, smap);
+
+		LineLevelMapper mapper = mappers.get(key);
+		if (mapper != null) return mapper;
+
+		mapper = LineLevelMapper.parseUncached(sourceFile, smap);
+		if (mappers.size() >= maxEntries) mappers.clear();
+
+		LineLevelMapper existing = mappers.putIfAbsent(key, mapper);
+		return existing != null ? existing : mapper;
+	}
+
+	/** @returns the number of cached mappers */
+	public int size() {
+		return mappers.size();
+	}
+
+	public void clear() {
+		mappers.clear();
+	}
+}
\ No newline at end of file
@@ -20,6 +20,7 @@ package com.codedx.bytefrog.instrumentation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import com.codedx.bytefrog.instrumentation.handler.TraceHandler;
 
@@ -43,6 +44,8 @@ class MethodInstrumentor extends AdviceAdapter {
 	private final int methodId;
 	private final MethodInspector.Result inspection;
 	private final boolean isConstructor;
+	private final boolean lineLevel;
+	private final boolean exceptionExits;
 
 	private final TraceHandler handler;
 
@@ -64,7 +67,11 @@ class MethodInstrumentor extends AdviceAdapter {
 	}
 	private final List<NewLocation> newReplacementLocations = new ArrayList<>();
 
-	public MethodInstrumentor(final ClassInstrumentor ci, final MethodVisitor mv, final int access, final String methodName, final String desc, final int methodId, final MethodInspector.Result inspection, final TraceHandler handler) {
+	// for constructors of classes without stack map frames, the labels at which 'this' is
+	// uninitialized (standing in for the frames that would say so), if the constructor was analyzed
+	private Set<Label> uninitializedThisLabels = null;
+
+	public MethodInstrumentor(final ClassInstrumentor ci, final MethodVisitor mv, final int access, final String methodName, final String desc, final int methodId, final MethodInspector.Result inspection, final TraceHandler handler, final boolean lineLevel, final boolean exceptionExits) {
 		super(Opcodes.ASM7, mv, access, methodName, desc);
 
 		this.ci = ci;
@@ -73,10 +80,22 @@ class MethodInstrumentor extends AdviceAdapter {
 		this.methodId = methodId;
 		this.inspection = inspection;
 		isConstructor = methodName.equals("<init>");
+		this.lineLevel = lineLevel;
+		this.exceptionExits = exceptionExits;
 
 		this.handler = handler;
 	}
 
+	/** @param labels the labels at which 'this' is uninitialized, as found by UninitializedThisAnalyzer */
+	void setUninitializedThisLabels(Set<Label> labels) {
+		uninitializedThisLabels = labels;
+	}
+
+	/** @returns true if we can tell where code running before the super constructor call starts */
+	private boolean canFollowBranches() {
+		return ci.hasStackMapFrames() || uninitializedThisLabels != null;
+	}
+
 	@Override public void visitCode() {
 		super.visitCode();
 
@@ -92,8 +111,10 @@ class MethodInstrumentor extends AdviceAdapter {
 			initializeLineLevelInstrumentation();
 		}
 
-		if (canInstrument && !hasEntered) {
-			openTryCatchWrap();
+		// a constructor that branches before calling super()/this() gets here once for each path
+		// that reaches one of those calls
+		if (canInstrument) {
+			if (exceptionExits) openTryCatchWrap();
 			instrumentEntry();
 			hasEntered = true;
 		} else {
@@ -112,6 +133,15 @@ class MethodInstrumentor extends AdviceAdapter {
 		isPendingLineTrace = true;
 	}
 
+	@Override public void visitLabel(Label label) {
+		super.visitLabel(label);
+
+		// the analyzed equivalent of a frame with an uninitialized 'this' (see visitFrame)
+		if (uninitializedThisLabels != null && uninitializedThisLabels.contains(label)) {
+			suspendTryCatchWrap();
+		}
+	}
+
 	@Override public void visitFieldInsn(int opcode, String owner, String name, String desc) {
 		instrumentLine();
 		super.visitFieldInsn(opcode, owner, name, desc);
@@ -136,11 +166,11 @@ class MethodInstrumentor extends AdviceAdapter {
 		instrumentLine();
 		super.visitJumpInsn(opcode, label);
 
-		// any jumping in constructors prior to super constructor call is branching, and too
-		// complex for us to instrument currently
-		if (isConstructor && !hasEntered) {
+		// without stack map frames or an analysis of the constructor, we can't tell which code runs
+		// before the super constructor call
+		if (isConstructor && !hasEntered && !canFollowBranches()) {
 			canInstrument = false;
-			if (Log.TRACE) Log.trace("method instrumentation", String.format("jump encountered in constructor %s.%s:%s prior to object initialization; unable to instrument", ci.getName(), inspection.getName(), desc));
+			if (Log.TRACE) Log.trace("method instrumentation", String.format("jump encountered in constructor %s.%s:%s prior to object initialization, without stack map frames or analysis; unable to instrument", ci.getName(), inspection.getName(), desc));
 		}
 	}
 
@@ -153,10 +183,11 @@ class MethodInstrumentor extends AdviceAdapter {
 		instrumentLine();
 		super.visitLookupSwitchInsn(dflt, keys, labels);
 
-		// this is branching, too complex prior to super constructor call
-		if (isConstructor && !hasEntered) {
+		// this is branching, which we can only follow prior to the super constructor call with
+		// stack map frames or an analysis of the constructor
+		if (isConstructor && !hasEntered && !canFollowBranches()) {
 			canInstrument = false;
-			if (Log.TRACE) Log.trace("method instrumentation", String.format("lookup switch encountered in constructor %s.%s:%s prior to object initialization; unable to instrument", ci.getName(), inspection.getName(), desc));
+			if (Log.TRACE) Log.trace("method instrumentation", String.format("lookup switch encountered in constructor %s.%s:%s prior to object initialization, without stack map frames or analysis; unable to instrument", ci.getName(), inspection.getName(), desc));
 		}
 	}
 
@@ -174,10 +205,11 @@ class MethodInstrumentor extends AdviceAdapter {
 		instrumentLine();
 		super.visitTableSwitchInsn(min, max, dflt, labels);
 
-		// this is branching, too complex prior to super constructor call
-		if (isConstructor && !hasEntered) {
+		// this is branching, which we can only follow prior to the super constructor call with
+		// stack map frames or an analysis of the constructor
+		if (isConstructor && !hasEntered && !canFollowBranches()) {
 			canInstrument = false;
-			if (Log.TRACE) Log.trace("method instrumentation", String.format("table switch encountered in constructor %s.%s:%s prior to object initialization; unable to instrument", ci.getName(), inspection.getName(), desc));
+			if (Log.TRACE) Log.trace("method instrumentation", String.format("table switch encountered in constructor %s.%s:%s prior to object initialization, without stack map frames or analysis; unable to instrument", ci.getName(), inspection.getName(), desc));
 		}
 	}
 
@@ -229,9 +261,13 @@ class MethodInstrumentor extends AdviceAdapter {
 	@Override protected void onMethodExit(int opcode) {
 		super.onMethodExit(opcode);
 
-		// if we're exiting via a throw, our try/catch will handle it
+		// if we're exiting via a throw, our try/catch will handle it (or, if we aren't wrapping
+		// the method, the exit goes unreported, but the lines covered up to the throw are still
+		// sent; exceptions thrown by callees leave without them)
 		if (hasEntered && opcode != Opcodes.ATHROW) {
 			instrumentExit(false);
+		} else if (hasEntered && !exceptionExits && trackingLines) {
+			handler.instrumentLineCoverage(mv, methodId, inspection, lineMapVar);
 		}
 	}
 
@@ -246,6 +282,12 @@ class MethodInstrumentor extends AdviceAdapter {
 	}
 
 	@Override public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+		// a frame with an uninitialized 'this' starts code on another path to a super/this
+		// constructor call; our exception handler can't cover it
+		if (isConstructor && nLocal > 0 && local[0] == Opcodes.UNINITIALIZED_THIS) {
+			suspendTryCatchWrap();
+		}
+
 		// rewrite uninitialized local and stack entries (ASM represents these by using labels)
 		// that have been impacted by line level coverage
 
@@ -285,12 +327,12 @@ class MethodInstrumentor extends AdviceAdapter {
 	private boolean trackingLines = false;
 	private int lineMapVar;
 
-	private final Label methodBegin = new Label(), methodEnd = new Label();
+	private final Label methodEnd = new Label();
 
 	/** instrumentation to initialize line-level tracing */
 	private void initializeLineLevelInstrumentation() {
-		// set up line-level tracing, if we have the proper information
-		if (inspection != null && inspection.hasLineInformation()) {
+		// set up line-level tracing, if it was asked for and we have the proper information
+		if (lineLevel && inspection != null && inspection.hasLineInformation()) {
 			// lineMap = new BitSet(endLine - startLine + 1)
 			lineMapVar = newLocal(bitSetType);
 			mv.visitTypeInsn(Opcodes.NEW, bitSetType.getInternalName());
@@ -314,19 +356,42 @@ class MethodInstrumentor extends AdviceAdapter {
 
 	private boolean catchingExceptions = false;
 
+	// the covered ranges of our try block (more than one if a constructor branches before its
+	// super constructor call), and the start of the range currently open, if any
+	private final List<Label[]> tryRanges = new ArrayList<>();
+	private Label tryStart = null;
+
 	/** instrumentation to observe exceptions bubbling out of the method */
 	private void openTryCatchWrap() {
 		// insert start label for the try block
-		mv.visitLabel(methodBegin);
+		tryStart = new Label();
+		mv.visitLabel(tryStart);
 		catchingExceptions = true;
 	}
 
+	/** ends the open range of the try block, leaving the code that follows uncovered */
+	private void suspendTryCatchWrap() {
+		if (tryStart == null) return;
+
+		Label tryEnd = new Label();
+		mv.visitLabel(tryEnd);
+		tryRanges.add(new Label[] { tryStart, tryEnd });
+		tryStart = null;
+	}
+
 	/** instrumentation to observe exceptions bubbling out of the method */
 	private void closeTryCatchWrap() {
 		if (!catchingExceptions) return;
 
+		if (tryStart != null) {
+			tryRanges.add(new Label[] { tryStart, methodEnd });
+			tryStart = null;
+		}
+
 		// wire up our try/catch around the whole method, so we can observe exception bubbling
-		mv.visitTryCatchBlock(methodBegin, methodEnd, methodEnd, null);
+		for (Label[] range : tryRanges) {
+			mv.visitTryCatchBlock(range[0], range[1], methodEnd, null);
+		}
 		mv.visitLabel(methodEnd);
 
 		// when catching an exception, we need a full frame for the handler
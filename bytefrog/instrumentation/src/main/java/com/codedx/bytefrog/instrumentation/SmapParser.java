@@ -0,0 +1,249 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation;
+
+import java.util.Arrays;
+
+import com.esotericsoftware.minlog.Log;
+
+import fm.ua.ikysil.smap.ParserException;
+
+/** Single pass, character level JSR-045 SMAP parser. Rather than building the full source map
+  * model, it feeds the line sections of the source map(s) whose output file matches the class
+  * straight into a `LineLevelMapper.Compiler`. Sections it has no use for (vendor info, unknown
+  * sections, embedded strata, line sections of other output files) are skipped without being
+  * parsed.
+  *
+  * Only the line being rejected is ever copied out of the SMAP, so a well formed SMAP costs one
+  * string per input file path and the compiler's arrays.
+  */
+final class SmapParser {
+	private SmapParser() {}
+
+	private enum Section { None, Header, Files, Lines, Skip }
+
+	/** Parses `smap`, compiling the line mappings for `sourceFile`.
+	  * @returns the compiled mapper (empty if no line section applies to `sourceFile`)
+	  * @throws ParserException if the SMAP is malformed
+	  */
+	static LineLevelMapper parse(String sourceFile, String smap) throws ParserException {
+		LineLevelMapper.Compiler compiler = new LineLevelMapper.Compiler();
+
+		Section section = Section.None;
+		boolean afterSection = true; // a new source map may only start at the top or after a section line
+		boolean matched = false; // whether the current source map's output file is `sourceFile`
+		int headerLine = 0;
+		int embeddedDepth = 0;
+
+		int[] fileIndexes = new int[8]; // file id -> compiler file index, for the current stratum
+		Arrays.fill(fileIndexes, -1);
+		int pendingFileId = -1; // set when a `+ id name` line is waiting for its path line
+		int lineFileId = 0;
+
+		final int length = smap.length();
+		int lineNumber = 0;
+
+		for (int start = 0, end; start < length; start = next(smap, end)) {
+			end = lineEnd(smap, start);
+			++lineNumber;
+
+			boolean isSection = end > start && smap.charAt(start) == '*';
+			if (end == start && pendingFileId < 0) continue;
+
+			if (pendingFileId >= 0) {
+				if (isSection) throw error("File path expected", lineNumber, smap, start, end);
+				fileIndexes[pendingFileId] = compiler.fileIndex(smap.substring(start, end));
+				pendingFileId = -1;
+				continue;
+			}
+
+			if (isSection) {
+				afterSection = true;
+				char name = end > start + 1 ? smap.charAt(start + 1) : 0;
+				boolean single = end == start + 2 || (end > start + 2 && smap.charAt(start + 2) == ' ');
+
+				if (single && name == 'O') {
+					++embeddedDepth;
+				} else if (single && name == 'C') {
+					if (embeddedDepth > 0) --embeddedDepth;
+				} else if (embeddedDepth > 0) {
+					// embedded strata are skipped entirely
+				} else if (single && name == 'S') {
+					section = Section.None;
+					Arrays.fill(fileIndexes, -1);
+				} else if (single && name == 'F') {
+					section = matched ? Section.Files : Section.Skip;
+				} else if (single && name == 'L') {
+					section = matched ? Section.Lines : Section.Skip;
+					lineFileId = 0;
+				} else if (single && name == 'E') {
+					section = Section.None;
+					matched = false;
+				} else {
+					section = Section.Skip;
+				}
+				continue;
+			}
+
+			if (embeddedDepth > 0) {
+				afterSection = false;
+				continue;
+			}
+
+			if (afterSection && smap.regionMatches(start, "SMAP", 0, 4) && end == start + 4) {
+				section = Section.Header;
+				headerLine = 0;
+				afterSection = false;
+				continue;
+			}
+			afterSection = false;
+
+			switch (section) {
+				case Header:
+					if (headerLine++ == 0) {
+						matched = sourceFile != null && end - start == sourceFile.length() && smap.regionMatches(start, sourceFile, 0, end - start);
+						if (!matched)
+							Log.debug("line level mapper", String.format("skipping source map; output specified as '%s' (looking for '%s')", smap.substring(start, end), sourceFile));
+					}
+					// the second header line is the default stratum, which we don't need
+					break;
+
+				case Files: {
+					boolean plus = smap.charAt(start) == '+';
+					int p = plus ? skipSpaces(smap, start + 1, end) : start;
+					int idEnd = digits(smap, p, end);
+					if (idEnd == p || idEnd == end || smap.charAt(idEnd) != ' ')
+						throw error("Invalid file info", lineNumber, smap, start, end);
+
+					int fileId = number(smap, p, idEnd, lineNumber, start, end);
+					if (fileId >= fileIndexes.length) {
+						int oldLength = fileIndexes.length;
+						fileIndexes = Arrays.copyOf(fileIndexes, Math.max(fileId + 1, oldLength * 2));
+						Arrays.fill(fileIndexes, oldLength, fileIndexes.length, -1);
+					}
+
+					if (plus)
+						pendingFileId = fileId;
+					else
+						fileIndexes[fileId] = compiler.fileIndex(smap.substring(idEnd + 1, end));
+					break;
+				}
+
+				case Lines: {
+					// InputStartLine [ "#" LineFileID ] [ "," RepeatCount ] ":" OutputStartLine [ "," OutputLineIncrement ]
+					int p = start, q;
+
+					q = digits(smap, p, end);
+					int inputLine = number(smap, p, q, lineNumber, start, end);
+					p = q;
+
+					if (p < end && smap.charAt(p) == '#') {
+						q = digits(smap, ++p, end);
+						lineFileId = number(smap, p, q, lineNumber, start, end);
+						p = q;
+					}
+
+					int repeatCount = 1;
+					if (p < end && smap.charAt(p) == ',') {
+						q = digits(smap, ++p, end);
+						repeatCount = number(smap, p, q, lineNumber, start, end);
+						p = q;
+					}
+
+					if (p == end || smap.charAt(p) != ':') throw error("Invalid line info", lineNumber, smap, start, end);
+					q = digits(smap, ++p, end);
+					int outputLine = number(smap, p, q, lineNumber, start, end);
+					p = q;
+
+					int outputLineIncrement = 1;
+					if (p < end && smap.charAt(p) == ',') {
+						q = digits(smap, ++p, end);
+						outputLineIncrement = number(smap, p, q, lineNumber, start, end);
+						p = q;
+					}
+
+					if (p != end) throw error("Invalid line info", lineNumber, smap, start, end);
+
+					int file = lineFileId < fileIndexes.length ? fileIndexes[lineFileId] : -1;
+					if (file < 0) throw error("Invalid file id: " + lineFileId, lineNumber, smap, start, end);
+
+					for (int ili = 0; ili < repeatCount; ili++, inputLine++) {
+						for (int oli = 0; oli < outputLineIncrement; oli++, outputLine++) {
+							compiler.add(outputLine, file, inputLine);
+						}
+					}
+					break;
+				}
+
+				default:
+					break;
+			}
+		}
+
+		if (pendingFileId >= 0) throw new ParserException("File path expected:" + lineNumber);
+
+		return compiler.compile(sourceFile);
+	}
+
+	/** @returns the index of the line terminator (or end of string) for the line at `start` */
+	private static int lineEnd(String s, int start) {
+		int end = start;
+		while (end < s.length()) {
+			char c = s.charAt(end);
+			if (c == '\n' || c == '\r') break;
+			++end;
+		}
+		return end;
+	}
+
+	/** @returns the start of the line following the terminator at `end` */
+	private static int next(String s, int end) {
+		if (end < s.length() && s.charAt(end) == '\r') ++end;
+		if (end < s.length() && s.charAt(end) == '\n') ++end;
+		return end;
+	}
+
+	private static int skipSpaces(String s, int p, int end) {
+		while (p < end && s.charAt(p) == ' ') ++p;
+		return p;
+	}
+
+	/** @returns the index of the first non-digit at or after `p` */
+	private static int digits(String s, int p, int end) {
+		while (p < end) {
+			char c = s.charAt(p);
+			if (c < '0' || c > '9') break;
+			++p;
+		}
+		return p;
+	}
+
+	private static int number(String s, int from, int to, int lineNumber, int lineStart, int lineEnd) throws ParserException {
+		if (from == to || to - from > 9) throw error("Invalid number", lineNumber, s, lineStart, lineEnd);
+
+		int n = 0;
+		for (int i = from; i < to; ++i)
+			n = n * 10 + (s.charAt(i) - '0');
+		return n;
+	}
+
+	private static ParserException error(String message, int lineNumber, String s, int lineStart, int lineEnd) {
+		return new ParserException(message + ":" + lineNumber + ":" + s.substring(lineStart, lineEnd));
+	}
+}
\ No newline at end of file
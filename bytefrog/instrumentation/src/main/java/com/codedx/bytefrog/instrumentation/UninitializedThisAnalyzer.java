@@ -0,0 +1,122 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+
+/** Works out where `this` is still uninitialized in a constructor, for classes that don't carry
+  * stack map frames (class file version 50 and below, which includes Scala 2.10 output). With
+  * frames, MethodInstrumentor reads this off the frames themselves; without them, a data flow
+  * analysis over the constructor's instructions recovers the same information.
+  */
+final class UninitializedThisAnalyzer {
+	private UninitializedThisAnalyzer() {}
+
+	/** the value of a reference to `this` before a super/this constructor call */
+	private static final BasicValue UNINITIALIZED_THIS_VALUE = new BasicValue(Type.getObjectType("uninitializedThis"));
+
+	/** Finds the labels in `method` (a constructor of `owner`) at which `this` is uninitialized.
+	  * Code that follows one of these labels runs before a super/this constructor call, on one of
+	  * the paths through the constructor that reaches one.
+	  *
+	  * @returns the labels (as `LabelNode.getLabel()` returns them, i.e., as they will be visited
+	  *          when `method` is replayed), or null if the method couldn't be analyzed
+	  */
+	public static Set<Label> findLabels(String owner, MethodNode method) {
+		Frame<BasicValue>[] frames;
+		try {
+			frames = new Analyzer<BasicValue>(new ThisInterpreter()) {
+				@Override protected Frame<BasicValue> newFrame(int numLocals, int numStack) {
+					return new ThisFrame(numLocals, numStack);
+				}
+
+				@Override protected Frame<BasicValue> newFrame(Frame<? extends BasicValue> frame) {
+					return new ThisFrame(frame);
+				}
+			}.analyze(owner, method);
+		} catch (AnalyzerException e) {
+			return null;
+		}
+
+		Set<Label> labels = new HashSet<>();
+		for (int i = 0; i < frames.length; ++i) {
+			AbstractInsnNode insn = method.instructions.get(i);
+			if (insn instanceof LabelNode && frames[i] != null && frames[i].getLocal(0) == UNINITIALIZED_THIS_VALUE)
+				labels.add(((LabelNode)insn).getLabel());
+		}
+		return labels;
+	}
+
+	/** gives `this` its own value on entry, so it can be told apart from other references */
+	private static class ThisInterpreter extends BasicInterpreter {
+		public ThisInterpreter() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override public BasicValue newParameterValue(boolean isInstanceMethod, int local, Type type) {
+			if (isInstanceMethod && local == 0) return UNINITIALIZED_THIS_VALUE;
+			return super.newParameterValue(isInstanceMethod, local, type);
+		}
+	}
+
+	/** replaces every copy of the uninitialized `this` once a super/this constructor call initializes it */
+	private static class ThisFrame extends Frame<BasicValue> {
+		public ThisFrame(int numLocals, int numStack) {
+			super(numLocals, numStack);
+		}
+
+		public ThisFrame(Frame<? extends BasicValue> frame) {
+			super(frame);
+		}
+
+		@Override public void execute(AbstractInsnNode insn, Interpreter<BasicValue> interpreter) throws AnalyzerException {
+			boolean initializesThis = false;
+			if (insn.getOpcode() == Opcodes.INVOKESPECIAL && "<init>".equals(((MethodInsnNode)insn).name)) {
+				int receiver = getStackSize() - Type.getArgumentTypes(((MethodInsnNode)insn).desc).length - 1;
+				initializesThis = getStack(receiver) == UNINITIALIZED_THIS_VALUE;
+			}
+
+			super.execute(insn, interpreter);
+
+			if (initializesThis) {
+				for (int i = 0; i < getLocals(); ++i) {
+					if (getLocal(i) == UNINITIALIZED_THIS_VALUE) setLocal(i, BasicValue.REFERENCE_VALUE);
+				}
+				for (int i = 0; i < getStackSize(); ++i) {
+					if (getStack(i) == UNINITIALIZED_THIS_VALUE) setStack(i, BasicValue.REFERENCE_VALUE);
+				}
+			}
+		}
+	}
+}
@@ -19,8 +19,10 @@
 package com.codedx.bytefrog.instrumentation.id;
 
 import java.util.BitSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.codedx.bytefrog.instrumentation.LineLevelMapper;
 
@@ -29,17 +31,52 @@ import com.codedx.bytefrog.instrumentation.LineLevelMapper;
   * @author robertf
   */
 public class ClassIdentifier {
-	private final AtomicInteger nextId = new AtomicInteger();
-	protected final ConcurrentHashMap<Integer, ClassInformation> map = new ConcurrentHashMap<>();
+	protected final IdRegistry<ClassInformation> registry = new IdRegistry<>();
+
+	// the IDs recorded through each class loader, by class name; loaders are held weakly so an
+	// undeployed webapp's classes can still be collected
+	private final Map<ClassLoader, Map<String, Integer>> loaderClassIds =
+		Collections.synchronizedMap(new WeakHashMap<ClassLoader, Map<String, Integer>>());
 
 	public int record(String className, String sourceFile, LineLevelMapper lineLevelMapper, BitSet lineNumbers) {
-		int id = nextId.getAndIncrement();
-		map.put(id, new ClassInformation(className, sourceFile, lineLevelMapper, lineNumbers));
+		return registry.add(new ClassInformation(className, sourceFile, lineLevelMapper, lineNumbers));
+	}
+
+	/** Records a class loaded by `loader`, so that its ID can be found with `lookup` if the class
+	  * is retransformed later.
+	  */
+	public int record(ClassLoader loader, String className, String sourceFile, LineLevelMapper lineLevelMapper, BitSet lineNumbers) {
+		int id = record(className, sourceFile, lineLevelMapper, lineNumbers);
+
+		synchronized (loaderClassIds) {
+			Map<String, Integer> classIds = loaderClassIds.get(loader);
+			if (classIds == null) loaderClassIds.put(loader, classIds = new HashMap<>());
+			classIds.put(className, id);
+		}
+
 		return id;
 	}
 
+	/** Finds the ID a class loaded by `loader` was recorded under.
+	  * @returns the class ID, or -1 if the class wasn't recorded with its loader
+	  */
+	public int lookup(ClassLoader loader, String className) {
+		synchronized (loaderClassIds) {
+			Map<String, Integer> classIds = loaderClassIds.get(loader);
+			Integer id = classIds != null ? classIds.get(className) : null;
+			return id != null ? id : -1;
+		}
+	}
+
+	/** Replaces the information recorded for the class with the given ID, e.g. when a
+	  * retransform changes which of its lines are traced.
+	  */
+	public void update(int id, String className, String sourceFile, LineLevelMapper lineLevelMapper, BitSet lineNumbers) {
+		registry.set(id, new ClassInformation(className, sourceFile, lineLevelMapper, lineNumbers));
+	}
+
 	public ClassInformation get(int id) {
-		return map.get(id);
+		return registry.get(id);
 	}
 
 	/** Stores information about a class. */
@@ -0,0 +1,69 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation.id;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Storage for values indexed by dense, non-negative IDs, split into fixed-size chunks that are
+  * created as IDs reach them. Existing chunks never move, so looking a value up only takes two
+  * array reads and no locking; only creating a chunk (or growing the directory of chunks)
+  * synchronizes.
+  *
+  * @param <C> the chunk type
+  */
+abstract class IdChunks<C> {
+	static final int ChunkBits = 10;
+	static final int ChunkSize = 1 << ChunkBits;
+	static final int ChunkMask = ChunkSize - 1;
+
+	private volatile AtomicReferenceArray<C> directory = new AtomicReferenceArray<>(16);
+
+	/** Creates an empty chunk, able to hold `ChunkSize` IDs. */
+	protected abstract C newChunk();
+
+	/** Gets the chunk that holds `id`, or null if nothing has been stored that far yet. */
+	protected final C chunkIfPresent(int id) {
+		int index = id >>> ChunkBits;
+		AtomicReferenceArray<C> dir = directory;
+		return index < dir.length() ? dir.get(index) : null;
+	}
+
+	/** Gets the chunk that holds `id`, creating it if needed. */
+	protected final C chunk(int id) {
+		C chunk = chunkIfPresent(id);
+		return chunk != null ? chunk : createChunk(id >>> ChunkBits);
+	}
+
+	private synchronized C createChunk(int index) {
+		AtomicReferenceArray<C> dir = directory;
+		if (index >= dir.length()) {
+			AtomicReferenceArray<C> grown = new AtomicReferenceArray<>(Math.max(dir.length() * 2, index + 1));
+			for (int i = 0; i < dir.length(); ++i)
+				grown.set(i, dir.get(i));
+			directory = dir = grown;
+		}
+
+		C chunk = dir.get(index);
+		if (chunk == null) {
+			chunk = newChunk();
+			dir.set(index, chunk);
+		}
+		return chunk;
+	}
+}
@@ -0,0 +1,55 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation.id;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/** A set of flags indexed by dense, non-negative IDs, e.g. for remembering which IDs have
+  * already been announced. Each ID takes one bit; checking a flag is lock-free, and setting one
+  * is a single compare-and-set.
+  */
+public class IdFlags extends IdChunks<AtomicIntegerArray> {
+	/** Checks whether the flag for `id` is set. */
+	public boolean isSet(int id) {
+		if (id < 0) return false;
+		AtomicIntegerArray chunk = chunkIfPresent(id);
+		return chunk != null && (chunk.get((id & ChunkMask) >>> 5) & (1 << (id & 31))) != 0;
+	}
+
+	/** Sets the flag for `id`.
+	  * @returns true if this call set the flag, or false if it was already set
+	  */
+	public boolean set(int id) {
+		if (id < 0) throw new IllegalArgumentException("negative id: " + id);
+
+		AtomicIntegerArray chunk = chunk(id);
+		int word = (id & ChunkMask) >>> 5;
+		int bit = 1 << (id & 31);
+		for (;;) {
+			int bits = chunk.get(word);
+			if ((bits & bit) != 0) return false;
+			if (chunk.compareAndSet(word, bits, bits | bit)) return true;
+		}
+	}
+
+	@Override
+	protected AtomicIntegerArray newChunk() {
+		return new AtomicIntegerArray(ChunkSize >>> 5);
+	}
+}
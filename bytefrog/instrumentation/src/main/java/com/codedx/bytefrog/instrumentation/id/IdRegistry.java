@@ -0,0 +1,84 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation.id;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Hands out dense, increasing IDs and stores a value for each, without boxing or hashing the
+  * IDs. Lookups are lock-free.
+  *
+  * @param <T> the type of the stored values
+  */
+public class IdRegistry<T> extends IdChunks<AtomicReferenceArray<T>> {
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/** Stores `value` under a new ID.
+	  * @returns the new ID
+	  */
+	public int add(T value) {
+		int id = nextId.getAndIncrement();
+		chunk(id).set(id & ChunkMask, value);
+		return id;
+	}
+
+	/** Stores `value` under `id`, which must have been set aside with `reserve`, unless that ID
+	  * already has a value.
+	  * @returns true if `value` was stored
+	  */
+	public boolean putIfAbsent(int id, T value) {
+		if (id < 0 || id >= nextId.get()) throw new IllegalArgumentException("unreserved id: " + id);
+		return chunk(id).compareAndSet(id & ChunkMask, null, value);
+	}
+
+	/** Replaces the value stored under `id`, which must already have been handed out. */
+	public void set(int id, T value) {
+		if (id < 0 || id >= nextId.get()) throw new IllegalArgumentException("unassigned id: " + id);
+		chunk(id).set(id & ChunkMask, value);
+	}
+
+	/** Sets aside IDs below `count`, so that `add` only hands out higher ones; values for the
+	  * reserved IDs are stored with `putIfAbsent`.
+	  */
+	public void reserve(int count) {
+		for (;;) {
+			int next = nextId.get();
+			if (next >= count || nextId.compareAndSet(next, count)) return;
+		}
+	}
+
+	/** Gets the value stored under `id`.
+	  * @returns the value, or null if `id` hasn't been handed out
+	  */
+	public T get(int id) {
+		if (id < 0) return null;
+		AtomicReferenceArray<T> chunk = chunkIfPresent(id);
+		return chunk != null ? chunk.get(id & ChunkMask) : null;
+	}
+
+	/** Gets the number of IDs handed out or reserved so far. */
+	public int size() {
+		return nextId.get();
+	}
+
+	@Override
+	protected AtomicReferenceArray<T> newChunk() {
+		return new AtomicReferenceArray<>(ChunkSize);
+	}
+}
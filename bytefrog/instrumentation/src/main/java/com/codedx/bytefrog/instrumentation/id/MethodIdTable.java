@@ -0,0 +1,89 @@
+/* bytefrog: a tracing instrumentation toolset for the JVM. For more information, see
+ * <https://github.com/codedx/bytefrog>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.bytefrog.instrumentation.id;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Remembers the ID given to each method signature, so that a `MethodIdentifier` can hand out
+  * the same IDs again after a restart. The table is written as one `id<tab>signature` line per
+  * method.
+  */
+public class MethodIdTable {
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private volatile int idCount = 0;
+
+	/** Reads a table written by `write`. Lines that can't be parsed are skipped. */
+	public static MethodIdTable read(Reader in) throws IOException {
+		MethodIdTable table = new MethodIdTable();
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			int tab = line.indexOf('\t');
+			if (tab <= 0) continue;
+
+			try {
+				table.assigned(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+			} catch (NumberFormatException e) {
+				// skip it
+			}
+		}
+		return table;
+	}
+
+	/** Writes the table, for reading back with `read`. */
+	public void write(Writer out) throws IOException {
+		for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+			out.write(entry.getValue().toString());
+			out.write('\t');
+			out.write(entry.getKey());
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/** Gets the ID remembered for `signature`, or -1 if there isn't one. */
+	public int lookup(String signature) {
+		Integer id = ids.get(signature);
+		return id != null ? id : -1;
+	}
+
+	/** Remembers `id` for `signature`, unless the signature already has one. */
+	public void assigned(String signature, int id) {
+		if (id < 0 || ids.putIfAbsent(signature, id) != null) return;
+
+		synchronized (this) {
+			if (id >= idCount) idCount = id + 1;
+		}
+	}
+
+	/** Gets one more than the highest remembered ID. */
+	public int getIdCount() {
+		return idCount;
+	}
+
+	/** Gets the number of remembered signatures. */
+	public int size() {
+		return ids.size();
+	}
+}
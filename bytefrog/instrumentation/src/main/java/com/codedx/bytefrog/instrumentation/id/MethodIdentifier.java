@@ -19,24 +19,86 @@
 package com.codedx.bytefrog.instrumentation.id;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /** Assigns numeric IDs to method signatures, storing their signature for later retrieval.
   *
   * @author robertf
   */
 public class MethodIdentifier {
-	private final AtomicInteger nextId = new AtomicInteger();
-	protected final ConcurrentHashMap<Integer, MethodInformation> map = new ConcurrentHashMap<>();
+	protected final IdRegistry<MethodInformation> registry = new IdRegistry<>();
 
+	private final ClassIdentifier classIdentifier;
+	private final MethodIdTable table;
+
+	// the IDs of each class's methods by name + descriptor, by class ID, so that a retransformed
+	// class gets them again
+	private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, Integer>> classMethodIds = new ConcurrentHashMap<>();
+
+	public MethodIdentifier() {
+		this(null, null);
+	}
+
+	/** Creates a MethodIdentifier that reuses the IDs in `table` for signatures it has seen
+	  * before, and adds new signatures to it.
+	  * @param classIdentifier the identifier that the class IDs given to `record` come from
+	  * @param table the IDs to reuse, or null to always hand out new ones
+	  */
+	public MethodIdentifier(ClassIdentifier classIdentifier, MethodIdTable table) {
+		this.classIdentifier = classIdentifier;
+		this.table = table;
+
+		if (table != null) registry.reserve(table.getIdCount());
+	}
+
+	/** Builds the signature HQ identifies methods by. */
+	public static String signature(String className, int access, String methodName, String descriptor) {
+		return className + "." + methodName + ";" + access + ";" + descriptor;
+	}
+
+	/** Records a method of the class `classId`. A method that was already recorded for the same
+	  * class (i.e., the class is being retransformed) keeps its ID.
+	  */
 	public int record(int classId, int access, String methodName, String descriptor, int startLine, int endLine) {
-		int id = nextId.getAndIncrement();
-		map.put(id, new MethodInformation(classId, access, methodName, descriptor, startLine, endLine));
+		int id = lookup(classId, access, methodName, descriptor);
+		if (id >= 0) return id;
+
+		id = assign(new MethodInformation(classId, access, methodName, descriptor, startLine, endLine));
+
+		ConcurrentHashMap<String, Integer> ids = classMethodIds.get(classId);
+		if (ids == null) {
+			ConcurrentHashMap<String, Integer> added = classMethodIds.putIfAbsent(classId, ids = new ConcurrentHashMap<>());
+			if (added != null) ids = added;
+		}
+		ids.put(methodName + descriptor, id);
+
+		return id;
+	}
+
+	/** Finds the ID a method of the class `classId` was recorded under.
+	  * @returns the method ID, or -1 if it hasn't been recorded
+	  */
+	public int lookup(int classId, int access, String methodName, String descriptor) {
+		ConcurrentHashMap<String, Integer> ids = classMethodIds.get(classId);
+		Integer id = ids == null ? null : ids.get(methodName + descriptor);
+		return id != null && registry.get(id).getAccess() == access ? id : -1;
+	}
+
+	private int assign(MethodInformation info) {
+		if (table == null) return registry.add(info);
+
+		String signature = signature(classIdentifier.get(info.getClassId()).getName(), info.getAccess(), info.getName(), info.getDescriptor());
+
+		// the remembered ID is taken if another class loader already loaded the same class
+		int id = table.lookup(signature);
+		if (id >= 0 && registry.putIfAbsent(id, info)) return id;
+
+		id = registry.add(info);
+		table.assigned(signature, id);
 		return id;
 	}
 
 	public MethodInformation get(int id) {
-		return map.get(id);
+		return registry.get(id);
 	}
 
 	/** Stores information about a method. */
@@ -176,6 +176,12 @@
 			putCommand('/tree-instrumentation', JSON.stringify(changesMap), callback, {contentType: 'application/json'})
 		},
 
+		'requestLineLevel': function(callback){ getCommand('/line-level', callback) },
+
+		'updateLineLevel': function(changesMap, callback){
+			putCommand('/line-level', JSON.stringify(changesMap), callback, {contentType: 'application/json'})
+		},
+
 		'streamTraceCoverageCounts': function(loadParams, interval){ 
 			return repeatingGetCommand({ url: commandPath('/coverage'), getData: loadParams, interval: interval })
 		},
@@ -249,6 +249,46 @@
 			})
 		})
 
+		// When agents start out with method probes only, show which packages have
+		// line-level probes. Unlike the trace selection, these can change while tracing.
+		// While an agent is connected, the badges show what it was given; otherwise they
+		// show what the next agent will start with.
+		function forEachLineLevelWidget(f){
+			forEachWidget(function(pw, node){
+				// wrapper nodes for packages with a <self> node don't have their own id
+				if(node.kind == 'package' && typeof node.id == 'number') f(pw, node)
+			})
+		}
+
+		function showLineLevel(status){
+			var lineLevelNodes = d3.set(status.applied || status.nodes)
+			forEachLineLevelWidget(function(pw, node){
+				pw.lineLevel(lineLevelNodes.has(node.id))
+			})
+		}
+
+		API.requestLineLevel(function(status, error){
+			if(error || !status.tiered) return
+			showLineLevel(status)
+
+			forEachLineLevelWidget(function(pw, node){
+				pw.lineLevelClicks.onValue(function(){
+					var changes = {}
+					changes[node.id] = !pw.lineLevel()
+					API.updateLineLevel(changes, function(status, error){
+						if(!error) showLineLevel(status)
+					})
+				})
+			})
+
+			// an agent connecting or disconnecting changes what has been applied
+			Trace.running.changes().onValue(function(){
+				API.requestLineLevel(function(status, error){
+					if(!error) showLineLevel(status)
+				})
+			})
+		})
+
 		// Disable all of the widgets while the trace is running
 		Trace.running.onValue(function(isRunning){
 			forEachWidget(function(pw, node){
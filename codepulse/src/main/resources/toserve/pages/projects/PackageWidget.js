@@ -122,6 +122,8 @@
 			_instrumentationSelectable = true,
 			_instrumentationSelectedBus = new Bacon.Bus(),
 
+			_lineLevel = false,
+
 			_collapseChildren = false,
 			_childWidgets = [],
 
@@ -322,6 +324,30 @@
 			}
 		}
 
+		/*
+		Get or set whether the package's classes have line-level probes, for agents
+		that start out with method probes only. The badge that shows (and toggles)
+		this is added the first time it is set.
+		*/
+		this.lineLevel = function(newLineLevel){
+			if(!arguments.length) return _lineLevel
+			_lineLevel = newLineLevel
+
+			var badge = self.uiParts.lineLevelBadge
+			if (!badge) {
+				badge = PackageWidget.lineLevelBadge.clone()
+				badge.click(function(e) {
+					self.lineLevelClicks.push(e)
+					e.stopPropagation()
+				})
+				self.uiParts.lineLevelBadge = badge
+				self.uiParts.labelText.before(badge)
+			}
+			badge.toggleClass('active', _lineLevel)
+
+			return self
+		}
+
 		/*
 		Get or set the selected state:
 			`selected()` returns the state
@@ -400,6 +426,8 @@
 
 		this.vulnerableBadgeClicks = new Bacon.Bus()
 
+		this.lineLevelClicks = new Bacon.Bus()
+
 		// ============================================================================
 		// Helper Methods
 		// ============================================================================
@@ -455,6 +483,7 @@
 		PackageWidget.template = $('#package-widget-template').attr('id', null).remove()
 		PackageWidget.vulnBadge = $('#package-widget-template-has-vuln').attr('id', null).remove()
 		PackageWidget.depCheckBadge = $('#package-widget-template-dependency-check').attr('id', null).remove()
+		PackageWidget.lineLevelBadge = $('#package-widget-template-line-level').attr('id', null).remove()
 	})
 
 	exports.PackageWidget = PackageWidget
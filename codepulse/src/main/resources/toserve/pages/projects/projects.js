@@ -750,6 +750,24 @@ $(document).ready(function(){
 					// added the padded div that holds the ancestors list
 					result.append(padDiv.append(recurse(0)))
 
+					// if the agent reported call durations for the node, summarize them
+					if(node.latency){
+						function formatMicros(us){
+							if(us >= 1000000) return (us / 1000000).toFixed(1) + ' s'
+							if(us >= 1000) return (us / 1000).toFixed(1) + ' ms'
+							return us + ' \u00b5s'
+						}
+
+						var latency = node.latency
+						$('<div>')
+							.addClass('latency-summary')
+							.text(latency.count + ' timed calls: median \u2264 ' + formatMicros(latency.p50Micros) +
+								', 90% \u2264 ' + formatMicros(latency.p90Micros) +
+								', 99% \u2264 ' + formatMicros(latency.p99Micros) +
+								', max \u2264 ' + formatMicros(latency.maxMicros))
+							.appendTo(padDiv)
+					}
+
 					// if the node isn't "instrumented", add a div that says so
 					if(!Trace.isInstrumentedNode(node)){
 						var noTraceBadge = $('<div>')
@@ -0,0 +1,32 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model
+
+/** A call from one node to another that the agent saw at least once. */
+case class CallEdge(callerNodeId: Int, calleeNodeId: Int)
+
+/** Access trait for the caller/callee pairs seen between nodes.
+  */
+trait CallEdgeDataAccess {
+	/** Adds the given (caller node, callee node) pairs; pairs already recorded are ignored. */
+	def record(edges: List[(Int, Int)]): Unit
+	def getCallers(nodeId: Int): Set[Int]
+	def getCallees(nodeId: Int): Set[Int]
+}
@@ -0,0 +1,35 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model
+
+/** Running invocation count for a node. A `recordingId` of `None` holds the
+  * count across all traces.
+  */
+case class InvocationCount(recordingId: Option[Int], nodeId: Int, count: Long)
+
+/** Access trait for node invocation counts.
+  */
+trait InvocationCountDataAccess {
+	/** Adds each (node ID, count) delta to the overall counts, and to the counts of each of `recordings`. */
+	def record(recordings: List[Int], counts: List[(Int, Long)]): Unit
+	def getAllNodeCounts(): Map[Int, Long]
+	def getRecordingNodeCounts(recordingId: Int): Map[Int, Long]
+	def getNodeCount(nodeId: Int): Option[Long]
+}
@@ -0,0 +1,67 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model
+
+import com.codedx.codepulse.agent.common.message.DurationBuckets
+
+/** Number of timed calls to a node that fell into a duration bucket (see `DurationBuckets`). */
+case class DurationBucketCount(nodeId: Int, bucket: Int, count: Long)
+
+/** Summary of a node's duration histogram. Percentiles are the upper bound
+  * of the bucket they fall into, in microseconds.
+  */
+case class LatencySummary(count: Long, p50Micros: Long, p90Micros: Long, p99Micros: Long, maxMicros: Long)
+
+object LatencySummary {
+	/** Summarizes `histogram`, indexed by bucket; None when it holds no calls. */
+	def apply(histogram: Array[Long]): Option[LatencySummary] = {
+		val count = histogram.sum
+		if (count == 0) None
+		else {
+			def bound(bucket: Int) =
+				if (bucket == DurationBuckets.Count - 1) DurationBuckets.lowerBound(bucket)
+				else DurationBuckets.upperBound(bucket)
+
+			def percentile(p: Double) = {
+				val rank = math.ceil(count * p).toLong max 1L
+				var seen = 0L
+				var bucket = 0
+				while (seen + histogram(bucket) < rank) {
+					seen += histogram(bucket)
+					bucket += 1
+				}
+				bound(bucket)
+			}
+
+			val maxBucket = histogram.lastIndexWhere(_ > 0)
+			Some(LatencySummary(count, percentile(0.5), percentile(0.9), percentile(0.99), bound(maxBucket)))
+		}
+	}
+}
+
+/** Access trait for per-node call duration histograms.
+  */
+trait MethodDurationDataAccess {
+	/** Adds each node's (bucket, count) deltas to its histogram. */
+	def record(histograms: List[(Int, Seq[(Int, Int)])]): Unit
+	def getHistogram(nodeId: Int): Option[Array[Long]]
+	def getLatencySummary(nodeId: Int): Option[LatencySummary]
+	def getAllLatencySummaries(): Map[Int, LatencySummary]
+}
@@ -55,6 +55,9 @@ trait ProjectData {
 	def sourceData: SourceDataAccess
 	def recordings: RecordingMetadataAccess
 	def encounters: TraceEncounterDataAccess
+	def invocationCounts: InvocationCountDataAccess
+	def methodDurations: MethodDurationDataAccess
+	def callEdges: CallEdgeDataAccess
 
 	/** Flush any buffered data to the backing data store without detaching. */
 	def flush(): Unit
@@ -0,0 +1,63 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.slick.driver.JdbcProfile
+import scala.slick.jdbc.meta.MTable
+import scala.slick.model.ForeignKeyAction
+import com.secdec.codepulse.data.model._
+
+/** The Slick DAO for caller/callee edges between nodes.
+  */
+private[slick] class CallEdgesDao(val driver: JdbcProfile, val treeNodeData: TreeNodeDataDao) extends SlickHelpers {
+	import driver.simple._
+
+	class CallEdges(tag: Tag) extends Table[CallEdge](tag, "node_call_edges") {
+		def callerNodeId = column[Int]("caller_node_id", O.NotNull)
+		def calleeNodeId = column[Int]("callee_node_id", O.NotNull)
+		def * = (callerNodeId, calleeNodeId) <> (CallEdge.tupled, CallEdge.unapply)
+
+		def pk = primaryKey("nce_pk", (callerNodeId, calleeNodeId))
+		def caller = foreignKey("nce_caller", callerNodeId, treeNodeData.treeNodeData)(_.id, onDelete = ForeignKeyAction.Cascade)
+		def callee = foreignKey("nce_callee", calleeNodeId, treeNodeData.treeNodeData)(_.id, onDelete = ForeignKeyAction.Cascade)
+		def calleeIdx = index("nce_callee_idx", calleeNodeId)
+	}
+	val callEdges = TableQuery[CallEdges]
+
+	def create(implicit session: Session) = callEdges.ddl.create
+
+	/** Projects created before call edges were stored won't have the table yet. */
+	def createIfMissing(implicit session: Session) = {
+		if (MTable.getTables(callEdges.baseTableRow.tableName).list.isEmpty)
+			create
+	}
+
+	def iterateWith[T](f: Iterator[CallEdge] => T)(implicit session: Session): T = {
+		val it = callEdges.iterator
+		try {
+			f(it)
+		} finally it.close
+	}
+
+	/** Writes the given edges; the caller is responsible for not passing edges that are already stored. */
+	def store(entries: Iterable[CallEdge])(implicit session: Session) {
+		callEdges ++= entries
+	}
+}
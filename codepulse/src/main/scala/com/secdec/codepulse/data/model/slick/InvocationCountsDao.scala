@@ -0,0 +1,70 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.slick.driver.JdbcProfile
+import scala.slick.jdbc.meta.MTable
+import scala.slick.model.ForeignKeyAction
+import com.secdec.codepulse.data.model._
+
+/** The Slick DAO for node invocation counts.
+  */
+private[slick] class InvocationCountsDao(val driver: JdbcProfile, val recordingMetadata: RecordingMetadataDao, val treeNodeData: TreeNodeDataDao) extends SlickHelpers {
+	import driver.simple._
+
+	class InvocationCounts(tag: Tag) extends Table[InvocationCount](tag, "node_invocation_counts") {
+		def recordingId = column[Option[Int]]("recording_id", O.Nullable)
+		def nodeId = column[Int]("node_id", O.NotNull)
+		def count = column[Long]("invocation_count", O.NotNull)
+		def * = (recordingId, nodeId, count) <> (InvocationCount.tupled, InvocationCount.unapply)
+
+		def recording = foreignKey("nic_recording", recordingId, recordingMetadata.recordings)(_.id, onDelete = ForeignKeyAction.Cascade)
+		def node = foreignKey("nic_node", nodeId, treeNodeData.treeNodeData)(_.id, onDelete = ForeignKeyAction.Cascade)
+	}
+	val invocationCounts = TableQuery[InvocationCounts]
+
+	def create(implicit session: Session) = invocationCounts.ddl.create
+
+	/** Projects created before invocation counts were stored won't have the table yet. */
+	def createIfMissing(implicit session: Session) = {
+		if (MTable.getTables(invocationCounts.baseTableRow.tableName).list.isEmpty)
+			create
+	}
+
+	def iterateWith[T](f: Iterator[InvocationCount] => T)(implicit session: Session): T = {
+		val it = invocationCounts.iterator
+		try {
+			f(it)
+		} finally it.close
+	}
+
+	/** Writes the given totals, replacing any previous total for the same recording and node. */
+	def store(entries: Iterable[InvocationCount])(implicit session: Session) {
+		for (entry <- entries) {
+			val existing = entry.recordingId match {
+				case Some(recordingId) => invocationCounts.filter(c => c.recordingId === recordingId && c.nodeId === entry.nodeId)
+				case None => invocationCounts.filter(c => c.recordingId.isNull && c.nodeId === entry.nodeId)
+			}
+
+			if (existing.map(_.count).update(entry.count) == 0)
+				invocationCounts += entry
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.slick.driver.JdbcProfile
+import scala.slick.jdbc.meta.MTable
+import scala.slick.model.ForeignKeyAction
+import com.secdec.codepulse.data.model._
+
+/** The Slick DAO for node call duration histograms.
+  */
+private[slick] class MethodDurationsDao(val driver: JdbcProfile, val treeNodeData: TreeNodeDataDao) extends SlickHelpers {
+	import driver.simple._
+
+	class MethodDurations(tag: Tag) extends Table[DurationBucketCount](tag, "node_duration_histograms") {
+		def nodeId = column[Int]("node_id", O.NotNull)
+		def bucket = column[Int]("bucket", O.NotNull)
+		def count = column[Long]("sample_count", O.NotNull)
+		def * = (nodeId, bucket, count) <> (DurationBucketCount.tupled, DurationBucketCount.unapply)
+
+		def pk = primaryKey("ndh_pk", (nodeId, bucket))
+		def node = foreignKey("ndh_node", nodeId, treeNodeData.treeNodeData)(_.id, onDelete = ForeignKeyAction.Cascade)
+	}
+	val methodDurations = TableQuery[MethodDurations]
+
+	def create(implicit session: Session) = methodDurations.ddl.create
+
+	/** Projects created before durations were stored won't have the table yet. */
+	def createIfMissing(implicit session: Session) = {
+		if (MTable.getTables(methodDurations.baseTableRow.tableName).list.isEmpty)
+			create
+	}
+
+	def iterateWith[T](f: Iterator[DurationBucketCount] => T)(implicit session: Session): T = {
+		val it = methodDurations.iterator
+		try {
+			f(it)
+		} finally it.close
+	}
+
+	/** Writes the given bucket totals, replacing any previous total for the same node and bucket. */
+	def store(entries: Iterable[DurationBucketCount])(implicit session: Session) {
+		for (entry <- entries) {
+			val existing = methodDurations.filter(d => d.nodeId === entry.nodeId && d.bucket === entry.bucket)
+			if (existing.map(_.count).update(entry.count) == 0)
+				methodDurations += entry
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.concurrent.duration.FiniteDuration
+import scala.slick.jdbc.JdbcBackend.Database
+import akka.actor.ActorSystem
+import com.secdec.codepulse.data.model.{ CallEdge, CallEdgeDataAccess }
+import com.secdec.codepulse.util.TaskScheduler
+
+/** Slick-backed CallEdgeDataAccess implementation.
+  * Edges are indexed in memory in both directions, and new edges are
+  * periodically written out.
+  */
+private[slick] class SlickCallEdgeDataAccess(dao: CallEdgesDao, db: Database, flushInterval: FiniteDuration, actorSystem: ActorSystem) extends CallEdgeDataAccess {
+	private val flusher = TaskScheduler(actorSystem, flushInterval) {
+		if (!pending.isEmpty)
+			lock.synchronized { flushPreLocked }
+	}
+
+	private class Index {
+		val callees = collection.mutable.HashMap.empty[Int, collection.mutable.Set[Int]]
+		val callers = collection.mutable.HashMap.empty[Int, collection.mutable.Set[Int]]
+
+		def add(caller: Int, callee: Int): Boolean = {
+			val added = callees.getOrElseUpdate(caller, collection.mutable.Set.empty) add callee
+			if (added) callers.getOrElseUpdate(callee, collection.mutable.Set.empty) += caller
+			added
+		}
+	}
+
+	// lazily load
+	private lazy val index = {
+		val index = new Index
+
+		db withSession { implicit session =>
+			dao.createIfMissing
+			dao.iterateWith { _.foreach { edge => index.add(edge.callerNodeId, edge.calleeNodeId) } }
+		}
+
+		index
+	}
+
+	private val lock = new Object
+	private val pending = collection.mutable.ListBuffer.empty[CallEdge]
+
+	private def flushPreLocked() {
+		// this is to be called when locking has already been done for us
+		db withTransaction { implicit transaction =>
+			dao.store(pending)
+		}
+
+		pending.clear
+	}
+
+	/** Flush anything cached for writing out to the db */
+	def flush() {
+		flusher.trigger
+	}
+
+	def close() {
+		flusher.stop(true)
+	}
+
+	def record(edges: List[(Int, Int)]) {
+		lock.synchronized {
+			for ((caller, callee) <- edges if index.add(caller, callee))
+				pending += CallEdge(caller, callee)
+		}
+
+		flusher.start
+	}
+
+	def getCallers(nodeId: Int): Set[Int] = lock.synchronized {
+		index.callers.get(nodeId).fold(Set.empty[Int])(_.toSet)
+	}
+
+	def getCallees(nodeId: Int): Set[Int] = lock.synchronized {
+		index.callees.get(nodeId).fold(Set.empty[Int])(_.toSet)
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.concurrent.duration.FiniteDuration
+import scala.slick.jdbc.JdbcBackend.Database
+import akka.actor.ActorSystem
+import com.secdec.codepulse.data.model.{ InvocationCount, InvocationCountDataAccess }
+import com.secdec.codepulse.util.TaskScheduler
+
+/** Slick-backed InvocationCountDataAccess implementation.
+  * Counts are kept in memory and the totals that changed are periodically
+  * written out, so a hot method costs one row update per flush rather than
+  * one per report.
+  */
+private[slick] class SlickInvocationCountDataAccess(dao: InvocationCountsDao, db: Database, flushInterval: FiniteDuration, actorSystem: ActorSystem) extends InvocationCountDataAccess {
+	private val flusher = TaskScheduler(actorSystem, flushInterval) {
+		if (!dirty.isEmpty)
+			lock.synchronized { flushPreLocked }
+	}
+
+	// lazily load; keyed by (recording ID, node ID)
+	private lazy val counts = {
+		val counts = collection.mutable.HashMap.empty[(Option[Int], Int), Long]
+
+		db withSession { implicit session =>
+			dao.createIfMissing
+			dao.iterateWith {
+				_.foreach { case InvocationCount(recordingId, nodeId, count) => counts.put(recordingId -> nodeId, count) }
+			}
+		}
+
+		counts
+	}
+
+	private val lock = new Object
+	private val dirty = collection.mutable.Set.empty[(Option[Int], Int)]
+
+	private def flushPreLocked() {
+		// this is to be called when locking has already been done for us
+		db withTransaction { implicit transaction =>
+			dao.store(dirty.toList.map { case key @ (recordingId, nodeId) => InvocationCount(recordingId, nodeId, counts(key)) })
+		}
+
+		dirty.clear
+	}
+
+	/** Flush anything cached for writing out to the db */
+	def flush() {
+		flusher.trigger
+	}
+
+	def close() {
+		flusher.stop(true)
+	}
+
+	def record(recordings: List[Int], nodeCounts: List[(Int, Long)]) {
+		lock.synchronized {
+			for {
+				recordingId <- None :: recordings.map(Some(_))
+				(nodeId, delta) <- nodeCounts
+			} {
+				val key = recordingId -> nodeId
+				counts.put(key, counts.getOrElse(key, 0L) + delta)
+				dirty += key
+			}
+		}
+
+		flusher.start
+	}
+
+	def getAllNodeCounts(): Map[Int, Long] = lock.synchronized {
+		counts.collect { case ((None, nodeId), count) => nodeId -> count }.toMap
+	}
+
+	def getRecordingNodeCounts(recordingId: Int): Map[Int, Long] = lock.synchronized {
+		counts.collect { case ((Some(`recordingId`), nodeId), count) => nodeId -> count }.toMap
+	}
+
+	def getNodeCount(nodeId: Int): Option[Long] = lock.synchronized {
+		counts.get(None -> nodeId)
+	}
+}
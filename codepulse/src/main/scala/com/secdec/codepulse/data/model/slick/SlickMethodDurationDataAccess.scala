@@ -0,0 +1,104 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.data.model.slick
+
+import scala.concurrent.duration.FiniteDuration
+import scala.slick.jdbc.JdbcBackend.Database
+import akka.actor.ActorSystem
+import com.codedx.codepulse.agent.common.message.DurationBuckets
+import com.secdec.codepulse.data.model.{ DurationBucketCount, LatencySummary, MethodDurationDataAccess }
+import com.secdec.codepulse.util.TaskScheduler
+
+/** Slick-backed MethodDurationDataAccess implementation.
+  * Histograms are kept in memory and the buckets that changed are
+  * periodically written out.
+  */
+private[slick] class SlickMethodDurationDataAccess(dao: MethodDurationsDao, db: Database, flushInterval: FiniteDuration, actorSystem: ActorSystem) extends MethodDurationDataAccess {
+	private val flusher = TaskScheduler(actorSystem, flushInterval) {
+		if (!dirty.isEmpty)
+			lock.synchronized { flushPreLocked }
+	}
+
+	// lazily load
+	private lazy val histograms = {
+		val histograms = collection.mutable.HashMap.empty[Int, Array[Long]]
+
+		db withSession { implicit session =>
+			dao.createIfMissing
+			dao.iterateWith {
+				_.foreach {
+					case DurationBucketCount(nodeId, bucket, count) if bucket >= 0 && bucket < DurationBuckets.Count =>
+						histograms.getOrElseUpdate(nodeId, new Array[Long](DurationBuckets.Count))(bucket) = count
+					case _ => ()
+				}
+			}
+		}
+
+		histograms
+	}
+
+	private val lock = new Object
+	private val dirty = collection.mutable.Set.empty[(Int, Int)]
+
+	private def flushPreLocked() {
+		// this is to be called when locking has already been done for us
+		db withTransaction { implicit transaction =>
+			dao.store(dirty.toList.map { case (nodeId, bucket) => DurationBucketCount(nodeId, bucket, histograms(nodeId)(bucket)) })
+		}
+
+		dirty.clear
+	}
+
+	/** Flush anything cached for writing out to the db */
+	def flush() {
+		flusher.trigger
+	}
+
+	def close() {
+		flusher.stop(true)
+	}
+
+	def record(nodeHistograms: List[(Int, Seq[(Int, Int)])]) {
+		lock.synchronized {
+			for {
+				(nodeId, buckets) <- nodeHistograms
+				(bucket, delta) <- buckets
+				if bucket >= 0 && bucket < DurationBuckets.Count
+			} {
+				histograms.getOrElseUpdate(nodeId, new Array[Long](DurationBuckets.Count))(bucket) += delta
+				dirty += nodeId -> bucket
+			}
+		}
+
+		flusher.start
+	}
+
+	def getHistogram(nodeId: Int): Option[Array[Long]] = lock.synchronized {
+		histograms.get(nodeId).map(_.clone)
+	}
+
+	def getLatencySummary(nodeId: Int): Option[LatencySummary] = lock.synchronized {
+		histograms.get(nodeId).flatMap(LatencySummary(_))
+	}
+
+	def getAllLatencySummaries(): Map[Int, LatencySummary] = lock.synchronized {
+		histograms.flatMap { case (nodeId, histogram) => LatencySummary(histogram).map(nodeId -> _) }.toMap
+	}
+}
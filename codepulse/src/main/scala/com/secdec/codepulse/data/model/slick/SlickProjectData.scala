@@ -45,11 +45,23 @@ class SlickProjectData(val id: ProjectId, val db: Database, val driver: JdbcProf
 	private val encountersDao = new EncountersDao(driver, recordingMetadataDao, treeNodeDataDao, sourceDataDao)
 	private val encountersAccess = new SlickTraceEncounterDataAccess(encountersDao, db, encounterBufferSize, encounterFlushInterval: FiniteDuration, actorSystem: ActorSystem)
 
+	private val invocationCountsDao = new InvocationCountsDao(driver, recordingMetadataDao, treeNodeDataDao)
+	private val invocationCountsAccess = new SlickInvocationCountDataAccess(invocationCountsDao, db, encounterFlushInterval, actorSystem)
+
+	private val methodDurationsDao = new MethodDurationsDao(driver, treeNodeDataDao)
+	private val methodDurationsAccess = new SlickMethodDurationDataAccess(methodDurationsDao, db, encounterFlushInterval, actorSystem)
+
+	private val callEdgesDao = new CallEdgesDao(driver, treeNodeDataDao)
+	private val callEdgesAccess = new SlickCallEdgeDataAccess(callEdgesDao, db, encounterFlushInterval, actorSystem)
+
 	def metadata: ProjectMetadata = metadataAccess
 	def treeNodeData: TreeNodeDataAccess = treeNodeDataAccess
 	def sourceData: SourceDataAccess = sourceDataAccess
 	def recordings: RecordingMetadataAccess = recordingMetadataAccess
 	def encounters: TraceEncounterDataAccess = encountersAccess
+	def invocationCounts: InvocationCountDataAccess = invocationCountsAccess
+	def methodDurations: MethodDurationDataAccess = methodDurationsAccess
+	def callEdges: CallEdgeDataAccess = callEdgesAccess
 
 	/** Initialize a blank DB for use. */
 	def init() = db withTransaction { implicit transaction =>
@@ -57,14 +69,23 @@ class SlickProjectData(val id: ProjectId, val db: Database, val driver: JdbcProf
 		treeNodeDataDao.create
 		recordingMetadataDao.create
 		encountersDao.create
+		invocationCountsDao.create
+		methodDurationsDao.create
+		callEdgesDao.create
 	}
 
 	def flush() {
 		encountersAccess.flush
+		invocationCountsAccess.flush
+		methodDurationsAccess.flush
+		callEdgesAccess.flush
 	}
 
 	def close() {
 		encountersAccess.close
+		invocationCountsAccess.close
+		methodDurationsAccess.close
+		callEdgesAccess.close
 	}
 
 	def delete() {
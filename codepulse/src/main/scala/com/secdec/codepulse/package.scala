@@ -105,6 +105,70 @@ package object codepulse {
 
 		def skipUserAcknowledgment = config.getBoolean("cp.userSettings.skipUserAcknowledgment")
 
+		def countInvocations: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.countInvocations")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def profileDurations: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.profileDurations")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def recordCallEdges: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.recordCallEdges")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def sharedMemoryTransport: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.sharedMemoryTransport")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def suppressCoveredMethods: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.suppressCoveredMethods")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def samplingInterval: Int = {
+			try {
+				config.getInt("cp.userSettings.samplingInterval") max 1
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => 1
+			}
+		}
+
+		def tieredLineLevel: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.tieredLineLevel")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
+		def omitExceptionExits: Boolean = {
+			try {
+				config.getBoolean("cp.userSettings.omitExceptionExits")
+			} catch {
+				case _: com.typesafe.config.ConfigException.Missing => false
+			}
+		}
+
 		def secdecLoggingLevel: Option[Level] = {
 			getLogLevel(config, "cp.userSettings.logging.secdecLoggingLevel")
 		}
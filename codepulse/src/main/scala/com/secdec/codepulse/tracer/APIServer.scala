@@ -56,10 +56,13 @@ import com.secdec.codepulse.data.bytecode.CodeTreeNodeKind
 import com.secdec.codepulse.data.storage.StorageManager
 import com.secdec.codepulse.processing.ProcessStatus
 import com.secdec.codepulse.version
+import com.codedx.codepulse.agent.common.message.DurationBuckets
 
 case class NodeSourceMetadata(nodeId: Int, nodeLabel: String, sourceFileId: Int, sourceFilePath: String, sourceLocationCount: Int, methodStartLine: Int, isSurfaceMethod: Boolean)
 case class NodeSourceFileContents(sourceFileId: Int, sourceFileContents: String)
 case class NodeTracedSourceLocations(nodeId: Int, sourceLocations: List[SourceLocation])
+case class NodeLatency(nodeId: Int, summary: Option[LatencySummary], histogram: Option[Array[Long]])
+case class NodeCallEdges(nodeId: Int, callers: Set[Int], callees: Set[Int])
 
 class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager, generalEventBus: GeneralEventBus) extends RestHelper with Loggable {
 
@@ -228,6 +231,9 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 		/** /api/<target.id>/end */
 		val End = simpleTargetPath("end")
 
+		/** /api/<target.id>/sampling */
+		val Sampling = simpleTargetPath("sampling")
+
 		/** /api/<target.id>/status */
 		val Status = simpleInclusiveTargetPath("status")
 
@@ -263,6 +269,9 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 
 		val TreeInstrumentation = simpleTargetPath("tree-instrumentation")
 
+		/** /api/<target.id>/line-level */
+		val LineLevel = simpleTargetPath("line-level")
+
 		/** /api/<target.id>/recordings */
 		val Recordings = simpleTargetPath("recordings")
 
@@ -345,6 +354,24 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 			{ case (target, nodeTracedSourceLocations) => (target, List("node", nodeTracedSourceLocations.nodeId.toString, "source-locations"))}
 		)
 
+		val NodeCallLatency = TargetPath.map[(TracingTarget, NodeLatency)](
+			{
+				case (target, List("node", AsInt(nodeId), "latency")) =>
+					val durations = target.projectData.methodDurations
+					(target, NodeLatency(nodeId, durations.getLatencySummary(nodeId), durations.getHistogram(nodeId)))
+			},
+			{ case (target, nodeLatency) => (target, List("node", nodeLatency.nodeId.toString, "latency")) }
+		)
+
+		val NodeEdges = TargetPath.map[(TracingTarget, NodeCallEdges)](
+			{
+				case (target, List("node", AsInt(nodeId), "edges")) =>
+					val edges = target.projectData.callEdges
+					(target, NodeCallEdges(nodeId, edges.getCallers(nodeId), edges.getCallees(nodeId)))
+			},
+			{ case (target, nodeEdges) => (target, List("node", nodeEdges.nodeId.toString, "edges")) }
+		)
+
 		val AttackSurface = simpleTargetPath("attack-surface")
 	}
 
@@ -365,6 +392,19 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 		}
 	}
 
+	private def latencySummaryJson(summary: LatencySummary): JObject =
+		("count" -> summary.count) ~
+			("p50Micros" -> summary.p50Micros) ~
+			("p90Micros" -> summary.p90Micros) ~
+			("p99Micros" -> summary.p99Micros) ~
+			("maxMicros" -> summary.maxMicros)
+
+	private def lineLevelStatus(target: TracingTarget): JObject = {
+		val selection = target.transientData.lineLevelSelection
+		val applied = selection.applied.map { ids => JArray(ids.map(JInt(_))) } getOrElse JNull
+		("tiered" -> userSettings.tieredLineLevel) ~ ("nodes" -> selection.all) ~ ("applied" -> applied)
+	}
+
 	private def setSurfaceMethodStatus(treeNodeData: TreeNodeDataAccess, projectId: ProjectId, nodeId: Int, isSurfaceMethod: Boolean): Unit = {
 		treeNodeData.getNode(nodeId, CodeTreeNodeKind.Mth).map(x => treeNodeData.markSurfaceMethod(nodeId, Some(isSurfaceMethod)))
 		treeBuilderManager.visitNode(projectId, nodeId, node => {
@@ -525,6 +565,18 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 			target.requestTraceEnd()
 			OkResponse()
 
+		// POST a new method event sampling interval for the connected agent
+		// query: interval=N
+		case Paths.Sampling(target) Post req =>
+			req.param("interval") match {
+				case Full(AsInt(interval)) if interval > 0 =>
+					target
+						.requestSamplingInterval(interval)
+						.map { _ => OkResponse() }
+						.recover { case e => PlainTextResponse(e.getMessage, 409) }
+				case _ => PlainTextResponse("interval must be a positive integer", 400)
+			}
+
 		// GET the current status of the trace
 		case Paths.Status(target) Get req =>
 			target.getState map { state =>
@@ -619,7 +671,9 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 				case Full(packages) =>
 					val ids = packages.split(',').flatMap(AsInt.unapply).toSet
 					val tree = treeBuilderManager.get(target.id).projectTree(ids)
-					TreemapDataStreamer.streamTreemapData(target.projectData.treeNodeData, tree)
+					TreemapDataStreamer.streamTreemapData(target.projectData.treeNodeData, tree,
+						target.projectData.invocationCounts.getAllNodeCounts,
+						target.projectData.methodDurations.getAllLatencySummaries)
 
 				case _ => BadResponse()
 			}
@@ -637,18 +691,55 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 						JField(AsInt(key), rawValue) <- json.obj
 						boolValue <- getBool(rawValue)
 					} target.projectData.treeNodeData.updateTraced(key, boolValue)
+
+					// let a running agent pick up the new selection without restarting
+					target.requestTraceSettingsUpdate()
 				}
 				case _ => BadResponse()
 			}
 			OkResponse()
 
+		// GET whether agents start with method probes only, the nodes picked for line-level probes,
+		// and the nodes the running agent was given (if it started out with method probes only)
+		case Paths.LineLevel(target) Get req =>
+			JsonResponse(lineLevelStatus(target))
+
+		// PUT line-level probe changes for package or class nodes, as {nodeId: selected}
+		case Paths.LineLevel(target) Put req =>
+			def getBool(j: JValue) = j match {
+				case JInt(num) => Some(num > 0)
+				case JBool(b) => Some(b)
+				case _ => None
+			}
+
+			req.json.toOption match {
+				// agents that aren't tiered get line-level probes everywhere
+				case Some(_) if !userSettings.tieredLineLevel =>
+					PlainTextResponse("line-level probes are only picked when tieredLineLevel is enabled", 409)
+
+				case Some(json: JObject) =>
+					for {
+						JField(AsInt(key), rawValue) <- json.obj
+						boolValue <- getBool(rawValue)
+					} target.transientData.lineLevelSelection(key) = boolValue
+
+					// a running agent retransforms the classes that gain or lose line-level probes
+					target
+						.requestLineLevelUpdate()
+						.map { _ => JsonResponse(lineLevelStatus(target)) }
+						.recover { case e => PlainTextResponse(e.getMessage, 409) }
+				case _ => BadResponse()
+			}
+
 		// GET a JSON listing of all of the custom recordings for a project.
 		case Paths.Recordings(target) Get req =>
 			JsonResponse(target.projectData.recordings.all.map(_.toJson))
 
 		// POST Add a new custom recording to a project
 		case Paths.NewRecording(target) Post req =>
-			JsonResponse(target.projectData.recordings.create.toJson)
+			val recording = target.projectData.recordings.create
+			target.transientData.coverageSuppression.rearm
+			JsonResponse(recording.toJson)
 
 		// GET a recording's metadata as json
 		case Paths.Recording(projectData, recording) Get req =>
@@ -660,7 +751,11 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 			logger.debug(s"update recording with params: ${req.params}")
 			for (color <- req.param("color")) recording.clientColor = Some(color)
 			for (label <- req.param("label")) recording.clientLabel = Some(label)
-			for (AsBoolean(running) <- req.param("running")) recording.running = running
+			for (AsBoolean(running) <- req.param("running")) {
+				// a recording that starts running needs to see methods that were already covered
+				if (running && !recording.running) target.transientData.coverageSuppression.rearm
+				recording.running = running
+			}
 			OkResponse()
 
 		// DELETE a recording
@@ -721,6 +816,26 @@ class APIServer(manager: ProjectManager, treeBuilderManager: TreeBuilderManager,
 				("isSurfaceMethod", nodeSourceMetadata.isSurfaceMethod)
 			JsonResponse(json)
 
+		// GET a node's call duration summary, and its histogram as (lower bound in microseconds, count) pairs
+		case Paths.NodeCallLatency(target, nodeLatency) Get req =>
+			val histogram = for {
+				counts <- nodeLatency.histogram.toList
+				(count, bucket) <- counts.zipWithIndex
+				if count > 0
+			} yield JArray(JInt(DurationBuckets.lowerBound(bucket)) :: JInt(count) :: Nil)
+
+			val json = ("nodeId" -> nodeLatency.nodeId) ~
+				("summary" -> nodeLatency.summary.map(latencySummaryJson)) ~
+				("histogram" -> JArray(histogram))
+			JsonResponse(json)
+
+		// GET the nodes that a node was seen calling, and being called from
+		case Paths.NodeEdges(target, nodeEdges) Get req =>
+			val json = ("nodeId" -> nodeEdges.nodeId) ~
+				("callers" -> nodeEdges.callers.toList.sorted) ~
+				("callees" -> nodeEdges.callees.toList.sorted)
+			JsonResponse(json)
+
 		case Paths.NodeSourceCodeFileContents(target, nodeSourceFileContents) Get req =>
 			PlainTextResponse(nodeSourceFileContents.sourceFileContents)
 
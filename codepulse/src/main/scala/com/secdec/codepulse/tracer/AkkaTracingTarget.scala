@@ -32,6 +32,7 @@ import com.codedx.codepulse.hq.trace.TraceEndReason
 import com.secdec.codepulse.data.jsp.JspMapper
 import com.secdec.codepulse.data.model.ProjectData
 import com.secdec.codepulse.data.model.ProjectId
+import com.secdec.codepulse.userSettings
 import akka.actor._
 import akka.pattern.AskSupport
 import akka.util.Timeout
@@ -75,6 +76,9 @@ trait TracingTarget {
 
 	def subscribeToStateChanges(sub: EventStream[TracingTargetState] => Unit)(implicit exc: ExecutionContext): Future[Unit]
 	def requestTraceEnd()(implicit exc: ExecutionContext): Future[Unit]
+	def requestSamplingInterval(interval: Int)(implicit exc: ExecutionContext): Future[Unit]
+	def requestTraceSettingsUpdate()(implicit exc: ExecutionContext): Future[Unit]
+	def requestLineLevelUpdate()(implicit exc: ExecutionContext): Future[Unit]
 	def getState: Future[TracingTargetState]
 
 	def projectData: ProjectData
@@ -123,6 +127,9 @@ object AkkaTracingTarget {
 	private case object LoadingFinished extends TargetRequest
 	private case class LoadingFailed(val reason: String) extends TargetRequest
 	private case object RequestTraceEnd extends TargetRequest
+	private case class RequestSamplingInterval(interval: Int) extends TargetRequest
+	private case object RequestTraceSettingsUpdate extends TargetRequest
+	private case object RequestLineLevelUpdate extends TargetRequest
 	private case class Subscribe(f: EventStream[TracingTargetState] => Unit) extends TargetRequest
 	private case object RequestState extends TargetRequest
 
@@ -144,6 +151,11 @@ object AkkaTracingTarget {
 	private class TracingTargetImpl(val id: ProjectId, actor: ActorRef, val projectData: ProjectData, val transientData: TransientTraceData) extends TracingTarget with AskSupport {
 		def subscribeToStateChanges(sub: EventStream[TracingTargetState] => Unit)(implicit exc: ExecutionContext) = getAckFuture(Subscribe(sub))
 		def requestTraceEnd()(implicit exc: ExecutionContext) = getAckFuture(RequestTraceEnd)
+		def requestSamplingInterval(interval: Int)(implicit exc: ExecutionContext) = getAckFuture(RequestSamplingInterval(interval))
+
+		// regenerating the trace settings has the same cost as it does when a trace connects
+		def requestTraceSettingsUpdate()(implicit exc: ExecutionContext) = getAckFuture(RequestTraceSettingsUpdate)(exc = exc, timeout = new Timeout(10.minutes))
+		def requestLineLevelUpdate()(implicit exc: ExecutionContext) = getAckFuture(RequestLineLevelUpdate)
 
 		def getState = {
 			implicit val timeout = new Timeout(5.seconds)
@@ -229,6 +241,8 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 	import AkkaTracingTarget._
 
 	private var trace: Option[Trace] = None
+	// whether `trace` started out with method probes only, and so takes line-level targets
+	private var traceIsTiered = false
 	private val stateChanges = new EventSource[TracingTargetState]
 
 	// import an ExecutionContext for running Futures
@@ -333,6 +347,19 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 	  */
 	val StateTracing = State(TracingTargetState.Running, {
 		case RequestTraceEnd => onTraceEndRequested()
+		case RequestSamplingInterval(interval) =>
+			for (t <- trace) t.setSamplingInterval(interval)
+			sender ! Ack
+		case RequestTraceSettingsUpdate =>
+			for (t <- trace) {
+				val traceSettings = TraceSettingsCreator.generateTraceSettings(projectData, jspMapper)
+				t.updateTraceFilters(traceSettings.exclusions, traceSettings.inclusions)
+			}
+			sender ! Ack
+		case RequestLineLevelUpdate =>
+			// an agent that isn't tiered already has line-level probes everywhere
+			for (t <- trace if traceIsTiered) sendLineLevelTargets(t)
+			sender ! Ack
 		case TraceEnded(reason) => onTraceCompleted(reason)
 	})
 
@@ -355,7 +382,18 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 
 		// reconfigure the trace's settings so that it instruments the packages/jsps from this project
 		val traceSettings = TraceSettingsCreator.generateTraceSettings(projectData, jspMapper)
-		t.reconfigureAgent(traceSettings, AgentConfiguration())
+		t.reconfigureAgent(traceSettings, AgentConfiguration(
+			countInvocations = userSettings.countInvocations,
+			profileDurations = userSettings.profileDurations,
+			recordCallEdges = userSettings.recordCallEdges,
+			sharedMemoryTransport = userSettings.sharedMemoryTransport,
+			samplingInterval = userSettings.samplingInterval,
+			tieredLineLevel = userSettings.tieredLineLevel,
+			omitExceptionExits = userSettings.omitExceptionExits))
+
+		// carry over the line-level probes picked during earlier traces
+		traceIsTiered = userSettings.tieredLineLevel
+		if (traceIsTiered) sendLineLevelTargets(t)
 
 		// set up data management for the trace
 		val dataManager = new StreamingTraceDataManager(projectData, transientTraceData, jspMapper)
@@ -363,6 +401,10 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 		// remember this trace
 		trace = Some(t)
 
+		// let HQ switch off probes for covered methods, unless we need every event
+		if (userSettings.suppressCoveredMethods && !userSettings.countInvocations && !userSettings.profileDurations && !userSettings.recordCallEdges)
+			transientTraceData.coverageSuppression.attach(t)
+
 		// start the trace
 		t.start(dataManager)
 
@@ -370,6 +412,12 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 		changeState(StateTracing)
 	}
 
+	private def sendLineLevelTargets(t: Trace): Unit = {
+		val nodeIds = transientTraceData.lineLevelSelection.all
+		t.setLineLevelTargets(TraceSettingsCreator.generateLineLevelTargets(projectData, nodeIds))
+		transientTraceData.lineLevelSelection.applied = Some(nodeIds)
+	}
+
 	private def onTraceEndRequested(): Unit = {
 		logger.debug("End Trace Requested")
 
@@ -386,6 +434,9 @@ class AkkaTracingTarget(projectId: ProjectId, projectData: ProjectData, transien
 
 		// clear the trace
 		trace = None
+		traceIsTiered = false
+		transientTraceData.lineLevelSelection.applied = None
+		transientTraceData.coverageSuppression.detach
 
 		// change the state back to "Idle"
 		changeState(StateIdle)
@@ -0,0 +1,93 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.codepulse.tracer
+
+import com.codedx.codepulse.hq.trace.Trace
+
+/** Tells the agent of an attached trace which methods are already covered in the
+  * active recording, so it can stop tracing them. Method ids are the agent's ids,
+  * collected while processing data and sent in batches; `rearm` starts over, and is
+  * called whenever a new recording starts.
+  */
+class CoverageSuppression {
+	import CoverageSuppression._
+
+	private var agent: Option[Agent] = None
+	private val covered = collection.mutable.Set.empty[Int]
+	private val pending = collection.mutable.ArrayBuffer.empty[Int]
+	private var lastFlush = 0L
+
+	def attach(t: Trace): Unit = {
+		if (t.supportsMethodSuppression) attach(new Agent {
+			def suppressMethods(methodIds: Seq[Int]) = t.suppressMethods(methodIds)
+			def rearmMethods() = t.rearmMethods
+		})
+	}
+
+	def attach(a: Agent): Unit = synchronized {
+		agent = Some(a)
+		covered.clear
+		pending.clear
+		lastFlush = System.currentTimeMillis
+	}
+
+	def detach(): Unit = synchronized {
+		agent = None
+		covered.clear
+		pending.clear
+	}
+
+	def isAttached = synchronized { agent.isDefined }
+
+	/** Note that the agent method `methodId` has been covered. */
+	def markCovered(methodId: Int): Unit = synchronized {
+		if (agent.isDefined) {
+			if (covered add methodId) pending += methodId
+			if (pending.size >= MaxPending || System.currentTimeMillis - lastFlush >= FlushIntervalMillis) flush
+		}
+	}
+
+	/** Sends any methods that haven't been suppressed yet to the agent. */
+	def flush(): Unit = synchronized {
+		lastFlush = System.currentTimeMillis
+		for (a <- agent if !pending.isEmpty) {
+			a.suppressMethods(pending.toList)
+			pending.clear
+		}
+	}
+
+	/** Re-enables tracing of every suppressed method. */
+	def rearm(): Unit = synchronized {
+		covered.clear
+		pending.clear
+		for (a <- agent) a.rearmMethods
+	}
+}
+
+object CoverageSuppression {
+	/** The agent end of a trace, as far as suppression is concerned. */
+	trait Agent {
+		def suppressMethods(methodIds: Seq[Int]): Unit
+		def rearmMethods(): Unit
+	}
+
+	val MaxPending = 128
+	val FlushIntervalMillis = 200L
+}
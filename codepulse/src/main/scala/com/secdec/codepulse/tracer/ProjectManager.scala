@@ -117,6 +117,7 @@ class ProjectManager(val actorSystem: ActorSystem) extends Observing with Loggab
 
 	def removeUnloadedProject(projectId: ProjectId, reason: String): Option[TracingTarget] = {
 		dataProvider removeProject projectId
+		transientDataProvider remove projectId
 		for (project <- projects remove projectId) yield {
 			project.notifyLoadingFailed(reason)
 			project
@@ -129,6 +130,7 @@ class ProjectManager(val actorSystem: ActorSystem) extends Observing with Loggab
 		val id = project.id
 		projects remove id
 		dataProvider removeProject id
+		transientDataProvider remove id
 		pendingProjectDeletions.remove(project)
 
 		projectListUpdates.fire()
@@ -156,6 +158,7 @@ class ProjectManager(val actorSystem: ActorSystem) extends Observing with Loggab
 				// actually perform the deletion at this point
 				projects remove project.id
 				dataProvider removeProject project.id
+				transientDataProvider remove project.id
 				pendingProjectDeletions.remove(project)
 				projectListUpdates fire ()
 
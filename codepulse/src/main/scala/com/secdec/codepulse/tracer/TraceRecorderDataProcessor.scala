@@ -40,6 +40,12 @@ class TraceRecorderDataProcessor(projectData: ProjectData, transientData: Transi
 	val deferredSourceLocationCounts = collection.mutable.Map.empty[Int, collection.mutable.ListBuffer[DataMessageContent.SourceLocationCount]]
 	val deferredMapSourceLocations = collection.mutable.Map.empty[Int, collection.mutable.ListBuffer[DataMessageContent.MapSourceLocation]]
 	val deferredMethodVisits = collection.mutable.Map.empty[Int, collection.mutable.ListBuffer[DataMessageContent.MethodVisit]]
+	val deferredMethodCounts = collection.mutable.Map.empty[Int, Long]
+	val deferredMethodDurations = collection.mutable.Map.empty[Int, collection.mutable.ListBuffer[Seq[(Int, Int)]]]
+	val deferredCallEdges = collection.mutable.Map.empty[Int, collection.mutable.ListBuffer[(Int, Int)]]
+
+	// how many calls each method entry the agent reports stands for
+	var samplingInterval = 1
 
 	/** Process a single data message */
 	def processMessage(message: DataMessageContent): Unit = {
@@ -64,15 +70,44 @@ class TraceRecorderDataProcessor(projectData: ProjectData, transientData: Transi
 				methodEntries.get.append(methodEntryMessage)
 			}
 
+			// handle invocation counts, which stand in for method entries when the agent counts invocations
+			case DataMessageContent.MethodCounts(_, sampledCounts) =>
+				val counts = if (samplingInterval == 1) sampledCounts else sampledCounts.map { case (methodId, delta) => methodId -> delta * samplingInterval }
+				val (known, unknown) = counts.partition { case (methodId, _) => methodCor.get(methodId).nonEmpty }
+				methodCounts(known)
+
+				for ((methodId, delta) <- unknown if !unknownAndIgnoredMethodCor.contains(methodId)) {
+					logger.debug(s"Deferring invocation count for unknown method $methodId...")
+					deferredMethodCounts.put(methodId, deferredMethodCounts.getOrElse(methodId, 0L) + delta)
+				}
+
+			case DataMessageContent.MethodDurations(_, histograms) =>
+				val (known, unknown) = histograms.partition { case (methodId, _) => methodCor.get(methodId).nonEmpty }
+				methodDurations(known)
+
+				for ((methodId, buckets) <- unknown if !unknownAndIgnoredMethodCor.contains(methodId)) {
+					logger.debug(s"Deferring durations for unknown method $methodId...")
+					deferredMethodDurations.getOrElseUpdate(methodId, collection.mutable.ListBuffer.empty) += buckets
+				}
+
+			case DataMessageContent.CallEdges(edges) =>
+				def isKnown(methodId: Int) = methodCor.get(methodId).nonEmpty
+				val (known, unknown) = edges.partition { case (caller, callee) => isKnown(caller) && isKnown(callee) }
+				callEdges(known)
+
+				for (edge @ (caller, callee) <- unknown if !unknownAndIgnoredMethodCor.contains(caller) && !unknownAndIgnoredMethodCor.contains(callee)) {
+					val methodId = if (isKnown(caller)) callee else caller
+					logger.debug(s"Deferring call edge for unknown method $methodId...")
+					deferredCallEdges.getOrElseUpdate(methodId, collection.mutable.ListBuffer.empty) += edge
+				}
+
+			case DataMessageContent.SamplingInterval(_, interval) =>
+				logger.debug(s"Agent is now sampling every $interval method entries")
+				samplingInterval = interval max 1
+
 			// make method correlations
 			case DataMessageContent.MapMethodSignature(sig, id) =>
-				var nodeIds = projectData.treeNodeData.getNodeIdsForSignature(sig)
-				if (nodeIds.isEmpty) {
-					val jspNodeId = jspMapper.flatMap(_ map sig)
-					if (jspNodeId.nonEmpty) {
-						nodeIds = jspNodeId.get :: Nil
-					}
-				}
+				val nodeIds = transientData.signatureNodeIds.getOrLookup(sig)(lookupNodeIds)
 
 				if (nodeIds.isEmpty) {
 					logger.warn(s"*** Ignoring signature missing from application inventory: $sig")
@@ -88,6 +123,18 @@ class TraceRecorderDataProcessor(projectData: ProjectData, transientData: Transi
 					logger.debug(s"Processing deferred method entry for method ${x.methodId}...")
 					processMessage(x)
 				})
+				deferredMethodCounts.remove(id).foreach(delta => {
+					logger.debug(s"Processing deferred invocation count for method $id...")
+					methodCounts((id, delta) :: Nil)
+				})
+				deferredMethodDurations.remove(id).foreach(x => {
+					logger.debug(s"Processing deferred durations for method $id...")
+					methodDurations(x.map(id -> _))
+				})
+				deferredCallEdges.remove(id).foreach(x => {
+					logger.debug(s"Processing deferred call edges for method $id...")
+					processMessage(DataMessageContent.CallEdges(x.toList))
+				})
 				deferredSourceLocationCounts.remove(id).getOrElse(collection.mutable.ListBuffer.empty[DataMessageContent.SourceLocationCount]).foreach(x => {
 					logger.debug(s"Processing deferred source location count for method $x")
 				})
@@ -181,13 +228,56 @@ class TraceRecorderDataProcessor(projectData: ProjectData, transientData: Transi
 	}
 
 	/** Process a break in the data */
-	def processDataBreak(): Unit = ()
+	def processDataBreak(): Unit = transientData.coverageSuppression.flush
 
 	/** There is no more data, so do any cleanup/saving/etc necessary */
-	def finishProcessing(): Unit = ()
+	def finishProcessing(): Unit = transientData.coverageSuppression.flush
 
 	def cleanup() = ()
 
+	def lookupNodeIds(sig: String): List[Int] = {
+		val nodeIds = projectData.treeNodeData.getNodeIdsForSignature(sig)
+		if (nodeIds.nonEmpty) nodeIds
+		else jspMapper.flatMap(_ map sig).toList
+	}
+
+	def methodCounts(counts: Seq[(Int, Long)]): Unit = {
+		if (counts.isEmpty) return
+
+		val runningRecordings = projectData.recordings.all.filter (_.running).map (_.id)
+		val nodeCounts = for {
+			(methodId, delta) <- counts.toList
+			nodeIds <- methodCor get methodId
+			nodeId <- nodeIds
+		} yield nodeId -> delta
+
+		projectData.invocationCounts.record(runningRecordings, nodeCounts)
+		projectData.encounters.record(runningRecordings, nodeCounts.map { case (nodeId, _) => (nodeId, None) })
+		for ((nodeId, _) <- nodeCounts) transientData.nodeTraceData.addEncounter(nodeId)
+	}
+
+	def methodDurations(histograms: Seq[(Int, Seq[(Int, Int)])]): Unit = {
+		val nodeHistograms = for {
+			(methodId, buckets) <- histograms.toList
+			nodeIds <- methodCor get methodId
+			nodeId <- nodeIds
+		} yield nodeId -> buckets
+
+		if (!nodeHistograms.isEmpty) projectData.methodDurations.record(nodeHistograms)
+	}
+
+	def callEdges(edges: Seq[(Int, Int)]): Unit = {
+		val nodeEdges = for {
+			(caller, callee) <- edges.toList
+			callerNodeIds <- methodCor get caller
+			callerNodeId <- callerNodeIds
+			calleeNodeIds <- methodCor get callee
+			calleeNodeId <- calleeNodeIds
+		} yield callerNodeId -> calleeNodeId
+
+		if (!nodeEdges.isEmpty) projectData.callEdges.record(nodeEdges)
+	}
+
 	def methodVisit(methodId: Int,  sourceLocationId: Option[Int]): Unit = {
 
 		var sourceLocationsByNode = collection.mutable.HashMap.empty[Int, Option[Int]]
@@ -196,6 +286,7 @@ class TraceRecorderDataProcessor(projectData: ProjectData, transientData: Transi
 		}
 
 		val runningRecordings = projectData.recordings.all.filter (_.running).map (_.id)
+		if (methodCor contains methodId) transientData.coverageSuppression.markCovered(methodId)
 		for {
 			nodeIds <- methodCor get methodId
 			nodeId <- nodeIds
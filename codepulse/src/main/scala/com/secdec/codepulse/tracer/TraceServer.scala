@@ -52,7 +52,14 @@ object TraceServer extends Loggable {
 	  * determine which classes will be instrumented.
 	  */
 	def awaitNewTrace(projectData: ProjectData, jspMapper: Option[JspMapper]) = {
-		val agentConfig = AgentConfiguration()
+		val agentConfig = AgentConfiguration(
+			countInvocations = com.secdec.codepulse.userSettings.countInvocations,
+			profileDurations = com.secdec.codepulse.userSettings.profileDurations,
+			recordCallEdges = com.secdec.codepulse.userSettings.recordCallEdges,
+			sharedMemoryTransport = com.secdec.codepulse.userSettings.sharedMemoryTransport,
+			samplingInterval = com.secdec.codepulse.userSettings.samplingInterval,
+			tieredLineLevel = com.secdec.codepulse.userSettings.tieredLineLevel,
+			omitExceptionExits = com.secdec.codepulse.userSettings.omitExceptionExits)
 		val hqConfig = HQConfiguration()
 		val monitorConfig = MonitorConfiguration()
 
@@ -19,10 +19,12 @@
 
 package com.secdec.codepulse.tracer
 
+import java.util.regex.Pattern
+
 import com.codedx.codepulse.hq.config.TraceSettings
 import com.secdec.codepulse.data.bytecode.CodeTreeNodeKind
 import com.secdec.codepulse.data.jsp.JspMapper
-import com.secdec.codepulse.data.model.ProjectData
+import com.secdec.codepulse.data.model.{ ProjectData, TreeNodeData }
 
 object TraceSettingsCreator {
 
@@ -48,4 +50,28 @@ object TraceSettingsCreator {
 
 		TraceSettings(exclusions = List(".*"), inclusions)
 	}
+
+	/** Patterns for the classes that get line-level probes: those directly inside the
+	  * given package nodes, and the given class nodes along with their nested classes.
+	  */
+	def generateLineLevelTargets(projectData: ProjectData, nodeIds: Seq[Int]): List[String] = {
+		val treeNodeData = projectData.treeNodeData
+
+		def packagePrefix(node: TreeNodeData): String = node.parentId.flatMap { treeNodeData.getNode(_) } match {
+			case Some(parent) if parent.kind == CodeTreeNodeKind.Cls => packagePrefix(parent)
+			case Some(parent) if parent.kind == CodeTreeNodeKind.Pkg => parent.label.replace('.', '/') + "/"
+			case _ => ""
+		}
+
+		(for {
+			id <- nodeIds
+			node <- treeNodeData.getNode(id)
+		} yield node.kind match {
+			case CodeTreeNodeKind.Pkg =>
+				Some("^" + node.label.replace('.', '/') + "/[^/]+$")
+			case CodeTreeNodeKind.Cls =>
+				Some("^" + Pattern.quote(packagePrefix(node) + node.label.replace('.', '$')) + "(\\$.*)?$")
+			case _ => None
+		}).flatten.toList
+	}
 }
\ No newline at end of file
@@ -87,6 +87,51 @@ class TransientSourceLocationTraceData extends HasTimedEncounterData {
 	}
 }
 
+/** The package and class nodes picked for line-level probes, for agents that start
+  * out with method probes only.
+  */
+class LineLevelSelection {
+	private val nodeIds = collection.mutable.Set.empty[Int]
+
+	// what was last sent to the running agent, if it started out with method probes only
+	@volatile private var appliedNodeIds: Option[List[Int]] = None
+
+	def contains(id: Int) = nodeIds.synchronized { nodeIds contains id }
+
+	def update(id: Int, selected: Boolean) = nodeIds.synchronized {
+		if (selected) nodeIds += id
+		else nodeIds -= id
+	}
+
+	def all: List[Int] = nodeIds.synchronized { nodeIds.toList.sorted }
+
+	/** The nodes whose line-level targets the running agent was given, or `None`
+	  * when no agent that starts out with method probes only is connected.
+	  */
+	def applied: Option[List[Int]] = appliedNodeIds
+
+	def applied_=(ids: Option[List[Int]]) = appliedNodeIds = ids
+}
+
+/** Tree node IDs for each method signature an agent has announced, kept across traces
+  * so that reconnecting agents don't cost a database lookup per method. Signatures that
+  * aren't in the application inventory aren't remembered, so they're looked up again
+  * the next time an agent announces them.
+  */
+class SignatureNodeIds {
+	private val nodeIds = collection.concurrent.TrieMap.empty[String, List[Int]]
+
+	def getOrLookup(signature: String)(lookup: String => List[Int]): List[Int] = nodeIds.get(signature) match {
+		case Some(ids) => ids
+		case None =>
+			val ids = lookup(signature)
+			if (ids.nonEmpty) nodeIds.put(signature, ids)
+			ids
+	}
+
+	def size = nodeIds.size
+}
+
 /** Provides storage for transient trace data, i.e., data that we want to keep track of
   * but don't care about saving anyplace.
   *
@@ -95,6 +140,9 @@ class TransientSourceLocationTraceData extends HasTimedEncounterData {
 class TransientTraceData(val id: ProjectId) extends HasProjectId {
 	val nodeTraceData = new TransientNodeTraceData()
 	val sourceLocationTraceData = new TransientSourceLocationTraceData()
+	val coverageSuppression = new CoverageSuppression()
+	val lineLevelSelection = new LineLevelSelection()
+	val signatureNodeIds = new SignatureNodeIds()
 }
 
 /** Keeps track of TransientTraceData instances.
@@ -104,5 +152,8 @@ class TransientTraceData(val id: ProjectId) extends HasProjectId {
 class TransientTraceDataProvider {
 	private val projects = collection.mutable.Map.empty[ProjectId, TransientTraceData]
 
-	def get(id: ProjectId) = projects.getOrElseUpdate(id, new TransientTraceData(id))
+	def get(id: ProjectId) = projects.synchronized { projects.getOrElseUpdate(id, new TransientTraceData(id)) }
+
+	/** Forgets the data for a project that has been deleted. */
+	def remove(id: ProjectId): Unit = projects.synchronized { projects -= id }
 }
\ No newline at end of file
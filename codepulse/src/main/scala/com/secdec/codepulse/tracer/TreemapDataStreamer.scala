@@ -34,7 +34,7 @@ import net.liftweb.json.Printer
 object TreemapDataStreamer {
 	private val Json = new JsonFactory
 
-	private def writeJson(treeNodeData: TreeNodeDataAccess, jg: JsonGenerator)(node: TreeNode) {
+	private def writeJson(treeNodeData: TreeNodeDataAccess, invocationCounts: Map[Int, Long], latencies: Map[Int, LatencySummary], jg: JsonGenerator)(node: TreeNode) {
 		import treeNodeData.ExtendedTreeNodeData
 
 		jg.writeStartObject
@@ -46,23 +46,37 @@ object TreemapDataStreamer {
 		for (size <- node.data.size) jg.writeNumberField("lineCount", size)
 		for (traced <- node.data.traced) jg.writeBooleanField("traced", traced)
 		jg.writeBooleanField("isSurfaceMethod", node.data.isSurfaceMethod.getOrElse(false))
+		for (count <- invocationCounts get node.data.id) jg.writeNumberField("invocationCount", count)
+		for (latency <- latencies get node.data.id) {
+			jg writeObjectFieldStart "latency"
+			jg.writeNumberField("count", latency.count)
+			jg.writeNumberField("p50Micros", latency.p50Micros)
+			jg.writeNumberField("p90Micros", latency.p90Micros)
+			jg.writeNumberField("p99Micros", latency.p99Micros)
+			jg.writeNumberField("maxMicros", latency.maxMicros)
+			jg.writeEndObject
+		}
 
 		if (!node.children.isEmpty) {
 			jg writeArrayFieldStart "children"
-			node.children.foreach(writeJson(treeNodeData, jg))
+			node.children.foreach(writeJson(treeNodeData, invocationCounts, latencies, jg))
 			jg.writeEndArray
 		}
 
 		jg.writeEndObject
 	}
 
-	def streamTreemapData(treeNodeData: TreeNodeDataAccess, tree: List[TreeNode]): OutputStreamResponse = {
+	/** Streams `tree` as JSON. Nodes with an entry in `invocationCounts` get an
+	  * `invocationCount` field, and nodes with an entry in `latencies` get a
+	  * `latency` object.
+	  */
+	def streamTreemapData(treeNodeData: TreeNodeDataAccess, tree: List[TreeNode], invocationCounts: Map[Int, Long] = Map.empty, latencies: Map[Int, LatencySummary] = Map.empty): OutputStreamResponse = {
 		def writeData(out: OutputStream) {
 			val jg = Json createGenerator out
 
 			try {
 				jg.writeStartArray
-				tree.foreach(writeJson(treeNodeData, jg))
+				tree.foreach(writeJson(treeNodeData, invocationCounts, latencies, jg))
 				jg.writeEndArray
 			} finally jg.close
 		}
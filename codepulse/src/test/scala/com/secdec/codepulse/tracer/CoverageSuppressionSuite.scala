@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Secure Decisions, a division of Applied Visions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This material is based on research sponsored by the Department of Homeland
+ * Security (DHS) Science and Technology Directorate, Cyber Security Division
+ * (DHS S&T/CSD) via contract number HHSP233201600058C.
+ */
+
+package com.secdec.codepulse.tracer
+
+import org.scalatest.{FunSpec, Matchers}
+
+class CoverageSuppressionSuite extends FunSpec with Matchers {
+
+  class RecordingAgent extends CoverageSuppression.Agent {
+    var batches = List.empty[Seq[Int]]
+    var rearms = 0
+    def suppressMethods(methodIds: Seq[Int]): Unit = batches :+= methodIds
+    def rearmMethods(): Unit = rearms += 1
+    def suppressed = batches.flatten
+  }
+
+  def attached() = {
+    val suppression = new CoverageSuppression
+    val agent = new RecordingAgent
+    suppression.attach(agent)
+    (suppression, agent)
+  }
+
+  describe("CoverageSuppression") {
+    it("should send each covered method to the agent once") {
+      val (suppression, agent) = attached()
+
+      for (id <- Seq(1, 2, 1, 3, 2)) suppression.markCovered(id)
+      suppression.flush()
+      suppression.markCovered(3)
+      suppression.flush()
+
+      agent.suppressed shouldBe Seq(1, 2, 3)
+    }
+
+    it("should send a batch once enough methods are pending, without waiting for a flush") {
+      val (suppression, agent) = attached()
+
+      for (id <- 1 until CoverageSuppression.MaxPending) suppression.markCovered(id)
+      suppression.markCovered(CoverageSuppression.MaxPending)
+
+      agent.suppressed shouldBe (1 to CoverageSuppression.MaxPending)
+    }
+
+    it("should send pending methods once the flush interval has passed") {
+      val (suppression, agent) = attached()
+
+      suppression.markCovered(1)
+      Thread.sleep(CoverageSuppression.FlushIntervalMillis + 50)
+      suppression.markCovered(2)
+
+      agent.suppressed shouldBe Seq(1, 2)
+    }
+
+    it("should forget what it sent when rearmed, and send it again when covered again") {
+      val (suppression, agent) = attached()
+
+      suppression.markCovered(1)
+      suppression.flush()
+      suppression.markCovered(2)
+      suppression.rearm()
+      suppression.flush()
+
+      agent.rearms shouldBe 1
+      agent.suppressed shouldBe Seq(1)
+
+      suppression.markCovered(1)
+      suppression.flush()
+      agent.suppressed shouldBe Seq(1, 1)
+    }
+
+    it("should send nothing once detached") {
+      val (suppression, agent) = attached()
+
+      suppression.markCovered(1)
+      suppression.detach()
+      suppression.isAttached shouldBe false
+      suppression.markCovered(2)
+      suppression.flush()
+      suppression.rearm()
+
+      agent.suppressed shouldBe empty
+      agent.rearms shouldBe 0
+    }
+
+    it("should do nothing before it is attached") {
+      val suppression = new CoverageSuppression
+
+      suppression.isAttached shouldBe false
+      suppression.markCovered(1)
+      suppression.flush()
+      suppression.rearm()
+    }
+  }
+}
@@ -303,6 +303,36 @@ class TraceRecorderDataProcessorSuite extends FunSpec with Matchers with BeforeA
     }
   }
 
+  describe("MethodCounts sent before MapMethodSignature") {
+    it("should defer processing and store the combined count") {
+      val methodId = 36
+      val clientMethodId = 15
+      val recorder = new TraceRecorderDataProcessor(data, new TransientTraceData(data.id), None)
+      data.treeNodeData.storeNode(new TreeNodeData(methodId, None, "methodSig", CodeTreeNodeKind.Mth, Option[Int](50), None, None, None, None, None))
+      data.treeNodeData.mapMethodSignature(MethodSignatureNode(0, "methodSig", methodId))
+      data.flush(); Thread.sleep(2500)
+
+      recorder.processMessage(DataMessageContent.MethodCounts(0, Seq(clientMethodId -> 3L)))
+      recorder.processMessage(DataMessageContent.MethodCounts(1, Seq(clientMethodId -> 4L)))
+      assert(recorder.deferredMethodCounts.get(clientMethodId) == Some(7L), "Expected one combined deferred count")
+
+      recorder.processMessage(DataMessageContent.MapMethodSignature("methodSig", clientMethodId))
+      assert(recorder.deferredMethodCounts.isEmpty, "Expected no deferred counts")
+
+      recorder.processMessage(DataMessageContent.MethodCounts(2, Seq(clientMethodId -> 5L)))
+      data.flush(); Thread.sleep(2500)
+
+      assert(data.invocationCounts.getNodeCount(methodId) == Some(12L))
+      assert(data.encounters.getAllNodeEncountersSet().contains(methodId))
+
+      var storedCount = 0L
+      projectDb.withSession(implicit x => {
+        storedCount = Q.queryNA[(Long)]("select \"invocation_count\" from \"node_invocation_counts\" where \"recording_id\" is null and \"node_id\"=" + methodId).first
+      })
+      assert(storedCount == 12L)
+    }
+  }
+
   var projectMetadataDao:ProjectMetadataDao = null
 
   before {
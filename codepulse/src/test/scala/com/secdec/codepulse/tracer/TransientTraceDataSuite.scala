@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Secure Decisions, a division of Applied Visions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This material is based on research sponsored by the Department of Homeland
+ * Security (DHS) Science and Technology Directorate, Cyber Security Division
+ * (DHS S&T/CSD) via contract number HHSP233201600058C.
+ */
+
+package com.secdec.codepulse.tracer
+
+import org.scalatest.{FunSpec, Matchers}
+
+import com.secdec.codepulse.data.model.ProjectId
+
+class TransientTraceDataSuite extends FunSpec with Matchers {
+
+  describe("SignatureNodeIds") {
+    it("should only look up a signature once it has been found") {
+      val cache = new SignatureNodeIds
+      var lookups = 0
+      def lookup(sig: String) = { lookups += 1; List(4, 5) }
+
+      cache.getOrLookup("a.A.run;1;()V")(lookup) shouldBe List(4, 5)
+      cache.getOrLookup("a.A.run;1;()V")(lookup) shouldBe List(4, 5)
+      lookups shouldBe 1
+    }
+
+    it("should look up signatures missing from the inventory again") {
+      val cache = new SignatureNodeIds
+      var inventory = Map.empty[String, List[Int]]
+      def lookup(sig: String) = inventory.getOrElse(sig, Nil)
+
+      cache.getOrLookup("a.A.run;1;()V")(lookup) shouldBe Nil
+      cache.size shouldBe 0
+
+      inventory += "a.A.run;1;()V" -> List(9)
+      cache.getOrLookup("a.A.run;1;()V")(lookup) shouldBe List(9)
+      cache.size shouldBe 1
+    }
+  }
+
+  describe("LineLevelSelection") {
+    it("should keep what was applied apart from the selection") {
+      val selection = new LineLevelSelection
+      selection(3) = true
+      selection(1) = true
+      selection.applied shouldBe None
+
+      selection.applied = Some(selection.all)
+      selection(3) = false
+
+      selection.all shouldBe List(1)
+      selection.applied shouldBe Some(List(1, 3))
+    }
+  }
+
+  describe("TransientTraceDataProvider") {
+    it("should keep a project's data until the project is removed") {
+      val provider = new TransientTraceDataProvider
+      val data = provider.get(ProjectId(1))
+      data.signatureNodeIds.getOrLookup("a.A.run;1;()V")(_ => List(1))
+
+      provider.get(ProjectId(1)) should be theSameInstanceAs data
+      provider.get(ProjectId(2)) should not be theSameInstanceAs(data)
+
+      provider.remove(ProjectId(1))
+      provider.get(ProjectId(1)).signatureNodeIds.size shouldBe 0
+    }
+  }
+}
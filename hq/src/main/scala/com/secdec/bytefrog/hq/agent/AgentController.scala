@@ -63,6 +63,26 @@ class AgentController(protected val traceErrorController: TraceErrorController,
 	def dataBreaks: EventStream[Int] = dataBreaksSource
 	private val dataBreaksSource = new EventSource[Int]
 
+	/** An observable stream of request sampling counters reported by the Agent */
+	def requestSamplingEvents: EventStream[RequestSampling] = requestSamplingSource
+	private val requestSamplingSource = new EventSource[RequestSampling]
+
+	@volatile private var _lastRequestSampling: Option[RequestSampling] = None
+
+	/** The latest request sampling counters reported by the Agent, if it is sampling requests */
+	def lastRequestSampling = _lastRequestSampling
+
+	/** An observable stream of progress reports while the Agent retransforms already-loaded classes */
+	def retransformProgressEvents: EventStream[RetransformProgress] = retransformProgressSource
+	private val retransformProgressSource = new EventSource[RetransformProgress]
+
+	@volatile private var _lastRetransformProgress: Option[RetransformProgress] = None
+
+	/** The latest retransformation progress reported by the Agent, if it has had to retransform
+	  * any classes (e.g. after being attached to a running JVM)
+	  */
+	def lastRetransformProgress = _lastRetransformProgress
+
 	/** Observable stream of new agent states */
 	def agentStateChange = stateManager.agentStateChange
 
@@ -102,6 +122,14 @@ class AgentController(protected val traceErrorController: TraceErrorController,
 
 		case DataBreak(seq) => dataBreaksSource fire seq
 
+		case rs: RequestSampling =>
+			_lastRequestSampling = Some(rs)
+			requestSamplingSource fire rs
+
+		case rp: RetransformProgress =>
+			_lastRetransformProgress = Some(rp)
+			retransformProgressSource fire rp
+
 		// Any other message is unexpected
 		case _ =>
 			shutdown
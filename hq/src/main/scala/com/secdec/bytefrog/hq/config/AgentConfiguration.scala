@@ -29,4 +29,12 @@ case class AgentConfiguration(
 	heartbeatInterval: Integer = 1000,
 	bufferMemoryBudget: Integer = 50 * 512,
 	poolRetryCount: Integer = 5,
-	numDataSenders: Integer = 1)
\ No newline at end of file
+	numDataSenders: Integer = 1,
+	maxDataSenders: Integer = 4,
+	countInvocations: Boolean = false,
+	profileDurations: Boolean = false,
+	recordCallEdges: Boolean = false,
+	sharedMemoryTransport: Boolean = false,
+	samplingInterval: Integer = 1,
+	tieredLineLevel: Boolean = false,
+	omitExceptionExits: Boolean = false)
\ No newline at end of file
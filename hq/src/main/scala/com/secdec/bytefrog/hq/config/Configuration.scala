@@ -38,6 +38,14 @@ object Configuration {
 			inclusions,
 			agentConfiguration.bufferMemoryBudget,
 			agentConfiguration.poolRetryCount,
-			agentConfiguration.numDataSenders)
+			agentConfiguration.numDataSenders,
+			agentConfiguration.maxDataSenders,
+			agentConfiguration.countInvocations,
+			agentConfiguration.profileDurations,
+			agentConfiguration.recordCallEdges,
+			agentConfiguration.sharedMemoryTransport,
+			agentConfiguration.samplingInterval,
+			agentConfiguration.tieredLineLevel,
+			agentConfiguration.omitExceptionExits)
 	}
 }
\ No newline at end of file
@@ -17,12 +17,17 @@
 
 package com.codedx.codepulse.hq.connect
 
+import java.io.File
+import java.io.IOException
 import java.util.concurrent.TimeoutException
 
 import scala.concurrent.Await
 import scala.concurrent.duration.DurationInt
 import com.codedx.codepulse.agent.common.connect.Connection
-import com.codedx.codepulse.agent.common.message.{MessageConstantsV1, MessageConstantsV4}
+import com.codedx.codepulse.agent.common.connect.SharedMemoryConnection
+import com.codedx.codepulse.agent.common.connect.SharedMemoryRing
+import com.codedx.codepulse.agent.common.connect.SocketConnection
+import com.codedx.codepulse.agent.common.message.{MessageConstantsV1, MessageConstantsV4, MessageConstantsV5}
 import com.codedx.codepulse.hq.protocol.ControlMessage._
 import com.codedx.codepulse.hq.protocol._
 
@@ -37,12 +42,15 @@ import com.codedx.codepulse.hq.protocol._
   * @param traceRegistry The object used to locate the appropriate trace, to attach new data connections.
   * @param protocolHelper A [[ProtocolHelper]] instance that gets used to determine the right
   * senders/receivers for connections based on their protocol version.
+  * @param dataReaders The pool that reads data connections made over socket channels. Without one,
+  * each data connection is read by a thread of its own.
   */
 class ClientGreeter(
 	client: Connection,
 	controlConnector: TraceControlConnector,
 	traceRegistry: TraceRegistry,
-	protocolHelper: ProtocolHelper = DefaultProtocolHelper) extends Runnable {
+	protocolHelper: ProtocolHelper = DefaultProtocolHelper,
+	dataReaders: Option[DataReaderPool] = None) extends Runnable {
 
 	import protocolHelper._
 
@@ -61,6 +69,12 @@ class ClientGreeter(
 				handleHello(protocolVersion, Some(projectId))
 			}
 			case (MessageConstantsV1.MsgDataHello, runId) => handleDataHello(runId)
+			case (MessageConstantsV5.MsgDataHelloAdditional, runId) => handleAdditionalDataHello(runId)
+			case (MessageConstantsV5.MsgDataHelloSharedMemory, runId) => {
+				val additional = client.input.readBoolean
+				val ringPath = client.input.readUTF
+				handleSharedMemoryDataHello(runId, additional, ringPath)
+			}
 			case _ =>
 				latestProtocol.writeError(client.output, "Unexpected Input Format")
 				client.close
@@ -124,7 +138,44 @@ class ClientGreeter(
 	  * @param runId A byte identifier which should uniquely identify the Trace that the client should
 	  * be connected to.
 	  */
-	def handleDataHello(runId: Byte): Unit = {
+	def handleDataHello(runId: Byte): Unit = attachDataConnection(runId, false)
+
+	/** Handle an incoming data connection that the agent is adding to a trace that is already
+	  * underway, e.g. because it needs more send bandwidth. This behaves like `handleDataHello`,
+	  * except that the trace will refuse the connection once its data collection has finished.
+	  *
+	  * @param runId A byte identifier which should uniquely identify the Trace that the client should
+	  * be connected to.
+	  */
+	def handleAdditionalDataHello(runId: Byte): Unit = attachDataConnection(runId, true)
+
+	/** Handle an incoming data connection whose data the agent will write to the shared memory
+	  * ring at `ringPath`. The connection is refused (and the agent falls back to an ordinary
+	  * data connection) unless the agent connected through a loopback address and the ring can
+	  * be opened; otherwise this behaves like `handleDataHello` or `handleAdditionalDataHello`,
+	  * except that the data is read from the ring.
+	  */
+	def handleSharedMemoryDataHello(runId: Byte, additional: Boolean, ringPath: String): Unit = {
+		val ringConnection = client match {
+			case socketClient: SocketConnection if socketClient.socket.getInetAddress.isLoopbackAddress =>
+				try {
+					Right(new SharedMemoryConnection(socketClient, SharedMemoryRing.open(new File(ringPath)), false))
+				} catch {
+					case e: IOException => Left(s"Failed to open shared memory ring: ${e.getMessage}")
+				}
+			case _ => Left("Shared memory data connections are only accepted from the same machine")
+		}
+
+		ringConnection match {
+			case Left(error) =>
+				latestControlMessageSender.sendMessages(client)(Error(error))
+				client.close
+			case Right(connection) =>
+				attachDataConnection(runId, additional, connection)
+		}
+	}
+
+	private def attachDataConnection(runId: Byte, additional: Boolean, connection: Connection = client): Unit = {
 		val traceFuture = traceRegistry getTrace runId
 
 		try {
@@ -151,11 +202,17 @@ class ClientGreeter(
 
 				case Some((controlSender, dataParser)) =>
 					// turn the client into a data connection
-					val dataConnection = new DataConnection(client, dataParser)
+					val dataConnection = (connection, dataReaders) match {
+						case (socketClient: SocketConnection, Some(readers)) if socketClient.socket.getChannel != null =>
+							new SelectableDataConnection(socketClient, dataParser, readers)
+						case _ =>
+							new DataConnection(connection, dataParser)
+					}
 
 					// hand off the connection to the trace
-					if (trace addDataConnection dataConnection) {
+					if (trace.addDataConnection(dataConnection, additional)) {
 						controlSender.sendMessages(client)(DataHelloReply)
+						dataConnection.handshakeComplete
 					} else {
 						// Failed to add the data connection to the trace.
 						// Send an error and close the connection.
@@ -17,6 +17,8 @@
 
 package com.codedx.codepulse.hq.connect
 
+import scala.collection.mutable.Queue
+
 import com.codedx.codepulse.agent.common.connect.Connection
 import com.codedx.codepulse.hq.protocol._
 
@@ -63,13 +65,25 @@ class ControlConnection(
 		messageSender.sendMessages(connection)(messages: _*)
 	}
 
-	/** Reads a single ControlMessage from the incoming part of the connection
+	// messages unpacked from a batch that haven't been handed out yet
+	private val pending = Queue.empty[ControlMessage]
+
+	/** Reads a single ControlMessage from the incoming part of the connection.
+	  * Batched messages from the Agent are unpacked and returned one at a time.
 	  * @return the message that was read
 	  */
 	def recieve(): ControlMessage = {
 		val in = connection.input
 		in.synchronized {
-			messageReader.readMessage(in)
+			var next: ControlMessage = null
+			while (next == null) {
+				if (pending.nonEmpty) next = pending.dequeue
+				else messageReader.readMessage(in) match {
+					case ControlMessage.ClassTransformBatch(messages) => pending ++= messages
+					case message => next = message
+				}
+			}
+			next
 		}
 	}
 
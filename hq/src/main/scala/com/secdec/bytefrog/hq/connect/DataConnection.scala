@@ -18,6 +18,7 @@
 package com.codedx.codepulse.hq.connect
 
 import com.codedx.codepulse.agent.common.connect.Connection
+import com.codedx.codepulse.agent.common.connect.SocketConnection
 import com.codedx.codepulse.hq.protocol.DataMessageHandler
 import com.codedx.codepulse.hq.protocol.DataMessageParser
 
@@ -46,4 +47,67 @@ class DataConnection(connection: Connection, parser: DataMessageParser) {
 	def readEvents(handler: DataMessageHandler): Unit = {
 		parser.parse(connection.input, handler)
 	}
+
+	/** Called once HQ has replied to the agent's data hello; the agent
+	  * sends no data before then.
+	  */
+	def handshakeComplete: Unit = ()
+}
+
+/** A DataConnection over a socket channel, which is read by one of the
+  * threads of a [[DataReaderPool]] instead of a thread of its own.
+  *
+  * The reply to the agent's data hello is written through the socket's
+  * (blocking) streams, so the channel is only handed to the pool once both
+  * `readEventsAsync` and `handshakeComplete` have been called.
+  *
+  * @param connection the underlying [[SocketConnection]], whose socket has a channel
+  * @param parser the parser for the agent's data messages
+  * @param readers the pool that will read the connection
+  */
+class SelectableDataConnection(connection: SocketConnection, parser: DataMessageParser, readers: DataReaderPool)
+	extends DataConnection(connection, parser) {
+
+	private var handler: Option[DataMessageHandler] = None
+	private var handshakeDone = false
+	private var registration: Option[DataReaderPool.Registration] = None
+	private var closed = false
+
+	/** Starts reading events with the given DataMessageHandler, whose
+	  * callbacks are made on one of the pool's threads. This method
+	  * returns right away.
+	  */
+	def readEventsAsync(handler: DataMessageHandler): Unit = synchronized {
+		this.handler = Some(handler)
+		register
+	}
+
+	override def handshakeComplete: Unit = synchronized {
+		handshakeDone = true
+		register
+	}
+
+	override def close: Unit = {
+		val waiting = synchronized {
+			if (closed) None
+			else {
+				closed = true
+				registration match {
+					case Some(r) =>
+						r.close
+						None
+					case None =>
+						connection.close
+						handler
+				}
+			}
+		}
+
+		// a handler that never got to read anything still hears that the connection is over
+		for (h <- waiting) h.handleParserEOF
+	}
+
+	private def register = for (h <- handler if handshakeDone && registration.isEmpty && !closed) {
+		registration = Some(readers.register(connection.socket.getChannel, parser, h))
+	}
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.connect
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.SocketChannel
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.collection.mutable.HashSet
+
+import com.codedx.codepulse.hq.protocol.DataMessageHandler
+import com.codedx.codepulse.hq.protocol.DataMessageParser
+import com.codedx.codepulse.hq.util.LoopingThread
+
+object DataReaderPool {
+	/** The number of reader threads in a pool, unless otherwise specified */
+	val DefaultReaderCount = 2
+
+	/** The size of the direct buffers that connections are read into, unless otherwise specified */
+	val DefaultBufferSize = 64 * 1024
+
+	/** The most buffers a pool holds on to while no connection is using them */
+	val MaxIdleBuffers = 32
+
+	/** A data connection that is being read by a DataReaderPool */
+	trait Registration {
+		/** Stops reading the connection and closes its channel. If the connection hadn't ended
+		  * already, its handler's EOF callback is called (on the reader thread).
+		  */
+		def close(): Unit
+	}
+}
+
+/** A fixed set of threads that read data connections without blocking. Each thread selects over
+  * the connections assigned to it, so the number of threads stays the same no matter how many
+  * data connections the agents open.
+  *
+  * Each connection is read into a direct buffer from a shared pool. Whenever more bytes arrive,
+  * the complete messages at the front of the buffer are handed to the connection's parser, and
+  * what has arrived of the next message is kept for the next read. A message that doesn't fit in
+  * the buffer gets a bigger (unpooled) one.
+  *
+  * Message handlers are called on the reader threads, so a handler that blocks (e.g. because the
+  * trace's data queue is full) holds up the other connections on the same thread, and the agents
+  * get pushed back on by TCP flow control.
+  */
+class DataReaderPool(readerCount: Int = DataReaderPool.DefaultReaderCount, bufferSize: Int = DataReaderPool.DefaultBufferSize) {
+	import DataReaderPool._
+
+	private val idleBuffers = new ConcurrentLinkedQueue[ByteBuffer]
+	private val idleBufferCount = new AtomicInteger
+	private val nextReader = new AtomicInteger
+
+	private val readers = Array.tabulate(readerCount) { i => new Reader(s"Code Pulse data reader ${i + 1}") }
+	readers foreach { _.start }
+
+	/** Starts reading `channel` on one of the pool's threads, feeding what is read through
+	  * `parser` to `handler`. The channel is switched to non-blocking mode.
+	  */
+	def register(channel: SocketChannel, parser: DataMessageParser, handler: DataMessageHandler): Registration = {
+		val reader = readers((nextReader.getAndIncrement & Int.MaxValue) % readers.length)
+		val reading = new ChannelReading(channel, parser, handler, reader)
+		reader add reading
+		reading
+	}
+
+	/** Stops the reader threads. Connections still being read are closed, and their handlers told
+	  * about EOF.
+	  */
+	def shutdown = readers foreach { _.shutdown }
+
+	private def acquireBuffer: ByteBuffer = idleBuffers.poll match {
+		case null => ByteBuffer.allocateDirect(bufferSize)
+		case buffer =>
+			idleBufferCount.decrementAndGet
+			buffer
+	}
+
+	private def releaseBuffer(buffer: ByteBuffer): Unit = {
+		// buffers that were grown for a large message are left to the garbage collector
+		if (buffer.isDirect && buffer.capacity == bufferSize) {
+			if (idleBufferCount.incrementAndGet <= MaxIdleBuffers) {
+				buffer.clear
+				idleBuffers offer buffer
+			} else {
+				idleBufferCount.decrementAndGet
+			}
+		}
+	}
+
+	/** The state of one connection. Apart from `close`, everything here happens on the thread of
+	  * the connection's `reader`.
+	  */
+	private class ChannelReading(channel: SocketChannel, parser: DataMessageParser, handler: DataMessageHandler, reader: Reader) extends Registration {
+		private var buffer = acquireBuffer
+		private var ended = false
+
+		// how many bytes the message at the front of the buffer needs, at least, before it's
+		// worth parsing again; a large message isn't re-parsed from its start on every read
+		private var needed = 0
+
+		def close(): Unit = reader remove this
+
+		/** Starts selecting the channel for reads.
+		  * @return `false` if that failed, ending the connection
+		  */
+		def start(selector: Selector): Boolean = {
+			try {
+				channel.configureBlocking(false)
+				channel.register(selector, SelectionKey.OP_READ, this)
+			} catch {
+				case e: IOException => end(handler.handleParserError(e))
+			}
+			!ended
+		}
+
+		/** Reads what the channel has for us.
+		  * @return `false` once the connection has ended
+		  */
+		def read(): Boolean = {
+			try {
+				val count = channel.read(buffer)
+				if (count > 0) parseBuffer
+				if (count < 0) end(handler.handleParserEOF)
+			} catch {
+				case e: Exception => end(handler.handleParserError(e))
+			}
+			!ended
+		}
+
+		def finish(): Unit = end(handler.handleParserEOF)
+
+		private def parseBuffer(): Unit = {
+			buffer.flip
+			if (buffer.remaining >= needed) needed = parser.parseAvailable(buffer, handler)
+			buffer.compact
+
+			// the buffer is full of a single message, or too small for it; get a bigger one
+			if (!buffer.hasRemaining || needed > buffer.capacity) {
+				val bigger = ByteBuffer.allocate(math.max(buffer.capacity * 2, needed))
+				buffer.flip
+				bigger put buffer
+				releaseBuffer(buffer)
+				buffer = bigger
+			}
+		}
+
+		private def end(notifyHandler: => Unit): Unit = {
+			if (!ended) {
+				ended = true
+
+				try {
+					channel.close
+				} catch {
+					case e: IOException => // ignore
+				}
+
+				releaseBuffer(buffer)
+				buffer = null
+
+				notifyHandler
+			}
+		}
+	}
+
+	/** A thread that selects over, and reads, the connections assigned to it */
+	private class Reader(name: String) extends LoopingThread {
+		setName(name)
+		setDaemon(true)
+
+		private val selector = Selector.open
+		private val added = new ConcurrentLinkedQueue[ChannelReading]
+		private val removed = new ConcurrentLinkedQueue[ChannelReading]
+		private val active = HashSet.empty[ChannelReading]
+
+		def add(reading: ChannelReading): Unit = {
+			added offer reading
+			selector.wakeup
+		}
+
+		def remove(reading: ChannelReading): Unit = {
+			removed offer reading
+			selector.wakeup
+		}
+
+		protected def doLoop = {
+			selector.select
+
+			var reading = added.poll
+			while (reading != null) {
+				if (reading start selector) active += reading
+				reading = added.poll
+			}
+
+			reading = removed.poll
+			while (reading != null) {
+				active -= reading
+				reading.finish
+				reading = removed.poll
+			}
+
+			val keys = selector.selectedKeys.iterator
+			while (keys.hasNext) {
+				val key = keys.next
+				keys.remove
+
+				val selected = key.attachment.asInstanceOf[ChannelReading]
+				if (key.isValid && !selected.read) active -= selected
+			}
+		}
+
+		override protected def postLoop = {
+			var reading = added.poll
+			while (reading != null) {
+				active += reading
+				reading = added.poll
+			}
+
+			active foreach { _.finish }
+			active.clear
+			selector.close
+		}
+	}
+}
\ No newline at end of file
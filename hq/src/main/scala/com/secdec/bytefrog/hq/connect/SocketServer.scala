@@ -17,16 +17,20 @@
 
 package com.codedx.codepulse.hq.connect
 
-import java.net.ServerSocket
-import java.net.SocketException
-import java.net.SocketTimeoutException
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
 import java.util.concurrent.Executors
-import java.util.concurrent.ThreadPoolExecutor
-import java.util.concurrent.TimeUnit
 
 import com.codedx.codepulse.agent.common.connect.SocketConnection
 import com.codedx.codepulse.hq.util.LoopingThread
 import com.codedx.codepulse.hq.util.DaemonThreadFactory
+import com.codedx.codepulse.hq.util.SocketChannelStreams
+import com.codedx.codepulse.utility.Loggable
 
 object SocketServer {
 	/** Creates a SocketServer on the given `port` that uses the singleton trace connector and registry
@@ -35,49 +39,76 @@ object SocketServer {
 	def default(port: Int) = new SocketServer(port, TraceControlConnector, TraceRegistry)
 
 	def unconfigured = new SocketServer(0, TraceControlConnector, TraceRegistry)
+
+	/** How long to wait (ms) after failing to accept a connection, before trying again */
+	val AcceptRetryDelay = 250
+
+	/** Wraps an accepted channel for the handshake and, for control connections, everything after.
+	  * The connection's streams use the channel directly, so that sending to an agent doesn't wait
+	  * on a thread that is blocked reading from it. Accepted channels start out in blocking mode,
+	  * which those streams rely on.
+	  */
+	def connection(clientChannel: SocketChannel) = new SocketConnection(clientChannel.socket,
+		new SocketChannelStreams.Input(clientChannel), new SocketChannelStreams.Output(clientChannel), true, false)
 }
 
 /** A SocketServer is the point of contact for Agents to connect to HQ. It runs as a Thread,
   * accepting incoming Socket connections on the given `port`, and running a [[ClientGreeter]]
-  * for each connection.
+  * for each connection. Data connections from agents on the same machine may ask to have
+  * their data read from a shared memory ring instead; the greeter handles that too.
+  *
+  * Connections are accepted from a server socket channel, and the data connections among them
+  * are read by a [[DataReaderPool]], so the number of threads reading trace data stays the same
+  * no matter how many data connections the agents open.
   *
   * @param port The port number to accept connections.
   * @param controlConnector A middleman that can be used to associate new ControlConnections
   * with agent configurations, which are used to complete the "Hello" handshake.
   * @param traceRegistry A middleman that can be used to locate existing Traces, so that new
   * DataConnections can be added to the appropriate Trace.
+  * @param dataReaders The pool of threads that read data connections.
   */
 class SocketServer(
 	private var listenPort: Int,
 	val controlConnector: TraceControlConnector,
-	val traceRegistry: TraceRegistry) extends LoopingThread {
+	val traceRegistry: TraceRegistry,
+	val dataReaders: DataReaderPool = new DataReaderPool) extends LoopingThread with Loggable {
 
-	//open the server socket
-	private var serverSocket: Option[ServerSocket] = None
+	//open the server socket channel; the loop registers it with the selector
+	@volatile private var serverChannel: Option[ServerSocketChannel] = None
+	private var registeredChannel: Option[ServerSocketChannel] = None
+	private val acceptSelector = Selector.open
 	val executor = Executors.newFixedThreadPool(2, DaemonThreadFactory)
 
 	def port = listenPort
 
 	def setPort(port: Int) {
-		val oldSocket = serverSocket
+		val oldChannel = serverChannel
 		listenPort = port
 
 		if (listenPort > 0) {
-			val newSocket = new ServerSocket(listenPort)
-			/* accepting connections should time out after 2 seconds
-			 this way it won't block forever trying to connect when
-			 it should be shutting down. */
-			newSocket.setSoTimeout(2000)
+			val newChannel = ServerSocketChannel.open
+			try {
+				newChannel.socket.bind(new InetSocketAddress(listenPort))
+				newChannel.configureBlocking(false)
+			} catch {
+				case e: IOException =>
+					newChannel.close
+					throw e
+			}
 
-			serverSocket = Some(newSocket)
+			serverChannel = Some(newChannel)
 		} else {
-			serverSocket = None
+			serverChannel = None
 		}
 
-		oldSocket match {
-			case Some(oldSocket) => oldSocket.close
+		oldChannel match {
+			case Some(oldChannel) => oldChannel.close
 			case _ =>
 		}
+
+		// let the loop pick up the new channel
+		acceptSelector.wakeup
 	}
 
 	setPort(listenPort)
@@ -85,37 +116,60 @@ class SocketServer(
 	def doLoop = {
 
 		try {
-			serverSocket match {
-				case Some(serverSocket) =>
-					//get a new connection
-					val clientSocket = serverSocket.accept
-
-					//create a greeter to handle the new connection
-					val client = new SocketConnection(clientSocket, true, false)
-					val greeter = new ClientGreeter(client, controlConnector, traceRegistry)
-
-					//submit the greeter to the executor
-					executor.submit(greeter)
+			val currentChannel = serverChannel
+			currentChannel match {
+				case Some(serverChannel) =>
+					if (registeredChannel != currentChannel) {
+						serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT)
+						registeredChannel = currentChannel
+					}
+
+					/* waiting for connections should time out after 2 seconds
+					 this way it won't block forever trying to connect when
+					 it should be shutting down. */
+					acceptSelector.select(2000)
+					acceptSelector.selectedKeys.clear
+
+					//get the new connections
+					var clientChannel = serverChannel.accept
+					while (clientChannel != null) {
+						greet(clientChannel)
+						clientChannel = serverChannel.accept
+					}
 
 				case _ => Thread.sleep(2000)
 			}
 		} catch {
-			case e: SocketTimeoutException => {
-				//this should happen every 2 seconds, according to the serverSocket's timeout.
-				//this is expected, since without a timeout, we can't cleanly shut down this thread
-			}
-			case e: SocketException => {
-				// this will happen if the socket is closed while we are listening, which will happen
+			case e: ClosedChannelException => {
+				// this will happen if the channel is closed while we are listening, which will happen
 				// if the port is changed dynamically
 			}
+
+			case e: IOException =>
+				// e.g. running out of file descriptors; the connection is still pending, so the
+				// selector would report it again right away. wait a bit, then keep accepting
+				logger.warn("Failed to accept a connection", e)
+				Thread.sleep(SocketServer.AcceptRetryDelay)
 		}
 	}
 
+	private def greet(clientChannel: SocketChannel) = {
+		val client = SocketServer.connection(clientChannel)
+
+		//create a greeter to handle the new connection
+		val greeter = new ClientGreeter(client, controlConnector, traceRegistry, dataReaders = Some(dataReaders))
+
+		//submit the greeter to the executor
+		executor.submit(greeter)
+	}
+
 	override def postLoop = {
-		serverSocket match {
-			case Some(serverSocket) => serverSocket.close
+		serverChannel match {
+			case Some(serverChannel) => serverChannel.close
 			case _ =>
 		}
+		acceptSelector.close
+		dataReaders.shutdown
 	}
 
 }
\ No newline at end of file
@@ -18,9 +18,11 @@
 package com.codedx.codepulse.hq.data
 
 import com.codedx.codepulse.hq.connect.DataConnection
+import com.codedx.codepulse.hq.connect.SelectableDataConnection
 import com.codedx.codepulse.hq.data.collection.DataCollector
 import com.codedx.codepulse.hq.protocol.DataMessage
 import com.codedx.codepulse.hq.protocol.DataMessageContent
+import com.codedx.codepulse.hq.protocol.DataMessageHandler
 import com.codedx.codepulse.hq.protocol.DefaultDataMessageHandler
 import com.codedx.codepulse.hq.trace.players.LoopPlayer
 
@@ -32,12 +34,21 @@ class DataConnectionController(dataConnection: DataConnection, dataCollector: Da
 		dataConnection.close // closing the connection breaks out of the readEvents in the loop
 	}
 
-	override def preLoop = {
-		dataCollector.registerDataConnection(this)
+	// selectable connections are read by a pool of reader threads, so they don't need this one
+	override def start = dataConnection match {
+		case selectable: SelectableDataConnection => selectable.readEventsAsync(handler)
+		case _ => super.start
 	}
 
 	// this loop will likely only ever run once, since readEvents will block until the end
-	def doLoop = dataConnection.readEvents(new DefaultDataMessageHandler {
+	def doLoop = dataConnection.readEvents(handler)
+
+	/** Turns each message into the `DataMessage` that the collector queues and reorders; exposed for
+	  * `DataMessageParserBenchmark`, which measures what that costs on top of parsing
+	  */
+	private[hq] def messageHandler: DataMessageHandler = handler
+
+	private val handler = new DefaultDataMessageHandler {
 		import DataMessage._
 		import DataMessageContent._
 
@@ -73,6 +84,22 @@ class DataConnectionController(dataConnection: DataConnection, dataCollector: Da
 			dataCollector ! SequencedData(timestamp, sequenceId, MethodExit(methodId, timestamp, exceptionThrown, threadId))
 		}
 
+		override def handleMethodCounts(timestamp: Int, counts: Seq[(Int, Long)]): Unit = {
+			dataCollector ! UnsequencedData(MethodCounts(timestamp, counts))
+		}
+
+		override def handleMethodDurations(timestamp: Int, histograms: Seq[(Int, Seq[(Int, Int)])]): Unit = {
+			dataCollector ! UnsequencedData(MethodDurations(timestamp, histograms))
+		}
+
+		override def handleCallEdges(edges: Seq[(Int, Int)]): Unit = {
+			dataCollector ! UnsequencedData(CallEdges(edges))
+		}
+
+		override def handleSamplingInterval(timestamp: Int, interval: Int): Unit = {
+			dataCollector ! UnsequencedData(SamplingInterval(timestamp, interval))
+		}
+
 		override def handleExceptionMessage(exception: Int, methodId: Int, timestamp: Int, sequenceId: Int, lineNum: Int, threadId: Int) {
 			dataCollector ! SequencedData(timestamp, sequenceId, Exception(exception, methodId, timestamp, lineNum, threadId))
 		}
@@ -94,7 +121,7 @@ class DataConnectionController(dataConnection: DataConnection, dataCollector: Da
 			dataCollector.reportDataConnectionComplete(DataConnectionController.this)
 			shutdown
 		}
-	})
+	}
 
 	override def postLoop = {
 		dataConnection.close
@@ -18,7 +18,6 @@
 package com.codedx.codepulse.hq.data.collection
 
 import java.util.concurrent.ConcurrentLinkedQueue
-import java.util.concurrent.PriorityBlockingQueue
 import java.util.concurrent.Semaphore
 
 import scala.collection.mutable.ArrayBuffer
@@ -37,6 +36,8 @@ import com.codedx.codepulse.hq.trace.players.LoopPlayer
   * Input data is "semi-sorted," which means the next data point should always be relayed before the
   * buffer fills up. We should always be able to give the next data point before the bounded priority
   * queue fills up. This "semi-sorted" requirement matches the behavior of the buffer pool on Agent.
+  * Since each of the agent's buffers arrives in order, sequenced data is put back in order by a
+  * `SequenceMerger`, merging those sorted runs rather than heap-sorting every message.
   *
   * DataCollector also tracks the lifetime of the data connections that are feeding it. This allows
   * proper reaction to take place when data connections close. Lifetime of this player is trickled down
@@ -52,17 +53,25 @@ class DataCollector(traceErrorController: TraceErrorController, dataRouter: Data
 	private val dataQueue = new ConcurrentLinkedQueue[DataMessage]
 	private val dataQueueWriteSem = new Semaphore(maximumDataQueueSize)
 	private val dataQueueReadSem = new Semaphore(0)
-	private var complete = false
+	@volatile private var complete = false
 
 	private val dataBreaks = Queue[Int]()
 
 	private var currentSeq = 0;
-	private val sortQueue = new PriorityBlockingQueue[DataMessage.SequencedData](initialSortQueueSize, DataOrdering)
+	private val sortQueue = new SequenceMerger(initialSortQueueSize)
 
 	private val connections = ArrayBuffer.empty[DataConnectionController]
 
-	def registerDataConnection(connection: DataConnectionController) = connections.synchronized {
-		connections += connection
+	/** Registers a connection that will be feeding data to this collector. Connections may be
+	  * registered at any time until every registered connection has completed.
+	  * @return `false` if collection has already completed, so the connection was not registered
+	  */
+	def registerDataConnection(connection: DataConnectionController): Boolean = connections.synchronized {
+		if (complete) false
+		else {
+			connections += connection
+			true
+		}
 	}
 
 	def reportConnectionError(connection: DataConnectionController, error: Throwable) {
@@ -72,12 +81,14 @@ class DataCollector(traceErrorController: TraceErrorController, dataRouter: Data
 	def reportDataConnectionComplete(connection: DataConnectionController) = {
 		val done = connections.synchronized {
 			connections -= connection
-			connections.isEmpty
+			if (connections.isEmpty && !complete) {
+				complete = true
+				true
+			} else false
 		}
 
 		if (done) {
 			// signal that we're complete
-			complete = true
 			dataQueueReadSem.release
 		}
 	}
@@ -99,7 +110,7 @@ class DataCollector(traceErrorController: TraceErrorController, dataRouter: Data
 		if (!complete) {
 			dataQueue.poll match {
 				case d: DataMessage.SequencedData =>
-					sortQueue put d
+					sortQueue add d
 					pumpQueue
 
 				case d: DataMessage.UnsequencedData =>
@@ -112,7 +123,7 @@ class DataCollector(traceErrorController: TraceErrorController, dataRouter: Data
 			while (dataQueueReadSem.tryAcquire) {
 				dataQueue.poll match {
 					case d: DataMessage.SequencedData =>
-						sortQueue put d
+						sortQueue add d
 
 					case d: DataMessage.UnsequencedData =>
 						routeMessage(d)
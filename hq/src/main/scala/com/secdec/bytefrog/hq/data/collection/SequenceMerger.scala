@@ -0,0 +1,109 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.data.collection
+
+import java.util.ArrayDeque
+import java.util.Comparator
+import java.util.PriorityQueue
+
+import scala.collection.mutable.ArrayBuffer
+
+import com.codedx.codepulse.hq.protocol.DataMessage.SequencedData
+
+/** Puts sequenced data back in order by merging the sorted runs it arrives in.
+  *
+  * Each buffer the agent sends is in sequence order, but the agent fills several buffers at once
+  * and spreads them over its data connections, so what arrives is a handful of interleaved sorted
+  * runs rather than a single mostly-sorted stream. Each message is appended to the run it
+  * continues (the one with the latest tail before it), or starts a new one, and the earliest
+  * message is found with a small heap over the heads of the runs. Both are O(log r) for the r runs
+  * in progress, which stays around the number of buffers in flight, instead of O(log n) over every
+  * buffered message.
+  *
+  * Messages are ordered by `DataOrdering`, so sequence overflow is handled the same way. This class
+  * is not thread-safe.
+  *
+  * @param initialRunSize the initial capacity of each run
+  */
+class SequenceMerger(initialRunSize: Int = 16) {
+
+	private class Run {
+		val data = new ArrayDeque[SequencedData](initialRunSize)
+	}
+
+	private object HeadOrdering extends Comparator[Run] {
+		def compare(r1: Run, r2: Run): Int = DataOrdering.compare(r1.data.peekFirst, r2.data.peekFirst)
+	}
+
+	// runs in progress, ordered by their tails; runs are dropped as soon as they are emptied
+	private val runs = ArrayBuffer.empty[Run]
+	private val heads = new PriorityQueue[Run](16, HeadOrdering)
+	private var count = 0
+
+	def isEmpty = count == 0
+	def size = count
+
+	def add(data: SequencedData): Unit = {
+		val lastRun = runs.size - 1
+
+		// most messages continue the latest run
+		if (lastRun >= 0 && DataOrdering.compare(runs(lastRun).data.peekLast, data) < 0)
+			runs(lastRun).data addLast data
+		else {
+			// find the first run whose tail is not before `data`; the one before it (if any) is continued
+			var lo = 0
+			var hi = lastRun
+			while (lo < hi) {
+				val mid = (lo + hi) >>> 1
+				if (DataOrdering.compare(runs(mid).data.peekLast, data) < 0) lo = mid + 1
+				else hi = mid
+			}
+
+			if (lo > 0)
+				runs(lo - 1).data addLast data
+			else {
+				// nothing to continue, so it starts a run with the earliest tail
+				val run = new Run
+				run.data addLast data
+				runs.insert(0, run)
+				heads add run
+			}
+		}
+
+		count += 1
+	}
+
+	/** @return the earliest message, without removing it, or `null` if there are none */
+	def peek: SequencedData = {
+		val run = heads.peek
+		if (run == null) null else run.data.peekFirst
+	}
+
+	/** Removes and returns the earliest message. */
+	def take: SequencedData = {
+		val run = heads.poll
+		if (run == null) throw new NoSuchElementException("no sequenced data to take")
+
+		val data = run.data.pollFirst
+		if (run.data.isEmpty) runs -= run
+		else heads add run
+
+		count -= 1
+		data
+	}
+}
\ No newline at end of file
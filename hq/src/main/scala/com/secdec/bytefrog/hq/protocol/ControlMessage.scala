@@ -42,10 +42,47 @@ object ControlMessage {
 	case class ClassTransformFailed(className: String) extends ControlMessage
 	case class ClassIgnored(className: String) extends ControlMessage
 
+	/** A number of ClassTransformed, ClassTransformFailed and ClassIgnored messages that the Agent
+	  * sent together. [[com.codedx.codepulse.hq.connect.ControlConnection]] unpacks these, so they
+	  * are never seen by the rest of HQ.
+	  */
+	case class ClassTransformBatch(messages: Seq[ControlMessage]) extends ControlMessage
+
 	case class DataBreak(sequenceId: Int) extends ControlMessage
 
+	/** How many of the HTTP requests the Agent has seen so far were traced, when it is only
+	  * tracing a sample of them.
+	  */
+	case class RequestSampling(sampledRequests: Long, totalRequests: Long) extends ControlMessage
+
+	/** How far the Agent has got retransforming the classes that were already loaded when it
+	  * attached (or when its inclusions changed), and the longest and total time in microseconds
+	  * spent in its retransformClasses calls so far.
+	  */
+	case class RetransformProgress(totalClasses: Int, retransformedClasses: Int, failedClasses: Int,
+		batches: Int, longestPauseMicros: Long, totalPauseMicros: Long) extends ControlMessage
+
 	case object DataHelloReply extends ControlMessage
 
+	/** Method ids whose coverage HQ already has for the active recording; the Agent
+	  * disarms their probes until it sees [[RearmMethods]].
+	  */
+	case class SuppressMethods(methodIds: Seq[Int]) extends ControlMessage
+	case object RearmMethods extends ControlMessage
+
+	/** Asks the Agent to only report every `interval`th method entry and exit on each thread. */
+	case class SetSamplingInterval(interval: Int) extends ControlMessage
+
+	/** Replaces the Agent's exclusion and inclusion patterns; it retransforms whichever
+	  * loaded classes are affected by the change.
+	  */
+	case class UpdateTraceFilters(exclusions: Seq[String], inclusions: Seq[String]) extends ControlMessage
+
+	/** Names the classes that should get line-level probes, for an Agent that was configured
+	  * to start out with method entry/exit probes only.
+	  */
+	case class SetLineLevelTargets(patterns: Seq[String]) extends ControlMessage
+
 	case object Start extends ControlMessage
 	case object Stop extends ControlMessage
 	case object Pause extends ControlMessage
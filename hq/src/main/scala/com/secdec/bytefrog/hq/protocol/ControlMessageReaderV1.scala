@@ -50,6 +50,11 @@ class ControlMessageReaderV1 extends ControlMessageReader {
 		}
 	}
 
+	/** Reads the body of a message whose type byte isn't part of version 1 of the protocol.
+	  * Later versions of the reader override this to handle their own messages.
+	  */
+	protected def readExtendedMessage(messageType: Byte, stream: DataInputStream): ControlMessage = ControlMessage.Unknown
+
 	def readMessage(stream: DataInputStream): ControlMessage = try {
 		stream.readByte match {
 			case MessageConstantsV1.MsgError => ControlMessage.Error(stream.readUTF)
@@ -62,7 +67,7 @@ class ControlMessageReaderV1 extends ControlMessageReader {
 			case MessageConstantsV1.MsgClassTransformFailed => ControlMessage.ClassTransformFailed(stream.readUTF)
 			case MessageConstantsV1.MsgClassIgnored => ControlMessage.ClassIgnored(stream.readUTF)
 			case MessageConstantsV1.MsgDataBreak => ControlMessage.DataBreak(stream.readInt)
-			case _ => ControlMessage.Unknown
+			case other => readExtendedMessage(other, stream)
 		}
 	} catch {
 		case e: EOFException => ControlMessage.EOF
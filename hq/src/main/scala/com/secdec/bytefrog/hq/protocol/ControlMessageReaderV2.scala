@@ -0,0 +1,67 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.protocol
+
+import java.io.DataInputStream
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.agent.common.message.MessageConstantsV5
+
+/** Convenient singleton instance of the ControlMessageReaderV2 class.
+  * Like [[ControlMessageReaderV1]], it keeps no internal state.
+  */
+object ControlMessageReaderV2 extends ControlMessageReaderV2
+
+/** Reads the control messages of protocol version 5, which adds batched
+  * class transformation notifications, request sampling counters and
+  * retransformation progress.
+  */
+class ControlMessageReaderV2 extends ControlMessageReaderV1 {
+
+	override protected def readExtendedMessage(messageType: Byte, stream: DataInputStream): ControlMessage = messageType match {
+		case MessageConstantsV5.MsgClassTransformBatch =>
+			val count = stream.readInt
+			val messages = for (i <- 0 until count) yield {
+				val kind = stream.readByte
+				val className = stream.readUTF
+				kind match {
+					case MessageConstantsV1.MsgClassTransformed => ControlMessage.ClassTransformed(className)
+					case MessageConstantsV1.MsgClassTransformFailed => ControlMessage.ClassTransformFailed(className)
+					case MessageConstantsV1.MsgClassIgnored => ControlMessage.ClassIgnored(className)
+					case _ => throw new IllegalArgumentException("unknown class transformation kind")
+				}
+			}
+			ControlMessage.ClassTransformBatch(messages)
+
+		case MessageConstantsV5.MsgRequestSampling =>
+			val sampled = stream.readLong
+			val total = stream.readLong
+			ControlMessage.RequestSampling(sampled, total)
+
+		case MessageConstantsV5.MsgRetransformProgress =>
+			val totalClasses = stream.readInt
+			val retransformed = stream.readInt
+			val failed = stream.readInt
+			val batches = stream.readInt
+			val longestPause = stream.readLong
+			val totalPause = stream.readLong
+			ControlMessage.RetransformProgress(totalClasses, retransformed, failed, batches, longestPause, totalPause)
+
+		case _ => super.readExtendedMessage(messageType, stream)
+	}
+}
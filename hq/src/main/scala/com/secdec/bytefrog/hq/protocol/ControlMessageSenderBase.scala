@@ -19,8 +19,10 @@ package com.codedx.codepulse.hq.protocol
 
 import java.io.DataOutputStream
 
-import com.codedx.codepulse.agent.common.message.MessageProtocol
-import com.codedx.codepulse.hq.protocol.ControlMessage.{ClassIgnored, ClassTransformFailed, ClassTransformed, Configuration, DataBreak, DataHelloReply, EOF, Error, Heartbeat, Pause, Start, Stop, Suspend, Unknown, Unpause, Unsuspend}
+import scala.collection.JavaConverters._
+
+import com.codedx.codepulse.agent.common.message.{MessageConstantsV1, MessageProtocol}
+import com.codedx.codepulse.hq.protocol.ControlMessage.{ClassIgnored, ClassTransformBatch, ClassTransformFailed, ClassTransformed, Configuration, DataBreak, DataHelloReply, EOF, Error, Heartbeat, Pause, RearmMethods, RequestSampling, RetransformProgress, SetLineLevelTargets, SetSamplingInterval, Start, Stop, SuppressMethods, Suspend, Unknown, Unpause, Unsuspend, UpdateTraceFilters}
 
 /** A [[ControlMessageSender]] implementation that uses MessageProtocol version 1
   * to send messages.
@@ -48,11 +50,39 @@ abstract class ControlMessageSenderBase extends ControlMessageSender {
     // keeping the compiler happy, but this should never be called in practice
     case ClassTransformFailed(name) => protocol.writeClassTransformFailed(out, name)
 
+    // keeping the compiler happy, but this should never be called in practice
+    case ClassTransformBatch(messages) =>
+      val kinds = messages.map {
+        case ClassTransformed(_) => MessageConstantsV1.MsgClassTransformed
+        case ClassTransformFailed(_) => MessageConstantsV1.MsgClassTransformFailed
+        case _ => MessageConstantsV1.MsgClassIgnored
+      }
+      val names = messages.map {
+        case ClassTransformed(name) => name
+        case ClassTransformFailed(name) => name
+        case ClassIgnored(name) => name
+        case _ => ""
+      }
+      protocol.writeClassTransformBatch(out, kinds.toArray, names.toArray, messages.size)
+
     // keeping the compiler happy, but this should never be called in practice
     case DataBreak(seq) => protocol.writeDataBreak(out, seq)
 
+    // keeping the compiler happy, but this should never be called in practice
+    case RequestSampling(sampled, total) => protocol.writeRequestSampling(out, sampled, total)
+
+    // keeping the compiler happy, but this should never be called in practice
+    case RetransformProgress(total, retransformed, failed, batches, longest, totalPause) =>
+      protocol.writeRetransformProgress(out, total, retransformed, failed, batches, longest, totalPause)
+
     case DataHelloReply => protocol.writeDataHelloReply(out)
 
+    case SuppressMethods(ids) => protocol.writeSuppressMethods(out, ids.toArray, 0, ids.size)
+    case RearmMethods => protocol.writeRearmMethods(out)
+    case SetSamplingInterval(interval) => protocol.writeSetSamplingInterval(out, interval)
+    case UpdateTraceFilters(exclusions, inclusions) => protocol.writeUpdateTraceFilters(out, exclusions.asJava, inclusions.asJava)
+    case SetLineLevelTargets(patterns) => protocol.writeSetLineLevelTargets(out, patterns.asJava)
+
     //start and stop messages...
     case Start => protocol.writeStart(out)
     case Stop => protocol.writeStop(out)
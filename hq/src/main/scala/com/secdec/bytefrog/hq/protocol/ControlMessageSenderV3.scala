@@ -0,0 +1,39 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.protocol
+
+import java.io.DataOutputStream
+
+import com.codedx.codepulse.agent.common.message.{MessageProtocol, MessageProtocolV5}
+import com.codedx.codepulse.hq.protocol.ControlMessage.Configuration
+
+/** A convenient singleton instance of the `ControlMessageSenderV3` class.
+  * Using this object will help avoid creating new instances of the class
+  * that would otherwise be needed.
+  */
+object ControlMessageSenderV3 extends ControlMessageSenderV3
+
+/** A [[ControlMessageSender]] implementation that uses MessageProtocol version 5
+  * to send messages, which adds the method suppression messages.
+  */
+class ControlMessageSenderV3 extends ControlMessageSenderBase {
+
+	var protocol: MessageProtocol = new MessageProtocolV5
+
+	def writeConfigurationMessage(out: DataOutputStream, cfg: Configuration[_]) { protocol.writeConfiguration(out, cfg.toJson) }
+}
\ No newline at end of file
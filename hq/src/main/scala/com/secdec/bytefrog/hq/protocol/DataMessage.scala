@@ -87,6 +87,38 @@ object DataMessageContent {
 		threadId: Int)
 		extends DataMessageContent
 
+	/** How many more times each method was entered since the agent last
+	  * reported it, as (method ID, count) pairs.
+	  */
+	case class MethodCounts(
+		timestamp: Int,
+		counts: Seq[(Int, Long)])
+		extends DataMessageContent
+
+	/** How much each method's duration histogram grew since the agent last
+	  * reported it, as (method ID, (bucket, count) pairs) pairs. Buckets are
+	  * described by `DurationBuckets`.
+	  */
+	case class MethodDurations(
+		timestamp: Int,
+		histograms: Seq[(Int, Seq[(Int, Int)])])
+		extends DataMessageContent
+
+	/** Caller/callee method pairs that the agent saw for the first time, as
+	  * (caller method ID, callee method ID) pairs.
+	  */
+	case class CallEdges(
+		edges: Seq[(Int, Int)])
+		extends DataMessageContent
+
+	/** The agent is now only sending every `interval`th method entry and exit
+	  * of each thread, so each one stands for `interval` calls.
+	  */
+	case class SamplingInterval(
+		timestamp: Int,
+		interval: Int)
+		extends DataMessageContent
+
 	case class Exception(
 		exceptionId: Int,
 		methodId: Int,
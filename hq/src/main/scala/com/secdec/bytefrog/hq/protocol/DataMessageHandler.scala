@@ -46,6 +46,18 @@ trait DataMessageHandler {
 	/** This method is called by a parser when it encounters a MethodExit message */
 	def handleMethodExit(methodId: Int, timestamp: Int, sequenceId: Int, exceptionThrown: Boolean, threadId: Int): Unit
 
+	/** This method is called by a parser when it encounters a MethodCounts message */
+	def handleMethodCounts(timestamp: Int, counts: Seq[(Int, Long)]): Unit
+
+	/** This method is called by a parser when it encounters a MethodDurations message */
+	def handleMethodDurations(timestamp: Int, histograms: Seq[(Int, Seq[(Int, Int)])]): Unit
+
+	/** This method is called by a parser when it encounters a CallEdges message */
+	def handleCallEdges(edges: Seq[(Int, Int)]): Unit
+
+	/** This method is called by a parser when it encounters a SamplingInterval message */
+	def handleSamplingInterval(timestamp: Int, interval: Int): Unit
+
 	/** This method is called by a parser when it encounters an Exception message */
 	def handleExceptionMessage(exceptionId: Int, methodId: Int, timestamp: Int, sequenceId: Int, lineNum: Int, threadId: Int): Unit
 
@@ -78,6 +90,10 @@ class DefaultDataMessageHandler extends DataMessageHandler {
 	def handleMethodEntry(methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = ()
 	def handleMethodVisit(methodId: Int, sourceLocationId: Int, timestamp: Int, sequenceId: Int, threadId: Int): Unit = ()
 	def handleMethodExit(methodId: Int, timestamp: Int, sequenceId: Int, exceptionThrown: Boolean, threadId: Int) = ()
+	def handleMethodCounts(timestamp: Int, counts: Seq[(Int, Long)]): Unit = ()
+	def handleMethodDurations(timestamp: Int, histograms: Seq[(Int, Seq[(Int, Int)])]): Unit = ()
+	def handleCallEdges(edges: Seq[(Int, Int)]): Unit = ()
+	def handleSamplingInterval(timestamp: Int, interval: Int): Unit = ()
 
 	def handleExceptionMessage(exceptionId: Int, methodId: Int, timestamp: Int, sequenceId: Int, lineNum: Int, threadId: Int) = ()
 	def handleExceptionBubble(exceptionId: Int, methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = ()
@@ -18,6 +18,7 @@
 package com.codedx.codepulse.hq.protocol
 
 import java.io.DataInputStream
+import java.nio.ByteBuffer
 
 /** A "Push" API for parsing data events from a DataInputStream.
   * A DataMessageParser can parse an entire stream in one shot,
@@ -35,4 +36,16 @@ trait DataMessageParser {
 	  * on the given `handler` for each potential data message.
 	  */
 	def parse(data: DataInputStream, handler: DataMessageHandler, progressHandler: Long => Unit = _ => {}, parseDataBreaks: Boolean = false): Unit
+
+	/** Parse the complete messages between `data`'s position and its limit, using the callback
+	  * methods on the given `handler` for each one, and leave `data` positioned after the last
+	  * of them. A message that `data` only holds the start of is left unread, to be parsed once
+	  * the rest of it has arrived; so unlike `parse`, reaching the limit is not the end of the
+	  * stream, and the handler's EOF callback is never called. Malformed data is thrown as an
+	  * IOException.
+	  *
+	  * @return the number of bytes, at least, that the cut-off message left at `data`'s position
+	  * needs before parsing it again can succeed, or 0 if there is no such message
+	  */
+	def parseAvailable(data: ByteBuffer, handler: DataMessageHandler, parseDataBreaks: Boolean = false): Int
 }
\ No newline at end of file
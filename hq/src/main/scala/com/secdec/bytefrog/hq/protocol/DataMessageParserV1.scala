@@ -20,8 +20,10 @@ package com.codedx.codepulse.hq.protocol
 import java.io.DataInputStream
 import java.io.EOFException
 import java.io.IOException
+import java.nio.ByteBuffer
 
 import com.codedx.codepulse.agent.common.message.MessageConstantsV1._
+import com.codedx.codepulse.hq.util.ByteBufferInputStream
 import IO.{ Input, Data, EOF, Error }
 
 /** Convenient singleton version of the DataMessageParserV1 class */
@@ -52,6 +54,84 @@ class DataMessageParserV1 extends DataMessageParser {
 		}
 	}
 
+	def parseAvailable(data: ByteBuffer, handler: DataMessageHandler, parseDataBreaks: Boolean): Int = {
+		// only needed for the less common messages, which are read the same way `parse` reads them
+		var input: ByteBufferInputStream = null
+		var stream: DataInputStream = null
+		var messageStart = data.position
+
+		try {
+			while (data.hasRemaining) {
+				if (!readBufferedMessage(data.get, data, handler)) {
+					data.position(messageStart)
+					if (stream == null) {
+						input = new ByteBufferInputStream(data)
+						stream = new DataInputStream(input)
+					}
+					readMessage(stream, handler, parseDataBreaks)
+				}
+				messageStart = data.position
+			}
+			0
+		} catch {
+			// every message is read in full before its callback is made, so backing up to the
+			// start of a cut-off message is all it takes to try it again later
+			case e: EOFException =>
+				data.position(messageStart)
+
+				// the read that came up short tells how far the message goes, at least; for a
+				// length-prefixed string that is read past the length, that's the whole message
+				math.max(data.remaining + 1, if (input == null) 0 else input.requested - messageStart)
+		}
+	}
+
+	/** Read the message with the given `typeId` straight out of `data`, which is positioned
+	  * just after the type id, if it is one of the fixed-size trace events that make up nearly
+	  * all of a trace and `data` holds the whole thing. Fields are read in `data`'s byte order,
+	  * which must be big-endian (the default) to match what the agent writes.
+	  *
+	  * @return `false`, having read nothing, if the message should be read by `readMessage` instead
+	  */
+	protected def readBufferedMessage(typeId: Byte, data: ByteBuffer, handler: DataMessageHandler): Boolean = typeId match {
+		case MsgMethodEntry if data.remaining >= 14 =>
+			val timestamp = data.getInt
+			val sequenceId = data.getInt
+			val methodId = data.getInt
+			val threadId = data.getShort & 0xFFFF
+			handler.handleMethodEntry(methodId, timestamp, sequenceId, threadId)
+			true
+
+		case MsgMethodExit if data.remaining >= 15 =>
+			val timestamp = data.getInt
+			val sequenceId = data.getInt
+			val methodId = data.getInt
+			val exceptionThrown = data.get != 0
+			val threadId = data.getShort & 0xFFFF
+			handler.handleMethodExit(methodId, timestamp, sequenceId, exceptionThrown, threadId)
+			true
+
+		case MsgException if data.remaining >= 20 =>
+			val timestamp = data.getInt
+			val sequenceId = data.getInt
+			val methodId = data.getInt
+			val exceptionId = data.getInt
+			val lineNum = data.getShort & 0xFFFF
+			val threadId = data.getShort & 0xFFFF
+			handler.handleExceptionMessage(exceptionId, methodId, timestamp, sequenceId, lineNum, threadId)
+			true
+
+		case MsgExceptionBubble if data.remaining >= 18 =>
+			val timestamp = data.getInt
+			val sequenceId = data.getInt
+			val methodId = data.getInt
+			val exceptionId = data.getInt
+			val threadId = data.getShort & 0xFFFF
+			handler.handleExceptionBubble(exceptionId, methodId, timestamp, sequenceId, threadId)
+			true
+
+		case _ => false
+	}
+
 	/** Read an individual message from the `stream`, delegating to the
 	  * `handler` for callbacks for each message type. This method will
 	  * be called many times by `parse`.
@@ -214,8 +294,8 @@ class DataMessageParserV1 extends DataMessageParser {
 
 		handler.handleExceptionBubble(exceptionId, methodId, timestamp, sequenceId, threadId)
 
-		// read 16 bytes
-		16
+		// read 18 bytes
+		18
 	}
 
 	protected def readMarker(stream: DataInputStream, handler: DataMessageHandler): Int = {
@@ -21,6 +21,7 @@
 package com.secdec.bytefrog.hq.protocol
 
 import java.io.{DataInputStream, IOException}
+import java.nio.ByteBuffer
 
 import com.codedx.codepulse.agent.common.message.MessageConstantsV3._
 import com.codedx.codepulse.hq.protocol.{DataMessageHandler, DataMessageParserV1}
@@ -45,6 +46,19 @@ class DataMessageParserV2 extends DataMessageParserV1 {
     }) + 1
   }
 
+  override protected def readBufferedMessage(typeId: Byte, data: ByteBuffer, handler: DataMessageHandler): Boolean = typeId match {
+    case MsgMethodVisit if data.remaining >= 18 =>
+      val timestamp = data.getInt
+      val sequenceId = data.getInt
+      val methodId = data.getInt
+      val sourceLocationId = data.getInt
+      val threadId = data.getShort & 0xFFFF
+      handler.handleMethodVisit(methodId, sourceLocationId, timestamp, sequenceId, threadId)
+      true
+
+    case _ => super.readBufferedMessage(typeId, data, handler)
+  }
+
   protected def readSourceLocationCount(stream: DataInputStream, handler: DataMessageHandler): Int = {
     //[4 bytes: assigned signature ID]
     val methodId = stream.readInt
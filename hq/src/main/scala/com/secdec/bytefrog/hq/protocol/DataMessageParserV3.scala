@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 Secure Decisions, a division of Applied Visions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This material is based on research sponsored by the Department of Homeland
+ * Security (DHS) Science and Technology Directorate, Cyber Security Division
+ * (DHS S&T/CSD) via contract number HHSP233201600058C.
+ */
+
+package com.secdec.bytefrog.hq.protocol
+
+import java.io.DataInputStream
+import java.nio.ByteBuffer
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.agent.common.message.MessageConstantsV3
+import com.codedx.codepulse.agent.common.message.MessageConstantsV5
+import com.codedx.codepulse.hq.protocol.DataMessageHandler
+
+object DataMessageParserV3 extends DataMessageParserV3
+
+/** A DataMessageParser implementation for data written by MessageProtocol
+  * Version 5, which widens thread IDs in event messages from 2 to 4 bytes
+  * and adds the MethodCounts, MethodDurations, CallEdges and SamplingInterval
+  * messages.
+  *
+  * Like its parents, this implementation keeps no internal state and is
+  * thread-safe.
+  */
+class DataMessageParserV3 extends DataMessageParserV2 {
+  override protected def readOtherMessage(typeId: Byte, stream: DataInputStream, handler: DataMessageHandler, parseDataBreaks: Boolean): Int = typeId match {
+    case MessageConstantsV5.MsgMethodCounts => readMethodCounts(stream, handler)
+    case MessageConstantsV5.MsgMethodDurations => readMethodDurations(stream, handler)
+    case MessageConstantsV5.MsgCallEdges => readCallEdges(stream, handler)
+    case MessageConstantsV5.MsgSamplingInterval => readSamplingInterval(stream, handler)
+    case _ => super.readOtherMessage(typeId, stream, handler, parseDataBreaks)
+  }
+
+  // events with 4-byte thread ids; exceptions still carry 2-byte ones, as V1 reads them
+  override protected def readBufferedMessage(typeId: Byte, data: ByteBuffer, handler: DataMessageHandler): Boolean = typeId match {
+    case MessageConstantsV1.MsgMethodEntry if data.remaining >= 16 =>
+      val timestamp = data.getInt
+      val sequenceId = data.getInt
+      val methodId = data.getInt
+      val threadId = data.getInt
+      handler.handleMethodEntry(methodId, timestamp, sequenceId, threadId)
+      true
+
+    case MessageConstantsV1.MsgMethodExit if data.remaining >= 17 =>
+      val timestamp = data.getInt
+      val sequenceId = data.getInt
+      val methodId = data.getInt
+      val exceptionThrown = data.get != 0
+      val threadId = data.getInt
+      handler.handleMethodExit(methodId, timestamp, sequenceId, exceptionThrown, threadId)
+      true
+
+    case MessageConstantsV3.MsgMethodVisit if data.remaining >= 20 =>
+      val timestamp = data.getInt
+      val sequenceId = data.getInt
+      val methodId = data.getInt
+      val sourceLocationId = data.getInt
+      val threadId = data.getInt
+      handler.handleMethodVisit(methodId, sourceLocationId, timestamp, sequenceId, threadId)
+      true
+
+    case _ => super.readBufferedMessage(typeId, data, handler)
+  }
+
+  protected def readMethodCounts(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: number of entries]
+    val count = stream.readInt
+
+    //count * [4 bytes: method signature ID][8 bytes: count delta]
+    val counts = Vector.newBuilder[(Int, Long)]
+    counts.sizeHint(count)
+    for (i <- 0 until count) {
+      val methodId = stream.readInt
+      val delta = stream.readLong
+      counts += methodId -> delta
+    }
+
+    handler.handleMethodCounts(timestamp, counts.result)
+
+    // read 8 bytes, plus 12 per entry
+    8 + 12 * count
+  }
+
+  protected def readMethodDurations(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: number of methods]
+    val count = stream.readInt
+
+    //count * [4 bytes: method signature ID][1 byte: number of buckets]
+    //  buckets * [1 byte: bucket][4 bytes: count delta]
+    var bytesRead = 8
+    val histograms = Vector.newBuilder[(Int, Seq[(Int, Int)])]
+    histograms.sizeHint(count)
+    for (i <- 0 until count) {
+      val methodId = stream.readInt
+      val numBuckets = stream.readUnsignedByte
+      val buckets = Vector.newBuilder[(Int, Int)]
+      for (b <- 0 until numBuckets) {
+        val bucket = stream.readUnsignedByte
+        val delta = stream.readInt
+        buckets += bucket -> delta
+      }
+      histograms += methodId -> buckets.result
+      bytesRead += 5 + 5 * numBuckets
+    }
+
+    handler.handleMethodDurations(timestamp, histograms.result)
+
+    bytesRead
+  }
+
+  protected def readCallEdges(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: number of edges]
+    val count = stream.readInt
+
+    //count * [4 bytes: caller signature ID][4 bytes: callee signature ID]
+    val edges = Vector.newBuilder[(Int, Int)]
+    edges.sizeHint(count)
+    for (i <- 0 until count) {
+      val callerId = stream.readInt
+      val calleeId = stream.readInt
+      edges += callerId -> calleeId
+    }
+
+    handler.handleCallEdges(edges.result)
+
+    // read 4 bytes, plus 8 per edge
+    4 + 8 * count
+  }
+
+  protected def readSamplingInterval(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: sampling interval]
+    val interval = stream.readInt
+
+    handler.handleSamplingInterval(timestamp, interval)
+
+    // read 8 bytes
+    8
+  }
+
+  override protected def readMapThreadName(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: thread ID]
+    val threadId = stream.readInt
+
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[2 bytes: length of encoded thread name][n bytes: encoded thread name]
+    stream mark 2
+    val threadNameLen = stream.readUnsignedShort()
+    stream.reset
+    val threadName = stream.readUTF
+
+    handler.handleMapThreadName(threadName, threadId, timestamp)
+
+    // read 10 bytes, plus thread name length
+    10 + threadNameLen
+  }
+
+  override protected def readMethodEntry(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: current sequence]
+    val sequenceId = stream.readInt
+
+    //[4 bytes: method signature ID]
+    val methodId = stream.readInt
+
+    //[4 bytes: thread ID]
+    val threadId = stream.readInt
+
+    handler.handleMethodEntry(methodId, timestamp, sequenceId, threadId)
+
+    // read 16 bytes
+    16
+  }
+
+  override protected def readMethodExit(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: current sequence]
+    val sequenceId = stream.readInt
+
+    //[4 bytes: method signature ID]
+    val methodId = stream.readInt
+
+    //[1 byte: exceptionThrown]
+    val exceptionThrown = stream.readBoolean
+
+    //[4 bytes: thread ID]
+    val threadId = stream.readInt
+
+    handler.handleMethodExit(methodId, timestamp, sequenceId, exceptionThrown, threadId)
+
+    // read 17 bytes
+    17
+  }
+
+  override protected def readMethodVisit(stream: DataInputStream, handler: DataMessageHandler): Int = {
+    //[4 bytes: relative timestamp]
+    val timestamp = stream.readInt
+
+    //[4 bytes: current sequence]
+    val sequenceId = stream.readInt
+
+    //[4 bytes: method signature ID]
+    val methodId = stream.readInt
+
+    //[4 bytes: source location ID]
+    val sourceLocationId = stream.readInt
+
+    //[4 bytes: thread ID]
+    val threadId = stream.readInt
+
+    handler.handleMethodVisit(methodId, sourceLocationId, timestamp, sequenceId, threadId)
+
+    // read 20 bytes
+    20
+  }
+}
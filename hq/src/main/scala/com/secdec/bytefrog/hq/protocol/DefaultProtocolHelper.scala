@@ -19,10 +19,11 @@ package com.codedx.codepulse.hq.protocol
 
 import com.codedx.codepulse.agent.common.message._
 import com.secdec.bytefrog.hq.protocol.DataMessageParserV2
+import com.secdec.bytefrog.hq.protocol.DataMessageParserV3
 
 object DefaultProtocolHelper extends ProtocolHelper {
 
-	def latestProtocolVersion = 4
+	def latestProtocolVersion = 5
 
 	/** Returns a `MessageProtocol` instance associated with the given `version`, as
 	  * an option.
@@ -35,6 +36,7 @@ object DefaultProtocolHelper extends ProtocolHelper {
 		case 2 => Some(new MessageProtocolV2)
 		case 3 => Some(new MessageProtocolV3)
 		case 4 => Some(new MessageProtocolV4)
+		case 5 => Some(new MessageProtocolV5)
 		case _ => None
 	}
 
@@ -49,6 +51,7 @@ object DefaultProtocolHelper extends ProtocolHelper {
 		case 2 => Some(ControlMessageSenderV2)
 		case 3 => Some(ControlMessageSenderV2)
 		case 4 => Some(ControlMessageSenderV2)
+		case 5 => Some(ControlMessageSenderV3)
 		case _ => None
 	}
 
@@ -57,6 +60,7 @@ object DefaultProtocolHelper extends ProtocolHelper {
 		case 2 => Some(ControlMessageReaderV1)
 		case 3 => Some(ControlMessageReaderV1)
 		case 4 => Some(ControlMessageReaderV1)
+		case 5 => Some(ControlMessageReaderV2)
 		case _ => None
 	}
 
@@ -65,6 +69,7 @@ object DefaultProtocolHelper extends ProtocolHelper {
 		case 2 => Some(DataMessageParserV1)
 		case 3 => Some(DataMessageParserV2)
 		case 4 => Some(DataMessageParserV2)
+		case 5 => Some(DataMessageParserV3)
 		case _ => None
 	}
 }
\ No newline at end of file
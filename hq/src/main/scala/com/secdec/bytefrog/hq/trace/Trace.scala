@@ -44,6 +44,9 @@ import reactive.Observing
   */
 object Trace {
 
+	/** Most method ids sent to the agent in a single SuppressMethods message */
+	val MaxSuppressBatch = 1024
+
 	/** Gets a Trace. This waits for an agent to connect, configures the agent, and then provides that agent
 	  * connection to the new Trace object.
 	  *
@@ -140,6 +143,14 @@ class Trace(val runId: Byte, controlConnection: ControlConnection, hqConfig: HQC
 	def classTransformFailEvents: EventStream[String] = agentController.classTransformFailEvents
 	def classIgnoreEvents: EventStream[String] = agentController.classIgnoreEvents
 
+	/** Sampled and total request counts, reported periodically when the agent only traces a sample of HTTP requests */
+	def requestSamplingEvents: EventStream[ControlMessage.RequestSampling] = agentController.requestSamplingEvents
+	def lastRequestSampling = agentController.lastRequestSampling
+
+	/** Progress (and pause times) of retransforming already-loaded classes, reported when the agent was attached to a running JVM */
+	def retransformProgressEvents: EventStream[ControlMessage.RetransformProgress] = agentController.retransformProgressEvents
+	def lastRetransformProgress = agentController.lastRetransformProgress
+
 	def agentStateChange = agentController.agentStateChange
 
 	// initialize the trace
@@ -177,12 +188,29 @@ class Trace(val runId: Byte, controlConnection: ControlConnection, hqConfig: HQC
 	  * dumping system.
 	  * @param dc The DataConnection to add to this Trace.
 	  */
-	def addDataConnection(dc: DataConnection): Boolean = synchronized {
+	def addDataConnection(dc: DataConnection): Boolean = addDataConnection(dc, false)
+
+	/** Add a new connection that provides incoming data. Connections may be added at any point
+	  * while the trace is collecting data; the agent opens `additional` connections mid-trace
+	  * when it needs more send bandwidth, and closes them again when the load drops off.
+	  * @param dc The DataConnection to add to this Trace.
+	  * @param additional Whether the agent is adding the connection to a trace that is already underway.
+	  * @return `false` if the trace is no longer accepting data connections.
+	  */
+	def addDataConnection(dc: DataConnection, additional: Boolean): Boolean = synchronized {
 		val controller = new DataConnectionController(dc, dataCollector)
-		controller.start
-		dataControllers += controller
-		players += controller
-		true
+
+		// register the connection before the agent hears back from us, so that the collector
+		// never sees a moment without connections while the agent swaps one out for another
+		if (isComplete || !dataCollector.registerDataConnection(controller)) {
+			if (additional) logger.debug(s"Refusing additional data connection for trace $runId")
+			false
+		} else {
+			controller.start
+			dataControllers += controller
+			players += controller
+			true
+		}
 	}
 
 	/** An "Event" representing changes in the trace's health status */
@@ -295,4 +323,43 @@ class Trace(val runId: Byte, controlConnection: ControlConnection, hqConfig: HQC
 
 	/** Tell agent to resume execution and tracing */
 	def resume() = agentController.resumeTracing
+
+	/** Whether the agent understands [[suppressMethods]] and [[rearmMethods]] */
+	def supportsMethodSuppression = protocolVersion >= 5
+
+	/** Tell agent to stop reporting events for the given methods, until [[rearmMethods]] */
+	def suppressMethods(methodIds: Seq[Int]) {
+		if (supportsMethodSuppression && !methodIds.isEmpty)
+			controlConnection.send(methodIds.grouped(Trace.MaxSuppressBatch).map(ControlMessage.SuppressMethods(_)).toSeq: _*)
+	}
+
+	/** Tell agent to resume reporting events for every suppressed method */
+	def rearmMethods() {
+		if (supportsMethodSuppression)
+			controlConnection.send(ControlMessage.RearmMethods)
+	}
+
+	/** Tell agent to report only every `interval`th method entry and exit on each thread.
+	  * Only agents that were configured with a sampling interval can change it.
+	  */
+	def setSamplingInterval(interval: Int) {
+		if (protocolVersion >= 5)
+			controlConnection.send(ControlMessage.SetSamplingInterval(interval max 1))
+	}
+
+	/** Tell agent to trace classes according to a new set of exclusion and inclusion patterns.
+	  * Classes that are already loaded are retransformed if the change affects them.
+	  */
+	def updateTraceFilters(exclusions: Seq[String], inclusions: Seq[String]) {
+		if (protocolVersion >= 5)
+			controlConnection.send(ControlMessage.UpdateTraceFilters(exclusions, inclusions))
+	}
+
+	/** Tell agent which classes should get line-level probes. Only agents that were configured
+	  * with tiered line-level instrumentation leave the other classes with method probes only.
+	  */
+	def setLineLevelTargets(patterns: Seq[String]) {
+		if (protocolVersion >= 5)
+			controlConnection.send(ControlMessage.SetLineLevelTargets(patterns))
+	}
 }
\ No newline at end of file
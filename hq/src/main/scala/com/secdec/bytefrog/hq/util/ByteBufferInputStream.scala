@@ -0,0 +1,66 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.util
+
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+/** An InputStream over the remaining bytes of a ByteBuffer. Reading advances the buffer's
+  * position, and the buffer's limit is the end of the stream. Marks are kept in the buffer.
+  */
+class ByteBufferInputStream(buffer: ByteBuffer) extends InputStream {
+
+	private var _requested = buffer.position
+
+	/** The furthest buffer position that a read has asked to reach. When a read comes up short,
+	  * this is past the limit, and tells how much more data it needed.
+	  */
+	def requested = _requested
+
+	private def request(end: Int) = if (end > _requested) _requested = end
+
+	override def read(): Int = {
+		request(buffer.position + 1)
+		if (buffer.hasRemaining) buffer.get & 0xFF else -1
+	}
+
+	override def read(b: Array[Byte], off: Int, len: Int): Int = {
+		request(buffer.position + len)
+		if (len == 0) 0
+		else if (!buffer.hasRemaining) -1
+		else {
+			val count = math.min(len, buffer.remaining)
+			buffer.get(b, off, count)
+			count
+		}
+	}
+
+	override def skip(n: Long): Long = {
+		val count = math.max(0L, math.min(n, buffer.remaining.toLong)).toInt
+		buffer.position(buffer.position + count)
+		count
+	}
+
+	override def available(): Int = buffer.remaining
+
+	override def markSupported(): Boolean = true
+
+	override def mark(readLimit: Int): Unit = buffer.mark
+
+	override def reset(): Unit = buffer.reset
+}
\ No newline at end of file
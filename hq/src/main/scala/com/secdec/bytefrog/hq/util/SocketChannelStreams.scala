@@ -0,0 +1,63 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.util
+
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.SocketChannel
+
+/** Blocking streams that read and write a socket channel directly. The streams of
+  * `channel.socket` hold the channel's blocking lock while they read or write on Java 8, so a
+  * thread waiting to read a connection holds up any thread trying to write to it. These don't,
+  * so one reader and one writer can use the connection at the same time.
+  *
+  * The channel must be in blocking mode while they are used. Reads while the socket has an
+  * SO_TIMEOUT go through the socket's own stream, since only it supports timeouts.
+  */
+object SocketChannelStreams {
+
+	class Input(channel: SocketChannel) extends InputStream {
+		private lazy val socketInput = channel.socket.getInputStream
+
+		override def read(): Int = {
+			val b = new Array[Byte](1)
+			if (read(b, 0, 1) < 0) -1 else b(0) & 0xFF
+		}
+
+		override def read(b: Array[Byte], off: Int, len: Int): Int = {
+			if (len == 0) 0
+			else if (channel.socket.getSoTimeout > 0) socketInput.read(b, off, len)
+			else channel.read(ByteBuffer.wrap(b, off, len))
+		}
+
+		override def close(): Unit = channel.close
+	}
+
+	class Output(channel: SocketChannel) extends OutputStream {
+
+		override def write(b: Int): Unit = write(Array(b.toByte), 0, 1)
+
+		override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+			val buffer = ByteBuffer.wrap(b, off, len)
+			while (buffer.hasRemaining) channel.write(buffer)
+		}
+
+		override def close(): Unit = channel.close
+	}
+}
\ No newline at end of file
@@ -34,6 +34,7 @@ import org.scalamock.scalatest.MockFactory
 import com.codedx.codepulse.agent.common.config.RuntimeAgentConfigurationV1
 import com.codedx.codepulse.agent.common.connect.Connection
 import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.agent.common.message.MessageConstantsV5
 import com.codedx.codepulse.agent.common.message.MessageProtocol
 import com.codedx.codepulse.agent.common.message.MessageProtocolV2
 import com.codedx.codepulse.hq.connect._
@@ -130,6 +131,24 @@ class ClientGreeterSpec extends FunSpec with Matchers with MockFactory with Mock
 			greeter.run
 		}
 
+		it("should refuse a shared memory 'Data Hello' from a client that isn't a local socket") {
+			val runId: Byte = 12
+			val clientClose = mockFunction[Unit]
+			val client = new Connection {
+				def close = clientClose()
+				val input = makeBytesInput(MessageConstantsV5.MsgDataHelloSharedMemory, runId, 0, 0, 1, 'r')
+				val output = new DataOutputStream(stub[OutputStream])
+			}
+
+			val registry = mock[TraceRegistry]
+			val greeter = new ClientGreeter(client, mock[TraceControlConnector], registry)
+
+			(registry.getTrace _).expects(*).never
+			clientClose.expects.once
+
+			greeter.run
+		}
+
 		it("should close the client in 'handleHello' if the ControlConnector doesn't return a configuration") {
 			val clientClose = mockFunction[Unit]
 			val client = new Connection {
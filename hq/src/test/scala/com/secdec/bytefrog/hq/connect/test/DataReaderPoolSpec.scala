@@ -0,0 +1,112 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.connect.test
+
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.hq.connect.DataReaderPool
+import com.codedx.codepulse.hq.protocol.DefaultDataMessageHandler
+import com.secdec.bytefrog.hq.protocol.DataMessageParserV3
+
+class DataReaderPoolSpec extends FunSpec with Matchers {
+
+	val protocol = new MessageProtocolV5
+
+	/** Records what the reader thread hands it; `ended` is what publishes the records to the test */
+	class RecordingHandler extends DefaultDataMessageHandler {
+		val ended = new CountDownLatch(1)
+		@volatile var methodIds = List.empty[Int]
+		@volatile var signatures = List.empty[String]
+		@volatile var error: Option[Throwable] = None
+
+		override def handleMethodEntry(methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = methodIds :+= methodId
+		override def handleMapMethodSignature(methodSig: String, methodId: Int) = signatures :+= methodSig
+		override def handleParserEOF = ended.countDown
+		override def handleParserError(e: Throwable) = {
+			error = Some(e)
+			ended.countDown
+		}
+	}
+
+	def connectedPair: (Socket, SocketChannel) = {
+		val server = ServerSocketChannel.open
+		try {
+			server.socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress, 0))
+			val client = new Socket(InetAddress.getLoopbackAddress, server.socket.getLocalPort)
+			(client, server.accept)
+		} finally server.close
+	}
+
+	describe("DataReaderPool") {
+
+		it("Should parse messages that arrive in pieces, and report EOF when the agent disconnects") {
+			val pool = new DataReaderPool(1, 64)
+			try {
+				val (client, channel) = connectedPair
+				val handler = new RecordingHandler
+				pool.register(channel, DataMessageParserV3, handler)
+
+				val baos = new ByteArrayOutputStream
+				val out = new DataOutputStream(baos)
+				for (i <- 1 to 20) protocol.writeMethodEntry(out, i, i, i, 1)
+				// larger than the reader's buffer
+				protocol.writeMapMethodSignature(out, 21, "x" * 200)
+
+				val socketOut = client.getOutputStream
+				for (chunk <- baos.toByteArray.grouped(7)) {
+					socketOut.write(chunk)
+					socketOut.flush
+				}
+				client.close
+
+				handler.ended.await(10, TimeUnit.SECONDS) shouldBe true
+				handler.error shouldBe None
+				handler.methodIds shouldBe (1 to 20).toList
+				handler.signatures shouldBe List("x" * 200)
+			} finally pool.shutdown
+		}
+
+		it("Should report EOF and close the channel when a registration is closed") {
+			val pool = new DataReaderPool(1)
+			try {
+				val (client, channel) = connectedPair
+				val handler = new RecordingHandler
+				val registration = pool.register(channel, DataMessageParserV3, handler)
+
+				registration.close
+				handler.ended.await(10, TimeUnit.SECONDS) shouldBe true
+				handler.error shouldBe None
+				channel.isOpen shouldBe false
+				client.close
+			} finally pool.shutdown
+		}
+	}
+}
\ No newline at end of file
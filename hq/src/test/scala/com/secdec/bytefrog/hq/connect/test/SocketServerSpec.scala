@@ -0,0 +1,84 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.connect.test
+
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.hq.connect.ControlConnection
+import com.codedx.codepulse.hq.connect.SocketServer
+import com.codedx.codepulse.hq.protocol.ControlMessage
+import com.codedx.codepulse.hq.protocol.ControlMessageReaderV2
+import com.codedx.codepulse.hq.protocol.ControlMessageSenderV3
+
+class SocketServerSpec extends FunSpec with Matchers {
+
+	def connectedPair: (Socket, SocketChannel) = {
+		val server = ServerSocketChannel.open
+		try {
+			server.socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress, 0))
+			val client = new Socket(InetAddress.getLoopbackAddress, server.socket.getLocalPort)
+			(client, server.accept)
+		} finally server.close
+	}
+
+	describe("SocketServer's connections") {
+
+		it("Should send control messages while another thread is blocked receiving one") {
+			val (agent, channel) = connectedPair
+			val control = new ControlConnection(3, SocketServer.connection(channel), ControlMessageReaderV2, ControlMessageSenderV3, None)
+
+			try {
+				val receiver = new Thread {
+					override def run: Unit = try control.recieve() catch { case e: Exception => }
+				}
+				receiver.setDaemon(true)
+				receiver.start
+
+				// give the receiver time to block in its read
+				Thread.sleep(200)
+
+				var sent = false
+				val sender = new Thread {
+					override def run: Unit = {
+						control.send(ControlMessage.Start)
+						sent = true
+					}
+				}
+				sender.setDaemon(true)
+				sender.start
+				sender.join(5000)
+
+				sent shouldBe true
+				agent.setSoTimeout(5000)
+				agent.getInputStream.read shouldBe MessageConstantsV1.MsgStart.toInt
+			} finally {
+				agent.close
+				control.close
+			}
+		}
+	}
+}
\ No newline at end of file
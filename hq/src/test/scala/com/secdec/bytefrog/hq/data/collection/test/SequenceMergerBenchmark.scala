@@ -0,0 +1,74 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.data.collection.test
+
+import java.util.concurrent.PriorityBlockingQueue
+
+import scala.util.Random
+
+import com.codedx.codepulse.hq.data.collection.DataOrdering
+import com.codedx.codepulse.hq.data.collection.SequenceMerger
+import com.codedx.codepulse.hq.protocol.DataMessage.SequencedData
+
+/** Microbenchmark comparing the priority queue DataCollector used to reorder sequenced data with
+  * `SequenceMerger`, for data arriving the way the agent sends it with various numbers of buffers
+  * in flight. Not run as part of the test suite; run with
+  * `sbt "HQ/test:runMain com.codedx.codepulse.hq.data.collection.test.SequenceMergerBenchmark"`.
+  */
+object SequenceMergerBenchmark {
+	val Messages = 2000000
+	val Rounds = 5
+
+	def main(args: Array[String]): Unit = {
+		val random = new Random(42)
+		var sink = 0L
+
+		for (buffers <- Seq(4, 16, 64)) {
+			val arriving = SequenceMergerSpec.agentOrder(0 until Messages, buffers, random).map(SequenceMergerSpec.data).toArray
+
+			for (round <- 1 to Rounds) {
+				val t0 = System.nanoTime
+				val queue = new PriorityBlockingQueue[SequencedData](512, DataOrdering)
+				var next = 0
+				for (data <- arriving) {
+					queue put data
+					while (!queue.isEmpty && queue.peek.sequence == next) {
+						sink += queue.take.sequence
+						next += 1
+					}
+				}
+
+				val t1 = System.nanoTime
+				val merger = new SequenceMerger(512)
+				next = 0
+				for (data <- arriving) {
+					merger add data
+					while (!merger.isEmpty && merger.peek.sequence == next) {
+						sink += merger.take.sequence
+						next += 1
+					}
+				}
+
+				val t2 = System.nanoTime
+				println(f"$buffers buffers, round $round: PriorityBlockingQueue ${(t1 - t0).toDouble / Messages}%.1f ns/msg, SequenceMerger ${(t2 - t1).toDouble / Messages}%.1f ns/msg")
+			}
+		}
+
+		println(s"($sink)")
+	}
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.data.collection.test
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.Random
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.hq.data.collection.SequenceMerger
+import com.codedx.codepulse.hq.protocol.DataMessage.SequencedData
+import com.codedx.codepulse.hq.protocol.DataMessageContent.MethodEntry
+
+object SequenceMergerSpec {
+
+	def data(sequence: Int) = SequencedData(0, sequence, MethodEntry(1, 0, 1))
+
+	/** The order sequenced data arrives in from an agent filling `buffers` buffers at once: each
+	  * buffer in order, but buffers interleaved as they fill up.
+	  */
+	def agentOrder(sequences: Seq[Int], buffers: Int, random: Random): Seq[Int] = {
+		val filling = Array.fill(buffers)(ArrayBuffer.empty[Int])
+		val sent = ArrayBuffer.empty[Int]
+		for (sequence <- sequences) {
+			val buffer = filling(random.nextInt(buffers))
+			buffer += sequence
+			if (buffer.size >= 5 + random.nextInt(40)) {
+				sent ++= buffer
+				buffer.clear
+			}
+		}
+		for (buffer <- filling) sent ++= buffer
+		sent
+	}
+}
+
+class SequenceMergerSpec extends FunSpec with Matchers {
+	import SequenceMergerSpec._
+
+	/** Feeds `arriving` into a merger, taking data out as soon as it is next, the way DataCollector does */
+	def merge(arriving: Seq[Int], firstSequence: Int): Seq[Int] = {
+		val merger = new SequenceMerger
+		val merged = ArrayBuffer.empty[Int]
+		var next = firstSequence
+		for (sequence <- arriving) {
+			merger add data(sequence)
+			while (!merger.isEmpty && merger.peek.sequence == next) {
+				merged += merger.take.sequence
+				next += 1
+			}
+		}
+		merger.size shouldBe 0
+		merged
+	}
+
+	describe("SequenceMerger") {
+
+		it("Should have nothing to take when empty") {
+			val merger = new SequenceMerger
+			merger.isEmpty shouldBe true
+			merger.peek shouldBe null
+			a[NoSuchElementException] should be thrownBy merger.take
+		}
+
+		it("Should take data in sequence order, whatever order it was added in") {
+			val merger = new SequenceMerger
+			for (sequence <- Seq(5, 1, 4, 2, 3, 0)) merger add data(sequence)
+			merger.size shouldBe 6
+			(for (i <- 0 until 6) yield merger.take.sequence) shouldBe (0 until 6)
+			merger.isEmpty shouldBe true
+		}
+
+		it("Should restore the order of interleaved agent buffers") {
+			val random = new Random(1234)
+			for (buffers <- Seq(1, 4, 16)) {
+				val sequences = 0 until 20000
+				merge(agentOrder(sequences, buffers, random), 0) shouldBe sequences
+			}
+		}
+
+		it("Should order data past a sequence overflow after the data before it") {
+			val random = new Random(5678)
+			val sequences = (0 to 1000).map(Int.MaxValue - 1000 + _) ++ (0 to 1000).map(Int.MinValue + _)
+			merge(agentOrder(sequences, 8, random), Int.MaxValue - 1000) shouldBe sequences
+		}
+	}
+}
\ No newline at end of file
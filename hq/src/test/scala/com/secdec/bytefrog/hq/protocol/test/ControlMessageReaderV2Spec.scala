@@ -0,0 +1,85 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.protocol.test
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.hq.protocol.ControlMessage._
+import com.codedx.codepulse.hq.protocol.ControlMessageReaderV2
+
+class ControlMessageReaderV2Spec extends FunSpec with Matchers {
+
+	def makeInput(body: DataOutputStream => Unit): DataInputStream = {
+		val baos = new ByteArrayOutputStream
+		val out = new DataOutputStream(baos)
+		body(out)
+		new DataInputStream(new ByteArrayInputStream(baos.toByteArray))
+	}
+
+	val protocol = new MessageProtocolV5
+	def newReader = new ControlMessageReaderV2
+
+	describe("ControlMessageReader, Version 2") {
+
+		it("Should identify ClassTransformBatch messages") {
+			val reader = newReader
+			val input = makeInput { out =>
+				val kinds = Array(MessageConstantsV1.MsgClassTransformed, MessageConstantsV1.MsgClassIgnored, MessageConstantsV1.MsgClassTransformFailed)
+				val names = Array("com/foo/Bar", "com/foo/Baz", "org/edu/Com")
+				protocol.writeClassTransformBatch(out, kinds, names, 3)
+			}
+			reader.readMessage(input) shouldBe ClassTransformBatch(Seq(
+				ClassTransformed("com/foo/Bar"),
+				ClassIgnored("com/foo/Baz"),
+				ClassTransformFailed("org/edu/Com")))
+		}
+
+		it("Should identify RequestSampling messages") {
+			val reader = newReader
+			val input = makeInput { out =>
+				protocol.writeRequestSampling(out, 12L, 1000L)
+			}
+			reader.readMessage(input) shouldBe RequestSampling(12L, 1000L)
+		}
+
+		it("Should identify RetransformProgress messages") {
+			val reader = newReader
+			val input = makeInput { out =>
+				protocol.writeRetransformProgress(out, 1000, 640, 2, 11, 4500L, 38000L)
+			}
+			reader.readMessage(input) shouldBe RetransformProgress(1000, 640, 2, 11, 4500L, 38000L)
+		}
+
+		it("Should still identify version 1 messages") {
+			val reader = newReader
+			val input = makeInput { out =>
+				protocol.writeClassTransformed(out, "com/foo/Bar")
+			}
+			reader.readMessage(input) shouldBe ClassTransformed("com/foo/Bar")
+		}
+	}
+}
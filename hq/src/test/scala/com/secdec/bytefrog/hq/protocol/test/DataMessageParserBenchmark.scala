@@ -0,0 +1,122 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.protocol.test
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.hq.connect.DataReaderPool
+import com.codedx.codepulse.hq.data.DataConnectionController
+import com.codedx.codepulse.hq.data.collection.DataCollector
+import com.codedx.codepulse.hq.data.processing.DataRouter
+import com.codedx.codepulse.hq.errors.TraceErrorController
+import com.codedx.codepulse.hq.protocol.DataMessage
+import com.codedx.codepulse.hq.protocol.DataMessageHandler
+import com.codedx.codepulse.hq.protocol.DefaultDataMessageHandler
+import com.secdec.bytefrog.hq.protocol.DataMessageParserV3
+
+/** Microbenchmark comparing `parse` over a stream with `parseAvailable` over a direct buffer fed
+  * in reader-sized chunks, for a trace of method entries and exits. Reports time and bytes
+  * allocated per event. Parsing itself hands the handler primitives, but HQ's handler, in
+  * `DataConnectionController`, still wraps each event in a `DataMessage` for the collector; the
+  * last figure is `parseAvailable` with that wrapping, handing the messages to a collector that
+  * only keeps the last one. Not run as part of the test suite; run with
+  * `sbt "HQ/test:runMain com.codedx.codepulse.hq.protocol.test.DataMessageParserBenchmark"`.
+  */
+object DataMessageParserBenchmark {
+	val Events = 2000000
+	val Rounds = 5
+
+	class SummingHandler extends DefaultDataMessageHandler {
+		var sink = 0L
+		override def handleMethodEntry(methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = sink += methodId + threadId
+		override def handleMethodExit(methodId: Int, timestamp: Int, sequenceId: Int, exceptionThrown: Boolean, threadId: Int) = sink -= methodId
+	}
+
+	/** Stands in for the collector, without its queue and reordering */
+	class LastMessageCollector(errors: TraceErrorController) extends DataCollector(errors, new DataRouter(errors), 1, 1) {
+		var last: DataMessage = null
+		var received = 0L
+		override def !(message: DataMessage): Unit = {
+			last = message
+			received += 1
+		}
+	}
+
+	def main(args: Array[String]): Unit = {
+		val protocol = new MessageProtocolV5
+		val baos = new ByteArrayOutputStream
+		val out = new DataOutputStream(baos)
+		for (t <- 0 until 16) protocol.writeMapThreadName(out, t, 0, s"pool-1-thread-$t")
+		for (i <- 0 until Events) {
+			if (i % 2 == 0) protocol.writeMethodEntry(out, i, i, i % 5000, i % 16)
+			else protocol.writeMethodExit(out, i, i, i % 5000, false, i % 16)
+		}
+		val bytes = baos.toByteArray
+
+		val threads = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+		def allocated = threads.getThreadAllocatedBytes(Thread.currentThread.getId)
+
+		val handler = new SummingHandler
+		val buffer = ByteBuffer.allocateDirect(DataReaderPool.DefaultBufferSize)
+
+		// the controller's connection is only used once it is started or shut down
+		val collector = new LastMessageCollector(new TraceErrorController)
+		val controllerHandler = new DataConnectionController(null, collector).messageHandler
+
+		def parseAvailable(target: DataMessageHandler) = {
+			var offset = 0
+			buffer.clear
+			while (offset < bytes.length) {
+				val n = math.min(buffer.remaining, bytes.length - offset)
+				buffer.put(bytes, offset, n)
+				offset += n
+				buffer.flip
+				DataMessageParserV3.parseAvailable(buffer, target)
+				buffer.compact
+			}
+		}
+
+		for (round <- 1 to Rounds) {
+			val a0 = allocated
+			val t0 = System.nanoTime
+			DataMessageParserV3.parse(new DataInputStream(new ByteArrayInputStream(bytes)), handler)
+
+			val a1 = allocated
+			val t1 = System.nanoTime
+			parseAvailable(handler)
+
+			val t2 = System.nanoTime
+			val a2 = allocated
+			parseAvailable(controllerHandler)
+
+			val t3 = System.nanoTime
+			val a3 = allocated
+			println(f"round $round: parse ${(t1 - t0).toDouble / Events}%.1f ns/event, ${(a1 - a0).toDouble / Events}%.1f B/event; " +
+				f"parseAvailable ${(t2 - t1).toDouble / Events}%.1f ns/event, ${(a2 - a1).toDouble / Events}%.1f B/event; " +
+				f"with DataConnectionController ${(t3 - t2).toDouble / Events}%.1f ns/event, ${(a3 - a2).toDouble / Events}%.1f B/event")
+		}
+
+		println(s"(${handler.sink}, ${collector.received})")
+	}
+}
\ No newline at end of file
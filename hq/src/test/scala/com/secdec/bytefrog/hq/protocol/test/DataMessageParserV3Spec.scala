@@ -0,0 +1,269 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.hq.protocol.test
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.MessageConstantsV1
+import com.codedx.codepulse.agent.common.message.MessageProtocolV5
+import com.codedx.codepulse.hq.protocol.DefaultDataMessageHandler
+import com.codedx.codepulse.hq.util.ByteBufferInputStream
+import com.secdec.bytefrog.hq.protocol.DataMessageParserV3
+
+class DataMessageParserV3Spec extends FunSpec with Matchers {
+
+	def makeInput(body: DataOutputStream => Unit): DataInputStream = {
+		val baos = new ByteArrayOutputStream
+		val out = new DataOutputStream(baos)
+		body(out)
+		new DataInputStream(new ByteArrayInputStream(baos.toByteArray))
+	}
+
+	class RecordingHandler extends DefaultDataMessageHandler {
+		var threadIds = List.empty[Int]
+		var threadNames = List.empty[String]
+
+		override def handleMapThreadName(threadName: String, threadId: Int, timestamp: Int) = {
+			threadNames :+= threadName
+			threadIds :+= threadId
+		}
+		override def handleMethodEntry(methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = threadIds :+= threadId
+		override def handleMethodExit(methodId: Int, timestamp: Int, sequenceId: Int, exceptionThrown: Boolean, threadId: Int) = threadIds :+= threadId
+		override def handleMethodVisit(methodId: Int, sourceLocationId: Int, timestamp: Int, sequenceId: Int, threadId: Int) = threadIds :+= threadId
+
+		var methodCounts = List.empty[Seq[(Int, Long)]]
+		override def handleMethodCounts(timestamp: Int, counts: Seq[(Int, Long)]) = methodCounts :+= counts
+
+		var methodDurations = List.empty[Seq[(Int, Seq[(Int, Int)])]]
+		override def handleMethodDurations(timestamp: Int, histograms: Seq[(Int, Seq[(Int, Int)])]) = methodDurations :+= histograms
+
+		var callEdges = List.empty[Seq[(Int, Int)]]
+		override def handleCallEdges(edges: Seq[(Int, Int)]) = callEdges :+= edges
+
+		var samplingIntervals = List.empty[Int]
+		override def handleSamplingInterval(timestamp: Int, interval: Int) = samplingIntervals :+= interval
+	}
+
+	class EventRecordingHandler extends DefaultDataMessageHandler {
+		var events = List.empty[Product]
+
+		override def handleMethodEntry(methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) =
+			events :+= ("entry", methodId, timestamp, sequenceId, threadId)
+		override def handleMethodExit(methodId: Int, timestamp: Int, sequenceId: Int, exceptionThrown: Boolean, threadId: Int) =
+			events :+= ("exit", methodId, timestamp, sequenceId, exceptionThrown, threadId)
+		override def handleMethodVisit(methodId: Int, sourceLocationId: Int, timestamp: Int, sequenceId: Int, threadId: Int) =
+			events :+= ("visit", methodId, sourceLocationId, timestamp, sequenceId, threadId)
+		override def handleExceptionMessage(exceptionId: Int, methodId: Int, timestamp: Int, sequenceId: Int, lineNum: Int, threadId: Int) =
+			events :+= ("exception", exceptionId, methodId, timestamp, sequenceId, lineNum, threadId)
+		override def handleExceptionBubble(exceptionId: Int, methodId: Int, timestamp: Int, sequenceId: Int, threadId: Int) =
+			events :+= ("bubble", exceptionId, methodId, timestamp, sequenceId, threadId)
+		override def handleMapThreadName(threadName: String, threadId: Int, timestamp: Int) =
+			events :+= ("thread", threadName, threadId, timestamp)
+	}
+
+	val protocol = new MessageProtocolV5
+	val wideThreadId = 70000
+
+	describe("DataMessageParser, Version 3") {
+
+		it("Should read thread ids that do not fit in 2 bytes") {
+			val handler = new RecordingHandler
+			val input = makeInput { out =>
+				protocol.writeMapThreadName(out, wideThreadId, 1, "pool-1-thread-70000")
+				protocol.writeMethodEntry(out, 2, 1, 10, wideThreadId)
+				protocol.writeMethodVisit(out, 3, 2, 10, 4, wideThreadId)
+				protocol.writeMethodExit(out, 4, 3, 10, false, wideThreadId)
+			}
+
+			for (i <- 1 to 4) DataMessageParserV3.readMessage(input, handler, true)
+
+			handler.threadIds shouldBe List.fill(4)(wideThreadId)
+			handler.threadNames shouldBe List("pool-1-thread-70000")
+			input.available shouldBe 0
+		}
+
+		it("Should read the requested range of method counts") {
+			val handler = new RecordingHandler
+			val input = makeInput { out =>
+				protocol.writeMethodCounts(out, 5, Array(1, 2, 3, 4), Array(10L, 20L, 5000000000L, 40L), 1, 2)
+			}
+
+			val bytesRead = DataMessageParserV3.readMessage(input, handler, true)
+
+			handler.methodCounts shouldBe List(Seq(2 -> 20L, 3 -> 5000000000L))
+			bytesRead shouldBe 1 + 8 + 2 * 12
+			input.available shouldBe 0
+		}
+
+		it("Should read the requested range of method duration histograms") {
+			val handler = new RecordingHandler
+			val input = makeInput { out =>
+				protocol.writeMethodDurations(out, 5, Array(7, 8, 9), Array(0, 1, 3, 3),
+					Array[Byte](4, 0, 63), Array(1, 2, 3), 1, 2)
+			}
+
+			val bytesRead = DataMessageParserV3.readMessage(input, handler, true)
+
+			handler.methodDurations shouldBe List(Seq(8 -> Seq(0 -> 2, 63 -> 3), 9 -> Seq()))
+			bytesRead shouldBe 1 + 8 + (5 + 2 * 5) + 5
+			input.available shouldBe 0
+		}
+
+		it("Should read the requested range of call edges") {
+			val handler = new RecordingHandler
+			val input = makeInput { out =>
+				protocol.writeCallEdges(out, Array(1, 2, 3), Array(4, 5, 6), 1, 2)
+			}
+
+			val bytesRead = DataMessageParserV3.readMessage(input, handler, true)
+
+			handler.callEdges shouldBe List(Seq(2 -> 5, 3 -> 6))
+			bytesRead shouldBe 1 + 4 + 2 * 8
+			input.available shouldBe 0
+		}
+
+		it("Should read sampling intervals") {
+			val handler = new RecordingHandler
+			val input = makeInput { out =>
+				protocol.writeSamplingInterval(out, 7, 100)
+			}
+
+			val bytesRead = DataMessageParserV3.readMessage(input, handler, true)
+
+			handler.samplingIntervals shouldBe List(100)
+			bytesRead shouldBe 1 + 4 + 4
+			input.available shouldBe 0
+		}
+
+		it("Should read sampling intervals between method entries, from a stream or a buffer") {
+			val baos = new ByteArrayOutputStream
+			val out = new DataOutputStream(baos)
+			protocol.writeMethodEntry(out, 1, 1, 10, wideThreadId)
+			protocol.writeSamplingInterval(out, 2, 100)
+			protocol.writeMethodEntry(out, 3, 2, 11, wideThreadId)
+			protocol.writeSamplingInterval(out, 4, 1)
+			protocol.writeMethodEntry(out, 5, 3, 12, wideThreadId)
+			val bytes = baos.toByteArray
+
+			val fromStream = new RecordingHandler
+			DataMessageParserV3.parse(new DataInputStream(new ByteArrayInputStream(bytes)), fromStream)
+
+			val fromBuffer = new RecordingHandler
+			val buffer = ByteBuffer.wrap(bytes)
+			DataMessageParserV3.parseAvailable(buffer, fromBuffer)
+
+			for (handler <- Seq(fromStream, fromBuffer)) {
+				handler.threadIds shouldBe List.fill(3)(wideThreadId)
+				handler.samplingIntervals shouldBe List(100, 1)
+			}
+			buffer.hasRemaining shouldBe false
+		}
+
+		it("Should leave a cut-off message in the buffer until the rest of it arrives") {
+			val handler = new RecordingHandler
+			val baos = new ByteArrayOutputStream
+			val out = new DataOutputStream(baos)
+			protocol.writeMethodEntry(out, 2, 1, 10, wideThreadId)
+			protocol.writeMapThreadName(out, wideThreadId, 1, "pool-1-thread-70000")
+			val bytes = baos.toByteArray
+
+			// everything but the last byte of the thread name
+			val buffer = ByteBuffer.allocate(bytes.length)
+			buffer.put(bytes, 0, bytes.length - 1)
+			buffer.flip
+
+			// the name's length was read, so the whole message's size is known
+			DataMessageParserV3.parseAvailable(buffer, handler) shouldBe bytes.length - (1 + 16)
+
+			handler.threadIds shouldBe List(wideThreadId)
+			handler.threadNames shouldBe Nil
+			buffer.position shouldBe 1 + 16
+
+			buffer.compact
+			buffer.put(bytes, bytes.length - 1, 1)
+			buffer.flip
+
+			DataMessageParserV3.parseAvailable(buffer, handler) shouldBe 0
+
+			handler.threadNames shouldBe List("pool-1-thread-70000")
+			buffer.hasRemaining shouldBe false
+		}
+
+		it("Should read events straight from a buffer the same way it reads them from a stream") {
+			val baos = new ByteArrayOutputStream
+			val out = new DataOutputStream(baos)
+			protocol.writeMapThreadName(out, wideThreadId, 1, "pool-1-thread-70000")
+			protocol.writeMethodEntry(out, 2, 1, 10, wideThreadId)
+			protocol.writeMethodVisit(out, 3, 2, 10, 4, wideThreadId)
+
+			// the agent no longer sends these, but they're still part of the protocol
+			out.writeByte(MessageConstantsV1.MsgException)
+			out.writeInt(4); out.writeInt(3); out.writeInt(10); out.writeInt(7); out.writeShort(42); out.writeShort(65000)
+			out.writeByte(MessageConstantsV1.MsgExceptionBubble)
+			out.writeInt(5); out.writeInt(4); out.writeInt(10); out.writeInt(7); out.writeShort(65000)
+
+			protocol.writeMethodExit(out, 6, 5, 10, true, wideThreadId)
+			val bytes = baos.toByteArray
+
+			val fromStream = new EventRecordingHandler
+			val input = new DataInputStream(new ByteArrayInputStream(bytes))
+			for (i <- 1 to 6) DataMessageParserV3.readMessage(input, fromStream, true)
+			fromStream.events should have size 6
+
+			val whole = ByteBuffer.wrap(bytes)
+			val wholeInput = new DataInputStream(new ByteBufferInputStream(whole))
+			val messageEnds = for (i <- 1 to 6) yield {
+				DataMessageParserV3.readMessage(wholeInput, new EventRecordingHandler, true)
+				whole.position
+			}
+
+			// split the data at every possible point, so each message is cut off somewhere
+			for (cut <- 0 to bytes.length) {
+				val fromBuffer = new EventRecordingHandler
+				val buffer = ByteBuffer.allocate(bytes.length)
+				buffer.put(bytes, 0, cut)
+				buffer.flip
+				val needed = DataMessageParserV3.parseAvailable(buffer, fromBuffer)
+
+				// more than what's there, but never more than the rest of the message
+				if (buffer.hasRemaining) {
+					needed should be > buffer.remaining
+					needed should be <= messageEnds.find(_ > buffer.position).get - buffer.position
+				} else {
+					needed shouldBe 0
+				}
+
+				buffer.compact
+				buffer.put(bytes, cut, bytes.length - cut)
+				buffer.flip
+				DataMessageParserV3.parseAvailable(buffer, fromBuffer)
+
+				fromBuffer.events shouldBe fromStream.events
+				buffer.hasRemaining shouldBe false
+			}
+		}
+	}
+}
@@ -45,7 +45,9 @@ object Dependencies {
 	lazy val minlog = "com.esotericsoftware" % "minlog" % "1.3.0"
 	lazy val asm = Seq(
 		"org.ow2.asm" % "asm" % "7.0",
-		"org.ow2.asm" % "asm-commons" % "7.0"
+		"org.ow2.asm" % "asm-commons" % "7.0",
+		"org.ow2.asm" % "asm-tree" % "7.0",
+		"org.ow2.asm" % "asm-analysis" % "7.0"
 	)
 	lazy val jsonb = Seq(
 		"javax.json" % "javax.json-api" % "1.1",
@@ -0,0 +1,70 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.common.config;
+
+/**
+ * Settings that decide which HTTP requests are traced, when only a sample of
+ * an application's requests should be.
+ */
+public class RequestSamplingConfiguration
+{
+	public static final RequestSamplingConfiguration Disabled = new RequestSamplingConfiguration(1.0,
+			null, null);
+
+	private final double rate;
+	private final String optInHeader;
+	private final String urlPattern;
+
+	/**
+	 * @param rate the fraction of requests to trace, between 0 and 1
+	 * @param optInHeader the name of a request header that, when present with
+	 *            any value other than <code>false</code>, makes a request
+	 *            traced regardless of rate and URL; or <code>null</code>
+	 * @param urlPattern a regular expression that a request URI must match to
+	 *            be eligible for tracing, or <code>null</code> to allow any
+	 */
+	public RequestSamplingConfiguration(double rate, String optInHeader, String urlPattern)
+	{
+		this.rate = Math.max(0.0, Math.min(1.0, rate));
+		this.optInHeader = optInHeader;
+		this.urlPattern = urlPattern;
+	}
+
+	/**
+	 * @return <code>true</code> if some requests may go untraced
+	 */
+	public boolean isEnabled()
+	{
+		return rate < 1.0 || urlPattern != null;
+	}
+
+	public double getRate()
+	{
+		return rate;
+	}
+
+	public String getOptInHeader()
+	{
+		return optInHeader;
+	}
+
+	public String getUrlPattern()
+	{
+		return urlPattern;
+	}
+}
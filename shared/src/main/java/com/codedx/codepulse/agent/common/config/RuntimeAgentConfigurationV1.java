@@ -39,7 +39,57 @@ public class RuntimeAgentConfigurationV1 implements Serializable
 	private final int bufferMemoryBudget;
 	private final int queueRetryCount;
 	private final int numDataSenders;
+	private final int maxDataSenders;
+	private final boolean countInvocations;
+	private final boolean profileDurations;
+	private final boolean recordCallEdges;
+	private final boolean sharedMemoryTransport;
+	private final int samplingInterval;
+	private final boolean tieredLineLevel;
+	private final boolean omitExceptionExits;
 
+	/**
+	 * Creates a configuration with every optional setting left at its
+	 * default.
+	 */
+	public RuntimeAgentConfigurationV1(byte runId, int heartbeatInterval, List<String> exclusions,
+			List<String> inclusions, int bufferMemoryBudget, int queueRetryCount, int numDataSenders)
+	{
+		this(runId, heartbeatInterval, exclusions, inclusions, bufferMemoryBudget, queueRetryCount,
+				numDataSenders, null, null, null, null, null, null, null, null);
+	}
+
+	/**
+	 * @param maxDataSenders The upper bound on the number of data connections
+	 *            the agent may open while adapting to its send backlog. The
+	 *            lower bound is <code>numDataSenders</code>. When omitted (or
+	 *            lower than <code>numDataSenders</code>), the agent keeps a
+	 *            fixed number of data connections.
+	 * @param countInvocations When set, the agent counts method invocations and
+	 *            periodically reports the counts, instead of sending an event
+	 *            for every method entry and exit. Omitted means
+	 *            <code>false</code>.
+	 * @param profileDurations When set, the agent times method calls and
+	 *            periodically reports per-method duration histograms.
+	 *            Omitted means <code>false</code>.
+	 * @param recordCallEdges When set, the agent records which methods call
+	 *            which, and reports each caller/callee pair once. Omitted
+	 *            means <code>false</code>.
+	 * @param sharedMemoryTransport When set, HQ offers to read data through
+	 *            shared memory rings; the agent accepts only if it reached HQ
+	 *            through a loopback address. Omitted means <code>false</code>.
+	 * @param samplingInterval When greater than 1, each thread only reports
+	 *            every Nth method call. HQ may change N while tracing.
+	 *            Omitted means 1: every call is reported.
+	 * @param tieredLineLevel When set, traced classes start out with method
+	 *            entry/exit probes only, and HQ names the classes that should
+	 *            also get line-level probes while tracing. Omitted means every
+	 *            traced class gets line-level probes.
+	 * @param omitExceptionExits When set, traced methods aren't wrapped in the
+	 *            try/catch that reports exits by exception, so a method that
+	 *            throws leaves an entry with no exit. Durations and call edges
+	 *            become best-effort. Omitted means <code>false</code>.
+	 */
 	@JsonbCreator
 	public RuntimeAgentConfigurationV1(@JsonbProperty("runId") byte runId,
 									   @JsonbProperty("heartbeatInterval") int heartbeatInterval,
@@ -47,7 +97,15 @@ public class RuntimeAgentConfigurationV1 implements Serializable
 									   @JsonbProperty("inclusions") List<String> inclusions,
 									   @JsonbProperty("bufferMemoryBudget") int bufferMemoryBudget,
 									   @JsonbProperty("queueRetryCount") int queueRetryCount,
-									   @JsonbProperty("numDataSenders") int numDataSenders)
+									   @JsonbProperty("numDataSenders") int numDataSenders,
+									   @JsonbProperty("maxDataSenders") Integer maxDataSenders,
+									   @JsonbProperty("countInvocations") Boolean countInvocations,
+									   @JsonbProperty("profileDurations") Boolean profileDurations,
+									   @JsonbProperty("recordCallEdges") Boolean recordCallEdges,
+									   @JsonbProperty("sharedMemoryTransport") Boolean sharedMemoryTransport,
+									   @JsonbProperty("samplingInterval") Integer samplingInterval,
+									   @JsonbProperty("tieredLineLevel") Boolean tieredLineLevel,
+									   @JsonbProperty("omitExceptionExits") Boolean omitExceptionExits)
 	{
 		this.runId = runId;
 		this.heartbeatInterval = heartbeatInterval;
@@ -56,6 +114,26 @@ public class RuntimeAgentConfigurationV1 implements Serializable
 		this.bufferMemoryBudget = bufferMemoryBudget;
 		this.queueRetryCount = queueRetryCount;
 		this.numDataSenders = numDataSenders;
+		this.maxDataSenders = maxDataSenders == null ? numDataSenders : Math.max(numDataSenders, maxDataSenders);
+		this.countInvocations = countInvocations != null && countInvocations;
+		this.profileDurations = profileDurations != null && profileDurations;
+		this.recordCallEdges = recordCallEdges != null && recordCallEdges;
+		this.sharedMemoryTransport = sharedMemoryTransport != null && sharedMemoryTransport;
+		this.samplingInterval = samplingInterval == null ? 1 : Math.max(1, samplingInterval);
+		this.tieredLineLevel = tieredLineLevel != null && tieredLineLevel;
+		this.omitExceptionExits = omitExceptionExits != null && omitExceptionExits;
+	}
+
+	/**
+	 * @return A copy of this configuration with the given exclusions and
+	 *         inclusions in place of its own.
+	 */
+	public RuntimeAgentConfigurationV1 withFilters(List<String> exclusions, List<String> inclusions)
+	{
+		return new RuntimeAgentConfigurationV1(runId, heartbeatInterval, exclusions, inclusions,
+				bufferMemoryBudget, queueRetryCount, numDataSenders, maxDataSenders, countInvocations,
+				profileDurations, recordCallEdges, sharedMemoryTransport, samplingInterval,
+				tieredLineLevel, omitExceptionExits);
 	}
 
 	@Override
@@ -70,6 +148,14 @@ public class RuntimeAgentConfigurationV1 implements Serializable
 		sb.append(", bufferMemoryBudget=").append(bufferMemoryBudget);
 		sb.append(", queueRetryCount=").append(queueRetryCount);
 		sb.append(", numDataSenders=").append(numDataSenders);
+		sb.append(", maxDataSenders=").append(maxDataSenders);
+		sb.append(", countInvocations=").append(countInvocations);
+		sb.append(", profileDurations=").append(profileDurations);
+		sb.append(", recordCallEdges=").append(recordCallEdges);
+		sb.append(", sharedMemoryTransport=").append(sharedMemoryTransport);
+		sb.append(", samplingInterval=").append(samplingInterval);
+		sb.append(", tieredLineLevel=").append(tieredLineLevel);
+		sb.append(", omitExceptionExits=").append(omitExceptionExits);
 		sb.append(")");
 		return sb.toString();
 	}
@@ -109,4 +195,44 @@ public class RuntimeAgentConfigurationV1 implements Serializable
 		return numDataSenders;
 	}
 
+	public int getMaxDataSenders()
+	{
+		return maxDataSenders;
+	}
+
+	public boolean isCountInvocations()
+	{
+		return countInvocations;
+	}
+
+	public boolean isProfileDurations()
+	{
+		return profileDurations;
+	}
+
+	public boolean isRecordCallEdges()
+	{
+		return recordCallEdges;
+	}
+
+	public boolean isSharedMemoryTransport()
+	{
+		return sharedMemoryTransport;
+	}
+
+	public int getSamplingInterval()
+	{
+		return samplingInterval;
+	}
+
+	public boolean isTieredLineLevel()
+	{
+		return tieredLineLevel;
+	}
+
+	public boolean isOmitExceptionExits()
+	{
+		return omitExceptionExits;
+	}
+
 }
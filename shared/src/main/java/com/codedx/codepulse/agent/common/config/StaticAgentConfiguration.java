@@ -17,6 +17,9 @@
 
 package com.codedx.codepulse.agent.common.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -27,14 +30,31 @@ import java.util.Properties;
 public class StaticAgentConfiguration
 {
 	public static int DefaultConnectTimeout = 30;
+	public static int DefaultPreConnectBufferSize = 1024 * 1024;
 
 	/**
 	 * Parses an options string, expected to be in the form
 	 * <code>host:port;key=value;key2=value2;...</code> or
 	 * <code>host:port;logfile</code> (provided for backward compatibility).
 	 *
-	 * Recognized configuration keys are log (for the agent log file) and
-	 * connectTimeout (to control the timeout when attempting to connect to HQ).
+	 * Recognized configuration keys are log (for the agent log file),
+	 * connectTimeout (to control the timeout when attempting to connect to HQ)
+	 * and projectId.
+	 *
+	 * Asynchronous startup is controlled by async (<code>true</code> to let
+	 * the application start before HQ has been reached), configCache (a file
+	 * where the last configuration received from HQ is kept, and read back at
+	 * startup), include and exclude (comma-separated class name patterns that
+	 * take the place of HQ's until it is reached) and preConnectBuffer (the
+	 * number of bytes of trace data held while waiting for HQ).
+	 *
+	 * Request sampling is controlled by sampleRate (the fraction of HTTP
+	 * requests to trace), sampleHeader (a header that opts a request in) and
+	 * sampleUrl (a regular expression that request URIs must match); see
+	 * {@link RequestSamplingConfiguration}.
+	 *
+	 * methodIdTable names a file where the IDs given to method signatures are
+	 * kept, so that a restarted agent hands out the same IDs again.
 	 *
 	 * @param options
 	 * @return A new configuration instance on success. <code>null</code> on
@@ -99,7 +119,50 @@ public class StaticAgentConfiguration
 			return null;
 		}
 
-		return new StaticAgentConfiguration(hqHost, hqPort, logFilename, connectTimeout, projectId);
+		int preConnectBufferSize;
+		try
+		{
+			preConnectBufferSize = Integer.parseInt(props.getProperty("preConnectBuffer",
+					String.valueOf(DefaultPreConnectBufferSize)));
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+
+		boolean asyncStartup = Boolean.parseBoolean(props.getProperty("async", "false"));
+		String configCacheFilename = props.getProperty("configCache");
+
+		double sampleRate;
+		try
+		{
+			sampleRate = Double.parseDouble(props.getProperty("sampleRate", "1.0"));
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		RequestSamplingConfiguration requestSampling = new RequestSamplingConfiguration(sampleRate,
+				props.getProperty("sampleHeader"), props.getProperty("sampleUrl"));
+
+		return new StaticAgentConfiguration(hqHost, hqPort, logFilename, connectTimeout, projectId,
+				asyncStartup, configCacheFilename, splitPatterns(props.getProperty("include")),
+				splitPatterns(props.getProperty("exclude")), preConnectBufferSize, requestSampling,
+				props.getProperty("methodIdTable"));
+	}
+
+	private static List<String> splitPatterns(String patterns)
+	{
+		if (patterns == null || patterns.isEmpty())
+			return Collections.emptyList();
+
+		List<String> result = new ArrayList<String>();
+		for (String pattern : patterns.split(","))
+		{
+			if (!pattern.isEmpty())
+				result.add(pattern);
+		}
+		return result;
 	}
 
 	private final int hqPort;
@@ -107,6 +170,13 @@ public class StaticAgentConfiguration
 	private final String logFilename;
 	private final int connectTimeout;
 	private final int projectId;
+	private final boolean asyncStartup;
+	private final String configCacheFilename;
+	private final List<String> inclusions;
+	private final List<String> exclusions;
+	private final int preConnectBufferSize;
+	private final RequestSamplingConfiguration requestSampling;
+	private final String methodIdTableFilename;
 
 	public StaticAgentConfiguration(String hqHost, int hqPort, String logFilename)
 	{
@@ -115,12 +185,48 @@ public class StaticAgentConfiguration
 
 	public StaticAgentConfiguration(String hqHost, int hqPort, String logFilename,
 			int connectTimeout, int projectId)
+	{
+		this(hqHost, hqPort, logFilename, connectTimeout, projectId, false, null,
+				Collections.<String> emptyList(), Collections.<String> emptyList(),
+				DefaultPreConnectBufferSize);
+	}
+
+	public StaticAgentConfiguration(String hqHost, int hqPort, String logFilename,
+			int connectTimeout, int projectId, boolean asyncStartup, String configCacheFilename,
+			List<String> inclusions, List<String> exclusions, int preConnectBufferSize)
+	{
+		this(hqHost, hqPort, logFilename, connectTimeout, projectId, asyncStartup,
+				configCacheFilename, inclusions, exclusions, preConnectBufferSize,
+				RequestSamplingConfiguration.Disabled);
+	}
+
+	public StaticAgentConfiguration(String hqHost, int hqPort, String logFilename,
+			int connectTimeout, int projectId, boolean asyncStartup, String configCacheFilename,
+			List<String> inclusions, List<String> exclusions, int preConnectBufferSize,
+			RequestSamplingConfiguration requestSampling)
+	{
+		this(hqHost, hqPort, logFilename, connectTimeout, projectId, asyncStartup,
+				configCacheFilename, inclusions, exclusions, preConnectBufferSize, requestSampling,
+				null);
+	}
+
+	public StaticAgentConfiguration(String hqHost, int hqPort, String logFilename,
+			int connectTimeout, int projectId, boolean asyncStartup, String configCacheFilename,
+			List<String> inclusions, List<String> exclusions, int preConnectBufferSize,
+			RequestSamplingConfiguration requestSampling, String methodIdTableFilename)
 	{
 		this.hqHost = hqHost;
 		this.hqPort = hqPort;
 		this.logFilename = logFilename;
 		this.connectTimeout = connectTimeout;
 		this.projectId = projectId;
+		this.asyncStartup = asyncStartup;
+		this.configCacheFilename = configCacheFilename;
+		this.inclusions = inclusions;
+		this.exclusions = exclusions;
+		this.preConnectBufferSize = preConnectBufferSize;
+		this.requestSampling = requestSampling;
+		this.methodIdTableFilename = methodIdTableFilename;
 	}
 
 	public String toOptionString()
@@ -176,4 +282,51 @@ public class StaticAgentConfiguration
 	}
 
 	public int getProjectId() { return projectId; }
+
+	public boolean isAsyncStartup()
+	{
+		return asyncStartup;
+	}
+
+	public String getConfigCacheFilename()
+	{
+		return configCacheFilename;
+	}
+
+	/**
+	 * @return Class inclusion patterns given on the command line, to be used
+	 *         until a configuration is received from HQ
+	 */
+	public List<String> getInclusions()
+	{
+		return inclusions;
+	}
+
+	/**
+	 * @return Class exclusion patterns given on the command line, to be used
+	 *         until a configuration is received from HQ
+	 */
+	public List<String> getExclusions()
+	{
+		return exclusions;
+	}
+
+	public int getPreConnectBufferSize()
+	{
+		return preConnectBufferSize;
+	}
+
+	public RequestSamplingConfiguration getRequestSampling()
+	{
+		return requestSampling;
+	}
+
+	/**
+	 * @return The file holding the IDs given to method signatures, or
+	 *         <code>null</code> if IDs aren't kept across restarts
+	 */
+	public String getMethodIdTableFilename()
+	{
+		return methodIdTableFilename;
+	}
 }
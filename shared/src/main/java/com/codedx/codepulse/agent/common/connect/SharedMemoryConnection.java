@@ -0,0 +1,171 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.common.connect;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A data connection whose data goes through a {@link SharedMemoryRing}
+ * instead of its socket. The socket is still used for the handshake, and
+ * stays open for as long as the connection does so that each side can tell
+ * when the other has gone away.
+ *
+ * The agent's end of the connection writes to the ring, and HQ's end reads
+ * from it; the other direction uses the socket as usual.
+ */
+public class SharedMemoryConnection implements Connection
+{
+	private final SocketConnection control;
+	private final SharedMemoryRing ring;
+	private final DataInputStream input;
+	private final DataOutputStream output;
+	private final OutputStream ringOutput;
+	private final InputStream ringInput;
+
+	/**
+	 * @param control the socket connection the handshake was done on
+	 * @param ring the ring that data will go through
+	 * @param writer whether this end writes data to the ring (the agent) or
+	 *            reads it (HQ)
+	 */
+	public SharedMemoryConnection(SocketConnection control, SharedMemoryRing ring, boolean writer)
+	{
+		this.control = control;
+		this.ring = ring;
+
+		SharedMemoryRing.PeerCheck peerCheck = new SharedMemoryRing.PeerCheck()
+		{
+			@Override
+			public boolean isPeerAlive()
+			{
+				return checkPeer();
+			}
+		};
+
+		if (writer)
+		{
+			ringInput = null;
+			ringOutput = ring.openWriter(peerCheck);
+			input = control.input();
+			output = new DataOutputStream(new OutputStream()
+			{
+				@Override
+				public void write(int b) throws IOException
+				{
+					ringOutput.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					ringOutput.write(b, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException
+				{
+					ringOutput.flush();
+				}
+
+				// like a socket's stream, closing the output closes the connection
+				@Override
+				public void close() throws IOException
+				{
+					SharedMemoryConnection.this.close();
+				}
+			});
+		}
+		else
+		{
+			ringInput = ring.openReader(peerCheck);
+			ringOutput = null;
+			input = new DataInputStream(ringInput);
+			output = control.output();
+		}
+	}
+
+	public SharedMemoryRing ring()
+	{
+		return ring;
+	}
+
+	/**
+	 * Nothing is sent over the socket once the handshake is done, so the peer
+	 * is still there as long as reading from it times out rather than hitting
+	 * the end of the stream.
+	 */
+	private boolean checkPeer()
+	{
+		Socket socket = control.socket();
+		try
+		{
+			int timeout = socket.getSoTimeout();
+			socket.setSoTimeout(1);
+			try
+			{
+				return control.input().read() >= 0;
+			}
+			finally
+			{
+				socket.setSoTimeout(timeout);
+			}
+		}
+		catch (SocketTimeoutException e)
+		{
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (ringOutput != null)
+				ringOutput.close();
+			if (ringInput != null)
+				ringInput.close();
+		}
+		finally
+		{
+			control.close();
+		}
+	}
+
+	@Override
+	public DataInputStream input()
+	{
+		return input;
+	}
+
+	@Override
+	public DataOutputStream output()
+	{
+		return output;
+	}
+}
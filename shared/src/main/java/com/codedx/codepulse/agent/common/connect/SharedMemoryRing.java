@@ -0,0 +1,477 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.common.connect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import sun.misc.Unsafe;
+
+/**
+ * A single-producer, single-consumer byte ring in a memory-mapped file, used
+ * to move data between an agent and an HQ running on the same machine
+ * without going through a socket.
+ *
+ * The file starts with a header holding the ring's capacity and two sequence
+ * numbers: the total number of bytes the writer has published, and the total
+ * number the reader has consumed. Each side only ever writes its own
+ * sequence, and waits for the other's to move by polling (spinning, then
+ * yielding, then parking for increasing intervals), so no locks or OS-level
+ * synchronization is shared between the processes. The sequence numbers and
+ * closed flags are read with volatile loads and written with ordered stores
+ * made directly on the mapped memory, so that the ring contents written
+ * before a sequence is published are visible to the other process once it
+ * sees the new sequence. The JDK offers no public API for that on a mapped
+ * buffer (before VarHandles), so these accesses go through
+ * <code>sun.misc.Unsafe</code>; on a JVM without it, rings can't be created
+ * or opened.
+ *
+ * The writer publishes on {@link OutputStream#flush()}, so a buffer written
+ * and flushed in one go becomes visible to the reader all at once.
+ */
+public class SharedMemoryRing
+{
+	/**
+	 * A way for a side that has been waiting on the other for a while to find
+	 * out whether the other side is still there.
+	 */
+	public interface PeerCheck
+	{
+		boolean isPeerAlive();
+	}
+
+	private static final int Magic = 0x43505231; // "CPR1"
+
+	// each sequence gets its own cache line
+	private static final int MagicOffset = 0;
+	private static final int CapacityOffset = 4;
+	private static final int WriteSequenceOffset = 64;
+	private static final int ReadSequenceOffset = 128;
+	private static final int WriterClosedOffset = 192;
+	private static final int ReaderClosedOffset = 196;
+	private static final int HeaderSize = 256;
+
+	private static final int SpinTries = 100;
+	private static final int YieldTries = 100;
+	private static final long MaxParkNanos = 1000000L;
+	private static final long PeerCheckIntervalNanos = 1000000000L;
+
+	private static final Unsafe unsafe;
+	private static final long bufferAddressOffset;
+
+	static
+	{
+		Unsafe u;
+		long offset;
+		try
+		{
+			Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			u = (Unsafe) theUnsafe.get(null);
+			offset = u.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		}
+		catch (Throwable t)
+		{
+			u = null;
+			offset = -1;
+		}
+		unsafe = u;
+		bufferAddressOffset = offset;
+	}
+
+	private final File file;
+	private final MappedByteBuffer map;
+	private final int capacity;
+	private final int mask;
+
+	// the address of the mapping, for the header accesses; it stays valid for
+	// as long as `map` is reachable
+	private final long address;
+
+	private SharedMemoryRing(File file, MappedByteBuffer map, int capacity)
+	{
+		this.file = file;
+		this.map = map;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.address = unsafe.getLong(map, bufferAddressOffset);
+	}
+
+	private static void checkSupported() throws IOException
+	{
+		if (unsafe == null)
+			throw new IOException("shared memory rings aren't supported on this JVM");
+	}
+
+	/**
+	 * Creates (or overwrites) <code>file</code> as an empty ring.
+	 *
+	 * @param capacity the number of bytes the ring holds; rounded up to a power
+	 *            of two
+	 */
+	public static SharedMemoryRing create(File file, int capacity) throws IOException
+	{
+		checkSupported();
+
+		int size = 4096;
+		while (size < capacity)
+			size <<= 1;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(HeaderSize + size);
+			MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HeaderSize + size);
+			map.putInt(CapacityOffset, size);
+			SharedMemoryRing ring = new SharedMemoryRing(file, map, size);
+			ring.publishSequence(WriteSequenceOffset, 0L);
+			ring.publishSequence(ReadSequenceOffset, 0L);
+			ring.putFlag(WriterClosedOffset, 0);
+			ring.putFlag(ReaderClosedOffset, 0);
+			map.putInt(MagicOffset, Magic);
+			return ring;
+		}
+		finally
+		{
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps a ring that another process created with {@link #create}.
+	 */
+	public static SharedMemoryRing open(File file) throws IOException
+	{
+		checkSupported();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long length = raf.length();
+			if (length < HeaderSize)
+				throw new IOException("not a shared memory ring: " + file);
+
+			MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			int capacity = map.getInt(CapacityOffset);
+			if (map.getInt(MagicOffset) != Magic || Integer.bitCount(capacity) != 1
+					|| HeaderSize + (long) capacity != length)
+				throw new IOException("not a shared memory ring: " + file);
+
+			return new SharedMemoryRing(file, map, capacity);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return a stream that writes into the ring. Only one writer may use a
+	 *         ring. Closing the stream tells the reader that no more data is
+	 *         coming.
+	 */
+	public OutputStream openWriter(PeerCheck peerCheck)
+	{
+		return new Writer(peerCheck);
+	}
+
+	/**
+	 * @return a stream that reads from the ring. Only one reader may use a
+	 *         ring. Closing the stream tells the writer to stop writing.
+	 */
+	public InputStream openReader(PeerCheck peerCheck)
+	{
+		return new Reader(peerCheck);
+	}
+
+	private long readSequence(int offset)
+	{
+		return unsafe.getLongVolatile(null, address + offset);
+	}
+
+	private void publishSequence(int offset, long sequence)
+	{
+		unsafe.putOrderedLong(null, address + offset, sequence);
+	}
+
+	private boolean isFlagSet(int offset)
+	{
+		return unsafe.getIntVolatile(null, address + offset) != 0;
+	}
+
+	private void setFlag(int offset)
+	{
+		putFlag(offset, 1);
+	}
+
+	private void putFlag(int offset, int value)
+	{
+		unsafe.putOrderedInt(null, address + offset, value);
+	}
+
+	/**
+	 * Waits a little longer each time it's called, and checks on the peer
+	 * every so often.
+	 */
+	private static class Backoff
+	{
+		private final PeerCheck peerCheck;
+		private int tries = 0;
+		private long parkNanos = 0;
+		private long lastPeerCheck = 0;
+
+		Backoff(PeerCheck peerCheck)
+		{
+			this.peerCheck = peerCheck;
+		}
+
+		void reset()
+		{
+			tries = 0;
+			parkNanos = 0;
+		}
+
+		/**
+		 * @return false if the peer has gone away
+		 */
+		boolean pause() throws IOException
+		{
+			if (Thread.interrupted())
+				throw new InterruptedIOException();
+
+			tries++;
+			if (tries < SpinTries)
+				return true;
+
+			if (tries < SpinTries + YieldTries)
+			{
+				Thread.yield();
+				return true;
+			}
+
+			parkNanos = parkNanos == 0 ? 1000 : Math.min(parkNanos << 1, MaxParkNanos);
+			LockSupport.parkNanos(parkNanos);
+
+			if (peerCheck != null)
+			{
+				long now = System.nanoTime();
+				if (lastPeerCheck == 0)
+					lastPeerCheck = now;
+				else if (now - lastPeerCheck >= PeerCheckIntervalNanos)
+				{
+					lastPeerCheck = now;
+					return peerCheck.isPeerAlive();
+				}
+			}
+
+			return true;
+		}
+	}
+
+	private ByteBuffer dataView()
+	{
+		ByteBuffer view = map.duplicate();
+		view.position(HeaderSize);
+		return view.slice();
+	}
+
+	private class Writer extends OutputStream
+	{
+		private final Backoff backoff;
+		private final ByteBuffer data = dataView();
+
+		// bytes written but not yet published
+		private long pending;
+		private long published;
+		private boolean closed = false;
+
+		Writer(PeerCheck peerCheck)
+		{
+			backoff = new Backoff(peerCheck);
+			published = pending = readSequence(WriteSequenceOffset);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (closed)
+				throw new IOException("shared memory ring writer is closed");
+
+			while (len > 0)
+			{
+				int free = (int) (capacity - (pending - readSequence(ReadSequenceOffset)));
+				if (free == 0)
+				{
+					// let the reader see what we have so far, and wait for it
+					flush();
+					awaitReader();
+					continue;
+				}
+				backoff.reset();
+
+				int n = Math.min(free, len);
+				int pos = (int) (pending & mask);
+				int first = Math.min(n, capacity - pos);
+				put(pos, b, off, first);
+				put(0, b, off + first, n - first);
+
+				pending += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void put(int pos, byte[] b, int off, int len)
+		{
+			data.position(pos);
+			data.put(b, off, len);
+		}
+
+		private void awaitReader() throws IOException
+		{
+			if (isFlagSet(ReaderClosedOffset))
+				throw new IOException("shared memory ring reader is closed");
+
+			if (!backoff.pause())
+				throw new IOException("shared memory ring reader went away");
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			if (pending != published)
+			{
+				publishSequence(WriteSequenceOffset, pending);
+				published = pending;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+				return;
+
+			flush();
+			closed = true;
+			setFlag(WriterClosedOffset);
+		}
+	}
+
+	private class Reader extends InputStream
+	{
+		private final Backoff backoff;
+		private final ByteBuffer data = dataView();
+		private long consumed;
+		private volatile boolean closed = false;
+
+		Reader(PeerCheck peerCheck)
+		{
+			backoff = new Backoff(peerCheck);
+			consumed = readSequence(ReadSequenceOffset);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+
+			while (true)
+			{
+				if (closed)
+					return -1;
+
+				// check the closed flag first, so that data published just
+				// before the writer closed is still read
+				boolean writerClosed = isFlagSet(WriterClosedOffset);
+				int readable = (int) (readSequence(WriteSequenceOffset) - consumed);
+
+				if (readable > 0)
+				{
+					int n = Math.min(readable, len);
+					int pos = (int) (consumed & mask);
+					int first = Math.min(n, capacity - pos);
+					get(pos, b, off, first);
+					get(0, b, off + first, n - first);
+
+					consumed += n;
+					publishSequence(ReadSequenceOffset, consumed);
+					backoff.reset();
+					return n;
+				}
+
+				if (writerClosed || !backoff.pause())
+					return -1;
+			}
+		}
+
+		private void get(int pos, byte[] b, int off, int len)
+		{
+			data.position(pos);
+			data.get(b, off, len);
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (int) (readSequence(WriteSequenceOffset) - consumed);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			closed = true;
+			setFlag(ReaderClosedOffset);
+		}
+	}
+}
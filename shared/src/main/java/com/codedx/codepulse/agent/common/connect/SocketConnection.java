@@ -39,15 +39,24 @@ public class SocketConnection implements Connection
 
 	public SocketConnection(Socket underlying, boolean bufferIn, boolean bufferOut)
 			throws IOException
+	{
+		this(underlying, underlying.getInputStream(), underlying.getOutputStream(), bufferIn, bufferOut);
+	}
+
+	/**
+	 * Creates a connection that reads and writes <code>underlying</code>
+	 * through the given streams rather than the socket's own, e.g. to use a
+	 * socket channel directly.
+	 */
+	public SocketConnection(Socket underlying, InputStream in, OutputStream out, boolean bufferIn,
+			boolean bufferOut)
 	{
 		this.underlying = underlying;
 
-		InputStream in = underlying.getInputStream();
 		if (bufferIn)
 			in = new BufferedInputStream(in);
 		this.input = new DataInputStream(in);
 
-		OutputStream out = underlying.getOutputStream();
 		if (bufferOut)
 			out = new BufferedOutputStream(out);
 		this.output = new DataOutputStream(out);
@@ -0,0 +1,69 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codedx.codepulse.agent.common.message;
+
+/**
+ * The log-linear buckets used for method duration histograms. Durations are
+ * measured in microseconds; bucket 0 holds 0, bucket 1 holds 1, and every
+ * power of two after that is split into two equal halves, so a bucket's
+ * upper bound is at most 1.5 times its lower bound. The last bucket also
+ * holds every duration too long for the others (about 54 minutes and up).
+ */
+public class DurationBuckets
+{
+	private DurationBuckets()
+	{
+		// This class is not meant to be instantiated
+	}
+
+	public static final int Count = 64;
+
+	/**
+	 * @return the bucket for a duration of <code>micros</code> microseconds
+	 */
+	public static int bucketOf(long micros)
+	{
+		if (micros < 2)
+			return micros < 0 ? 0 : (int) micros;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int bucket = (exponent << 1) | (int) ((micros >>> (exponent - 1)) & 1);
+		return bucket < Count ? bucket : Count - 1;
+	}
+
+	/**
+	 * @return the smallest duration, in microseconds, that falls into
+	 *         <code>bucket</code>
+	 */
+	public static long lowerBound(int bucket)
+	{
+		if (bucket < 2)
+			return bucket;
+
+		return (2L | (bucket & 1)) << ((bucket >> 1) - 1);
+	}
+
+	/**
+	 * @return the largest duration, in microseconds, that falls into
+	 *         <code>bucket</code>; {@link Long#MAX_VALUE} for the last one
+	 */
+	public static long upperBound(int bucket)
+	{
+		return bucket == Count - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+	}
+}
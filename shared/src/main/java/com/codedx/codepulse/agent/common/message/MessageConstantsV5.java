@@ -0,0 +1,23 @@
+package com.codedx.codepulse.agent.common.message;
+
+public class MessageConstantsV5 {
+	private MessageConstantsV5()
+	{
+		// This class is not meant to be instantiated
+	}
+
+	public static final byte MsgMethodCounts = 17;
+	public static final byte MsgMethodDurations = 18;
+	public static final byte MsgCallEdges = 19;
+	public static final byte MsgSamplingInterval = 24;
+	public static final byte MsgDataHelloAdditional = 32;
+	public static final byte MsgDataHelloSharedMemory = 33;
+	public static final byte MsgClassTransformBatch = 43;
+	public static final byte MsgRequestSampling = 44;
+	public static final byte MsgSuppressMethods = 45;
+	public static final byte MsgRearmMethods = 46;
+	public static final byte MsgSetSamplingInterval = 47;
+	public static final byte MsgRetransformProgress = 48;
+	public static final byte MsgUpdateTraceFilters = 49;
+	public static final byte MsgSetLineLevelTargets = 51;
+}
@@ -19,6 +19,7 @@ package com.codedx.codepulse.agent.common.message;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Defines the behavior of an object that can write messages to a
@@ -31,12 +32,28 @@ public interface MessageProtocol
 {
 	public byte protocolVersion();
 
+	/**
+	 * The largest thread ID that fits in the event messages written by this
+	 * protocol.
+	 */
+	public int maxThreadId();
+
 	public void writeHello(DataOutputStream out) throws IOException;
 
 	public void writeProjectHello(DataOutputStream out, int projectId) throws IOException, NotSupportedException;
 
 	public void writeDataHello(DataOutputStream out, byte runId) throws IOException;
 
+	public void writeDataHelloAdditional(DataOutputStream out, byte runId) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes a data hello for a connection whose data will be written to the
+	 * shared memory ring at <code>ringPath</code> instead of the connection
+	 * itself.
+	 */
+	public void writeDataHelloSharedMemory(DataOutputStream out, byte runId, boolean additional, String ringPath)
+			throws IOException, NotSupportedException;
+
 	public void writeError(DataOutputStream out, String error) throws IOException;
 
 	public void writeConfiguration(DataOutputStream out, byte[] configBytes) throws IOException;
@@ -67,6 +84,47 @@ public interface MessageProtocol
 
 	public void writeClassIgnored(DataOutputStream out, String className) throws IOException;
 
+	/**
+	 * Writes several ClassTransformed/ClassTransformFailed/ClassIgnored
+	 * notifications as a single message. Each entry's kind is the message
+	 * constant it would have been sent as on its own.
+	 */
+	public void writeClassTransformBatch(DataOutputStream out, byte[] kinds, String[] classNames, int count)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes the number of HTTP requests seen by the agent so far, and how
+	 * many of them were traced.
+	 */
+	public void writeRequestSampling(DataOutputStream out, long sampledRequests, long totalRequests)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes how far the agent has got retransforming classes that were
+	 * already loaded when it attached: the number of classes to retransform,
+	 * how many have been retransformed or failed so far, the number of
+	 * batches run, and the longest and total time (in microseconds) spent in
+	 * retransformClasses calls.
+	 */
+	public void writeRetransformProgress(DataOutputStream out, int totalClasses,
+			int retransformedClasses, int failedClasses, int batches, long longestPauseMicros,
+			long totalPauseMicros) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes a replacement set of exclusion and inclusion patterns for a
+	 * running agent, which applies them to the classes it has already loaded.
+	 */
+	public void writeUpdateTraceFilters(DataOutputStream out, List<String> exclusions,
+			List<String> inclusions) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes the patterns naming the classes that should get line-level
+	 * probes, for an agent that was configured to start out with method
+	 * entry/exit probes only.
+	 */
+	public void writeSetLineLevelTargets(DataOutputStream out, List<String> patterns)
+			throws IOException, NotSupportedException;
+
 	public void writeMapThreadName(DataOutputStream out, int threadId, int relTime,
 			String threadName) throws IOException;
 
@@ -89,4 +147,60 @@ public interface MessageProtocol
 	public void writeMethodVisit(DataOutputStream out, int relTime, int seq, int sigId, int sourceLocationId, int threadId) throws IOException, NotSupportedException;
 
 	public void writeSourceLocationCount(DataOutputStream out, int sigId, int sourceLocationCount) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes how many more times each of <code>count</code> methods was
+	 * invoked since the last report, starting at <code>offset</code> in the
+	 * parallel <code>sigIds</code>/<code>deltas</code> arrays.
+	 */
+	public void writeMethodCounts(DataOutputStream out, int relTime, int[] sigIds, long[] deltas, int offset, int count)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes the growth of the duration histograms (see
+	 * {@link DurationBuckets}) of <code>count</code> methods, starting at
+	 * <code>offset</code> in <code>sigIds</code>. Method <code>i</code>'s
+	 * bucket/count pairs are entries <code>entryOffsets[i]</code> (inclusive)
+	 * to <code>entryOffsets[i + 1]</code> (exclusive) of the parallel
+	 * <code>buckets</code> and <code>bucketCounts</code> arrays.
+	 */
+	public void writeMethodDurations(DataOutputStream out, int relTime, int[] sigIds, int[] entryOffsets,
+			byte[] buckets, int[] bucketCounts, int offset, int count) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes <code>count</code> caller/callee method pairs, starting at
+	 * <code>offset</code> in the parallel <code>callerSigIds</code>/
+	 * <code>calleeSigIds</code> arrays.
+	 */
+	public void writeCallEdges(DataOutputStream out, int[] callerSigIds, int[] calleeSigIds, int offset, int count)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes a batch of <code>count</code> method ids, starting at
+	 * <code>offset</code> in <code>sigIds</code>, that HQ no longer needs
+	 * events for.
+	 */
+	public void writeSuppressMethods(DataOutputStream out, int[] sigIds, int offset, int count)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes a message telling the agent to resume sending events for every
+	 * method it was told to suppress.
+	 */
+	public void writeRearmMethods(DataOutputStream out) throws IOException, NotSupportedException;
+
+	/**
+	 * Writes the sampling interval that method entry and exit events sent
+	 * from now on were taken with: each one stands for <code>interval</code>
+	 * events on its thread.
+	 */
+	public void writeSamplingInterval(DataOutputStream out, int relTime, int interval)
+			throws IOException, NotSupportedException;
+
+	/**
+	 * Writes a message telling the agent to sample method entry and exit
+	 * events every <code>interval</code> events.
+	 */
+	public void writeSetSamplingInterval(DataOutputStream out, int interval) throws IOException,
+			NotSupportedException;
 }
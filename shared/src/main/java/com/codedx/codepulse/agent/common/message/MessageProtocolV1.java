@@ -19,6 +19,7 @@ package com.codedx.codepulse.agent.common.message;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.List;
 
 public class MessageProtocolV1 implements MessageProtocol
 {
@@ -29,6 +30,13 @@ public class MessageProtocolV1 implements MessageProtocol
 		return 1;
 	}
 
+	@Override
+	public int maxThreadId()
+	{
+		// thread IDs are written as unsigned shorts
+		return 0xFFFF;
+	}
+
 	@Override
 	public void writeHello(DataOutputStream out) throws IOException
 	{
@@ -49,6 +57,19 @@ public class MessageProtocolV1 implements MessageProtocol
 		out.writeByte(runId);
 	}
 
+	@Override
+	public void writeDataHelloAdditional(DataOutputStream out, byte runId) throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeDataHelloSharedMemory(DataOutputStream out, byte runId, boolean additional, String ringPath)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
 	@Override
 	public void writeError(DataOutputStream out, String error) throws IOException
 	{
@@ -164,6 +185,42 @@ public class MessageProtocolV1 implements MessageProtocol
 		out.writeUTF(className);
 	}
 
+	@Override
+	public void writeClassTransformBatch(DataOutputStream out, byte[] kinds, String[] classNames, int count)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeRequestSampling(DataOutputStream out, long sampledRequests, long totalRequests)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeRetransformProgress(DataOutputStream out, int totalClasses,
+			int retransformedClasses, int failedClasses, int batches, long longestPauseMicros,
+			long totalPauseMicros) throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeUpdateTraceFilters(DataOutputStream out, List<String> exclusions,
+			List<String> inclusions) throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeSetLineLevelTargets(DataOutputStream out, List<String> patterns)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
 	@Override
 	public void writeMapThreadName(DataOutputStream out, int threadId, int relTime,
 			String threadName) throws IOException
@@ -238,4 +295,52 @@ public class MessageProtocolV1 implements MessageProtocol
 	{
 		throw new NotSupportedException();
 	}
+
+	@Override
+	public void writeMethodCounts(DataOutputStream out, int relTime, int[] sigIds, long[] deltas, int offset, int count)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeMethodDurations(DataOutputStream out, int relTime, int[] sigIds, int[] entryOffsets,
+			byte[] buckets, int[] bucketCounts, int offset, int count) throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeCallEdges(DataOutputStream out, int[] callerSigIds, int[] calleeSigIds, int offset, int count)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeSuppressMethods(DataOutputStream out, int[] sigIds, int offset, int count)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeRearmMethods(DataOutputStream out) throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeSamplingInterval(DataOutputStream out, int relTime, int interval)
+			throws IOException, NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
+
+	@Override
+	public void writeSetSamplingInterval(DataOutputStream out, int interval) throws IOException,
+			NotSupportedException
+	{
+		throw new NotSupportedException();
+	}
 }
@@ -0,0 +1,229 @@
+package com.codedx.codepulse.agent.common.message;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+public class MessageProtocolV5 extends MessageProtocolV4 {
+
+	@Override
+	public byte protocolVersion()
+	{
+		return 5;
+	}
+
+	@Override
+	public int maxThreadId()
+	{
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void writeProjectHello(DataOutputStream out, int projectId) throws IOException
+	{
+		out.writeByte(MessageConstantsV4.MsgProjectHello);
+		out.writeByte(protocolVersion());
+		out.writeInt(projectId);
+	}
+
+	@Override
+	public void writeDataHelloAdditional(DataOutputStream out, byte runId) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgDataHelloAdditional);
+		out.writeByte(runId);
+	}
+
+	@Override
+	public void writeDataHelloSharedMemory(DataOutputStream out, byte runId, boolean additional, String ringPath)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgDataHelloSharedMemory);
+		out.writeByte(runId);
+		out.writeBoolean(additional);
+		out.writeUTF(ringPath);
+	}
+
+	@Override
+	public void writeClassTransformBatch(DataOutputStream out, byte[] kinds, String[] classNames, int count)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgClassTransformBatch);
+		out.writeInt(count);
+		for (int i = 0; i < count; i++)
+		{
+			out.writeByte(kinds[i]);
+			out.writeUTF(classNames[i]);
+		}
+	}
+
+	@Override
+	public void writeRequestSampling(DataOutputStream out, long sampledRequests, long totalRequests)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgRequestSampling);
+		out.writeLong(sampledRequests);
+		out.writeLong(totalRequests);
+	}
+
+	@Override
+	public void writeRetransformProgress(DataOutputStream out, int totalClasses,
+			int retransformedClasses, int failedClasses, int batches, long longestPauseMicros,
+			long totalPauseMicros) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgRetransformProgress);
+		out.writeInt(totalClasses);
+		out.writeInt(retransformedClasses);
+		out.writeInt(failedClasses);
+		out.writeInt(batches);
+		out.writeLong(longestPauseMicros);
+		out.writeLong(totalPauseMicros);
+	}
+
+	@Override
+	public void writeUpdateTraceFilters(DataOutputStream out, List<String> exclusions,
+			List<String> inclusions) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgUpdateTraceFilters);
+		writePatterns(out, exclusions);
+		writePatterns(out, inclusions);
+	}
+
+	@Override
+	public void writeSetLineLevelTargets(DataOutputStream out, List<String> patterns)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgSetLineLevelTargets);
+		writePatterns(out, patterns);
+	}
+
+	@Override
+	public void writeSuppressMethods(DataOutputStream out, int[] sigIds, int offset, int count)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgSuppressMethods);
+		out.writeInt(count);
+		for (int i = offset; i < offset + count; i++)
+			out.writeInt(sigIds[i]);
+	}
+
+	@Override
+	public void writeRearmMethods(DataOutputStream out) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgRearmMethods);
+	}
+
+	@Override
+	public void writeSetSamplingInterval(DataOutputStream out, int interval) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgSetSamplingInterval);
+		out.writeInt(interval);
+	}
+
+	@Override
+	public void writeMethodCounts(DataOutputStream out, int relTime, int[] sigIds, long[] deltas, int offset, int count)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgMethodCounts);
+		out.writeInt(relTime);
+		out.writeInt(count);
+		for (int i = offset; i < offset + count; i++)
+		{
+			out.writeInt(sigIds[i]);
+			out.writeLong(deltas[i]);
+		}
+	}
+
+	@Override
+	public void writeMethodDurations(DataOutputStream out, int relTime, int[] sigIds, int[] entryOffsets,
+			byte[] buckets, int[] bucketCounts, int offset, int count) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgMethodDurations);
+		out.writeInt(relTime);
+		out.writeInt(count);
+		for (int i = offset; i < offset + count; i++)
+		{
+			out.writeInt(sigIds[i]);
+			out.writeByte(entryOffsets[i + 1] - entryOffsets[i]);
+			for (int e = entryOffsets[i]; e < entryOffsets[i + 1]; e++)
+			{
+				out.writeByte(buckets[e]);
+				out.writeInt(bucketCounts[e]);
+			}
+		}
+	}
+
+	@Override
+	public void writeCallEdges(DataOutputStream out, int[] callerSigIds, int[] calleeSigIds, int offset, int count)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgCallEdges);
+		out.writeInt(count);
+		for (int i = offset; i < offset + count; i++)
+		{
+			out.writeInt(callerSigIds[i]);
+			out.writeInt(calleeSigIds[i]);
+		}
+	}
+
+	@Override
+	public void writeSamplingInterval(DataOutputStream out, int relTime, int interval) throws IOException
+	{
+		out.writeByte(MessageConstantsV5.MsgSamplingInterval);
+		out.writeInt(relTime);
+		out.writeInt(interval);
+	}
+
+	// Version 5 widens the thread ID in event messages to 4 bytes
+
+	@Override
+	public void writeMapThreadName(DataOutputStream out, int threadId, int relTime,
+			String threadName) throws IOException
+	{
+		out.writeByte(MessageConstantsV1.MsgMapThreadName);
+		out.writeInt(threadId);
+		out.writeInt(relTime);
+		out.writeUTF(threadName);
+	}
+
+	@Override
+	public void writeMethodEntry(DataOutputStream out, int relTime, int seq, int sigId, int threadId)
+			throws IOException
+	{
+		out.writeByte(MessageConstantsV1.MsgMethodEntry);
+		out.writeInt(relTime);
+		out.writeInt(seq);
+		out.writeInt(sigId);
+		out.writeInt(threadId);
+	}
+
+	@Override
+	public void writeMethodExit(DataOutputStream out, int relTime, int seq, int sigId, boolean exThrown,
+			int threadId) throws IOException
+	{
+		out.writeByte(MessageConstantsV1.MsgMethodExit);
+		out.writeInt(relTime);
+		out.writeInt(seq);
+		out.writeInt(sigId);
+		out.writeBoolean(exThrown);
+		out.writeInt(threadId);
+	}
+
+	@Override
+	public void writeMethodVisit(DataOutputStream out, int relTime, int seq, int sigId, int sourceLocationId, int threadId) throws IOException
+	{
+		out.writeByte(MessageConstantsV3.MsgMethodVisit);
+		out.writeInt(relTime);
+		out.writeInt(seq);
+		out.writeInt(sigId);
+		out.writeInt(sourceLocationId);
+		out.writeInt(threadId);
+	}
+
+	private static void writePatterns(DataOutputStream out, List<String> patterns)
+			throws IOException
+	{
+		out.writeInt(patterns.size());
+		for (String pattern : patterns)
+			out.writeUTF(pattern);
+	}
+}
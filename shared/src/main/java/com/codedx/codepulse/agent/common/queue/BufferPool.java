@@ -17,8 +17,11 @@
 
 package com.codedx.codepulse.agent.common.queue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An object that manages a collection of {@link DataBufferOutputStream}s,
@@ -31,6 +34,12 @@ import java.util.concurrent.Semaphore;
  * Internally, a BufferPool uses three {@link ConcurrentLinkedQueue}s, with a
  * {@link Semaphore} to control access. Using this approach, the pool achieves
  * high availability, even for a large number of producer and consumer threads.
+ *
+ * A pool can be {@link #resize(int, int) resized} while in use. Resizing
+ * starts a new generation of buffers; buffers of older generations are retired
+ * as they come back empty, and replaced with new ones as long as the pool's
+ * memory budget allows. The pool also keeps running totals of what its
+ * readers have taken out of it, for whoever wants to decide on a size.
  * @author DylanH
  */
 public class BufferPool
@@ -43,8 +52,21 @@ public class BufferPool
 	private final ConcurrentLinkedQueue<DataBufferOutputStream> partialBuffers;
 	private final ConcurrentLinkedQueue<DataBufferOutputStream> fullBuffers;
 
-	private final int fullThreshold;
-	private final int totalNumBuffers;
+	private volatile int fullThreshold;
+	private volatile int bufferLength;
+	private volatile int generation = 0;
+	private volatile int totalNumBuffers;
+
+	// guarded by resizeLock
+	private final Object resizeLock = new Object();
+	private long budgetBytes;
+	private long allocatedBytes;
+
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong fullReads = new AtomicLong();
+	private final AtomicLong partialReads = new AtomicLong();
+	private final AtomicLong drainNanos = new AtomicLong();
+	private final AtomicLong writerWaits = new AtomicLong();
 
 	private volatile boolean writeDisabled = false;
 
@@ -75,7 +97,10 @@ public class BufferPool
 	public BufferPool(int numBuffers, int bufferLengthHint)
 	{
 		this.fullThreshold = (int) (bufferLengthHint * 0.9);
+		this.bufferLength = bufferLengthHint;
 		this.totalNumBuffers = numBuffers;
+		this.budgetBytes = (long) numBuffers * bufferLengthHint;
+		this.allocatedBytes = budgetBytes;
 
 		// as per the docs, fairness does nothing with tryAcquire. You'd have to
 		// tryAcquire with a timeout of 0 seconds for fairness to come into
@@ -90,10 +115,18 @@ public class BufferPool
 
 		for (int i = 0; i < numBuffers; i++)
 		{
-			emptyBuffers.offer(new DataBufferOutputStream(bufferLengthHint));
+			emptyBuffers.offer(newBuffer(bufferLengthHint));
 		}
 	}
 
+	private DataBufferOutputStream newBuffer(int length)
+	{
+		DataBufferOutputStream buffer = new DataBufferOutputStream(length);
+		buffer.poolGeneration = generation;
+		buffer.poolLengthHint = length;
+		return buffer;
+	}
+
 	/**
 	 * Acquires a Buffer from the pool, for the purpose of adding new data. This
 	 * method will prioritize partially-filled buffers over empty buffers, and
@@ -132,10 +165,34 @@ public class BufferPool
 			}
 			// if both of those failed, "wait" and try again
 			else
+			{
+				if (tryCount == 0)
+					writerWaits.incrementAndGet();
 				waitCycle(tryCount++);
+			}
 		}
 	}
 
+	/**
+	 * Acquires a Buffer from the pool for writing, like
+	 * {@link #acquireForWriting()}, but without waiting.
+	 *
+	 * @return A Buffer from the pool, ready to have new data written to it, or
+	 *         null if writes are disabled or no buffer is currently available.
+	 */
+	public DataBufferOutputStream tryAcquireForWriting()
+	{
+		if (writeDisabled)
+			return null;
+
+		if (partialSem.tryAcquire())
+			return partialBuffers.poll();
+		else if (emptySem.tryAcquire())
+			return emptyBuffers.poll();
+		else
+			return null;
+	}
+
 	/**
 	 * Equivalent to {@link #acquireForReading(boolean)} with an argument of
 	 * <code>false</code>
@@ -179,7 +236,8 @@ public class BufferPool
 			// first try to acquire a permit for one of the "full" buffers
 			if (fullSem.tryAcquire())
 			{
-				return fullBuffers.poll();
+				fullReads.incrementAndGet();
+				return markRead(fullBuffers.poll());
 			}
 			// second choice is to get a "partially filled" buffer
 			// Note: unless the greedy flag is set, don't start looking for
@@ -191,7 +249,8 @@ public class BufferPool
 			// partial buffers.
 			else if ((greedy || tryCount > 100) && partialSem.tryAcquire())
 			{
-				return partialBuffers.poll();
+				partialReads.incrementAndGet();
+				return markRead(partialBuffers.poll());
 			}
 			// otherwise, wait
 			else
@@ -199,6 +258,13 @@ public class BufferPool
 		}
 	}
 
+	private DataBufferOutputStream markRead(DataBufferOutputStream buffer)
+	{
+		bytesRead.addAndGet(buffer.size());
+		buffer.readAcquiredNanos = System.nanoTime();
+		return buffer;
+	}
+
 	/**
 	 * Internal helper to handle spinning/sleeping while waiting for a buffer.
 	 * Yields the current thread for 20 cycles (somewhere between 0 and 20 ms),
@@ -226,11 +292,21 @@ public class BufferPool
 	 */
 	public void release(DataBufferOutputStream buffer)
 	{
+		if (buffer.readAcquiredNanos != 0)
+		{
+			drainNanos.addAndGet(System.nanoTime() - buffer.readAcquiredNanos);
+			buffer.readAcquiredNanos = 0;
+		}
+
 		// depending on the buffer's current "size", it will be placed in a
 		// different queue.
 		int size = buffer.size();
 		if (size == 0)
 		{
+			// empty buffers from before the last resize are replaced
+			if (buffer.poolGeneration != generation && retire(buffer))
+				return;
+
 			// size == 0 means the buffer was empty
 			emptyBuffers.offer(buffer);
 			emptySem.release();
@@ -249,6 +325,144 @@ public class BufferPool
 		}
 	}
 
+	/**
+	 * Starts a new generation of buffers. Idle empty buffers are replaced
+	 * right away; buffers that currently hold data (or are in use) are
+	 * replaced once they come back empty. The pool never allocates more than
+	 * <code>numBuffers * bufferLengthHint</code> bytes of new buffers on top
+	 * of the old ones still in circulation, so the total stays within the
+	 * larger of the old and new budgets.
+	 * @param numBuffers The number of buffers in the new generation
+	 * @param bufferLengthHint The length of each buffer in the new generation
+	 */
+	public void resize(int numBuffers, int bufferLengthHint)
+	{
+		synchronized (resizeLock)
+		{
+			generation++;
+			bufferLength = bufferLengthHint;
+			fullThreshold = (int) (bufferLengthHint * 0.9);
+			budgetBytes = (long) numBuffers * bufferLengthHint;
+
+			// take every idle empty buffer out of circulation, and put back the
+			// ones we keep
+			int idle = emptySem.drainPermits();
+			List<DataBufferOutputStream> kept = new ArrayList<DataBufferOutputStream>();
+			for (int i = 0; i < idle; i++)
+			{
+				DataBufferOutputStream buffer = emptyBuffers.poll();
+				if (buffer.poolGeneration == generation)
+					kept.add(buffer);
+				else
+					forget(buffer);
+			}
+
+			for (DataBufferOutputStream buffer : kept)
+			{
+				emptyBuffers.offer(buffer);
+				emptySem.release();
+			}
+
+			topUp();
+		}
+	}
+
+	/**
+	 * Drops an old-generation buffer from the pool, making room for a new one.
+	 * @return <code>false</code> if the buffer turned out to be current
+	 */
+	private boolean retire(DataBufferOutputStream buffer)
+	{
+		synchronized (resizeLock)
+		{
+			if (buffer.poolGeneration == generation)
+				return false;
+
+			forget(buffer);
+			topUp();
+			return true;
+		}
+	}
+
+	// must hold resizeLock
+	private void forget(DataBufferOutputStream buffer)
+	{
+		allocatedBytes -= buffer.poolLengthHint;
+		totalNumBuffers--;
+	}
+
+	// must hold resizeLock
+	private void topUp()
+	{
+		int length = bufferLength;
+		while (allocatedBytes + length <= budgetBytes)
+		{
+			allocatedBytes += length;
+			totalNumBuffers++;
+			emptyBuffers.offer(newBuffer(length));
+			emptySem.release();
+		}
+	}
+
+	/**
+	 * @return The length hint of buffers in the current generation
+	 */
+	public int getBufferLength()
+	{
+		return bufferLength;
+	}
+
+	/**
+	 * @return The number of times the pool has been resized
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * @return The total number of bytes readers have acquired from the pool
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return The number of full buffers readers have acquired
+	 */
+	public long getFullReads()
+	{
+		return fullReads.get();
+	}
+
+	/**
+	 * @return The number of partially-filled buffers readers have acquired
+	 *         (i.e. buffers that were sent before they filled up)
+	 */
+	public long getPartialReads()
+	{
+		return partialReads.get();
+	}
+
+	/**
+	 * @return The total time, in nanoseconds, readers have held buffers
+	 *         between acquiring and releasing them
+	 */
+	public long getDrainNanos()
+	{
+		return drainNanos.get();
+	}
+
+	/**
+	 * @return The number of times a writer found no buffer available and had
+	 *         to wait
+	 */
+	public long getWriterWaits()
+	{
+		return writerWaits.get();
+	}
+
 	/**
 	 * @return The number of currently-available buffers in either of the
 	 *         "partially-filled" or "full" queues.
@@ -258,6 +472,15 @@ public class BufferPool
 		return partialSem.availablePermits() + fullSem.availablePermits();
 	}
 
+	/**
+	 * @return The total number of buffers managed by this pool, regardless of
+	 *         their current state.
+	 */
+	public int numBuffers()
+	{
+		return totalNumBuffers;
+	}
+
 	/**
 	 * Returns the number of writable (non-full) buffers.
 	 * @return the number of writable (non-full) buffers
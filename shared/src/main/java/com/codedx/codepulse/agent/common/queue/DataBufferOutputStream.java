@@ -34,6 +34,11 @@ public class DataBufferOutputStream extends DataOutputStream
 
 	private final ByteArrayOutputStream underlying;
 
+	// bookkeeping for the BufferPool that owns this buffer
+	int poolGeneration;
+	int poolLengthHint;
+	long readAcquiredNanos;
+
 	/**
 	 * Initialize this DataBuffer with an underlying ByteArrayOutputStream.
 	 *
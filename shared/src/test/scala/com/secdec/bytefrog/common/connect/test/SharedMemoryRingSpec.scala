@@ -0,0 +1,108 @@
+/*
+ * Code Pulse: A real-time code coverage testing tool. For more information
+ * see http://code-pulse.com
+ *
+ * Copyright (C) 2014 Applied Visions - http://securedecisions.avi.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.common.connect.test
+
+import java.io.File
+
+import org.scalatest.FunSpec
+import org.scalatest.concurrent.Conductors
+import org.scalatest._
+import org.scalatest.Matchers._
+import org.scalatest.time.SpanSugar.convertIntToGrainOfTime
+
+import com.codedx.codepulse.agent.common.connect.SharedMemoryRing
+
+class SharedMemoryRingSpec extends FunSpec with Matchers with Conductors {
+	override implicit def patienceConfig = PatienceConfig(timeout = 5000.millis)
+
+	def withRingFile(test: File => Unit) = {
+		val file = File.createTempFile("codepulse-test-", ".ring")
+		try test(file) finally file.delete
+	}
+
+	describe("SharedMemoryRing") {
+		it("should refuse to open a file that isn't a ring") {
+			withRingFile { file =>
+				an[java.io.IOException] should be thrownBy SharedMemoryRing.open(file)
+			}
+		}
+
+		it("should only show the reader data that has been flushed") {
+			withRingFile { file =>
+				val writer = SharedMemoryRing.create(file, 4096).openWriter(null)
+				val reader = SharedMemoryRing.open(file).openReader(null)
+
+				writer.write(Array[Byte](1, 2, 3))
+				reader.available should be(0)
+
+				writer.flush
+				reader.available should be(3)
+
+				val read = new Array[Byte](3)
+				reader.read(read) should be(3)
+				read should equal(Array[Byte](1, 2, 3))
+			}
+		}
+
+		it("should carry more data than it holds between threads, in order") {
+			withRingFile { file =>
+				val conductor = new Conductor
+				import conductor._
+
+				val total = 1000000
+				val writer = SharedMemoryRing.create(file, 4096).openWriter(null)
+				val reader = SharedMemoryRing.open(file).openReader(null)
+
+				thread("writer") {
+					val chunk = new Array[Byte](1000)
+					for (start <- 0 until total by chunk.length) {
+						for (i <- chunk.indices) chunk(i) = (start + i).toByte
+						writer.write(chunk)
+						writer.flush
+					}
+					writer.close
+				}
+
+				thread("reader") {
+					val buffer = new Array[Byte](777)
+					var position = 0
+					var n = reader.read(buffer)
+					while (n >= 0) {
+						for (i <- 0 until n) buffer(i) should be((position + i).toByte)
+						position += n
+						n = reader.read(buffer)
+					}
+					position should be(total)
+				}
+
+				conduct
+			}
+		}
+
+		it("should fail writes once the reader is closed") {
+			withRingFile { file =>
+				val writer = SharedMemoryRing.create(file, 4096).openWriter(null)
+				SharedMemoryRing.open(file).openReader(null).close
+
+				an[java.io.IOException] should be thrownBy writer.write(new Array[Byte](8192))
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/* Code Pulse: a real-time code coverage tool, for more information, see <http://code-pulse.com/>
+ *
+ * Copyright (C) 2014-2017 Code Dx, Inc. <https://codedx.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.secdec.bytefrog.common.message.test
+
+import org.scalatest.FunSpec
+import org.scalatest._
+import org.scalatest.Matchers._
+
+import com.codedx.codepulse.agent.common.message.DurationBuckets
+
+class DurationBucketsSpec extends FunSpec with Matchers {
+
+	val Last = DurationBuckets.Count - 1
+
+	describe("DurationBuckets") {
+
+		it("should give 0 and 1 microseconds their own buckets, and split each power of two in half") {
+			val expected = Seq(0L -> 0, 1L -> 1, 2L -> 2, 3L -> 3, 4L -> 4, 5L -> 4, 6L -> 5, 7L -> 5,
+				8L -> 6, 11L -> 6, 12L -> 7, 15L -> 7, 16L -> 8, 100L -> 13, 1000000L -> 39)
+
+			for ((micros, bucket) <- expected)
+				withClue(s"$micros us: ") { DurationBuckets.bucketOf(micros) shouldBe bucket }
+		}
+
+		it("should put negative durations in the first bucket and very long ones in the last") {
+			DurationBuckets.bucketOf(-5L) shouldBe 0
+			DurationBuckets.bucketOf(DurationBuckets.lowerBound(Last)) shouldBe Last
+			DurationBuckets.bucketOf(60L * 60 * 1000000) shouldBe Last
+			DurationBuckets.bucketOf(Long.MaxValue) shouldBe Last
+		}
+
+		it("should have bounds that cover every duration without overlapping") {
+			DurationBuckets.lowerBound(0) shouldBe 0L
+			DurationBuckets.upperBound(Last) shouldBe Long.MaxValue
+
+			for (b <- 0 until Last) withClue(s"bucket $b: ") {
+				DurationBuckets.upperBound(b) + 1 shouldBe DurationBuckets.lowerBound(b + 1)
+				DurationBuckets.bucketOf(DurationBuckets.lowerBound(b)) shouldBe b
+				DurationBuckets.bucketOf(DurationBuckets.upperBound(b)) shouldBe b
+			}
+		}
+
+		it("should keep each bucket's upper bound within 1.5 times its lower bound") {
+			for (b <- 2 until Last) withClue(s"bucket $b: ") {
+				DurationBuckets.upperBound(b).toDouble should be <= (DurationBuckets.lowerBound(b) * 1.5)
+			}
+		}
+	}
+}
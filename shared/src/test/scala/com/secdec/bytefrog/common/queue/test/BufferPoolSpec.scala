@@ -333,5 +333,56 @@ class BufferPoolSpec extends FunSpec with Matchers with Conductors {
 				}
 			}
 		}
+
+		describe("resize") {
+			it("should replace idle empty buffers right away") {
+				val pool = new BufferPool(10, 100)
+				pool.resize(4, 250)
+
+				pool.numBuffers should be(4)
+				pool.numWritableBuffers should be(4)
+				pool.getBufferLength should be(250)
+				pool.isEmpty should be(true)
+			}
+
+			it("should retire buffers that hold data once they come back empty") {
+				val pool = new BufferPool(2, 100)
+
+				val held = pool.acquireForWriting
+				held.writeInt(1234)
+				pool.release(held)
+
+				pool.resize(1, 200)
+
+				// the partially-filled buffer is still in circulation, so there
+				// is no room for the new one yet
+				pool.numBuffers should be(1)
+				pool.numReadableBuffers should be(1)
+
+				val readBuffer = pool.acquireForReading(true)
+				readBuffer.reset()
+				pool.release(readBuffer)
+
+				pool.numBuffers should be(1)
+				pool.numWritableBuffers should be(1)
+				pool.isEmpty should be(true)
+			}
+
+			it("should count what readers take out of the pool") {
+				val pool = new BufferPool(2, 100)
+
+				val buffer = pool.acquireForWriting
+				buffer.writeInt(1234)
+				pool.release(buffer)
+
+				val readBuffer = pool.acquireForReading(true)
+				readBuffer.reset()
+				pool.release(readBuffer)
+
+				pool.getBytesRead should be(4)
+				pool.getPartialReads should be(1)
+				pool.getFullReads should be(0)
+			}
+		}
 	}
-}
\ No newline at end of file
+}